@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.benchmark;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.tree.CompoundTag;
+import io.github.lordakkarin.nbt.tree.IntegerTag;
+import io.github.lordakkarin.nbt.tree.StringTag;
+import io.github.lordakkarin.nbt.tree.Tag;
+import io.github.lordakkarin.nbt.tree.TagFactory;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the typed compound accessors against the previous implementation which relied on
+ * reflective construction and optional wrappers (run via {@code mvn -Pbenchmark test-compile
+ * exec:exec}).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompoundTagBenchmark {
+
+  private static final String[] KEYS = {"id", "Count", "Damage", "Slot", "Health", "Fire", "Air"};
+
+  private CompoundTag compound;
+
+  @Setup
+  public void setup() {
+    this.compound = new CompoundTag();
+
+    for (int i = 0; i < KEYS.length; ++i) {
+      this.compound.setInteger(KEYS[i], i);
+    }
+  }
+
+  /**
+   * Constructs a tag through reflection (as previously done by {@code CompoundTag#getOrCreate}).
+   */
+  @NonNull
+  private static <T extends Tag> T createReflective(@NonNull Class<T> type) {
+    try {
+      return type.getConstructor().newInstance();
+    } catch (ReflectiveOperationException ex) {
+      throw new RuntimeException("Could not construct tag: " + ex.getMessage(), ex);
+    }
+  }
+
+  @Benchmark
+  public Tag createFactory() {
+    return TagFactory.create(TagType.STRING);
+  }
+
+  @Benchmark
+  public Tag createReflective() {
+    return createReflective(StringTag.class);
+  }
+
+  @Benchmark
+  public int getInteger() {
+    int sum = 0;
+
+    for (String key : KEYS) {
+      sum += this.compound.getInteger(key, -1);
+    }
+
+    return sum;
+  }
+
+  @Benchmark
+  public int getIntegerOptional() {
+    int sum = 0;
+
+    for (String key : KEYS) {
+      sum += Optional.ofNullable((IntegerTag) this.compound.get(key)).map(IntegerTag::getValue)
+          .orElse(-1);
+    }
+
+    return sum;
+  }
+
+  @Benchmark
+  public CompoundTag setInteger() {
+    CompoundTag compound = new CompoundTag();
+
+    for (int i = 0; i < KEYS.length; ++i) {
+      compound.setInteger(KEYS[i], i);
+    }
+
+    return compound;
+  }
+
+  @Benchmark
+  public CompoundTag setIntegerReflective() {
+    CompoundTag compound = new CompoundTag();
+
+    for (int i = 0; i < KEYS.length; ++i) {
+      IntegerTag tag = createReflective(IntegerTag.class);
+      tag.setValue(i);
+      compound.put(KEYS[i], tag);
+    }
+
+    return compound;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.benchmark;
+
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.tree.CompoundTag;
+import io.github.lordakkarin.nbt.tree.ListTag;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of hashing and comparing large mutable trees against their frozen
+ * counterparts which cache their hash codes.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashCodeBenchmark {
+
+  private CompoundTag mutable;
+  private CompoundTag frozen;
+  private CompoundTag otherFrozen;
+
+  @Setup
+  public void setup() {
+    this.mutable = createTree(0);
+    this.frozen = createTree(0).freeze();
+    this.otherFrozen = createTree(1).freeze();
+  }
+
+  private static CompoundTag createTree(int seed) {
+    CompoundTag root = new CompoundTag();
+    ListTag<CompoundTag> items = new ListTag<>(TagType.COMPOUND);
+
+    for (int i = 0; i < 1000; ++i) {
+      CompoundTag item = new CompoundTag();
+      item.setString("id", "minecraft:item_" + i);
+      item.setByte("Count", (byte) (i % 64));
+      item.setShort("Damage", (short) i);
+      item.setInteger("Slot", i + seed);
+      items.add(item);
+    }
+
+    root.put("Items", items);
+    return root;
+  }
+
+  @Benchmark
+  public boolean equalsFrozen() {
+    return this.frozen.equals(this.otherFrozen);
+  }
+
+  @Benchmark
+  public int hashCodeFrozen() {
+    return this.frozen.hashCode();
+  }
+
+  @Benchmark
+  public int hashCodeMutable() {
+    return this.mutable.hashCode();
+  }
+}
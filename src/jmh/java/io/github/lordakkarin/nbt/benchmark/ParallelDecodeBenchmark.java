@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.benchmark;
+
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.tree.CompoundTag;
+import io.github.lordakkarin.nbt.tree.DoubleTag;
+import io.github.lordakkarin.nbt.tree.ListTag;
+import io.github.lordakkarin.nbt.tree.RootTag;
+import io.github.lordakkarin.nbt.tree.TreeDecoder;
+import io.github.lordakkarin.nbt.tree.TreeEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares sequential and concurrent decoding of a single document which holds a large list of
+ * compounds.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelDecodeBenchmark {
+
+  private ByteBuf data;
+  private TreeDecoder sequential;
+  private TreeDecoder parallel;
+
+  @Setup
+  public void setup() {
+    RootTag root = new RootTag("entities");
+    ListTag<CompoundTag> entities = new ListTag<>(TagType.COMPOUND);
+
+    for (int i = 0; i < 100000; ++i) {
+      CompoundTag entity = new CompoundTag();
+      entity.setString("id", "minecraft:entity_" + (i % 32));
+      entity.setInteger("uuid", i);
+      entity.setFloat("health", i % 20);
+      entity.put("Pos", new ListTag<>(TagType.DOUBLE, new DoubleTag(i), new DoubleTag(64),
+          new DoubleTag(-i)));
+      entities.add(entity);
+    }
+
+    root.put("Entities", entities);
+
+    try (TreeEncoder encoder = new TreeEncoder()) {
+      encoder.encode(root);
+      this.data = Unpooled.copiedBuffer(encoder.getBuffer());
+    }
+
+    this.sequential = new TreeDecoder();
+    this.parallel = new TreeDecoder(ForkJoinPool.commonPool());
+  }
+
+  @Benchmark
+  public RootTag decodeParallel() {
+    return this.parallel.decode(this.data.duplicate());
+  }
+
+  @Benchmark
+  public RootTag decodeSequential() {
+    return this.sequential.decode(this.data.duplicate());
+  }
+}
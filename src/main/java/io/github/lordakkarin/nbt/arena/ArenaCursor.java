@@ -0,0 +1,583 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.arena;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides a reusable reference to a value within a {@link TagArena} which reads and updates the
+ * value in place. Cursors only descend into compounds and lists (as well as advance to the next
+ * sibling of their current value) and thus need to be copied in order to retain a position. Any
+ * accessor which does not match the type of the current value fails with an {@link
+ * IllegalStateException}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ArenaCursor {
+
+  private final TagArena arena;
+  private final ByteBuf buffer;
+  private TagType type;
+  private int offset;
+  private int keyOffset;
+  private TagType parentType;
+  private int parentEnd;
+
+  ArenaCursor(@NonNull TagArena arena) {
+    this.arena = arena;
+    this.buffer = arena.buffer;
+    this.reset();
+  }
+
+  /**
+   * Creates a copy of this cursor which points at the same value.
+   *
+   * @return a cursor.
+   */
+  @NonNull
+  public ArenaCursor copy() {
+    ArenaCursor copy = new ArenaCursor(this.arena);
+    copy.moveTo(this);
+    return copy;
+  }
+
+  /**
+   * Verifies that this cursor points at a value of the specified type.
+   *
+   * @param type an expected type.
+   * @throws IllegalStateException when the cursor points at a value of a different type.
+   */
+  private void expect(@NonNull TagType type) {
+    if (this.type != type) {
+      throw new IllegalStateException(
+          "Expected value of type " + type + " but cursor points at " + this.type);
+    }
+  }
+
+  /**
+   * Moves this cursor to the first element of the compound or list it currently points at.
+   *
+   * @return true if the cursor has been moved, false if the container is empty.
+   * @throws IllegalStateException when the cursor does not point at a compound or list.
+   */
+  public boolean firstChild() {
+    if (this.type == TagType.COMPOUND) {
+      if (this.buffer.getInt(this.offset + Integer.BYTES) == 0) {
+        return false;
+      }
+
+      this.parentType = TagType.COMPOUND;
+      this.parentEnd = this.offset + this.buffer.getInt(this.offset);
+      this.enterEntry(this.offset + TagArena.COMPOUND_HEADER_SIZE);
+      return true;
+    }
+
+    this.expect(TagType.LIST);
+
+    if (this.buffer.getInt(this.offset + Integer.BYTES + Byte.BYTES) == 0) {
+      return false;
+    }
+
+    this.parentType = TagType.LIST;
+    this.parentEnd = this.offset + this.buffer.getInt(this.offset);
+    this.type = TagArena.typeOf(this.buffer.getByte(this.offset + Integer.BYTES));
+    this.keyOffset = -1;
+    this.offset += TagArena.LIST_HEADER_SIZE;
+    return true;
+  }
+
+  /**
+   * Positions this cursor at a compound entry.
+   *
+   * @param entryOffset the offset of the entry.
+   */
+  private void enterEntry(int entryOffset) {
+    this.keyOffset = entryOffset;
+    this.type = TagArena.typeOf(this.buffer.getByte(entryOffset));
+    this.offset = entryOffset + Byte.BYTES + Short.BYTES
+        + this.buffer.getUnsignedShort(entryOffset + Byte.BYTES);
+  }
+
+  public byte getByte() {
+    this.expect(TagType.BYTE);
+    return this.buffer.getByte(this.offset);
+  }
+
+  /**
+   * Retrieves an element of the byte array this cursor points at.
+   *
+   * @param index an index.
+   * @return a value.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  public byte getByte(int index) {
+    return this.buffer.getByte(this.elementOffset(TagType.BYTE_ARRAY, index, Byte.BYTES));
+  }
+
+  /**
+   * Retrieves a copy of the byte array this cursor points at.
+   *
+   * @return an array.
+   */
+  @NonNull
+  public byte[] getByteArray() {
+    this.expect(TagType.BYTE_ARRAY);
+
+    byte[] value = new byte[this.buffer.getInt(this.offset)];
+    this.buffer.getBytes(this.offset + Integer.BYTES, value);
+    return value;
+  }
+
+  public double getDouble() {
+    this.expect(TagType.DOUBLE);
+    return this.buffer.getDouble(this.offset);
+  }
+
+  /**
+   * Retrieves the element type of the list this cursor points at.
+   *
+   * @return an element type.
+   */
+  @NonNull
+  public TagType getElementType() {
+    this.expect(TagType.LIST);
+    return TagArena.typeOf(this.buffer.getByte(this.offset + Integer.BYTES));
+  }
+
+  public float getFloat() {
+    this.expect(TagType.FLOAT);
+    return this.buffer.getFloat(this.offset);
+  }
+
+  public int getInteger() {
+    this.expect(TagType.INTEGER);
+    return this.buffer.getInt(this.offset);
+  }
+
+  /**
+   * Retrieves an element of the integer array this cursor points at.
+   *
+   * @param index an index.
+   * @return a value.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  public int getInteger(int index) {
+    return this.buffer.getInt(this.elementOffset(TagType.INTEGER_ARRAY, index, Integer.BYTES));
+  }
+
+  /**
+   * Retrieves a copy of the integer array this cursor points at.
+   *
+   * @return an array.
+   */
+  @NonNull
+  public int[] getIntegerArray() {
+    this.expect(TagType.INTEGER_ARRAY);
+
+    int[] value = new int[this.buffer.getInt(this.offset)];
+    for (int i = 0; i < value.length; ++i) {
+      value[i] = this.buffer.getInt(this.offset + Integer.BYTES * (i + 1));
+    }
+    return value;
+  }
+
+  /**
+   * Retrieves the key of the compound entry this cursor points at.
+   *
+   * @return a key or null if the cursor points at the root compound or a list element.
+   */
+  @Nullable
+  public String getKey() {
+    if (this.keyOffset == -1) {
+      return null;
+    }
+
+    return this.buffer.toString(this.keyOffset + Byte.BYTES + Short.BYTES,
+        this.buffer.getUnsignedShort(this.keyOffset + Byte.BYTES), StandardCharsets.UTF_8);
+  }
+
+  public long getLong() {
+    this.expect(TagType.LONG);
+    return this.buffer.getLong(this.offset);
+  }
+
+  /**
+   * Retrieves an element of the long array this cursor points at.
+   *
+   * @param index an index.
+   * @return a value.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  public long getLong(int index) {
+    return this.buffer.getLong(this.elementOffset(TagType.LONG_ARRAY, index, Long.BYTES));
+  }
+
+  /**
+   * Retrieves a copy of the long array this cursor points at.
+   *
+   * @return an array.
+   */
+  @NonNull
+  public long[] getLongArray() {
+    this.expect(TagType.LONG_ARRAY);
+
+    long[] value = new long[this.buffer.getInt(this.offset)];
+    BufferUtil.readLongs(
+        this.buffer.slice(this.offset + Integer.BYTES, value.length * Long.BYTES), value);
+    return value;
+  }
+
+  public short getShort() {
+    this.expect(TagType.SHORT);
+    return this.buffer.getShort(this.offset);
+  }
+
+  @NonNull
+  public String getString() {
+    this.expect(TagType.STRING);
+    return this.buffer.toString(this.offset + Short.BYTES,
+        this.buffer.getUnsignedShort(this.offset), StandardCharsets.UTF_8);
+  }
+
+  @NonNull
+  public TagType getType() {
+    return this.type;
+  }
+
+  /**
+   * Calculates the offset of an element within the array this cursor points at.
+   *
+   * @param arrayType an expected array type.
+   * @param index an index.
+   * @param elementSize the size of a single element.
+   * @return an offset.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  private int elementOffset(@NonNull TagType arrayType, int index, int elementSize) {
+    this.expect(arrayType);
+
+    int length = this.buffer.getInt(this.offset);
+
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+    }
+
+    return this.offset + Integer.BYTES + index * elementSize;
+  }
+
+  /**
+   * Evaluates whether the key of a compound entry matches the specified encoded key.
+   *
+   * @param entryOffset the offset of the entry.
+   * @param key an encoded key.
+   * @return true if matching, false otherwise.
+   */
+  private boolean keyEquals(int entryOffset, @NonNull byte[] key) {
+    if (this.buffer.getUnsignedShort(entryOffset + Byte.BYTES) != key.length) {
+      return false;
+    }
+
+    int keyOffset = entryOffset + Byte.BYTES + Short.BYTES;
+    for (int i = 0; i < key.length; ++i) {
+      if (this.buffer.getByte(keyOffset + i) != key[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Moves this cursor to the position of another cursor within the same arena.
+   *
+   * @param cursor another cursor.
+   * @throws IllegalArgumentException when the cursor belongs to a different arena.
+   */
+  public void moveTo(@NonNull ArenaCursor cursor) {
+    if (cursor.arena != this.arena) {
+      throw new IllegalArgumentException("Cursor belongs to a different arena");
+    }
+
+    this.type = cursor.type;
+    this.offset = cursor.offset;
+    this.keyOffset = cursor.keyOffset;
+    this.parentType = cursor.parentType;
+    this.parentEnd = cursor.parentEnd;
+  }
+
+  /**
+   * Moves this cursor to the next sibling of its current value.
+   *
+   * @return true if the cursor has been moved, false if the current value is the last element of
+   *     its container.
+   */
+  public boolean nextSibling() {
+    if (this.parentType == null) {
+      return false;
+    }
+
+    int next = this.offset + this.arena.sizeOf(this.type, this.offset);
+
+    if (next >= this.parentEnd) {
+      return false;
+    }
+
+    if (this.parentType == TagType.COMPOUND) {
+      this.enterEntry(next);
+    } else {
+      this.offset = next;
+    }
+
+    return true;
+  }
+
+  /**
+   * Moves this cursor back to the root compound of its arena.
+   */
+  public void reset() {
+    this.type = TagType.COMPOUND;
+    this.offset = this.arena.getRootOffset();
+    this.keyOffset = -1;
+    this.parentType = null;
+    this.parentEnd = 0;
+  }
+
+  /**
+   * Moves this cursor to the value of a key within the compound it currently points at.
+   *
+   * @param key a key.
+   * @return true if the cursor has been moved, false if no such key exists.
+   * @throws IllegalStateException when the cursor does not point at a compound.
+   */
+  public boolean select(@NonNull String key) {
+    this.expect(TagType.COMPOUND);
+
+    byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+    int end = this.offset + this.buffer.getInt(this.offset);
+
+    for (int i = this.offset + TagArena.COMPOUND_HEADER_SIZE; i < end; ) {
+      if (this.keyEquals(i, encoded)) {
+        this.parentType = TagType.COMPOUND;
+        this.parentEnd = end;
+        this.enterEntry(i);
+        return true;
+      }
+
+      TagType type = TagArena.typeOf(this.buffer.getByte(i));
+      int valueOffset = i + Byte.BYTES + Short.BYTES + this.buffer.getUnsignedShort(i + 1);
+      i = valueOffset + this.arena.sizeOf(type, valueOffset);
+    }
+
+    return false;
+  }
+
+  /**
+   * Moves this cursor to an element of the list it currently points at (elements of fixed size
+   * are located directly while all other elements require their predecessors to be skipped).
+   *
+   * @param index an index.
+   * @return true if the cursor has been moved, false if the index is out of bounds.
+   * @throws IllegalStateException when the cursor does not point at a list.
+   */
+  public boolean select(int index) {
+    this.expect(TagType.LIST);
+
+    int length = this.buffer.getInt(this.offset + Integer.BYTES + Byte.BYTES);
+
+    if (index < 0 || index >= length) {
+      return false;
+    }
+
+    TagType elementType = TagArena.typeOf(this.buffer.getByte(this.offset + Integer.BYTES));
+    int elementSize = TagArena.fixedSizeOf(elementType);
+    int elementOffset = this.offset + TagArena.LIST_HEADER_SIZE;
+
+    if (elementSize != -1) {
+      elementOffset += index * elementSize;
+    } else {
+      for (int i = 0; i < index; ++i) {
+        elementOffset += this.arena.sizeOf(elementType, elementOffset);
+      }
+    }
+
+    this.parentType = TagType.LIST;
+    this.parentEnd = this.offset + this.buffer.getInt(this.offset);
+    this.type = elementType;
+    this.offset = elementOffset;
+    this.keyOffset = -1;
+    return true;
+  }
+
+  public void setByte(byte value) {
+    this.expect(TagType.BYTE);
+    this.buffer.setByte(this.offset, value);
+  }
+
+  /**
+   * Updates an element of the byte array this cursor points at.
+   *
+   * @param index an index.
+   * @param value a value.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  public void setByte(int index, byte value) {
+    this.buffer.setByte(this.elementOffset(TagType.BYTE_ARRAY, index, Byte.BYTES), value);
+  }
+
+  /**
+   * Replaces the contents of the byte array this cursor points at.
+   *
+   * @param value an array of the same length.
+   * @throws IllegalArgumentException when the length of the array differs.
+   */
+  public void setByteArray(@NonNull byte[] value) {
+    this.expect(TagType.BYTE_ARRAY);
+    this.expectLength(this.buffer.getInt(this.offset), value.length);
+    this.buffer.setBytes(this.offset + Integer.BYTES, value);
+  }
+
+  public void setDouble(double value) {
+    this.expect(TagType.DOUBLE);
+    this.buffer.setDouble(this.offset, value);
+  }
+
+  public void setFloat(float value) {
+    this.expect(TagType.FLOAT);
+    this.buffer.setFloat(this.offset, value);
+  }
+
+  public void setInteger(int value) {
+    this.expect(TagType.INTEGER);
+    this.buffer.setInt(this.offset, value);
+  }
+
+  /**
+   * Updates an element of the integer array this cursor points at.
+   *
+   * @param index an index.
+   * @param value a value.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  public void setInteger(int index, int value) {
+    this.buffer.setInt(this.elementOffset(TagType.INTEGER_ARRAY, index, Integer.BYTES), value);
+  }
+
+  /**
+   * Replaces the contents of the integer array this cursor points at.
+   *
+   * @param value an array of the same length.
+   * @throws IllegalArgumentException when the length of the array differs.
+   */
+  public void setIntegerArray(@NonNull int[] value) {
+    this.expect(TagType.INTEGER_ARRAY);
+    this.expectLength(this.buffer.getInt(this.offset), value.length);
+
+    for (int i = 0; i < value.length; ++i) {
+      this.buffer.setInt(this.offset + Integer.BYTES * (i + 1), value[i]);
+    }
+  }
+
+  public void setLong(long value) {
+    this.expect(TagType.LONG);
+    this.buffer.setLong(this.offset, value);
+  }
+
+  /**
+   * Replaces an element of the long array this cursor points at.
+   *
+   * @param index an index.
+   * @param value a value.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  public void setLong(int index, long value) {
+    this.buffer.setLong(this.elementOffset(TagType.LONG_ARRAY, index, Long.BYTES), value);
+  }
+
+  /**
+   * Replaces the contents of the long array this cursor points at.
+   *
+   * @param value an array of the same length.
+   * @throws IllegalArgumentException when the length of the array differs.
+   */
+  public void setLongArray(@NonNull long[] value) {
+    this.expect(TagType.LONG_ARRAY);
+    this.expectLength(this.buffer.getInt(this.offset), value.length);
+
+    ByteBuf target = this.buffer.slice(this.offset + Integer.BYTES, value.length * Long.BYTES);
+    target.writerIndex(0);
+    BufferUtil.writeLongs(target, value);
+  }
+
+  public void setShort(short value) {
+    this.expect(TagType.SHORT);
+    this.buffer.setShort(this.offset, value);
+  }
+
+  /**
+   * Replaces the string this cursor points at.
+   *
+   * @param value a string which occupies the same amount of bytes when encoded.
+   * @throws IllegalArgumentException when the encoded length of the string differs.
+   */
+  public void setString(@NonNull String value) {
+    this.expect(TagType.STRING);
+
+    byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+    this.expectLength(this.buffer.getUnsignedShort(this.offset), encoded.length);
+    this.buffer.setBytes(this.offset + Short.BYTES, encoded);
+  }
+
+  /**
+   * Verifies that a replacement value matches the length of the value it replaces.
+   *
+   * @param expected the current length.
+   * @param actual the length of the replacement.
+   * @throws IllegalArgumentException when the lengths differ.
+   */
+  private void expectLength(int expected, int actual) {
+    if (expected != actual) {
+      throw new IllegalArgumentException(
+          "Cannot resize value in place: Expected length " + expected + " but got " + actual);
+    }
+  }
+
+  /**
+   * Retrieves the amount of elements within the compound, list or array this cursor points at.
+   *
+   * @return an amount of elements.
+   * @throws IllegalStateException when the cursor points at a value without elements.
+   */
+  public int size() {
+    switch (this.type) {
+      case BYTE_ARRAY:
+      case INTEGER_ARRAY:
+      case LONG_ARRAY:
+        return this.buffer.getInt(this.offset);
+      case LIST:
+        return this.buffer.getInt(this.offset + Integer.BYTES + Byte.BYTES);
+      case COMPOUND:
+        return this.buffer.getInt(this.offset + Integer.BYTES);
+      default:
+        throw new IllegalStateException("Value of type " + this.type + " has no elements");
+    }
+  }
+}
@@ -0,0 +1,583 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.arena;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.github.lordakkarin.nbt.tree.RootTag;
+import io.github.lordakkarin.nbt.tree.TreeDecoder;
+import io.github.lordakkarin.nbt.tree.TreeEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Stores an entire NBT document within a single direct buffer in order to keep large datasets
+ * resident without creating any objects which are visible to the garbage collector. The document
+ * is transcoded into a navigable layout in which every compound and list is prefixed with its
+ * encoded size and element count (thus permitting siblings to be skipped in constant time and
+ * elements of fixed size lists to be located directly). Values are accessed and updated in place
+ * through reusable {@link ArenaCursor} instances. Since values are never moved, only replacements
+ * of equal encoded size are permitted and the structure of the document remains fixed. Arenas are
+ * limited to 2 GiB each and need to be closed once they are no longer needed.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class TagArena implements AutoCloseable {
+
+  /**
+   * Defines the layout of the headers which precede the elements of compounds and lists.
+   */
+  static final int COMPOUND_HEADER_SIZE = Integer.BYTES * 2;
+  static final int LIST_HEADER_SIZE = Integer.BYTES * 2 + Byte.BYTES;
+
+  private static final TagType[] TYPES = TagType.values();
+
+  final ByteBuf buffer;
+  private final String name;
+  private final int rootOffset;
+
+  public TagArena(@NonNull ByteBuf source) {
+    this(PooledByteBufAllocator.DEFAULT, source);
+  }
+
+  /**
+   * Transcodes the NBT encoded root tag which is located at the current reader index of a buffer
+   * into a new arena.
+   *
+   * @param allocator an allocator which provides the backing buffer of the arena.
+   * @param source a source buffer.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  public TagArena(@NonNull ByteBufAllocator allocator, @NonNull ByteBuf source) {
+    TagType type = TagType.byTypeId(source.readByte());
+
+    if (type != TagType.COMPOUND) {
+      throw new IllegalStateException("Malformed NBT data: Expected compound but got " + type);
+    }
+
+    this.name = BufferUtil.readString(source);
+    this.buffer = allocator.directBuffer(measure(source));
+    this.rootOffset = this.buffer.writerIndex();
+    this.transcode(source);
+  }
+
+  /**
+   * Copies a tree into a new arena.
+   *
+   * @param root a root tag.
+   */
+  public TagArena(@NonNull RootTag root) {
+    try (TreeEncoder encoder = new TreeEncoder()) {
+      encoder.encode(root);
+
+      ByteBuf source = encoder.getBuffer();
+      this.name = root.getName();
+      source.skipBytes(Byte.BYTES);
+      BufferUtil.readString(source);
+
+      this.buffer = PooledByteBufAllocator.DEFAULT.directBuffer(measure(source));
+      this.rootOffset = this.buffer.writerIndex();
+      this.transcode(source);
+    }
+  }
+
+  /**
+   * Releases the backing buffer of this arena (the arena and its cursors cannot be used after it
+   * has been closed).
+   */
+  @Override
+  public void close() {
+    if (this.buffer.refCnt() != 0) {
+      this.buffer.release();
+    }
+  }
+
+  /**
+   * Creates a new cursor which points at the root compound of this arena.
+   *
+   * @return a cursor.
+   */
+  @NonNull
+  public ArenaCursor cursor() {
+    return new ArenaCursor(this);
+  }
+
+  /**
+   * Writes the NBT encoded representation of this arena into a buffer.
+   *
+   * @param target a target buffer.
+   */
+  public void encode(@NonNull ByteBuf target) {
+    target.writeByte(TagType.COMPOUND.ordinal());
+    BufferUtil.writeString(target, this.name);
+    this.encodeCompound(target, this.rootOffset);
+  }
+
+  /**
+   * Writes the elements of a compound (followed by its terminating end tag) into a buffer.
+   *
+   * @param target a target buffer.
+   * @param offset the offset of the compound within the arena.
+   */
+  private void encodeCompound(@NonNull ByteBuf target, int offset) {
+    int end = offset + this.buffer.getInt(offset);
+    offset += COMPOUND_HEADER_SIZE;
+
+    while (offset < end) {
+      TagType type = TYPES[this.buffer.getByte(offset)];
+      int keyLength = Byte.BYTES + Short.BYTES + this.buffer.getUnsignedShort(offset + 1);
+
+      target.writeBytes(this.buffer, offset, keyLength);
+      offset += keyLength;
+      offset = this.encodeValue(target, type, offset);
+    }
+
+    target.writeByte(TagType.END.ordinal());
+  }
+
+  /**
+   * Writes a single value into a buffer.
+   *
+   * @param target a target buffer.
+   * @param type the value type.
+   * @param offset the offset of the value within the arena.
+   * @return the offset of the first byte past the value.
+   */
+  private int encodeValue(@NonNull ByteBuf target, @NonNull TagType type, int offset) {
+    int size = this.sizeOf(type, offset);
+
+    switch (type) {
+      case COMPOUND:
+        this.encodeCompound(target, offset);
+        break;
+      case LIST: {
+        TagType elementType = TYPES[this.buffer.getByte(offset + Integer.BYTES)];
+        int length = this.buffer.getInt(offset + Integer.BYTES + Byte.BYTES);
+        int end = offset + size;
+
+        target.writeByte(elementType.ordinal());
+        target.writeInt(length);
+
+        if (elementType != TagType.COMPOUND && elementType != TagType.LIST) {
+          target.writeBytes(this.buffer, offset + LIST_HEADER_SIZE, size - LIST_HEADER_SIZE);
+          break;
+        }
+
+        for (int i = offset + LIST_HEADER_SIZE; i < end; ) {
+          i = this.encodeValue(target, elementType, i);
+        }
+        break;
+      }
+      default:
+        target.writeBytes(this.buffer, offset, size);
+        break;
+    }
+
+    return offset + size;
+  }
+
+  /**
+   * Retrieves the encoded size of the values of a type if all of its values share a common size.
+   *
+   * @param type a type.
+   * @return a size or -1 if the size differs between values.
+   */
+  static int fixedSizeOf(@NonNull TagType type) {
+    switch (type) {
+      case END:
+        return 0;
+      case BYTE:
+        return Byte.BYTES;
+      case SHORT:
+        return Short.BYTES;
+      case INTEGER:
+      case FLOAT:
+        return Integer.BYTES;
+      case LONG:
+      case DOUBLE:
+        return Long.BYTES;
+      default:
+        return -1;
+    }
+  }
+
+  @NonNull
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Retrieves the offset of the root compound within the backing buffer.
+   *
+   * @return an offset.
+   */
+  int getRootOffset() {
+    return this.rootOffset;
+  }
+
+  /**
+   * Calculates the exact amount of bytes which are occupied by the elements of an NBT encoded
+   * compound once transcoded (every compound and list gains a header) without consuming them. The
+   * data is validated in the process so that the arena is allocated once at its final size.
+   *
+   * @param source a source buffer.
+   * @return an amount of bytes.
+   * @throws IllegalStateException when the data is malformed or exceeds the size of an arena.
+   */
+  private static int measure(@NonNull ByteBuf source) {
+    long size;
+
+    try {
+      size = measureCompound(source.duplicate());
+    } catch (IndexOutOfBoundsException ex) {
+      throw new IllegalStateException("Malformed NBT data: Unexpected end of data", ex);
+    }
+
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Document of " + size + " bytes exceeds arena size limit");
+    }
+
+    return (int) size;
+  }
+
+  /**
+   * Calculates the transcoded size of the elements of a compound (up to and including its
+   * terminating end tag).
+   *
+   * @param source a source buffer.
+   * @return an amount of bytes.
+   */
+  private static long measureCompound(@NonNull ByteBuf source) {
+    long size = COMPOUND_HEADER_SIZE;
+
+    while (true) {
+      TagType type = TagType.byTypeId(source.readByte());
+
+      if (type == TagType.END) {
+        return size;
+      }
+
+      int keyLength = source.readUnsignedShort();
+      source.skipBytes(keyLength);
+      size += Byte.BYTES + Short.BYTES + keyLength + measureValue(source, type);
+    }
+  }
+
+  /**
+   * Calculates the transcoded size of a single value (values of fixed size lists and arrays are
+   * skipped in bulk).
+   *
+   * @param source a source buffer.
+   * @param type the value type.
+   * @return an amount of bytes.
+   */
+  private static long measureValue(@NonNull ByteBuf source, @NonNull TagType type) {
+    switch (type) {
+      case BYTE_ARRAY: {
+        int length = readLength(source, Byte.BYTES);
+        source.skipBytes(length);
+        return Integer.BYTES + length;
+      }
+      case STRING: {
+        int length = source.readUnsignedShort();
+        source.skipBytes(length);
+        return Short.BYTES + length;
+      }
+      case LIST: {
+        TagType elementType = TagType.byTypeId(source.readByte());
+        int elementSize = fixedSizeOf(elementType);
+        int length = readListLength(source, elementType);
+        long size = LIST_HEADER_SIZE;
+
+        if (elementSize != -1) {
+          int bytes = readBytes(source, length, elementSize);
+          source.skipBytes(bytes);
+          return size + bytes;
+        }
+
+        for (int i = 0; i < length; ++i) {
+          size += measureValue(source, elementType);
+        }
+
+        return size;
+      }
+      case COMPOUND:
+        return measureCompound(source);
+      case INTEGER_ARRAY: {
+        int length = readLength(source, Integer.BYTES);
+        source.skipBytes(length * Integer.BYTES);
+        return Integer.BYTES + length * Integer.BYTES;
+      }
+      case LONG_ARRAY: {
+        int length = readLength(source, Long.BYTES);
+        source.skipBytes(length * Long.BYTES);
+        return Integer.BYTES + length * Long.BYTES;
+      }
+      default:
+        int size = fixedSizeOf(type);
+
+        if (size <= 0) {
+          throw new IllegalStateException("Did not expected tag of type " + type + " here");
+        }
+
+        source.skipBytes(size);
+        return size;
+    }
+  }
+
+  /**
+   * Calculates the amount of bytes which are occupied by the elements of a fixed size list and
+   * verifies that the source buffer holds them.
+   *
+   * @param source a source buffer.
+   * @param length an element count.
+   * @param elementSize the amount of bytes per element.
+   * @return an amount of bytes.
+   * @throws IllegalStateException when the elements exceed the available data.
+   */
+  private static int readBytes(@NonNull ByteBuf source, int length, int elementSize) {
+    if ((long) length * elementSize > source.readableBytes()) {
+      throw new IllegalStateException("Malformed NBT data: Illegal length " + length);
+    }
+
+    return length * elementSize;
+  }
+
+  /**
+   * Reads the length of an array or list and verifies that the source buffer holds enough data to
+   * satisfy it.
+   *
+   * @param source a source buffer.
+   * @param elementSize the minimum amount of bytes consumed per element.
+   * @return a length.
+   * @throws IllegalStateException when the length is negative or exceeds the available data.
+   */
+  private static int readLength(@NonNull ByteBuf source, int elementSize) {
+    int length = source.readInt();
+
+    if (length < 0 || (long) length * elementSize > source.readableBytes()) {
+      throw new IllegalStateException("Malformed NBT data: Illegal length " + length);
+    }
+
+    return length;
+  }
+
+  /**
+   * Reads the length of a list and verifies that the source buffer holds enough data to satisfy it
+   * (lists of type END carry no element data and are thus required to be empty).
+   *
+   * @param source a source buffer.
+   * @param elementType an element type.
+   * @return a length.
+   * @throws IllegalStateException when the length is illegal for the element type.
+   */
+  private static int readListLength(@NonNull ByteBuf source, @NonNull TagType elementType) {
+    if (elementType != TagType.END) {
+      return readLength(source, 1);
+    }
+
+    int length = source.readInt();
+
+    if (length != 0) {
+      throw new IllegalStateException(
+          "Malformed NBT data: Illegal length " + length + " for list of type END");
+    }
+
+    return length;
+  }
+
+  /**
+   * Retrieves the amount of bytes which are occupied by this arena.
+   *
+   * @return an amount of bytes.
+   */
+  public int size() {
+    return this.buffer.writerIndex() - this.rootOffset;
+  }
+
+  /**
+   * Calculates the encoded size of a value within the arena.
+   *
+   * @param type the value type.
+   * @param offset the offset of the value.
+   * @return a size in bytes.
+   */
+  int sizeOf(@NonNull TagType type, int offset) {
+    switch (type) {
+      case BYTE_ARRAY:
+        return Integer.BYTES + this.buffer.getInt(offset);
+      case STRING:
+        return Short.BYTES + this.buffer.getUnsignedShort(offset);
+      case LIST:
+      case COMPOUND:
+        return this.buffer.getInt(offset);
+      case INTEGER_ARRAY:
+        return Integer.BYTES + this.buffer.getInt(offset) * Integer.BYTES;
+      case LONG_ARRAY:
+        return Integer.BYTES + this.buffer.getInt(offset) * Long.BYTES;
+      default:
+        return fixedSizeOf(type);
+    }
+  }
+
+  /**
+   * Creates a tree which holds a copy of the contents of this arena.
+   *
+   * @return a root tag.
+   */
+  @NonNull
+  public RootTag toTree() {
+    ByteBuf target = PooledByteBufAllocator.DEFAULT.heapBuffer(this.size());
+
+    try {
+      this.encode(target);
+      return new TreeDecoder().decode(target);
+    } finally {
+      target.release();
+    }
+  }
+
+  /**
+   * Transcodes the elements of the root compound into the arena (the arena is released when the
+   * data turns out to be malformed).
+   *
+   * @param source a source buffer.
+   */
+  private void transcode(@NonNull ByteBuf source) {
+    try {
+      this.transcodeCompound(source);
+    } catch (IndexOutOfBoundsException ex) {
+      this.buffer.release();
+      throw new IllegalStateException("Malformed NBT data: Unexpected end of data", ex);
+    } catch (RuntimeException ex) {
+      this.buffer.release();
+      throw ex;
+    }
+  }
+
+  /**
+   * Transcodes the elements of an NBT encoded compound (up to and including its terminating end
+   * tag) into the arena.
+   *
+   * @param source a source buffer.
+   */
+  private void transcodeCompound(@NonNull ByteBuf source) {
+    int start = this.buffer.writerIndex();
+    int length = 0;
+
+    this.buffer.writeZero(COMPOUND_HEADER_SIZE);
+
+    while (true) {
+      TagType type = TagType.byTypeId(source.readByte());
+
+      if (type == TagType.END) {
+        break;
+      }
+
+      int keyLength = source.readUnsignedShort();
+      this.buffer.writeByte(type.ordinal());
+      this.buffer.writeShort(keyLength);
+      this.buffer.writeBytes(source, keyLength);
+      this.transcodeValue(source, type);
+      ++length;
+    }
+
+    this.buffer.setInt(start, this.buffer.writerIndex() - start);
+    this.buffer.setInt(start + Integer.BYTES, length);
+  }
+
+  /**
+   * Transcodes a single NBT encoded value into the arena.
+   *
+   * @param source a source buffer.
+   * @param type the value type.
+   */
+  private void transcodeValue(@NonNull ByteBuf source, @NonNull TagType type) {
+    switch (type) {
+      case BYTE_ARRAY: {
+        int length = readLength(source, Byte.BYTES);
+        this.buffer.writeInt(length);
+        this.buffer.writeBytes(source, length);
+        break;
+      }
+      case STRING: {
+        int length = source.readUnsignedShort();
+        this.buffer.writeShort(length);
+        this.buffer.writeBytes(source, length);
+        break;
+      }
+      case LIST: {
+        TagType elementType = TagType.byTypeId(source.readByte());
+        int elementSize = fixedSizeOf(elementType);
+        int length = readListLength(source, elementType);
+        int start = this.buffer.writerIndex();
+
+        this.buffer.writeInt(0);
+        this.buffer.writeByte(elementType.ordinal());
+        this.buffer.writeInt(length);
+
+        if (elementSize != -1) {
+          this.buffer.writeBytes(source, readBytes(source, length, elementSize));
+        } else {
+          for (int i = 0; i < length; ++i) {
+            this.transcodeValue(source, elementType);
+          }
+        }
+
+        this.buffer.setInt(start, this.buffer.writerIndex() - start);
+        break;
+      }
+      case COMPOUND:
+        this.transcodeCompound(source);
+        break;
+      case INTEGER_ARRAY: {
+        int length = readLength(source, Integer.BYTES);
+        this.buffer.writeInt(length);
+        this.buffer.writeBytes(source, length * Integer.BYTES);
+        break;
+      }
+      case LONG_ARRAY: {
+        int length = readLength(source, Long.BYTES);
+        this.buffer.writeInt(length);
+        this.buffer.writeBytes(source, length * Long.BYTES);
+        break;
+      }
+      default:
+        int size = fixedSizeOf(type);
+
+        if (size <= 0) {
+          throw new IllegalStateException("Did not expected tag of type " + type + " here");
+        }
+
+        this.buffer.writeBytes(source, size);
+        break;
+    }
+  }
+
+  /**
+   * Retrieves the type which is identified by the specified ordinal.
+   *
+   * @param ordinal an ordinal.
+   * @return a type.
+   */
+  @NonNull
+  static TagType typeOf(int ordinal) {
+    return TYPES[ordinal];
+  }
+}
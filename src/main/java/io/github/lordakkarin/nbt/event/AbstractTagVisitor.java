@@ -154,6 +154,16 @@ public abstract class AbstractTagVisitor implements TagVisitor {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitLongArray(int length) {
+    if (this.next != null) {
+      this.next.visitLongArray(length);
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
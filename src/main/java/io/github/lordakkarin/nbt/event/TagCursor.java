@@ -0,0 +1,478 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.event;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Provides a pull based alternative to {@link TagReader#accept(TagVisitor)} which lets callers
+ * advance through the encoded data at their own pace. Every call to {@link #next()} moves the
+ * cursor to the next value (or to the end of the enclosing compound or list which is reported as
+ * {@link TagType#END}) and descends into compounds and lists unless they have been skipped via
+ * {@link #skipChildren()} or consumed via {@link #readSubtree(TagVisitor)}. The value which the
+ * cursor points at may be read any amount of times through the accessor of its type until the
+ * cursor is advanced again.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class TagCursor {
+
+  private static final int INITIAL_DEPTH = 8;
+
+  private final TagReader reader;
+  private final ByteBuf buffer;
+  private TagType type;
+  private String key;
+  private int valueIndex;
+  private boolean pending;
+  private boolean complete;
+
+  /**
+   * Stores the enclosing containers of the current value (compounds are identified by a remaining
+   * element count of -1).
+   */
+  private int depth;
+  private int[] remaining = new int[INITIAL_DEPTH];
+  private TagType[] elementTypes = new TagType[INITIAL_DEPTH];
+
+  TagCursor(@NonNull TagReader reader, @NonNull ByteBuf buffer) {
+    this.reader = reader;
+    this.buffer = buffer;
+  }
+
+  /**
+   * Verifies that this cursor points at a value of the specified type.
+   *
+   * @param type an expected type.
+   * @throws IllegalStateException when the cursor points at a value of a different type.
+   */
+  private void expect(@NonNull TagType type) {
+    if (this.type != type) {
+      throw new IllegalStateException(
+          "Expected value of type " + type + " but cursor points at " + this.type);
+    }
+  }
+
+  /**
+   * Verifies that the value this cursor points at has not been consumed yet.
+   *
+   * @throws IllegalStateException when the value has been consumed or skipped.
+   */
+  private void expectPending() {
+    if (!this.pending) {
+      throw new IllegalStateException("Cursor does not point at an unread value");
+    }
+  }
+
+  public byte getByte() {
+    this.expect(TagType.BYTE);
+    return this.buffer.getByte(this.valueIndex);
+  }
+
+  /**
+   * Retrieves a copy of the byte array this cursor points at.
+   *
+   * @return an array.
+   */
+  @NonNull
+  public byte[] getByteArray() {
+    this.expect(TagType.BYTE_ARRAY);
+    this.expectPending();
+
+    byte[] value = new byte[this.buffer.getInt(this.valueIndex)];
+    this.buffer.getBytes(this.valueIndex + Integer.BYTES, value);
+    return value;
+  }
+
+  /**
+   * Retrieves the amount of compounds and lists which enclose the current value.
+   *
+   * @return a depth.
+   */
+  public int getDepth() {
+    return this.depth;
+  }
+
+  public double getDouble() {
+    this.expect(TagType.DOUBLE);
+    return this.buffer.getDouble(this.valueIndex);
+  }
+
+  /**
+   * Retrieves the element type of the list this cursor points at.
+   *
+   * @return an element type.
+   */
+  @NonNull
+  public TagType getElementType() {
+    this.expect(TagType.LIST);
+    this.expectPending();
+
+    return TagType.byTypeId(this.buffer.getByte(this.valueIndex));
+  }
+
+  public float getFloat() {
+    this.expect(TagType.FLOAT);
+    return this.buffer.getFloat(this.valueIndex);
+  }
+
+  public int getInteger() {
+    this.expect(TagType.INTEGER);
+    return this.buffer.getInt(this.valueIndex);
+  }
+
+  /**
+   * Retrieves a copy of the integer array this cursor points at.
+   *
+   * @return an array.
+   */
+  @NonNull
+  public int[] getIntegerArray() {
+    this.expect(TagType.INTEGER_ARRAY);
+    this.expectPending();
+
+    int[] value = new int[this.buffer.getInt(this.valueIndex)];
+    for (int i = 0; i < value.length; ++i) {
+      value[i] = this.buffer.getInt(this.valueIndex + Integer.BYTES * (i + 1));
+    }
+    return value;
+  }
+
+  /**
+   * Retrieves the key of the current value.
+   *
+   * @return a key or null if the value is a list element or the end of a container.
+   */
+  @Nullable
+  public String getKey() {
+    return this.key;
+  }
+
+  public long getLong() {
+    this.expect(TagType.LONG);
+    return this.buffer.getLong(this.valueIndex);
+  }
+
+  /**
+   * Retrieves a copy of the long array this cursor points at.
+   *
+   * @return an array.
+   */
+  @NonNull
+  public long[] getLongArray() {
+    this.expect(TagType.LONG_ARRAY);
+    this.expectPending();
+
+    long[] value = new long[this.buffer.getInt(this.valueIndex)];
+    BufferUtil.readLongs(
+        this.buffer.slice(this.valueIndex + Integer.BYTES, value.length * Long.BYTES), value);
+    return value;
+  }
+
+  public short getShort() {
+    this.expect(TagType.SHORT);
+    return this.buffer.getShort(this.valueIndex);
+  }
+
+  @NonNull
+  public String getString() {
+    this.expect(TagType.STRING);
+    return this.buffer.toString(this.valueIndex + Short.BYTES,
+        this.buffer.getUnsignedShort(this.valueIndex), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Retrieves the type of the current value.
+   *
+   * @return a type or null if the cursor has not been advanced yet.
+   */
+  @Nullable
+  public TagType getType() {
+    return this.type;
+  }
+
+  /**
+   * Evaluates whether the cursor may be advanced any further.
+   *
+   * @return true if more values follow, false if the end of the root compound has been reached.
+   */
+  public boolean hasNext() {
+    return !this.complete;
+  }
+
+  /**
+   * Advances this cursor to the next value (the first call moves the cursor to the root compound
+   * whose name is reported as its key).
+   *
+   * @return the type of the new value or {@link TagType#END} if the end of the enclosing compound
+   *     or list has been reached.
+   * @throws IllegalStateException when the end of the root compound has been reached or the data
+   *     is malformed.
+   */
+  @NonNull
+  public TagType next() {
+    if (this.complete) {
+      throw new IllegalStateException("Reached end of root compound");
+    }
+
+    if (this.type == null) {
+      TagType type = TagType.byTypeId(this.buffer.readByte());
+
+      if (type != TagType.COMPOUND) {
+        throw new IllegalStateException("Malformed NBT data: Expected compound but got " + type);
+      }
+
+      this.key = this.reader.readString(this.buffer);
+      return this.point(type);
+    }
+
+    if (this.pending) {
+      if (this.type == TagType.COMPOUND) {
+        this.push(-1, null);
+      } else if (this.type == TagType.LIST) {
+        TagType elementType = TagType.byTypeId(this.buffer.readByte());
+        int length = this.buffer.readInt();
+
+        if (length < 0) {
+          throw new IllegalStateException("Malformed NBT data: Illegal length " + length);
+        }
+
+        this.push(length, elementType);
+      } else {
+        skip(this.buffer, this.type);
+      }
+
+      this.pending = false;
+    }
+
+    int top = this.depth - 1;
+
+    if (this.remaining[top] == -1) {
+      TagType type = TagType.byTypeId(this.buffer.readByte());
+
+      if (type != TagType.END) {
+        this.key = this.reader.readString(this.buffer);
+        return this.point(type);
+      }
+    } else if (this.remaining[top] != 0) {
+      --this.remaining[top];
+      this.key = null;
+      return this.point(this.elementTypes[top]);
+    }
+
+    this.pop();
+    return TagType.END;
+  }
+
+  /**
+   * Positions this cursor at the value which starts at the current reader index.
+   *
+   * @param type the value type.
+   * @return the value type.
+   */
+  @NonNull
+  private TagType point(@NonNull TagType type) {
+    this.type = type;
+    this.valueIndex = this.buffer.readerIndex();
+    this.pending = true;
+    return type;
+  }
+
+  /**
+   * Leaves the innermost container and moves this cursor to its end.
+   */
+  private void pop() {
+    this.elementTypes[--this.depth] = null;
+    this.type = TagType.END;
+    this.key = null;
+    this.complete = this.depth == 0;
+  }
+
+  /**
+   * Enters a container.
+   *
+   * @param remaining the amount of list elements or -1 for compounds.
+   * @param elementType the list element type or null for compounds.
+   */
+  private void push(int remaining, @Nullable TagType elementType) {
+    if (this.depth == this.remaining.length) {
+      this.remaining = Arrays.copyOf(this.remaining, this.depth * 2);
+      this.elementTypes = Arrays.copyOf(this.elementTypes, this.depth * 2);
+    }
+
+    this.remaining[this.depth] = remaining;
+    this.elementTypes[this.depth] = elementType;
+    ++this.depth;
+  }
+
+  /**
+   * Passes the current value (including all of its children) to a visitor and consumes it.
+   * Compounds are passed as a root (named after their key) in order to form a complete document
+   * for visitors such as tree builders while all other values are passed as they would be by
+   * {@link TagReader}.
+   *
+   * @param visitor a visitor.
+   * @throws IllegalStateException when the current value has already been consumed.
+   */
+  public void readSubtree(@NonNull TagVisitor visitor) {
+    this.expectPending();
+    this.pending = false;
+
+    if (this.type != TagType.COMPOUND) {
+      this.reader.visitValue(this.buffer, visitor, this.type);
+      return;
+    }
+
+    visitor.visitRoot(this.key == null ? "" : this.key);
+
+    while (true) {
+      TagType elementType = TagType.byTypeId(this.buffer.readByte());
+
+      if (elementType == TagType.END) {
+        visitor.visitCompoundEnd();
+        break;
+      }
+
+      visitor.visitKey(this.reader.readString(this.buffer));
+      this.reader.visitValue(this.buffer, visitor, elementType);
+    }
+
+    this.complete = this.depth == 0;
+  }
+
+  /**
+   * Retrieves the amount of elements within the list or array this cursor points at.
+   *
+   * @return an amount of elements.
+   * @throws IllegalStateException when the cursor points at a value without a known amount of
+   *     elements.
+   */
+  public int size() {
+    this.expectPending();
+
+    switch (this.type) {
+      case BYTE_ARRAY:
+      case INTEGER_ARRAY:
+      case LONG_ARRAY:
+        return this.buffer.getInt(this.valueIndex);
+      case LIST:
+        return this.buffer.getInt(this.valueIndex + Byte.BYTES);
+      default:
+        throw new IllegalStateException("Value of type " + this.type + " has no known size");
+    }
+  }
+
+  /**
+   * Skips the payload of a value of the specified type without decoding it.
+   *
+   * @param buffer a buffer.
+   * @param type a type.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  private static void skip(@NonNull ByteBuf buffer, @NonNull TagType type) {
+    switch (type) {
+      case BYTE:
+        buffer.skipBytes(Byte.BYTES);
+        break;
+      case SHORT:
+        buffer.skipBytes(Short.BYTES);
+        break;
+      case INTEGER:
+      case FLOAT:
+        buffer.skipBytes(Integer.BYTES);
+        break;
+      case LONG:
+      case DOUBLE:
+        buffer.skipBytes(Long.BYTES);
+        break;
+      case BYTE_ARRAY:
+        buffer.skipBytes(readLength(buffer));
+        break;
+      case STRING:
+        buffer.skipBytes(buffer.readUnsignedShort());
+        break;
+      case LIST: {
+        TagType elementType = TagType.byTypeId(buffer.readByte());
+        int length = readLength(buffer);
+
+        for (int i = 0; i < length; ++i) {
+          skip(buffer, elementType);
+        }
+        break;
+      }
+      case COMPOUND:
+        while (true) {
+          TagType elementType = TagType.byTypeId(buffer.readByte());
+
+          if (elementType == TagType.END) {
+            break;
+          }
+
+          buffer.skipBytes(buffer.readUnsignedShort());
+          skip(buffer, elementType);
+        }
+        break;
+      case INTEGER_ARRAY:
+        buffer.skipBytes(readLength(buffer) * Integer.BYTES);
+        break;
+      case LONG_ARRAY:
+        buffer.skipBytes(readLength(buffer) * Long.BYTES);
+        break;
+      default:
+        throw new IllegalStateException("Did not expected tag of type " + type + " here");
+    }
+  }
+
+  /**
+   * Reads a length and verifies that it is not negative.
+   *
+   * @param buffer a buffer.
+   * @return a length.
+   * @throws IllegalStateException when the length is negative.
+   */
+  private static int readLength(@NonNull ByteBuf buffer) {
+    int length = buffer.readInt();
+
+    if (length < 0) {
+      throw new IllegalStateException("Malformed NBT data: Illegal length " + length);
+    }
+
+    return length;
+  }
+
+  /**
+   * Skips the children of the compound or list this cursor points at (the next call to {@link
+   * #next()} thus moves the cursor to the next sibling).
+   *
+   * @throws IllegalStateException when the cursor does not point at an unread compound or list.
+   */
+  public void skipChildren() {
+    if (this.type != TagType.COMPOUND && this.type != TagType.LIST) {
+      throw new IllegalStateException("Cursor does not point at a compound or list");
+    }
+
+    this.expectPending();
+    skip(this.buffer, this.type);
+    this.pending = false;
+    this.complete = this.depth == 0;
+  }
+}
@@ -17,60 +17,213 @@
 package io.github.lordakkarin.nbt.event;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.github.lordakkarin.nbt.internal.CapacityEstimator;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
  * Reads an NBT encoded (and optionally gzipped) stream of data and passes it to one or more
- * instances of {@link TagVisitor}.
+ * instances of {@link TagVisitor}. Since the input is retained within a buffer which is acquired
+ * from a (pooled by default) allocator, readers need to be closed when they are no longer needed.
  *
  * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
  */
-public class TagReader {
+public class TagReader implements AutoCloseable {
 
-  private final ByteBuf buffer;
+  private static final CapacityEstimator capacityEstimator = new CapacityEstimator();
+  private static final ThreadLocal<TagReader> threadLocalReader = ThreadLocal
+      .withInitial(TagReader::new);
 
-  public TagReader(@NonNull ReadableByteChannel channel) throws IOException {
-    this.buffer = Unpooled.directBuffer();
+  /**
+   * Defines the amount of slots within the string cache (must be a power of two) as well as the
+   * maximum encoded length of strings which are considered for caching.
+   */
+  private static final int STRING_CACHE_SIZE = 256;
+  private static final int MAX_CACHED_STRING_LENGTH = 32;
 
-    {
-      ByteBuffer tmp = ByteBuffer.allocateDirect(128);
-      ByteBuf wrapped = Unpooled.wrappedBuffer(tmp);
-      int length;
+  /**
+   * Defines the factor by which a retained buffer may exceed the estimated capacity before it is
+   * replaced with a smaller buffer.
+   */
+  private static final int MAX_RETAINED_CAPACITY_FACTOR = 4;
 
-      while ((length = channel.read(tmp)) > 0) {
-        tmp.flip();
-        this.buffer.writeBytes(wrapped, length);
+  private final ByteBufAllocator allocator;
+  private final byte[] scratch = new byte[MAX_CACHED_STRING_LENGTH];
+  private final byte[][] stringCacheKeys = new byte[STRING_CACHE_SIZE][];
+  private final String[] stringCacheValues = new String[STRING_CACHE_SIZE];
+  private ByteBuf buffer = Unpooled.EMPTY_BUFFER;
+  private ByteBuf ownedBuffer;
 
-        wrapped.resetReaderIndex();
-        tmp.rewind();
-      }
-    }
+  /**
+   * Creates a reader without any input (input may be passed via one of the reset methods).
+   */
+  public TagReader() {
+    this(PooledByteBufAllocator.DEFAULT);
+  }
+
+  /**
+   * Creates a reader without any input (input may be passed via one of the reset methods).
+   *
+   * @param allocator an allocator which provides buffers for channel and stream input.
+   */
+  public TagReader(@NonNull ByteBufAllocator allocator) {
+    this.allocator = allocator;
+  }
+
+  public TagReader(@NonNull ByteBuf buffer) {
+    this();
+    this.reset(buffer);
+  }
+
+  public TagReader(@NonNull ReadableByteChannel channel) throws IOException {
+    this(channel, PooledByteBufAllocator.DEFAULT);
+  }
+
+  public TagReader(@NonNull ReadableByteChannel channel, @NonNull ByteBufAllocator allocator)
+      throws IOException {
+    this(allocator);
+    this.reset(channel);
   }
 
   public TagReader(@NonNull InputStream inputStream) throws IOException {
     this(Channels.newChannel(inputStream));
   }
 
+  public TagReader(@NonNull InputStream inputStream, @NonNull ByteBufAllocator allocator)
+      throws IOException {
+    this(Channels.newChannel(inputStream), allocator);
+  }
+
   public TagReader(@NonNull Path path) throws IOException {
-    this(FileChannel.open(path, StandardOpenOption.READ));
+    this(path, PooledByteBufAllocator.DEFAULT);
+  }
+
+  public TagReader(@NonNull Path path, @NonNull ByteBufAllocator allocator) throws IOException {
+    this(allocator);
+    this.reset(path);
   }
 
   public TagReader(@NonNull File file) throws IOException {
     this(file.toPath());
   }
 
+  public TagReader(@NonNull File file, @NonNull ByteBufAllocator allocator) throws IOException {
+    this(file.toPath(), allocator);
+  }
+
+  /**
+   * Retrieves a reader which is exclusive to the calling thread (the reader is intended to be reset
+   * onto new input for every document and retains its buffer and caches in between).
+   *
+   * @return a reader.
+   */
+  @NonNull
+  public static TagReader threadLocal() {
+    return threadLocalReader.get();
+  }
+
+  /**
+   * Replaces the input of this reader with the readable bytes of a buffer (the buffer remains owned
+   * by the caller and must not be released while it is used by this reader).
+   *
+   * @param buffer a buffer.
+   * @return a reference to this reader.
+   */
+  @NonNull
+  public TagReader reset(@NonNull ByteBuf buffer) {
+    if (this.ownedBuffer != null) {
+      this.ownedBuffer.clear();
+    }
+
+    this.buffer = buffer;
+    return this;
+  }
+
+  /**
+   * Replaces the input of this reader with the contents of a channel.
+   *
+   * @param channel a channel.
+   * @return a reference to this reader.
+   * @throws IOException when reading fails.
+   */
+  @NonNull
+  public TagReader reset(@NonNull ReadableByteChannel channel) throws IOException {
+    this.fill(channel, capacityEstimator.estimate());
+    return this;
+  }
+
+  /**
+   * Replaces the input of this reader with the contents of a stream.
+   *
+   * @param inputStream a stream.
+   * @return a reference to this reader.
+   * @throws IOException when reading fails.
+   */
+  @NonNull
+  public TagReader reset(@NonNull InputStream inputStream) throws IOException {
+    return this.reset(Channels.newChannel(inputStream));
+  }
+
+  /**
+   * Replaces the input of this reader with the contents of a file.
+   *
+   * @param path a file path.
+   * @return a reference to this reader.
+   * @throws IOException when reading fails.
+   */
+  @NonNull
+  public TagReader reset(@NonNull Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // reserve an additional byte in order to detect the end of the file without expanding the
+      // buffer
+      this.fill(channel, (int) Math.min(Integer.MAX_VALUE - 1, channel.size()) + 1);
+    }
+
+    return this;
+  }
+
+  /**
+   * Reads the contents of a channel into the buffer which is owned by this reader (the buffer is
+   * allocated or replaced as necessary).
+   *
+   * @param channel a channel.
+   * @param capacity an expected capacity.
+   * @throws IOException when reading fails.
+   */
+  private void fill(@NonNull ReadableByteChannel channel, int capacity) throws IOException {
+    this.buffer = Unpooled.EMPTY_BUFFER;
+
+    if (this.ownedBuffer != null && this.ownedBuffer.capacity() > (long) capacity
+        * MAX_RETAINED_CAPACITY_FACTOR) {
+      this.ownedBuffer.release();
+      this.ownedBuffer = null;
+    }
+
+    if (this.ownedBuffer == null) {
+      this.ownedBuffer = this.allocator.directBuffer(capacity);
+    } else {
+      this.ownedBuffer.clear();
+    }
+
+    BufferUtil.readFully(channel, this.ownedBuffer);
+    capacityEstimator.record(this.ownedBuffer.readableBytes());
+
+    this.buffer = this.ownedBuffer;
+  }
+
   /**
    * Parses the encoded data and passes it to the specified visitor.
    *
@@ -86,7 +239,7 @@ public class TagReader {
         throw new IllegalStateException("Malformed NBT data: Expected compound but got " + tagType);
       }
 
-      visitor.visitRoot(this.readString());
+      visitor.visitRoot(this.readString(this.buffer));
 
       while (this.buffer.isReadable()) {
         TagType elementType = TagType.byTypeId(this.buffer.readByte());
@@ -96,8 +249,8 @@ public class TagReader {
           break;
         }
 
-        visitor.visitKey(this.readString());
-        this.visitValue(visitor, elementType);
+        visitor.visitKey(this.readString(this.buffer));
+        this.visitValue(this.buffer, visitor, elementType);
       }
     } finally {
       this.buffer.resetReaderIndex();
@@ -105,67 +258,127 @@ public class TagReader {
   }
 
   /**
-   * Reads an UTF-8 encoded string from the buffer.
+   * Creates a pull based cursor over the input of this reader (the cursor operates on its own view
+   * of the input and thus does not affect the reader or other cursors but becomes invalid once the
+   * reader is reset or closed).
+   *
+   * @return a cursor.
+   */
+  @NonNull
+  public TagCursor cursor() {
+    return new TagCursor(this, this.buffer.duplicate());
+  }
+
+  /**
+   * Releases the internal buffer (the reader may only be used again once it has been reset onto
+   * new input).
+   */
+  @Override
+  public void close() {
+    this.buffer = Unpooled.EMPTY_BUFFER;
+
+    if (this.ownedBuffer != null) {
+      this.ownedBuffer.release();
+      this.ownedBuffer = null;
+    }
+  }
+
+  /**
+   * Reads an UTF-8 encoded string from a buffer (short strings such as keys are looked up in a
+   * cache in order to avoid decoding the same value repeatedly).
    *
+   * @param buffer a buffer.
    * @return a string.
    */
   @NonNull
-  private String readString() {
-    int length = this.buffer.readUnsignedShort();
+  String readString(@NonNull ByteBuf buffer) {
+    int length = buffer.readUnsignedShort();
+
+    if (length > MAX_CACHED_STRING_LENGTH) {
+      String value = buffer.toString(buffer.readerIndex(), length, StandardCharsets.UTF_8);
+      buffer.skipBytes(length);
+
+      return value;
+    }
+
+    byte[] encoded = this.scratch;
+    buffer.readBytes(encoded, 0, length);
+
+    int hash = length;
+    for (int i = 0; i < length; ++i) {
+      hash = 31 * hash + encoded[i];
+    }
+
+    int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+    byte[] cachedKey = this.stringCacheKeys[slot];
+
+    if (cachedKey != null && cachedKey.length == length) {
+      int i = 0;
+      while (i < length && cachedKey[i] == encoded[i]) {
+        ++i;
+      }
+
+      if (i == length) {
+        return this.stringCacheValues[slot];
+      }
+    }
 
-    byte[] encoded = new byte[length];
-    this.buffer.readBytes(encoded);
+    String value = new String(encoded, 0, length, StandardCharsets.UTF_8);
+    this.stringCacheKeys[slot] = Arrays.copyOf(encoded, length);
+    this.stringCacheValues[slot] = value;
 
-    return new String(encoded, StandardCharsets.UTF_8);
+    return value;
   }
 
   /**
    * Visits the raw value based on a given type.
    *
+   * @param buffer a buffer.
    * @param visitor a visitor.
    * @param tagType a tag type.
    */
-  private void visitValue(@NonNull TagVisitor visitor, @NonNull TagType tagType) {
+  void visitValue(@NonNull ByteBuf buffer, @NonNull TagVisitor visitor,
+      @NonNull TagType tagType) {
     switch (tagType) {
       case BYTE:
-        visitor.visitByte(this.buffer.readByte());
+        visitor.visitByte(buffer.readByte());
         break;
       case SHORT:
-        visitor.visitShort(this.buffer.readShort());
+        visitor.visitShort(buffer.readShort());
         break;
       case INTEGER:
-        visitor.visitInteger(this.buffer.readInt());
+        visitor.visitInteger(buffer.readInt());
         break;
       case LONG:
-        visitor.visitLong(this.buffer.readLong());
+        visitor.visitLong(buffer.readLong());
         break;
       case FLOAT:
-        visitor.visitFloat(this.buffer.readFloat());
+        visitor.visitFloat(buffer.readFloat());
         break;
       case DOUBLE:
-        visitor.visitDouble(this.buffer.readDouble());
+        visitor.visitDouble(buffer.readDouble());
         break;
       case BYTE_ARRAY: {
-        int length = this.buffer.readInt();
+        int length = buffer.readInt();
         visitor.visitByteArray(length);
 
         for (int i = 0; i < length; ++i) {
-          visitor.visitByte(this.buffer.readByte());
+          visitor.visitByte(buffer.readByte());
         }
 
         break;
       }
       case STRING:
-        visitor.visitString(this.readString());
+        visitor.visitString(this.readString(buffer));
         break;
       case LIST: {
-        TagType elementType = TagType.byTypeId(this.buffer.readByte());
-        int length = this.buffer.readInt();
+        TagType elementType = TagType.byTypeId(buffer.readByte());
+        int length = buffer.readInt();
 
         visitor.visitList(elementType, length);
 
         for (int i = 0; i < length; ++i) {
-          this.visitValue(visitor, elementType);
+          this.visitValue(buffer, visitor, elementType);
         }
 
         break;
@@ -174,25 +387,37 @@ public class TagReader {
         visitor.visitCompound();
 
         while (true) {
-          TagType elementType = TagType.byTypeId(this.buffer.readByte());
+          TagType elementType = TagType.byTypeId(buffer.readByte());
 
           if (elementType == TagType.END) {
             visitor.visitCompoundEnd();
             break;
           }
 
-          visitor.visitKey(this.readString());
-          this.visitValue(visitor, elementType);
+          visitor.visitKey(this.readString(buffer));
+          this.visitValue(buffer, visitor, elementType);
         }
 
         break;
       case INTEGER_ARRAY: {
-        int length = this.buffer.readInt();
+        int length = buffer.readInt();
         visitor.visitIntegerArray(length);
 
         for (int i = 0; i < length; ++i) {
-          visitor.visitInteger(this.buffer.readInt());
+          visitor.visitInteger(buffer.readInt());
         }
+
+        break;
+      }
+      case LONG_ARRAY: {
+        int length = buffer.readInt();
+        visitor.visitLongArray(length);
+
+        for (int i = 0; i < length; ++i) {
+          visitor.visitLong(buffer.readLong());
+        }
+
+        break;
       }
       default:
         throw new IllegalStateException("Did not expected tag of type " + tagType + " here");
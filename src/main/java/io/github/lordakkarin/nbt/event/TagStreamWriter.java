@@ -0,0 +1,631 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.event;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.github.lordakkarin.nbt.internal.CapacityEstimator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Provides an explicitly structured writer which encodes NBT data as soon as it is passed to the
+ * writer without materializing a tree or inferring the structure from a sequence of visitor events
+ * (structural errors are reported as soon as they occur). Lists may also be written without
+ * knowing their length in advance in which case their length field is patched once they are
+ * closed. Writers which allocate their own buffer need to be closed when they are no longer
+ * needed.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TagStreamWriter implements AutoCloseable {
+
+  private static final CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+  /**
+   * Defines the amount of buffered bytes at which the writer flushes its buffer into its target
+   * channel (if any).
+   */
+  private static final int FLUSH_THRESHOLD = 8192;
+
+  /**
+   * Identifies the absence of a reserved length field (e.g. lists of known length).
+   */
+  private static final long NO_POSITION = -1;
+
+  private final ByteBuf buffer;
+  private final boolean owned;
+  private final WritableByteChannel channel;
+  private final long channelOrigin;
+  private final ByteBuffer patchBuffer = ByteBuffer.allocate(Integer.BYTES);
+
+  private TagType[] containerStack = new TagType[16];
+  private TagType[] elementTypeStack = new TagType[16];
+  private int[] remainingStack = new int[16];
+  private long[] countPositionStack = new long[16];
+  private int depth = -1;
+  private long flushed;
+  private long barrier = NO_POSITION;
+  private String key;
+  private boolean complete;
+
+  public TagStreamWriter() {
+    this(PooledByteBufAllocator.DEFAULT);
+  }
+
+  public TagStreamWriter(@NonNull ByteBufAllocator allocator) {
+    this(allocator.directBuffer(capacityEstimator.estimate()), true, null);
+  }
+
+  public TagStreamWriter(@NonNull ByteBuf buffer) {
+    this(buffer, false, null);
+  }
+
+  public TagStreamWriter(@NonNull WritableByteChannel channel) {
+    this(channel, PooledByteBufAllocator.DEFAULT);
+  }
+
+  public TagStreamWriter(@NonNull WritableByteChannel channel,
+      @NonNull ByteBufAllocator allocator) {
+    this(allocator.directBuffer(capacityEstimator.estimate()), true, channel);
+  }
+
+  public TagStreamWriter(@NonNull OutputStream outputStream) {
+    this(Channels.newChannel(outputStream));
+  }
+
+  public TagStreamWriter(@NonNull OutputStream outputStream, @NonNull ByteBufAllocator allocator) {
+    this(Channels.newChannel(outputStream), allocator);
+  }
+
+  private TagStreamWriter(@NonNull ByteBuf buffer, boolean owned,
+      @Nullable WritableByteChannel channel) {
+    this.buffer = buffer;
+    this.owned = owned;
+    this.channel = channel;
+
+    try {
+      this.channelOrigin = channel instanceof SeekableByteChannel ?
+          ((SeekableByteChannel) channel).position() : 0;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Begins the implied root compound of the document.
+   *
+   * @param name a root name.
+   * @return a reference to this writer.
+   * @throws IllegalStateException when a root has already been written.
+   * @throws IllegalArgumentException when the name exceeds the maximum string length.
+   */
+  @NonNull
+  public TagStreamWriter beginRoot(@NonNull String name) {
+    if (this.depth != -1 || this.complete) {
+      throw new IllegalStateException("Unexpected root tag");
+    }
+    BufferUtil.checkString(name);
+
+    this.buffer.writeByte(TagType.COMPOUND.ordinal());
+    BufferUtil.writeString(this.buffer, name);
+    this.push(TagType.COMPOUND, null, 0, NO_POSITION);
+
+    return this;
+  }
+
+  /**
+   * Specifies the key of the next value within the current compound.
+   *
+   * @param name a key.
+   * @return a reference to this writer.
+   * @throws IllegalStateException when the writer is not positioned within a compound or a key
+   * has already been specified.
+   * @throws IllegalArgumentException when the key exceeds the maximum string length.
+   */
+  @NonNull
+  public TagStreamWriter key(@NonNull String name) {
+    if (this.depth == -1 || this.containerStack[this.depth] != TagType.COMPOUND) {
+      throw new IllegalStateException("Invalid key: Keys are only permitted within compounds");
+    }
+    if (this.key != null) {
+      throw new IllegalStateException("Invalid key: Expected value but got key");
+    }
+    BufferUtil.checkString(name);
+
+    this.key = name;
+    return this;
+  }
+
+  /**
+   * Begins a compound value.
+   *
+   * @return a reference to this writer.
+   */
+  @NonNull
+  public TagStreamWriter beginCompound() {
+    this.writeHeader(TagType.COMPOUND);
+    this.push(TagType.COMPOUND, null, 0, NO_POSITION);
+
+    return this;
+  }
+
+  /**
+   * Ends the current compound (or the implied root compound).
+   *
+   * @return a reference to this writer.
+   * @throws IllegalStateException when the writer is not positioned within a compound or a key
+   * has been specified without a value.
+   */
+  @NonNull
+  public TagStreamWriter endCompound() {
+    if (this.depth == -1 || this.containerStack[this.depth] != TagType.COMPOUND) {
+      throw new IllegalStateException("Did not expected END outside of compound");
+    }
+    if (this.key != null) {
+      throw new IllegalStateException("Invalid compound element: Expected value but got END");
+    }
+
+    this.buffer.writeByte(TagType.END.ordinal());
+
+    if (--this.depth == -1) {
+      this.complete = true;
+    }
+
+    this.afterValue();
+    return this;
+  }
+
+  /**
+   * Begins a list value which holds exactly the specified amount of elements.
+   *
+   * @param type an element type.
+   * @param length the amount of elements within the list.
+   * @return a reference to this writer.
+   * @throws IllegalArgumentException when the length is negative or an END list is not empty.
+   */
+  @NonNull
+  public TagStreamWriter beginList(@NonNull TagType type, int length) {
+    if (length < 0) {
+      throw new IllegalArgumentException("Illegal list length: " + length);
+    }
+    if (type == TagType.END && length != 0) {
+      throw new IllegalArgumentException("Illegal list type: END lists cannot hold elements");
+    }
+
+    this.writeHeader(TagType.LIST);
+    this.buffer.writeByte(type.ordinal());
+    this.buffer.writeInt(length);
+    this.push(TagType.LIST, type, length, NO_POSITION);
+
+    return this;
+  }
+
+  /**
+   * Begins a list value of unknown length (the length is patched once the list is closed).
+   *
+   * @param type an element type.
+   * @return a reference to this writer.
+   */
+  @NonNull
+  public TagStreamWriter beginList(@NonNull TagType type) {
+    this.writeHeader(TagType.LIST);
+    this.buffer.writeByte(type.ordinal());
+
+    long position = this.position();
+    this.buffer.writeInt(0);
+    this.push(TagType.LIST, type, 0, position);
+
+    if (this.barrier == NO_POSITION) {
+      this.barrier = position;
+    }
+
+    return this;
+  }
+
+  /**
+   * Ends the current list.
+   *
+   * @return a reference to this writer.
+   * @throws IllegalStateException when the writer is not positioned within a list or the list
+   * does not match its declared length.
+   */
+  @NonNull
+  public TagStreamWriter endList() {
+    if (this.depth == -1 || this.containerStack[this.depth] != TagType.LIST) {
+      throw new IllegalStateException("Invalid list end: Not within a list");
+    }
+
+    long countPosition = this.countPositionStack[this.depth];
+
+    if (countPosition == NO_POSITION) {
+      if (this.remainingStack[this.depth] != 0) {
+        throw new IllegalStateException(
+            "Invalid list end: Expected " + this.remainingStack[this.depth] + " more elements");
+      }
+    } else {
+      this.patch(countPosition, this.remainingStack[this.depth]);
+
+      if (this.barrier == countPosition) {
+        this.barrier = NO_POSITION;
+      }
+    }
+
+    --this.depth;
+    this.afterValue();
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter byteValue(byte value) {
+    this.writeHeader(TagType.BYTE);
+    this.buffer.writeByte(value);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter shortValue(short value) {
+    this.writeHeader(TagType.SHORT);
+    this.buffer.writeShort(value);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter integerValue(int value) {
+    this.writeHeader(TagType.INTEGER);
+    this.buffer.writeInt(value);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter longValue(long value) {
+    this.writeHeader(TagType.LONG);
+    this.buffer.writeLong(value);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter floatValue(float value) {
+    this.writeHeader(TagType.FLOAT);
+    this.buffer.writeFloat(value);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter doubleValue(double value) {
+    this.writeHeader(TagType.DOUBLE);
+    this.buffer.writeDouble(value);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter stringValue(@NonNull String value) {
+    BufferUtil.checkString(value);
+    this.writeHeader(TagType.STRING);
+    BufferUtil.writeString(this.buffer, value);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter byteArrayValue(@NonNull byte[] value) {
+    return this.byteArrayValue(value, 0, value.length);
+  }
+
+  @NonNull
+  public TagStreamWriter byteArrayValue(@NonNull byte[] value, int offset, int length) {
+    if (offset < 0 || length < 0 || length > value.length - offset) {
+      throw new IndexOutOfBoundsException(
+          "Range " + offset + "+" + length + " out of bounds for length " + value.length);
+    }
+
+    this.writeHeader(TagType.BYTE_ARRAY);
+    this.buffer.writeInt(length);
+    this.buffer.writeBytes(value, offset, length);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter integerArrayValue(@NonNull int[] value) {
+    checkArray(value.length, Integer.BYTES);
+    this.writeHeader(TagType.INTEGER_ARRAY);
+    this.buffer.writeInt(value.length);
+    BufferUtil.writeIntegers(this.buffer, value);
+    this.afterValue();
+
+    return this;
+  }
+
+  @NonNull
+  public TagStreamWriter longArrayValue(@NonNull long[] value) {
+    checkArray(value.length, Long.BYTES);
+    this.writeHeader(TagType.LONG_ARRAY);
+    this.buffer.writeInt(value.length);
+    BufferUtil.writeLongs(this.buffer, value);
+    this.afterValue();
+
+    return this;
+  }
+
+  /**
+   * Clears the internal state (including any data which has not been flushed yet).
+   */
+  public void clear() {
+    capacityEstimator.record(this.buffer.writerIndex());
+    this.buffer.clear();
+    this.depth = -1;
+    this.key = null;
+    this.complete = false;
+    this.flushed = 0;
+    this.barrier = NO_POSITION;
+  }
+
+  /**
+   * Flushes all remaining data into the target channel (if any) and releases the internal buffer
+   * if it has been allocated by this writer (the target channel remains open).
+   *
+   * @throws IOException when writing fails.
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.buffer.refCnt() == 0) {
+      return;
+    }
+
+    try {
+      this.flush();
+    } finally {
+      if (this.owned) {
+        capacityEstimator.record(this.buffer.writerIndex());
+        this.buffer.release();
+      }
+    }
+  }
+
+  /**
+   * Writes all buffered data into the target channel (this method has no effect when the writer
+   * has been constructed without a channel). When the channel is not seekable, data which follows
+   * the length field of an open list of unknown length is retained until the list is closed.
+   *
+   * @throws IOException when writing fails.
+   */
+  public void flush() throws IOException {
+    int length = this.getFlushableBytes();
+
+    if (length == 0) {
+      return;
+    }
+
+    ByteBuffer tmp = this.buffer.nioBuffer(this.buffer.readerIndex(), length);
+
+    while (tmp.hasRemaining()) {
+      this.channel.write(tmp);
+    }
+
+    this.buffer.skipBytes(length);
+    this.buffer.discardSomeReadBytes();
+    this.flushed += length;
+  }
+
+  /**
+   * Returns a read-only view of the internal buffer (e.g. all data which has not been flushed into
+   * the target channel yet).
+   *
+   * @return a buffer.
+   */
+  @NonNull
+  public ByteBuf getBuffer() {
+    return this.buffer.asReadOnly();
+  }
+
+  /**
+   * Evaluates whether the implied root compound has been closed.
+   *
+   * @return true if complete, false otherwise.
+   */
+  public boolean isComplete() {
+    return this.complete;
+  }
+
+  /**
+   * Flushes the buffer once it exceeds its threshold.
+   */
+  private void afterValue() {
+    if (this.getFlushableBytes() >= FLUSH_THRESHOLD) {
+      try {
+        this.flush();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+  }
+
+  /**
+   * Verifies that an array fits into a single buffer once encoded (values are validated before
+   * their header is written so that a rejected value leaves no partial tag behind).
+   *
+   * @param length an element count.
+   * @param elementSize the amount of bytes per element.
+   * @throws IllegalArgumentException when the encoded array exceeds the maximum buffer size.
+   */
+  private static void checkArray(int length, int elementSize) {
+    if (length > (Integer.MAX_VALUE - Integer.BYTES) / elementSize) {
+      throw new IllegalArgumentException("Array of " + length + " elements exceeds maximum size");
+    }
+  }
+
+  /**
+   * Calculates the amount of buffered bytes which may be written to the target channel.
+   *
+   * @return an amount of bytes.
+   */
+  private int getFlushableBytes() {
+    if (this.channel == null) {
+      return 0;
+    }
+
+    if (this.barrier == NO_POSITION || this.channel instanceof SeekableByteChannel) {
+      return this.buffer.readableBytes();
+    }
+
+    return (int) (this.barrier - this.flushed);
+  }
+
+  /**
+   * Replaces a previously reserved length field with its final value (either within the buffer or
+   * within the target channel when the field has already been flushed).
+   *
+   * @param position an absolute position.
+   * @param value a length.
+   */
+  private void patch(long position, int value) {
+    if (position >= this.flushed) {
+      this.buffer.setInt(this.buffer.readerIndex() + (int) (position - this.flushed), value);
+      return;
+    }
+
+    this.patchBuffer.clear();
+    this.patchBuffer.putInt(value).flip();
+
+    try {
+      long target = this.channelOrigin + position;
+
+      if (this.channel instanceof FileChannel) {
+        FileChannel channel = (FileChannel) this.channel;
+
+        while (this.patchBuffer.hasRemaining()) {
+          channel.write(this.patchBuffer, target + this.patchBuffer.position());
+        }
+      } else {
+        SeekableByteChannel channel = (SeekableByteChannel) this.channel;
+        long current = channel.position();
+
+        channel.position(target);
+
+        while (this.patchBuffer.hasRemaining()) {
+          channel.write(this.patchBuffer);
+        }
+
+        channel.position(current);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Retrieves the absolute position of the next byte within the output.
+   *
+   * @return a position.
+   */
+  private long position() {
+    return this.flushed + this.buffer.readableBytes();
+  }
+
+  /**
+   * Pushes a new container onto the stack.
+   *
+   * @param type a container type.
+   * @param elementType an element type (for lists).
+   * @param length an element count (for lists).
+   * @param countPosition the position of the reserved length field (for lists of unknown
+   * length).
+   */
+  private void push(@NonNull TagType type, @Nullable TagType elementType, int length,
+      long countPosition) {
+    if (++this.depth == this.containerStack.length) {
+      int capacity = this.containerStack.length * 2;
+
+      this.containerStack = Arrays.copyOf(this.containerStack, capacity);
+      this.elementTypeStack = Arrays.copyOf(this.elementTypeStack, capacity);
+      this.remainingStack = Arrays.copyOf(this.remainingStack, capacity);
+      this.countPositionStack = Arrays.copyOf(this.countPositionStack, capacity);
+    }
+
+    this.containerStack[this.depth] = type;
+    this.elementTypeStack[this.depth] = elementType;
+    this.remainingStack[this.depth] = length;
+    this.countPositionStack[this.depth] = countPosition;
+  }
+
+  /**
+   * Writes the type and key of a new value (values within lists are verified against the list
+   * type but are not prefixed).
+   *
+   * @param type a type.
+   */
+  private void writeHeader(@NonNull TagType type) {
+    if (this.depth == -1) {
+      throw new IllegalStateException("Invalid value: Expected root but got " + type);
+    }
+
+    if (this.containerStack[this.depth] == TagType.LIST) {
+      TagType elementType = this.elementTypeStack[this.depth];
+
+      if (type != elementType) {
+        throw new IllegalStateException(
+            "Invalid list element: Expected tag of type " + elementType + " but got " + type);
+      }
+
+      if (this.countPositionStack[this.depth] != NO_POSITION) {
+        ++this.remainingStack[this.depth];
+        return;
+      }
+
+      if (this.remainingStack[this.depth] == 0) {
+        throw new IllegalStateException("Invalid list element: List exceeds its declared length");
+      }
+
+      --this.remainingStack[this.depth];
+      return;
+    }
+
+    if (this.key == null) {
+      throw new IllegalStateException("Invalid compound element: Expected key but got value");
+    }
+
+    this.buffer.writeByte(type.ordinal());
+    BufferUtil.writeString(this.buffer, this.key);
+    this.key = null;
+  }
+}
@@ -0,0 +1,615 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.event;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Provides a structural index of NBT encoded data which is built in a single pass and records the
+ * type, key, payload offset and subtree end of every value within a flat integer tape. Nodes are
+ * identified by their position within the tape (the root compound is always node {@link #ROOT})
+ * and the nodes of a subtree directly follow the node of its container. Every child is
+ * additionally registered within a hash table which is keyed by its parent and its key (or list
+ * index) and thus permits lookups along a path of keys at a cost proportional to its depth.
+ * Elements of lists with fixed size elements are not recorded since their offsets may be
+ * calculated directly (see {@link #getElementOffset(int, int)}). The tape references its buffer
+ * which must not be modified while the tape is in use and may be reused for other buffers through
+ * {@link #index(ByteBuf)}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class TagTape {
+
+  /**
+   * Identifies the root compound.
+   */
+  public static final int ROOT = 0;
+
+  /**
+   * Defines the layout of a single node within the tape.
+   */
+  private static final int TYPE = 0;
+  private static final int PARENT = 1;
+  private static final int KEY = 2;
+  private static final int VALUE = 3;
+  private static final int NEXT = 4;
+  private static final int END = 5;
+  private static final int NODE_SIZE = 6;
+
+  private static final int INITIAL_CAPACITY = 64;
+  private static final TagType[] TYPES = TagType.values();
+
+  private ByteBuf buffer;
+  private int[] tape = new int[INITIAL_CAPACITY * NODE_SIZE];
+  private int[] table = new int[INITIAL_CAPACITY * 2];
+  private int size;
+  private int limit;
+
+  /**
+   * Allocates a new node within the tape.
+   *
+   * @return a node.
+   */
+  private int allocate() {
+    if ((this.size + 1) * NODE_SIZE > this.tape.length) {
+      this.tape = Arrays.copyOf(this.tape, this.tape.length * 2);
+    }
+
+    return this.size++;
+  }
+
+  /**
+   * Verifies that a node identifier is valid.
+   *
+   * @param node a node.
+   * @return the position of the node within the tape.
+   * @throws IndexOutOfBoundsException when no such node exists.
+   */
+  private int base(int node) {
+    if (node < 0 || node >= this.size) {
+      throw new IndexOutOfBoundsException("No such node: " + node);
+    }
+
+    return node * NODE_SIZE;
+  }
+
+  /**
+   * Verifies that an offset does not exceed the indexed data.
+   *
+   * @param offset an offset.
+   * @return the offset.
+   * @throws IllegalStateException when the offset exceeds the data.
+   */
+  private int check(long offset) {
+    if (offset > this.limit) {
+      throw new IllegalStateException("Malformed NBT data: Unexpected end of data");
+    }
+
+    return (int) offset;
+  }
+
+  /**
+   * Verifies that the indexed data holds the specified amount of bytes at an offset.
+   *
+   * @param offset an offset.
+   * @param length an amount of bytes.
+   * @return the offset.
+   * @throws IllegalStateException when the data ends prematurely.
+   */
+  private int require(int offset, int length) {
+    this.check(offset + (long) length);
+    return offset;
+  }
+
+  /**
+   * Locates a child of a compound or list.
+   *
+   * @param node a compound or list node.
+   * @param hash the hash of the child key or index.
+   * @param key an encoded key or null when locating a list element.
+   * @param index a list index (ignored when a key is passed).
+   * @return a node or -1 if no such child exists.
+   */
+  private int child(int node, int hash, @Nullable byte[] key, int index) {
+    int mask = this.table.length - 1;
+
+    for (int i = spread(hash, node) & mask; ; i = (i + 1) & mask) {
+      int candidate = this.table[i] - 1;
+
+      if (candidate == -1) {
+        return -1;
+      }
+
+      int base = candidate * NODE_SIZE;
+
+      if (this.tape[base + PARENT] != node) {
+        continue;
+      }
+
+      int keyOffset = this.tape[base + KEY];
+
+      if (key == null ? keyOffset == ~index : keyOffset >= 0 && this.keyEquals(keyOffset, key)) {
+        return candidate;
+      }
+    }
+  }
+
+  /**
+   * Locates the value of a key within a compound.
+   *
+   * @param node a compound node.
+   * @param key a key.
+   * @return a node or -1 if no such key exists or the node is not a compound.
+   */
+  public int find(int node, @NonNull String key) {
+    if (this.getType(node) != TagType.COMPOUND) {
+      return -1;
+    }
+
+    byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+    return this.child(node, hash(encoded), encoded, 0);
+  }
+
+  /**
+   * Locates the value at the end of a path of keys which starts at the root compound.
+   *
+   * @param path a path of keys.
+   * @return a node or -1 if no such value exists.
+   */
+  public int find(@NonNull String... path) {
+    int node = ROOT;
+
+    for (int i = 0; i < path.length && node != -1; ++i) {
+      node = this.find(node, path[i]);
+    }
+
+    return node;
+  }
+
+  /**
+   * Locates an element of a list which has not been omitted from the tape.
+   *
+   * @param node a list node.
+   * @param index an index.
+   * @return a node or -1 if no such element has been recorded.
+   */
+  public int element(int node, int index) {
+    if (this.getType(node) != TagType.LIST || index < 0) {
+      return -1;
+    }
+
+    return this.child(node, index, null, index);
+  }
+
+  @Nullable
+  public ByteBuf getBuffer() {
+    return this.buffer;
+  }
+
+  /**
+   * Calculates the offset of an element within a list (regardless of whether it has been recorded
+   * within the tape).
+   *
+   * @param node a list node.
+   * @param index an index.
+   * @return an offset.
+   * @throws IllegalArgumentException when the node is not a list.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  public int getElementOffset(int node, int index) {
+    TagType elementType = this.getElementType(node);
+    int length = this.getLength(node);
+
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+    }
+
+    int size = fixedSize(elementType);
+
+    if (size != -1) {
+      return this.getValueOffset(node) + Byte.BYTES + Integer.BYTES + index * size;
+    }
+
+    return this.getValueOffset(this.element(node, index));
+  }
+
+  /**
+   * Retrieves the element type of a list.
+   *
+   * @param node a list node.
+   * @return an element type.
+   * @throws IllegalArgumentException when the node is not a list.
+   */
+  @NonNull
+  public TagType getElementType(int node) {
+    if (this.getType(node) != TagType.LIST) {
+      throw new IllegalArgumentException("Node " + node + " is not a list");
+    }
+
+    return TYPES[this.buffer.getByte(this.getValueOffset(node))];
+  }
+
+  /**
+   * Retrieves the offset of the first byte past the payload of a node (and its children).
+   *
+   * @param node a node.
+   * @return an offset.
+   */
+  public int getEndOffset(int node) {
+    return this.tape[this.base(node) + END];
+  }
+
+  /**
+   * Retrieves the key of a node.
+   *
+   * @param node a node.
+   * @return a key or null if the node is a list element.
+   */
+  @Nullable
+  public String getKey(int node) {
+    int keyOffset = this.tape[this.base(node) + KEY];
+
+    if (keyOffset < 0) {
+      return null;
+    }
+
+    return this.buffer.toString(keyOffset + Short.BYTES, this.buffer.getUnsignedShort(keyOffset),
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Retrieves the amount of elements within a list or array.
+   *
+   * @param node a list or array node.
+   * @return an amount of elements.
+   * @throws IllegalArgumentException when the node is neither a list nor an array.
+   */
+  public int getLength(int node) {
+    int offset = this.getValueOffset(node);
+
+    switch (this.getType(node)) {
+      case BYTE_ARRAY:
+      case INTEGER_ARRAY:
+      case LONG_ARRAY:
+        return this.buffer.getInt(offset);
+      case LIST:
+        return this.buffer.getInt(offset + Byte.BYTES);
+      default:
+        throw new IllegalArgumentException("Node " + node + " is neither a list nor an array");
+    }
+  }
+
+  /**
+   * Retrieves the node which follows the subtree of a node (nodes between the node and the
+   * returned node are its descendants).
+   *
+   * @param node a node.
+   * @return a node or {@link #size()} if the subtree extends to the end of the tape.
+   */
+  public int getNext(int node) {
+    return this.tape[this.base(node) + NEXT];
+  }
+
+  /**
+   * Retrieves the parent of a node.
+   *
+   * @param node a node.
+   * @return a parent node or -1 if the node is the root compound.
+   */
+  public int getParent(int node) {
+    return this.tape[this.base(node) + PARENT];
+  }
+
+  @NonNull
+  public TagType getType(int node) {
+    return TYPES[this.tape[this.base(node) + TYPE]];
+  }
+
+  /**
+   * Retrieves the offset of the payload of a node.
+   *
+   * @param node a node.
+   * @return an offset.
+   */
+  public int getValueOffset(int node) {
+    return this.tape[this.base(node) + VALUE];
+  }
+
+  /**
+   * Retrieves the first recorded child of a compound or list.
+   *
+   * @param node a node.
+   * @return a node or -1 if the node has no recorded children.
+   */
+  public int firstChild(int node) {
+    int child = node + 1;
+    return child < this.getNext(node) ? child : -1;
+  }
+
+  /**
+   * Retrieves the size of each value of a type if all of its values share a common size.
+   *
+   * @param type a type.
+   * @return a size or -1 if the size differs between values.
+   */
+  private static int fixedSize(@NonNull TagType type) {
+    switch (type) {
+      case END:
+        return 0;
+      case BYTE:
+        return Byte.BYTES;
+      case SHORT:
+        return Short.BYTES;
+      case INTEGER:
+      case FLOAT:
+        return Integer.BYTES;
+      case LONG:
+      case DOUBLE:
+        return Long.BYTES;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Calculates the hash of an encoded key.
+   *
+   * @param key an encoded key.
+   * @return a hash.
+   */
+  private static int hash(@NonNull byte[] key) {
+    int hash = key.length;
+    for (byte b : key) {
+      hash = 31 * hash + b;
+    }
+    return hash;
+  }
+
+  /**
+   * Calculates the hash of an encoded key within the buffer.
+   *
+   * @param keyOffset the offset of the length prefix of the key.
+   * @return a hash.
+   */
+  private int hash(int keyOffset) {
+    int length = this.buffer.getUnsignedShort(keyOffset);
+    int hash = length;
+    for (int i = 0; i < length; ++i) {
+      hash = 31 * hash + this.buffer.getByte(keyOffset + Short.BYTES + i);
+    }
+    return hash;
+  }
+
+  /**
+   * Indexes the root tag which is located at the current reader index of a buffer (the reader
+   * index is not modified and any previously recorded nodes are discarded).
+   *
+   * @param buffer a buffer.
+   * @return a reference to this tape.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  @NonNull
+  public TagTape index(@NonNull ByteBuf buffer) {
+    this.buffer = buffer;
+    this.size = 0;
+    this.limit = buffer.writerIndex();
+
+    int offset = buffer.readerIndex();
+    TagType type = TagType.byTypeId(buffer.getByte(this.require(offset, Byte.BYTES)));
+
+    if (type != TagType.COMPOUND) {
+      throw new IllegalStateException("Malformed NBT data: Expected compound but got " + type);
+    }
+
+    int keyOffset = offset + Byte.BYTES;
+    int keyLength = buffer.getUnsignedShort(this.require(keyOffset, Short.BYTES));
+    this.index(-1, keyOffset, type, this.check(keyOffset + (long) Short.BYTES + keyLength));
+    this.buildTable();
+
+    return this;
+  }
+
+  /**
+   * Records a value and its children.
+   *
+   * @param parent the parent node.
+   * @param key the offset of the key or the complement of the list index.
+   * @param type the value type.
+   * @param offset the offset of the payload.
+   * @return the offset of the first byte past the payload.
+   */
+  private int index(int parent, int key, @NonNull TagType type, int offset) {
+    int node = this.allocate();
+    int base = node * NODE_SIZE;
+
+    this.tape[base + TYPE] = type.ordinal();
+    this.tape[base + PARENT] = parent;
+    this.tape[base + KEY] = key;
+    this.tape[base + VALUE] = offset;
+
+    switch (type) {
+      case BYTE_ARRAY:
+        offset = this.check(offset + (long) Integer.BYTES + this.readLength(offset));
+        break;
+      case STRING:
+        offset = this.check(offset + (long) Short.BYTES
+            + this.buffer.getUnsignedShort(this.require(offset, Short.BYTES)));
+        break;
+      case LIST: {
+        TagType elementType = TagType.byTypeId(this.buffer.getByte(this.require(offset, 1)));
+        int length = this.readLength(offset + Byte.BYTES);
+        int size = fixedSize(elementType);
+
+        if (elementType == TagType.END && length != 0) {
+          throw new IllegalStateException(
+              "Malformed NBT data: Illegal length " + length + " for list of type END");
+        }
+
+        offset += Byte.BYTES + Integer.BYTES;
+
+        if (size != -1) {
+          offset = this.check(offset + (long) length * size);
+        } else {
+          for (int i = 0; i < length; ++i) {
+            offset = this.index(node, ~i, elementType, offset);
+          }
+        }
+        break;
+      }
+      case COMPOUND:
+        while (true) {
+          TagType elementType = TagType.byTypeId(this.buffer.getByte(this.require(offset, 1)));
+          ++offset;
+
+          if (elementType == TagType.END) {
+            break;
+          }
+
+          int keyLength = this.buffer.getUnsignedShort(this.require(offset, Short.BYTES));
+          int valueOffset = this.check(offset + (long) Short.BYTES + keyLength);
+          offset = this.index(node, offset, elementType, valueOffset);
+        }
+        break;
+      case INTEGER_ARRAY:
+        offset = this.check(
+            offset + Integer.BYTES + (long) this.readLength(offset) * Integer.BYTES);
+        break;
+      case LONG_ARRAY:
+        offset = this.check(
+            offset + Integer.BYTES + (long) this.readLength(offset) * Long.BYTES);
+        break;
+      default:
+        int size = fixedSize(type);
+
+        if (size <= 0) {
+          throw new IllegalStateException("Did not expected tag of type " + type + " here");
+        }
+
+        offset = this.check(offset + (long) size);
+        break;
+    }
+
+    // the tape may have been replaced while indexing children thus it is accessed again
+    this.tape[base + NEXT] = this.size;
+    this.tape[base + END] = offset;
+    return offset;
+  }
+
+  /**
+   * Registers all nodes (except for the root compound) within the lookup table.
+   */
+  private void buildTable() {
+    int capacity = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, this.size * 2) - 1) << 1;
+
+    if (this.table.length < capacity || this.table.length > capacity * 4) {
+      this.table = new int[capacity];
+    } else {
+      Arrays.fill(this.table, 0);
+    }
+
+    int mask = this.table.length - 1;
+
+    for (int node = ROOT + 1; node < this.size; ++node) {
+      int base = node * NODE_SIZE;
+      int key = this.tape[base + KEY];
+      int hash = key >= 0 ? this.hash(key) : ~key;
+      int i = spread(hash, this.tape[base + PARENT]) & mask;
+
+      while (this.table[i] != 0) {
+        i = (i + 1) & mask;
+      }
+
+      this.table[i] = node + 1;
+    }
+  }
+
+  /**
+   * Evaluates whether an encoded key within the buffer matches the specified encoded key.
+   *
+   * @param keyOffset the offset of the length prefix of the key within the buffer.
+   * @param key an encoded key.
+   * @return true if matching, false otherwise.
+   */
+  private boolean keyEquals(int keyOffset, @NonNull byte[] key) {
+    if (this.buffer.getUnsignedShort(keyOffset) != key.length) {
+      return false;
+    }
+
+    for (int i = 0; i < key.length; ++i) {
+      if (this.buffer.getByte(keyOffset + Short.BYTES + i) != key[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Retrieves the next sibling of a node.
+   *
+   * @param node a node.
+   * @return a node or -1 if the node is the last recorded child of its parent.
+   */
+  public int nextSibling(int node) {
+    int parent = this.getParent(node);
+    int next = this.getNext(node);
+
+    return parent != -1 && next < this.getNext(parent) ? next : -1;
+  }
+
+  /**
+   * Reads the length of an array or list and verifies that it is not negative.
+   *
+   * @param offset the offset of the length.
+   * @return a length.
+   * @throws IllegalStateException when the length is negative.
+   */
+  private int readLength(int offset) {
+    int length = this.buffer.getInt(this.require(offset, Integer.BYTES));
+
+    if (length < 0) {
+      throw new IllegalStateException("Malformed NBT data: Illegal length " + length);
+    }
+
+    return length;
+  }
+
+  /**
+   * Retrieves the amount of nodes within the tape.
+   *
+   * @return an amount of nodes.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Combines the hash of a key with the identifier of its parent.
+   *
+   * @param hash a key hash or list index.
+   * @param parent a parent node.
+   * @return a spread hash.
+   */
+  private static int spread(int hash, int parent) {
+    int h = hash * 0x9E3779B9 + parent;
+    return h ^ (h >>> 16);
+  }
+}
@@ -35,7 +35,8 @@ public enum TagType {
   STRING,
   LIST,
   COMPOUND,
-  INTEGER_ARRAY;
+  INTEGER_ARRAY,
+  LONG_ARRAY;
 
   /**
    * Retrieves a tag type based on its identifier.
@@ -49,6 +49,8 @@ public interface TagVisitor {
 
   void visitLong(long value);
 
+  void visitLongArray(int length);
+
   void visitRoot(@NonNull String name);
 
   void visitShort(short value);
@@ -18,9 +18,10 @@ package io.github.lordakkarin.nbt.event;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.internal.CapacityEstimator;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ReadOnlyByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -35,11 +36,15 @@ import java.util.Stack;
 
 /**
  * Accepts the data from a {@link TagReader} or other visitor and turns it into an NBT encoded (and
- * optionally gzipped) stream of binary data.
+ * optionally gzipped) stream of binary data. Since the data is retained within a buffer which is
+ * acquired from a (pooled by default) allocator, writers need to be closed when they are no longer
+ * needed.
  *
  * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
  */
-public class TagWriter extends AbstractTagVisitor {
+public class TagWriter extends AbstractTagVisitor implements AutoCloseable {
+
+  private static final CapacityEstimator capacityEstimator = new CapacityEstimator();
 
   private final ByteBuf buffer;
   private String key = null;
@@ -51,16 +56,32 @@ public class TagWriter extends AbstractTagVisitor {
   }
 
   public TagWriter(@Nullable TagVisitor next) {
+    this(next, PooledByteBufAllocator.DEFAULT);
+  }
+
+  public TagWriter(@Nullable TagVisitor next, @NonNull ByteBufAllocator allocator) {
     super(next);
 
-    this.buffer = Unpooled.directBuffer();
+    this.buffer = allocator.directBuffer(capacityEstimator.estimate());
   }
 
   /**
    * Clears the internal state.
    */
   public void clear() {
-    this.buffer.clear().readerIndex(0).writerIndex(0);
+    capacityEstimator.record(this.buffer.writerIndex());
+    this.buffer.clear();
+  }
+
+  /**
+   * Releases the internal buffer (the writer cannot be used after it has been closed).
+   */
+  @Override
+  public void close() {
+    if (this.buffer.refCnt() != 0) {
+      capacityEstimator.record(this.buffer.writerIndex());
+      this.buffer.release();
+    }
   }
 
   /**
@@ -92,8 +113,10 @@ public class TagWriter extends AbstractTagVisitor {
     this.writeType(TagType.BYTE_ARRAY);
     this.buffer.writeInt(length);
 
-    this.listStack.push(length);
-    this.parentStack.push(TagType.BYTE_ARRAY);
+    if (length > 0) {
+      this.listStack.push(length);
+      this.parentStack.push(TagType.BYTE_ARRAY);
+    }
 
     super.visitByteArray(length);
   }
@@ -163,8 +186,10 @@ public class TagWriter extends AbstractTagVisitor {
     this.writeType(TagType.INTEGER_ARRAY);
     this.buffer.writeInt(length);
 
-    this.listStack.push(length);
-    this.parentStack.push(TagType.INTEGER_ARRAY);
+    if (length > 0) {
+      this.listStack.push(length);
+      this.parentStack.push(TagType.INTEGER_ARRAY);
+    }
 
     super.visitIntegerArray(length);
   }
@@ -188,8 +213,10 @@ public class TagWriter extends AbstractTagVisitor {
     this.buffer.writeByte((type == null ? TagType.END : type).ordinal());
     this.buffer.writeInt(length);
 
-    this.listStack.push(length);
-    this.parentStack.push(TagType.LIST);
+    if (length > 0) {
+      this.listStack.push(length);
+      this.parentStack.push(TagType.LIST);
+    }
 
     super.visitList(type, length);
   }
@@ -205,6 +232,22 @@ public class TagWriter extends AbstractTagVisitor {
     super.visitLong(value);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitLongArray(int length) {
+    this.writeType(TagType.LONG_ARRAY);
+    this.buffer.writeInt(length);
+
+    if (length > 0) {
+      this.listStack.push(length);
+      this.parentStack.push(TagType.LONG_ARRAY);
+    }
+
+    super.visitLongArray(length);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -320,7 +363,7 @@ public class TagWriter extends AbstractTagVisitor {
     // until we have fully written the list
     TagType parentType = (this.parentStack.isEmpty() ? TagType.COMPOUND : this.parentStack.peek());
     boolean isList = (parentType == TagType.LIST || parentType == TagType.BYTE_ARRAY
-        || parentType == TagType.INTEGER_ARRAY);
+        || parentType == TagType.INTEGER_ARRAY || parentType == TagType.LONG_ARRAY);
 
     if (isList && !this.listStack.isEmpty()) {
       int listCounter = this.listStack.pop();
@@ -86,6 +86,14 @@ public class ValidationVisitor extends AbstractTagVisitor {
                 "Invalid array element: Expected tag of type INTEGER but got " + type);
           }
 
+          this.verifyListStack();
+          break;
+        case LONG_ARRAY:
+          if (type != TagType.LONG) {
+            throw new IllegalStateException(
+                "Invalid array element: Expected tag of type LONG but got " + type);
+          }
+
           this.verifyListStack();
           break;
       }
@@ -108,8 +116,10 @@ public class ValidationVisitor extends AbstractTagVisitor {
   @Override
   public void visitByteArray(int length) {
     this.verifyValue(TagType.BYTE_ARRAY);
-    this.stack.push(TagType.BYTE_ARRAY);
-    this.listCounter.push(length);
+    if (length > 0) {
+      this.stack.push(TagType.BYTE_ARRAY);
+      this.listCounter.push(length);
+    }
 
     super.visitByteArray(length);
   }
@@ -174,9 +184,11 @@ public class ValidationVisitor extends AbstractTagVisitor {
    */
   @Override
   public void visitIntegerArray(int length) {
-    this.verifyValue(TagType.BYTE_ARRAY);
-    this.stack.push(TagType.INTEGER_ARRAY);
-    this.listCounter.push(length);
+    this.verifyValue(TagType.INTEGER_ARRAY);
+    if (length > 0) {
+      this.stack.push(TagType.INTEGER_ARRAY);
+      this.listCounter.push(length);
+    }
 
     super.visitIntegerArray(length);
   }
@@ -197,9 +209,12 @@ public class ValidationVisitor extends AbstractTagVisitor {
   @Override
   public void visitList(@Nullable TagType type, int length) {
     this.verifyValue(TagType.LIST);
-    this.stack.push(TagType.LIST);
-    this.listType.push(type);
-    this.listCounter.push(length);
+    // empty containers are complete right away as no elements will be visited
+    if (length > 0) {
+      this.stack.push(TagType.LIST);
+      this.listType.push(type);
+      this.listCounter.push(length);
+    }
 
     super.visitList(type, length);
   }
@@ -214,6 +229,20 @@ public class ValidationVisitor extends AbstractTagVisitor {
     super.visitLong(value);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitLongArray(int length) {
+    this.verifyValue(TagType.LONG_ARRAY);
+    if (length > 0) {
+      this.stack.push(TagType.LONG_ARRAY);
+      this.listCounter.push(length);
+    }
+
+    super.visitLongArray(length);
+  }
+
   /**
    * {@inheritDoc}
    */
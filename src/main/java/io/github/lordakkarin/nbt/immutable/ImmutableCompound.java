@@ -0,0 +1,555 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.immutable;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.github.lordakkarin.nbt.tree.CompoundTag;
+import io.github.lordakkarin.nbt.tree.Tag;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Represents an immutable NBT compound which is backed by a hash array mapped trie (modifications
+ * copy the path from the root to the affected entry while all remaining branches are shared with
+ * the original compound).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ImmutableCompound implements ImmutableTag {
+
+  private static final int BITS_PER_LEVEL = 5;
+  private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+  public static final ImmutableCompound EMPTY = new ImmutableCompound(BitmapNode.EMPTY, 0);
+
+  private final Node root;
+  private final int size;
+  private int hashCode;
+
+  private ImmutableCompound(@NonNull Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * Calculates the position of a hash within a node of the specified level.
+   *
+   * @param hash a hash code.
+   * @param shift the amount of hash bits consumed by the parent levels.
+   * @return a bit.
+   */
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & LEVEL_MASK);
+  }
+
+  /**
+   * Creates a node which holds two entries with distinct keys.
+   */
+  @NonNull
+  private static Node createNode(int shift, @NonNull String key1, @NonNull ImmutableTag value1,
+      int hash2, @NonNull String key2, @NonNull ImmutableTag value2) {
+    int hash1 = key1.hashCode();
+
+    if (hash1 == hash2) {
+      return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+    }
+
+    return BitmapNode.EMPTY
+        .with(key1, hash1, value1, shift, new boolean[1])
+        .with(key2, hash2, value2, shift, new boolean[1]);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void accept(@NonNull TagVisitor visitor) {
+    visitor.visitCompound();
+    this.root.forEach((k, v) -> {
+      visitor.visitKey(k);
+      v.accept(visitor);
+    });
+    visitor.visitCompoundEnd();
+  }
+
+  public boolean containsKey(@NonNull String key) {
+    return this.get(key) != null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ImmutableCompound)) {
+      return false;
+    }
+
+    ImmutableCompound compound = (ImmutableCompound) o;
+
+    if (this.size != compound.size || this.hashCode() != compound.hashCode()) {
+      return false;
+    }
+
+    boolean[] equal = {true};
+    this.root.forEach((k, v) -> {
+      if (equal[0] && !v.equals(compound.get(k))) {
+        equal[0] = false;
+      }
+    });
+    return equal[0];
+  }
+
+  /**
+   * Passes all entries of this compound to a consumer (in an unspecified order).
+   *
+   * @param action a consumer.
+   */
+  public void forEach(@NonNull BiConsumer<String, ImmutableTag> action) {
+    this.root.forEach(action);
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T extends ImmutableTag> T get(@NonNull String key) {
+    return (T) this.root.get(key, key.hashCode(), 0);
+  }
+
+  public byte getByte(@NonNull String key, byte defaultValue) {
+    ImmutablePrimitive value = this.get(key);
+    return value == null ? defaultValue : value.byteValue();
+  }
+
+  public double getDouble(@NonNull String key, double defaultValue) {
+    ImmutablePrimitive value = this.get(key);
+    return value == null ? defaultValue : value.doubleValue();
+  }
+
+  public float getFloat(@NonNull String key, float defaultValue) {
+    ImmutablePrimitive value = this.get(key);
+    return value == null ? defaultValue : value.floatValue();
+  }
+
+  public int getInteger(@NonNull String key, int defaultValue) {
+    ImmutablePrimitive value = this.get(key);
+    return value == null ? defaultValue : value.intValue();
+  }
+
+  public long getLong(@NonNull String key, long defaultValue) {
+    ImmutablePrimitive value = this.get(key);
+    return value == null ? defaultValue : value.longValue();
+  }
+
+  public short getShort(@NonNull String key, short defaultValue) {
+    ImmutablePrimitive value = this.get(key);
+    return value == null ? defaultValue : value.shortValue();
+  }
+
+  @Nullable
+  public String getString(@NonNull String key, @Nullable String defaultValue) {
+    ImmutableString value = this.get(key);
+    return value == null ? defaultValue : value.getValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TagType getType() {
+    return TagType.COMPOUND;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    int hashCode = this.hashCode;
+
+    if (hashCode == 0 && this.size != 0) {
+      int[] sum = {0};
+      this.root.forEach((k, v) -> sum[0] += k.hashCode() ^ v.hashCode());
+      this.hashCode = hashCode = sum[0];
+    }
+
+    return hashCode;
+  }
+
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public CompoundTag toMutable() {
+    CompoundTag tag = new CompoundTag();
+    this.root.forEach((k, v) -> tag.put(k, v.toMutable()));
+    return tag;
+  }
+
+  /**
+   * Creates a compound which maps the specified key to a new value.
+   *
+   * @param key a key.
+   * @param value a value.
+   * @return a compound (or this compound if the key already maps to the exact same value).
+   */
+  @NonNull
+  public ImmutableCompound with(@NonNull String key, @NonNull ImmutableTag value) {
+    boolean[] added = new boolean[1];
+    Node root = this.root.with(key, key.hashCode(), value, 0, added);
+
+    if (root == this.root) {
+      return this;
+    }
+
+    return new ImmutableCompound(root, added[0] ? this.size + 1 : this.size);
+  }
+
+  @NonNull
+  public ImmutableCompound withByte(@NonNull String key, byte value) {
+    return this.with(key, ImmutablePrimitive.ofByte(value));
+  }
+
+  @NonNull
+  public ImmutableCompound withDouble(@NonNull String key, double value) {
+    return this.with(key, ImmutablePrimitive.ofDouble(value));
+  }
+
+  @NonNull
+  public ImmutableCompound withFloat(@NonNull String key, float value) {
+    return this.with(key, ImmutablePrimitive.ofFloat(value));
+  }
+
+  @NonNull
+  public ImmutableCompound withInteger(@NonNull String key, int value) {
+    return this.with(key, ImmutablePrimitive.ofInteger(value));
+  }
+
+  @NonNull
+  public ImmutableCompound withLong(@NonNull String key, long value) {
+    return this.with(key, ImmutablePrimitive.ofLong(value));
+  }
+
+  @NonNull
+  public ImmutableCompound withShort(@NonNull String key, short value) {
+    return this.with(key, ImmutablePrimitive.ofShort(value));
+  }
+
+  @NonNull
+  public ImmutableCompound withString(@NonNull String key, @NonNull String value) {
+    return this.with(key, ImmutableString.of(value));
+  }
+
+  /**
+   * Creates a compound which does not contain the specified key.
+   *
+   * @param key a key.
+   * @return a compound (or this compound if the key does not exist).
+   */
+  @NonNull
+  public ImmutableCompound without(@NonNull String key) {
+    Node root = this.root.without(key, key.hashCode(), 0);
+
+    if (root == this.root) {
+      return this;
+    }
+    if (root == null) {
+      return EMPTY;
+    }
+
+    return new ImmutableCompound(root, this.size - 1);
+  }
+
+  /**
+   * Represents a single node within the trie.
+   */
+  private interface Node {
+
+    void forEach(@NonNull BiConsumer<String, ImmutableTag> action);
+
+    @Nullable
+    ImmutableTag get(@NonNull String key, int hash, int shift);
+
+    @NonNull
+    Node with(@NonNull String key, int hash, @NonNull ImmutableTag value, int shift,
+        @NonNull boolean[] added);
+
+    /**
+     * Removes a key from this node.
+     *
+     * @return a node, this node if the key does not exist or null if the node is now empty.
+     */
+    @Nullable
+    Node without(@NonNull String key, int hash, int shift);
+  }
+
+  /**
+   * Provides a node which stores up to 32 entries or child nodes within a compressed array which
+   * is indexed through a bitmap (entries are stored as key and value pairs while child nodes are
+   * stored with a null key).
+   */
+  private static final class BitmapNode implements Node {
+
+    static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private final int bitmap;
+    private final Object[] array;
+
+    BitmapNode(int bitmap, @NonNull Object[] array) {
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEach(@NonNull BiConsumer<String, ImmutableTag> action) {
+      for (int i = 0; i < this.array.length; i += 2) {
+        Object key = this.array[i];
+
+        if (key == null) {
+          ((Node) this.array[i + 1]).forEach(action);
+        } else {
+          action.accept((String) key, (ImmutableTag) this.array[i + 1]);
+        }
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public ImmutableTag get(@NonNull String key, int hash, int shift) {
+      int bit = bit(hash, shift);
+
+      if ((this.bitmap & bit) == 0) {
+        return null;
+      }
+
+      int i = 2 * Integer.bitCount(this.bitmap & (bit - 1));
+      Object current = this.array[i];
+
+      if (current == null) {
+        return ((Node) this.array[i + 1]).get(key, hash, shift + BITS_PER_LEVEL);
+      }
+
+      return key.equals(current) ? (ImmutableTag) this.array[i + 1] : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Node with(@NonNull String key, int hash, @NonNull ImmutableTag value, int shift,
+        @NonNull boolean[] added) {
+      int bit = bit(hash, shift);
+      int i = 2 * Integer.bitCount(this.bitmap & (bit - 1));
+
+      if ((this.bitmap & bit) == 0) {
+        Object[] array = new Object[this.array.length + 2];
+        System.arraycopy(this.array, 0, array, 0, i);
+        array[i] = key;
+        array[i + 1] = value;
+        System.arraycopy(this.array, i, array, i + 2, this.array.length - i);
+
+        added[0] = true;
+        return new BitmapNode(this.bitmap | bit, array);
+      }
+
+      Object currentKey = this.array[i];
+      Object currentValue = this.array[i + 1];
+
+      if (currentKey == null) {
+        Node child = ((Node) currentValue)
+            .with(key, hash, value, shift + BITS_PER_LEVEL, added);
+        return child == currentValue ? this : this.replace(i, null, child);
+      }
+
+      if (key.equals(currentKey)) {
+        return currentValue == value ? this : this.replace(i, currentKey, value);
+      }
+
+      added[0] = true;
+      return this.replace(i, null,
+          createNode(shift + BITS_PER_LEVEL, (String) currentKey, (ImmutableTag) currentValue,
+              hash, key, value));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public Node without(@NonNull String key, int hash, int shift) {
+      int bit = bit(hash, shift);
+
+      if ((this.bitmap & bit) == 0) {
+        return this;
+      }
+
+      int i = 2 * Integer.bitCount(this.bitmap & (bit - 1));
+      Object currentKey = this.array[i];
+
+      if (currentKey == null) {
+        Node child = (Node) this.array[i + 1];
+        Node replacement = child.without(key, hash, shift + BITS_PER_LEVEL);
+
+        if (replacement == child) {
+          return this;
+        }
+        if (replacement != null) {
+          return this.replace(i, null, replacement);
+        }
+      } else if (!key.equals(currentKey)) {
+        return this;
+      }
+
+      if (this.bitmap == bit) {
+        return null;
+      }
+
+      Object[] array = new Object[this.array.length - 2];
+      System.arraycopy(this.array, 0, array, 0, i);
+      System.arraycopy(this.array, i + 2, array, i, array.length - i);
+      return new BitmapNode(this.bitmap ^ bit, array);
+    }
+
+    @NonNull
+    private BitmapNode replace(int i, @Nullable Object key, @NonNull Object value) {
+      Object[] array = this.array.clone();
+      array[i] = key;
+      array[i + 1] = value;
+      return new BitmapNode(this.bitmap, array);
+    }
+  }
+
+  /**
+   * Provides a node which stores entries whose keys share the exact same hash code.
+   */
+  private static final class CollisionNode implements Node {
+
+    private final int hash;
+    private final Object[] array;
+
+    CollisionNode(int hash, @NonNull Object[] array) {
+      this.hash = hash;
+      this.array = array;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEach(@NonNull BiConsumer<String, ImmutableTag> action) {
+      for (int i = 0; i < this.array.length; i += 2) {
+        action.accept((String) this.array[i], (ImmutableTag) this.array[i + 1]);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public ImmutableTag get(@NonNull String key, int hash, int shift) {
+      int i = this.indexOf(key);
+      return i == -1 ? null : (ImmutableTag) this.array[i + 1];
+    }
+
+    private int indexOf(@NonNull String key) {
+      for (int i = 0; i < this.array.length; i += 2) {
+        if (key.equals(this.array[i])) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Node with(@NonNull String key, int hash, @NonNull ImmutableTag value, int shift,
+        @NonNull boolean[] added) {
+      if (hash != this.hash) {
+        // nest this node within a bitmap node so that the new key may branch off at this level
+        return new BitmapNode(bit(this.hash, shift), new Object[]{null, this})
+            .with(key, hash, value, shift, added);
+      }
+
+      int i = this.indexOf(key);
+
+      if (i != -1) {
+        if (this.array[i + 1] == value) {
+          return this;
+        }
+
+        Object[] array = this.array.clone();
+        array[i + 1] = value;
+        return new CollisionNode(hash, array);
+      }
+
+      Object[] array = Arrays.copyOf(this.array, this.array.length + 2);
+      array[this.array.length] = key;
+      array[this.array.length + 1] = value;
+
+      added[0] = true;
+      return new CollisionNode(hash, array);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public Node without(@NonNull String key, int hash, int shift) {
+      int i = this.indexOf(key);
+
+      if (i == -1) {
+        return this;
+      }
+      if (this.array.length == 2) {
+        return null;
+      }
+
+      Object[] array = new Object[this.array.length - 2];
+      System.arraycopy(this.array, 0, array, 0, i);
+      System.arraycopy(this.array, i + 2, array, i, array.length - i);
+      return new CollisionNode(hash, array);
+    }
+  }
+}
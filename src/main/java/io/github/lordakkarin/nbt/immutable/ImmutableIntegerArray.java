@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.immutable;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.github.lordakkarin.nbt.tree.IntegerArrayTag;
+import io.github.lordakkarin.nbt.tree.Tag;
+import java.util.Arrays;
+
+/**
+ * Represents an immutable NBT array of integer values.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ImmutableIntegerArray implements ImmutableTag {
+
+  private static final ImmutableIntegerArray EMPTY = new ImmutableIntegerArray(new int[0]);
+
+  private final int[] value;
+
+  private ImmutableIntegerArray(@NonNull int[] value) {
+    this.value = value;
+  }
+
+  /**
+   * Creates an immutable array which holds a copy of the specified values.
+   *
+   * @param value an array of values.
+   * @return an immutable array.
+   */
+  @NonNull
+  public static ImmutableIntegerArray of(@NonNull int... value) {
+    return wrap(value.clone());
+  }
+
+  /**
+   * Creates an immutable array which takes ownership of the specified values (the array must not
+   * be modified afterwards).
+   *
+   * @param value an array of values.
+   * @return an immutable array.
+   */
+  @NonNull
+  static ImmutableIntegerArray wrap(@NonNull int[] value) {
+    return value.length == 0 ? EMPTY : new ImmutableIntegerArray(value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void accept(@NonNull TagVisitor visitor) {
+    visitor.visitIntegerArray(this.value.length);
+
+    for (int value : this.value) {
+      visitor.visitInteger(value);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ImmutableIntegerArray)) {
+      return false;
+    }
+
+    return Arrays.equals(this.value, ((ImmutableIntegerArray) o).value);
+  }
+
+  public int get(int index) {
+    return this.value[index];
+  }
+
+  public int getLength() {
+    return this.value.length;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TagType getType() {
+    return TagType.INTEGER_ARRAY;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(this.value);
+  }
+
+  /**
+   * Creates a copy of the values within this array.
+   *
+   * @return an array of values.
+   */
+  @NonNull
+  public int[] toArray() {
+    return this.value.clone();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Tag toMutable() {
+    return new IntegerArrayTag(this.value.clone());
+  }
+}
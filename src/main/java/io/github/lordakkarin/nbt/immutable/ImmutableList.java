@@ -0,0 +1,360 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.immutable;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.github.lordakkarin.nbt.tree.ListTag;
+import io.github.lordakkarin.nbt.tree.Tag;
+import io.github.lordakkarin.nbt.tree.TagFactory;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Represents an immutable NBT list which is backed by a 32-way vector trie with a separate tail
+ * (appending and replacing elements copies at most one array per level while all remaining nodes
+ * are shared with the original list).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ImmutableList<T extends ImmutableTag> implements Iterable<T>, ImmutableTag {
+
+  private static final int BITS_PER_LEVEL = 5;
+  private static final int WIDTH = 1 << BITS_PER_LEVEL;
+  private static final int LEVEL_MASK = WIDTH - 1;
+  private static final Object[] EMPTY_NODE = new Object[WIDTH];
+  private static final Object[] EMPTY_TAIL = new Object[0];
+  private static final ImmutableList<?> EMPTY = new ImmutableList<>(TagType.END, 0,
+      BITS_PER_LEVEL, EMPTY_NODE, EMPTY_TAIL);
+
+  private final TagType type;
+  private final int size;
+  private final int shift;
+  private final Object[] root;
+  private final Object[] tail;
+  private int hashCode;
+
+  private ImmutableList(@NonNull TagType type, int size, int shift, @NonNull Object[] root,
+      @NonNull Object[] tail) {
+    this.type = type;
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  /**
+   * Retrieves an empty list of an undetermined element type.
+   *
+   * @param <T> an element type.
+   * @return an empty list.
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public static <T extends ImmutableTag> ImmutableList<T> empty() {
+    return (ImmutableList<T>) EMPTY;
+  }
+
+  /**
+   * Retrieves an empty list of the specified element type.
+   *
+   * @param type an element type.
+   * @param <T> an element type.
+   * @return an empty list.
+   */
+  @NonNull
+  public static <T extends ImmutableTag> ImmutableList<T> empty(@NonNull TagType type) {
+    if (type == TagType.END) {
+      return empty();
+    }
+
+    return new ImmutableList<>(type, 0, BITS_PER_LEVEL, EMPTY_NODE, EMPTY_TAIL);
+  }
+
+  @NonNull
+  private static Object[] newPath(int level, @NonNull Object[] node) {
+    if (level == 0) {
+      return node;
+    }
+
+    Object[] path = new Object[WIDTH];
+    path[0] = newPath(level - BITS_PER_LEVEL, node);
+    return path;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void accept(@NonNull TagVisitor visitor) {
+    visitor.visitList(this.type, this.size);
+
+    for (T element : this) {
+      element.accept(visitor);
+    }
+  }
+
+  /**
+   * Creates a list which contains all elements of this list followed by the specified element.
+   *
+   * @param element an element.
+   * @return a list.
+   * @throws IllegalArgumentException when the element type does not match.
+   */
+  @NonNull
+  public ImmutableList<T> append(@NonNull T element) {
+    TagType type = this.type;
+
+    if (type == TagType.END) {
+      type = element.getType();
+    } else if (type != element.getType()) {
+      throw new IllegalArgumentException(
+          "Cannot add tag of type " + element.getType() + " to " + this.type + " list");
+    }
+
+    if (this.size - this.tailOffset() < WIDTH) {
+      Object[] tail = new Object[this.tail.length + 1];
+      System.arraycopy(this.tail, 0, tail, 0, this.tail.length);
+      tail[this.tail.length] = element;
+
+      return new ImmutableList<>(type, this.size + 1, this.shift, this.root, tail);
+    }
+
+    Object[] root;
+    int shift = this.shift;
+
+    if ((this.size >>> BITS_PER_LEVEL) > (1 << this.shift)) {
+      root = new Object[WIDTH];
+      root[0] = this.root;
+      root[1] = newPath(this.shift, this.tail);
+      shift += BITS_PER_LEVEL;
+    } else {
+      root = this.pushTail(this.shift, this.root, this.tail);
+    }
+
+    return new ImmutableList<>(type, this.size + 1, shift, root, new Object[]{element});
+  }
+
+  @NonNull
+  private Object[] arrayFor(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+    if (index >= this.tailOffset()) {
+      return this.tail;
+    }
+
+    Object[] node = this.root;
+    for (int level = this.shift; level > 0; level -= BITS_PER_LEVEL) {
+      node = (Object[]) node[(index >>> level) & LEVEL_MASK];
+    }
+
+    return node;
+  }
+
+  @NonNull
+  private static Object[] assoc(int level, @NonNull Object[] node, int index,
+      @NonNull Object element) {
+    Object[] copy = node.clone();
+
+    if (level == 0) {
+      copy[index & LEVEL_MASK] = element;
+    } else {
+      int child = (index >>> level) & LEVEL_MASK;
+      copy[child] = assoc(level - BITS_PER_LEVEL, (Object[]) node[child], index, element);
+    }
+
+    return copy;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ImmutableList)) {
+      return false;
+    }
+
+    ImmutableList<?> list = (ImmutableList<?>) o;
+
+    if (this.type != list.type || this.size != list.size) {
+      return false;
+    }
+
+    Iterator<?> iterator = list.iterator();
+    for (T element : this) {
+      if (!element.equals(iterator.next())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public T get(int index) {
+    return (T) this.arrayFor(index)[index & LEVEL_MASK];
+  }
+
+  /**
+   * Retrieves the type of the elements within this list.
+   *
+   * @return an element type.
+   */
+  @NonNull
+  public TagType getElementType() {
+    return this.type;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TagType getType() {
+    return TagType.LIST;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    int hashCode = this.hashCode;
+
+    if (hashCode == 0) {
+      hashCode = this.type.ordinal();
+
+      for (T element : this) {
+        hashCode = 31 * hashCode + element.hashCode();
+      }
+
+      this.hashCode = hashCode;
+    }
+
+    return hashCode;
+  }
+
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int index;
+      private Object[] array;
+
+      @Override
+      public boolean hasNext() {
+        return this.index < ImmutableList.this.size;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (this.index >= ImmutableList.this.size) {
+          throw new NoSuchElementException();
+        }
+
+        if ((this.index & LEVEL_MASK) == 0) {
+          this.array = ImmutableList.this.arrayFor(this.index);
+        }
+
+        return (T) this.array[this.index++ & LEVEL_MASK];
+      }
+    };
+  }
+
+  @NonNull
+  private Object[] pushTail(int level, @NonNull Object[] parent, @NonNull Object[] tail) {
+    int child = ((this.size - 1) >>> level) & LEVEL_MASK;
+    Object[] copy = parent.clone();
+
+    if (level == BITS_PER_LEVEL) {
+      copy[child] = tail;
+    } else {
+      Object[] node = (Object[]) parent[child];
+      copy[child] = node != null ? this.pushTail(level - BITS_PER_LEVEL, node, tail)
+          : newPath(level - BITS_PER_LEVEL, tail);
+    }
+
+    return copy;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  private int tailOffset() {
+    return this.size < WIDTH ? 0 : ((this.size - 1) >>> BITS_PER_LEVEL) << BITS_PER_LEVEL;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public ListTag<Tag> toMutable() {
+    ListTag<Tag> tag = TagFactory.createList(this.type);
+
+    for (T element : this) {
+      tag.add(element.toMutable());
+    }
+
+    return tag;
+  }
+
+  /**
+   * Creates a list in which the element at the specified index has been replaced.
+   *
+   * @param index an index.
+   * @param element an element.
+   * @return a list.
+   * @throws IllegalArgumentException when the element type does not match.
+   */
+  @NonNull
+  public ImmutableList<T> with(int index, @NonNull T element) {
+    if (element.getType() != this.type) {
+      throw new IllegalArgumentException(
+          "Cannot add tag of type " + element.getType() + " to " + this.type + " list");
+    }
+
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+
+    if (index >= this.tailOffset()) {
+      Object[] tail = this.tail.clone();
+      tail[index & LEVEL_MASK] = element;
+      return new ImmutableList<>(this.type, this.size, this.shift, this.root, tail);
+    }
+
+    return new ImmutableList<>(this.type, this.size, this.shift,
+        assoc(this.shift, this.root, index, element), this.tail);
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.immutable;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.github.lordakkarin.nbt.tree.ByteTag;
+import io.github.lordakkarin.nbt.tree.DoubleTag;
+import io.github.lordakkarin.nbt.tree.FloatTag;
+import io.github.lordakkarin.nbt.tree.IntegerTag;
+import io.github.lordakkarin.nbt.tree.LongTag;
+import io.github.lordakkarin.nbt.tree.ShortTag;
+import io.github.lordakkarin.nbt.tree.Tag;
+
+/**
+ * Represents an immutable numeric NBT value of any primitive type (instances for commonly used
+ * small values are shared rather than allocated).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class ImmutablePrimitive implements ImmutableTag {
+
+  /**
+   * Defines the range of values for which shared instances are kept (bytes are cached in their
+   * entirety).
+   */
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 1023;
+
+  private static final ImmutablePrimitive[] BYTES = createCache(TagType.BYTE, -128, 127);
+  private static final ImmutablePrimitive[] SHORTS = createCache(TagType.SHORT, CACHE_LOW,
+      CACHE_HIGH);
+  private static final ImmutablePrimitive[] INTEGERS = createCache(TagType.INTEGER, CACHE_LOW,
+      CACHE_HIGH);
+  private static final ImmutablePrimitive[] LONGS = createCache(TagType.LONG, CACHE_LOW,
+      CACHE_HIGH);
+  private static final ImmutablePrimitive FLOAT_ZERO = new ImmutablePrimitive(TagType.FLOAT,
+      Float.floatToIntBits(0f));
+  private static final ImmutablePrimitive FLOAT_ONE = new ImmutablePrimitive(TagType.FLOAT,
+      Float.floatToIntBits(1f));
+  private static final ImmutablePrimitive DOUBLE_ZERO = new ImmutablePrimitive(TagType.DOUBLE,
+      Double.doubleToLongBits(0d));
+  private static final ImmutablePrimitive DOUBLE_ONE = new ImmutablePrimitive(TagType.DOUBLE,
+      Double.doubleToLongBits(1d));
+
+  private final TagType type;
+  private final long bits;
+
+  private ImmutablePrimitive(@NonNull TagType type, long bits) {
+    this.type = type;
+    this.bits = bits;
+  }
+
+  @NonNull
+  private static ImmutablePrimitive[] createCache(@NonNull TagType type, int low, int high) {
+    ImmutablePrimitive[] cache = new ImmutablePrimitive[high - low + 1];
+
+    for (int i = 0; i < cache.length; ++i) {
+      cache[i] = new ImmutablePrimitive(type, low + i);
+    }
+
+    return cache;
+  }
+
+  @NonNull
+  public static ImmutablePrimitive ofByte(byte value) {
+    return BYTES[value + 128];
+  }
+
+  @NonNull
+  public static ImmutablePrimitive ofDouble(double value) {
+    long bits = Double.doubleToLongBits(value);
+
+    if (bits == DOUBLE_ZERO.bits) {
+      return DOUBLE_ZERO;
+    }
+    if (bits == DOUBLE_ONE.bits) {
+      return DOUBLE_ONE;
+    }
+
+    return new ImmutablePrimitive(TagType.DOUBLE, bits);
+  }
+
+  @NonNull
+  public static ImmutablePrimitive ofFloat(float value) {
+    int bits = Float.floatToIntBits(value);
+
+    if (bits == FLOAT_ZERO.bits) {
+      return FLOAT_ZERO;
+    }
+    if (bits == FLOAT_ONE.bits) {
+      return FLOAT_ONE;
+    }
+
+    return new ImmutablePrimitive(TagType.FLOAT, bits);
+  }
+
+  @NonNull
+  public static ImmutablePrimitive ofInteger(int value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return INTEGERS[value - CACHE_LOW];
+    }
+
+    return new ImmutablePrimitive(TagType.INTEGER, value);
+  }
+
+  @NonNull
+  public static ImmutablePrimitive ofLong(long value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return LONGS[(int) value - CACHE_LOW];
+    }
+
+    return new ImmutablePrimitive(TagType.LONG, value);
+  }
+
+  @NonNull
+  public static ImmutablePrimitive ofShort(short value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return SHORTS[value - CACHE_LOW];
+    }
+
+    return new ImmutablePrimitive(TagType.SHORT, value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void accept(@NonNull TagVisitor visitor) {
+    switch (this.type) {
+      case BYTE:
+        visitor.visitByte((byte) this.bits);
+        break;
+      case SHORT:
+        visitor.visitShort((short) this.bits);
+        break;
+      case INTEGER:
+        visitor.visitInteger((int) this.bits);
+        break;
+      case LONG:
+        visitor.visitLong(this.bits);
+        break;
+      case FLOAT:
+        visitor.visitFloat(this.floatValue());
+        break;
+      case DOUBLE:
+        visitor.visitDouble(this.doubleValue());
+        break;
+    }
+  }
+
+  public byte byteValue() {
+    return (byte) this.longValue();
+  }
+
+  public double doubleValue() {
+    switch (this.type) {
+      case FLOAT:
+        return Float.intBitsToFloat((int) this.bits);
+      case DOUBLE:
+        return Double.longBitsToDouble(this.bits);
+      default:
+        return this.bits;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ImmutablePrimitive)) {
+      return false;
+    }
+
+    ImmutablePrimitive that = (ImmutablePrimitive) o;
+    return this.type == that.type && this.bits == that.bits;
+  }
+
+  public float floatValue() {
+    return (float) this.doubleValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TagType getType() {
+    return this.type;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return 31 * this.type.ordinal() + Long.hashCode(this.bits);
+  }
+
+  public int intValue() {
+    return (int) this.longValue();
+  }
+
+  public long longValue() {
+    switch (this.type) {
+      case FLOAT:
+      case DOUBLE:
+        return (long) this.doubleValue();
+      default:
+        return this.bits;
+    }
+  }
+
+  public short shortValue() {
+    return (short) this.longValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Tag toMutable() {
+    switch (this.type) {
+      case BYTE:
+        return new ByteTag(this.byteValue());
+      case SHORT:
+        return new ShortTag(this.shortValue());
+      case INTEGER:
+        return new IntegerTag(this.intValue());
+      case LONG:
+        return new LongTag(this.bits);
+      case FLOAT:
+        return new FloatTag(this.floatValue());
+      default:
+        return new DoubleTag(this.doubleValue());
+    }
+  }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.immutable;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.event.AbstractTagVisitor;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Provides a visitor which converts the inputs from types like {@link
+ * io.github.lordakkarin.nbt.event.TagReader} into a tree of immutable tags.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class ImmutableTreeVisitor extends AbstractTagVisitor {
+
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  private String rootName;
+  private ImmutableTag result;
+
+  public ImmutableTreeVisitor() {
+    this(null);
+  }
+
+  public ImmutableTreeVisitor(@Nullable TagVisitor next) {
+    super(next);
+  }
+
+  /**
+   * Retrieves the top-level tag which has been constructed by this visitor.
+   *
+   * @return a tag or, if no complete tag has been visited yet, null.
+   */
+  @Nullable
+  public ImmutableTag getResult() {
+    return this.result;
+  }
+
+  /**
+   * Retrieves the name of the visited root tag.
+   *
+   * @return a name or, if no root has been visited, null.
+   */
+  @Nullable
+  public String getRootName() {
+    return this.rootName;
+  }
+
+  /**
+   * Passes a completed tag to its parent (or publishes it as the result when it has no parent) and
+   * completes all parents which are full as a result.
+   *
+   * @param tag a tag.
+   */
+  private void push(@NonNull ImmutableTag tag) {
+    while (!this.stack.isEmpty()) {
+      Frame frame = this.stack.peek();
+      frame.push(tag);
+
+      if (!frame.isComplete()) {
+        return;
+      }
+
+      this.stack.pop();
+      tag = frame.build();
+    }
+
+    this.result = tag;
+  }
+
+  /**
+   * Pushes a new frame or, when the frame does not expect any elements, passes its result to the
+   * parent right away.
+   *
+   * @param frame a frame.
+   */
+  private void open(@NonNull Frame frame) {
+    if (frame.isComplete()) {
+      this.push(frame.build());
+    } else {
+      this.stack.push(frame);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitByte(byte value) {
+    Frame frame = this.stack.peek();
+
+    if (frame instanceof ByteArrayFrame) {
+      ByteArrayFrame array = (ByteArrayFrame) frame;
+      array.value[array.index++] = value;
+
+      if (array.isComplete()) {
+        this.stack.pop();
+        this.push(array.build());
+      }
+    } else {
+      this.push(ImmutablePrimitive.ofByte(value));
+    }
+
+    super.visitByte(value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitByteArray(int length) {
+    this.open(new ByteArrayFrame(length));
+
+    super.visitByteArray(length);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitCompound() {
+    this.stack.push(new CompoundFrame());
+
+    super.visitCompound();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitCompoundEnd() {
+    Frame frame = this.stack.peek();
+
+    if (frame instanceof CompoundFrame) {
+      this.stack.pop();
+      this.push(frame.build());
+    }
+
+    super.visitCompoundEnd();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitDouble(double value) {
+    this.push(ImmutablePrimitive.ofDouble(value));
+
+    super.visitDouble(value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitFloat(float value) {
+    this.push(ImmutablePrimitive.ofFloat(value));
+
+    super.visitFloat(value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitInteger(int value) {
+    Frame frame = this.stack.peek();
+
+    if (frame instanceof IntegerArrayFrame) {
+      IntegerArrayFrame array = (IntegerArrayFrame) frame;
+      array.value[array.index++] = value;
+
+      if (array.isComplete()) {
+        this.stack.pop();
+        this.push(array.build());
+      }
+    } else {
+      this.push(ImmutablePrimitive.ofInteger(value));
+    }
+
+    super.visitInteger(value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitIntegerArray(int length) {
+    this.open(new IntegerArrayFrame(length));
+
+    super.visitIntegerArray(length);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitKey(@NonNull String name) {
+    Frame frame = this.stack.peek();
+
+    if (frame instanceof CompoundFrame) {
+      ((CompoundFrame) frame).key = name;
+    } else if (frame == null) {
+      this.rootName = name;
+    }
+
+    super.visitKey(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitList(@Nullable TagType type, int length) {
+    this.open(new ListFrame(type == null ? TagType.END : type, length));
+
+    super.visitList(type, length);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitLong(long value) {
+    Frame frame = this.stack.peek();
+
+    if (frame instanceof LongArrayFrame) {
+      LongArrayFrame array = (LongArrayFrame) frame;
+      array.value[array.index++] = value;
+
+      if (array.isComplete()) {
+        this.stack.pop();
+        this.push(array.build());
+      }
+    } else {
+      this.push(ImmutablePrimitive.ofLong(value));
+    }
+
+    super.visitLong(value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitLongArray(int length) {
+    this.open(new LongArrayFrame(length));
+
+    super.visitLongArray(length);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitRoot(@NonNull String name) {
+    this.stack.clear();
+    this.rootName = name;
+    this.result = null;
+    this.stack.push(new CompoundFrame());
+
+    super.visitRoot(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitShort(short value) {
+    this.push(ImmutablePrimitive.ofShort(value));
+
+    super.visitShort(value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitString(@NonNull String value) {
+    this.push(ImmutableString.of(value));
+
+    super.visitString(value);
+  }
+
+  /**
+   * Represents a compound, list or array which is still being populated.
+   */
+  private interface Frame {
+
+    @NonNull
+    ImmutableTag build();
+
+    boolean isComplete();
+
+    void push(@NonNull ImmutableTag tag);
+  }
+
+  private static final class ByteArrayFrame implements Frame {
+
+    private final byte[] value;
+    private int index;
+
+    ByteArrayFrame(int length) {
+      this.value = new byte[length];
+    }
+
+    @NonNull
+    @Override
+    public ImmutableTag build() {
+      return ImmutableByteArray.wrap(this.value);
+    }
+
+    @Override
+    public boolean isComplete() {
+      return this.index >= this.value.length;
+    }
+
+    @Override
+    public void push(@NonNull ImmutableTag tag) {
+      throw new IllegalStateException(
+          "Could not push " + tag.getType() + " to end of byte array: Invalid tag type");
+    }
+  }
+
+  private static final class CompoundFrame implements Frame {
+
+    private ImmutableCompound compound = ImmutableCompound.EMPTY;
+    private String key;
+
+    @NonNull
+    @Override
+    public ImmutableTag build() {
+      return this.compound;
+    }
+
+    @Override
+    public boolean isComplete() {
+      return false;
+    }
+
+    @Override
+    public void push(@NonNull ImmutableTag tag) {
+      if (this.key == null) {
+        throw new IllegalStateException("Could not push " + tag.getType() + " to compound: No key");
+      }
+
+      this.compound = this.compound.with(this.key, tag);
+      this.key = null;
+    }
+  }
+
+  private static final class IntegerArrayFrame implements Frame {
+
+    private final int[] value;
+    private int index;
+
+    IntegerArrayFrame(int length) {
+      this.value = new int[length];
+    }
+
+    @NonNull
+    @Override
+    public ImmutableTag build() {
+      return ImmutableIntegerArray.wrap(this.value);
+    }
+
+    @Override
+    public boolean isComplete() {
+      return this.index >= this.value.length;
+    }
+
+    @Override
+    public void push(@NonNull ImmutableTag tag) {
+      throw new IllegalStateException(
+          "Could not push " + tag.getType() + " to end of integer array: Invalid tag type");
+    }
+  }
+
+  private static final class LongArrayFrame implements Frame {
+
+    private final long[] value;
+    private int index;
+
+    LongArrayFrame(int length) {
+      this.value = new long[length];
+    }
+
+    @NonNull
+    @Override
+    public ImmutableTag build() {
+      return ImmutableLongArray.wrap(this.value);
+    }
+
+    @Override
+    public boolean isComplete() {
+      return this.index >= this.value.length;
+    }
+
+    @Override
+    public void push(@NonNull ImmutableTag tag) {
+      throw new IllegalStateException(
+          "Could not push " + tag.getType() + " to end of long array: Invalid tag type");
+    }
+  }
+
+  private static final class ListFrame implements Frame {
+
+    private ImmutableList<ImmutableTag> list;
+    private int remaining;
+
+    ListFrame(@NonNull TagType type, int length) {
+      this.list = ImmutableList.empty(type);
+      this.remaining = length;
+    }
+
+    @NonNull
+    @Override
+    public ImmutableTag build() {
+      return this.list;
+    }
+
+    @Override
+    public boolean isComplete() {
+      return this.remaining <= 0;
+    }
+
+    @Override
+    public void push(@NonNull ImmutableTag tag) {
+      this.list = this.list.append(tag);
+      --this.remaining;
+    }
+  }
+}
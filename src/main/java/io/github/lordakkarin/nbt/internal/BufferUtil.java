@@ -0,0 +1,560 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.internal;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides encoding helpers which are shared between the event and tree based implementations
+ * (this type is not considered part of the public API and is thus not exported).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class BufferUtil {
+
+  /**
+   * Defines the maximum amount of encoded bytes which fit into the length prefix of a string.
+   */
+  public static final int MAX_STRING_LENGTH = 0xFFFF;
+
+  /**
+   * Defines the minimum amount of space which is made available when a buffer has been filled
+   * while reading from a channel.
+   */
+  private static final int READ_CHUNK_SIZE = 4096;
+
+  private BufferUtil() {
+  }
+
+  /**
+   * Verifies that the UTF-8 encoded form of a string fits into the length prefix of a string
+   * without encoding it (unpaired surrogates are counted the way they are replaced when written).
+   *
+   * @param value a string value.
+   * @throws IllegalArgumentException when the encoded string exceeds the maximum length.
+   */
+  public static void checkString(@NonNull CharSequence value) {
+    int count = value.length();
+
+    if (count * 3L <= MAX_STRING_LENGTH) {
+      return;
+    }
+
+    long length = 0;
+
+    for (int i = 0; i < count; ++i) {
+      char c = value.charAt(i);
+
+      if (c < 0x80) {
+        ++length;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (!Character.isSurrogate(c)) {
+        length += 3;
+      } else if (!Character.isHighSurrogate(c) || i + 1 == count) {
+        ++length;
+      } else if (Character.isLowSurrogate(value.charAt(++i))) {
+        length += 4;
+      } else {
+        length += 2;
+      }
+    }
+
+    if (length > MAX_STRING_LENGTH) {
+      throw new IllegalArgumentException(
+          "Malformed NBT data: String exceeds maximum length of " + MAX_STRING_LENGTH + " bytes");
+    }
+  }
+
+  /**
+   * Writes a UTF-8 encoded string (prefixed by its encoded length) into a buffer without creating
+   * an intermediate byte array.
+   *
+   * @param buffer a buffer.
+   * @param value a string value.
+   * @throws IllegalArgumentException when the encoded string exceeds the maximum length.
+   */
+  public static void writeString(@NonNull ByteBuf buffer, @NonNull String value) {
+    int lengthIndex = buffer.writerIndex();
+    buffer.writeShort(0);
+
+    int length = ByteBufUtil.writeUtf8(buffer, value);
+
+    if (length > MAX_STRING_LENGTH) {
+      buffer.writerIndex(lengthIndex);
+      throw new IllegalArgumentException(
+          "Malformed NBT data: String exceeds maximum length of " + MAX_STRING_LENGTH + " bytes");
+    }
+
+    buffer.setShort(lengthIndex, length);
+  }
+
+  /**
+   * Writes an array of integers in big endian byte order using a single bulk copy where the
+   * buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value an array of integers.
+   */
+  public static void writeIntegers(@NonNull ByteBuf buffer, @NonNull int[] value) {
+    writeIntegers(buffer, value, 0, value.length);
+  }
+
+  /**
+   * Writes a range of integers in big endian byte order using a single bulk copy where the buffer
+   * permits it.
+   *
+   * @param buffer a buffer.
+   * @param value an array of integers.
+   * @param offset the index of the first integer.
+   * @param count the amount of integers.
+   */
+  public static void writeIntegers(@NonNull ByteBuf buffer, @NonNull int[] value, int offset,
+      int count) {
+    int length = count * Integer.BYTES;
+    buffer.ensureWritable(length);
+
+    if (buffer.nioBufferCount() != 1) {
+      for (int i = offset; i < offset + count; ++i) {
+        buffer.writeInt(value[i]);
+      }
+
+      return;
+    }
+
+    int index = buffer.writerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asIntBuffer()
+        .put(value, offset, count);
+    buffer.writerIndex(index + length);
+  }
+
+  /**
+   * Writes the remaining integers of a buffer in big endian byte order using a single bulk copy
+   * where the target buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a buffer of integers.
+   */
+  public static void writeIntegers(@NonNull ByteBuf buffer, @NonNull IntBuffer value) {
+    int length = value.remaining() * Integer.BYTES;
+    buffer.ensureWritable(length);
+
+    if (buffer.nioBufferCount() != 1) {
+      while (value.hasRemaining()) {
+        buffer.writeInt(value.get());
+      }
+
+      return;
+    }
+
+    int index = buffer.writerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(value);
+    buffer.writerIndex(index + length);
+  }
+
+  /**
+   * Reads the entire contents of a channel into a buffer (the buffer is only expanded once its
+   * capacity has been exhausted).
+   *
+   * @param channel a channel.
+   * @param buffer a target buffer.
+   * @throws IOException when reading fails.
+   */
+  public static void readFully(@NonNull ReadableByteChannel channel, @NonNull ByteBuf buffer)
+      throws IOException {
+    while (true) {
+      if (!buffer.isWritable()) {
+        buffer.ensureWritable(READ_CHUNK_SIZE);
+      }
+
+      int index = buffer.writerIndex();
+      int length = channel.read(buffer.nioBuffer(index, buffer.writableBytes()));
+
+      if (length <= 0) {
+        break;
+      }
+
+      buffer.writerIndex(index + length);
+    }
+  }
+
+  /**
+   * Reads big endian integers into the remaining space of a buffer using a single bulk copy where
+   * the source buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target buffer of integers.
+   */
+  public static void readIntegers(@NonNull ByteBuf buffer, @NonNull IntBuffer value) {
+    int length = value.remaining() * Integer.BYTES;
+
+    if (buffer.nioBufferCount() != 1 || buffer.readableBytes() < length) {
+      while (value.hasRemaining()) {
+        value.put(buffer.readInt());
+      }
+
+      return;
+    }
+
+    int index = buffer.readerIndex();
+    value.put(buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asIntBuffer());
+    buffer.readerIndex(index + length);
+  }
+
+  /**
+   * Reads a UTF-8 encoded string (prefixed by its encoded length) from a buffer.
+   *
+   * @param buffer a buffer.
+   * @return a string.
+   */
+  @NonNull
+  public static String readString(@NonNull ByteBuf buffer) {
+    int length = buffer.readUnsignedShort();
+    String value = buffer.toString(buffer.readerIndex(), length, StandardCharsets.UTF_8);
+    buffer.skipBytes(length);
+
+    return value;
+  }
+
+  /**
+   * Reads an array of big endian integers using a single bulk copy where the buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target array.
+   */
+  public static void readIntegers(@NonNull ByteBuf buffer, @NonNull int[] value) {
+    readIntegers(buffer, value, 0, value.length);
+  }
+
+  /**
+   * Reads a range of big endian integers using a single bulk copy where the buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target array.
+   * @param offset the index of the first integer.
+   * @param count the amount of integers.
+   */
+  public static void readIntegers(@NonNull ByteBuf buffer, @NonNull int[] value, int offset,
+      int count) {
+    int length = count * Integer.BYTES;
+
+    if (buffer.nioBufferCount() != 1 || buffer.readableBytes() < length) {
+      for (int i = offset; i < offset + count; ++i) {
+        value[i] = buffer.readInt();
+      }
+
+      return;
+    }
+
+    int index = buffer.readerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asIntBuffer()
+        .get(value, offset, count);
+    buffer.readerIndex(index + length);
+  }
+
+  /**
+   * Writes an array of longs in big endian byte order using a single bulk copy where the
+   * buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value an array of longs.
+   */
+  public static void writeLongs(@NonNull ByteBuf buffer, @NonNull long[] value) {
+    writeLongs(buffer, value, 0, value.length);
+  }
+
+  /**
+   * Writes a range of longs in big endian byte order using a single bulk copy where the buffer
+   * permits it.
+   *
+   * @param buffer a buffer.
+   * @param value an array of longs.
+   * @param offset the index of the first long.
+   * @param count the amount of longs.
+   */
+  public static void writeLongs(@NonNull ByteBuf buffer, @NonNull long[] value, int offset,
+      int count) {
+    int length = count * Long.BYTES;
+    buffer.ensureWritable(length);
+
+    if (buffer.nioBufferCount() != 1) {
+      for (int i = offset; i < offset + count; ++i) {
+        buffer.writeLong(value[i]);
+      }
+
+      return;
+    }
+
+    int index = buffer.writerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asLongBuffer()
+        .put(value, offset, count);
+    buffer.writerIndex(index + length);
+  }
+
+  /**
+   * Writes the remaining longs of a buffer in big endian byte order using a single bulk copy
+   * where the target buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a buffer of longs.
+   */
+  public static void writeLongs(@NonNull ByteBuf buffer, @NonNull LongBuffer value) {
+    int length = value.remaining() * Long.BYTES;
+    buffer.ensureWritable(length);
+
+    if (buffer.nioBufferCount() != 1) {
+      while (value.hasRemaining()) {
+        buffer.writeLong(value.get());
+      }
+
+      return;
+    }
+
+    int index = buffer.writerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asLongBuffer().put(value);
+    buffer.writerIndex(index + length);
+  }
+
+  /**
+   * Reads an array of big endian longs using a single bulk copy where the buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target array.
+   */
+  public static void readLongs(@NonNull ByteBuf buffer, @NonNull long[] value) {
+    readLongs(buffer, value, 0, value.length);
+  }
+
+  /**
+   * Reads a range of big endian longs using a single bulk copy where the buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target array.
+   * @param offset the index of the first long.
+   * @param count the amount of longs.
+   */
+  public static void readLongs(@NonNull ByteBuf buffer, @NonNull long[] value, int offset,
+      int count) {
+    int length = count * Long.BYTES;
+
+    if (buffer.nioBufferCount() != 1 || buffer.readableBytes() < length) {
+      for (int i = offset; i < offset + count; ++i) {
+        value[i] = buffer.readLong();
+      }
+
+      return;
+    }
+
+    int index = buffer.readerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asLongBuffer()
+        .get(value, offset, count);
+    buffer.readerIndex(index + length);
+  }
+
+  /**
+   * Reads big endian longs into the remaining space of a buffer using a single bulk copy where
+   * the source buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target buffer of longs.
+   */
+  public static void readLongs(@NonNull ByteBuf buffer, @NonNull LongBuffer value) {
+    int length = value.remaining() * Long.BYTES;
+
+    if (buffer.nioBufferCount() != 1 || buffer.readableBytes() < length) {
+      while (value.hasRemaining()) {
+        value.put(buffer.readLong());
+      }
+
+      return;
+    }
+
+    int index = buffer.readerIndex();
+    value.put(buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asLongBuffer());
+    buffer.readerIndex(index + length);
+  }
+
+  /**
+   * Writes a range of shorts in big endian byte order using a single bulk copy where the buffer
+   * permits it.
+   *
+   * @param buffer a buffer.
+   * @param value an array of shorts.
+   * @param offset the index of the first short.
+   * @param count the amount of shorts.
+   */
+  public static void writeShorts(@NonNull ByteBuf buffer, @NonNull short[] value, int offset,
+      int count) {
+    int length = count * Short.BYTES;
+    buffer.ensureWritable(length);
+
+    if (buffer.nioBufferCount() != 1) {
+      for (int i = offset; i < offset + count; ++i) {
+        buffer.writeShort(value[i]);
+      }
+
+      return;
+    }
+
+    int index = buffer.writerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asShortBuffer()
+        .put(value, offset, count);
+    buffer.writerIndex(index + length);
+  }
+
+  /**
+   * Reads a range of big endian shorts using a single bulk copy where the buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target array.
+   * @param offset the index of the first short.
+   * @param count the amount of shorts.
+   */
+  public static void readShorts(@NonNull ByteBuf buffer, @NonNull short[] value, int offset,
+      int count) {
+    int length = count * Short.BYTES;
+
+    if (buffer.nioBufferCount() != 1 || buffer.readableBytes() < length) {
+      for (int i = offset; i < offset + count; ++i) {
+        value[i] = buffer.readShort();
+      }
+
+      return;
+    }
+
+    int index = buffer.readerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asShortBuffer()
+        .get(value, offset, count);
+    buffer.readerIndex(index + length);
+  }
+
+  /**
+   * Writes a range of floats in big endian byte order using a single bulk copy where the buffer
+   * permits it.
+   *
+   * @param buffer a buffer.
+   * @param value an array of floats.
+   * @param offset the index of the first float.
+   * @param count the amount of floats.
+   */
+  public static void writeFloats(@NonNull ByteBuf buffer, @NonNull float[] value, int offset,
+      int count) {
+    int length = count * Float.BYTES;
+    buffer.ensureWritable(length);
+
+    if (buffer.nioBufferCount() != 1) {
+      for (int i = offset; i < offset + count; ++i) {
+        buffer.writeFloat(value[i]);
+      }
+
+      return;
+    }
+
+    int index = buffer.writerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asFloatBuffer()
+        .put(value, offset, count);
+    buffer.writerIndex(index + length);
+  }
+
+  /**
+   * Reads a range of big endian floats using a single bulk copy where the buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target array.
+   * @param offset the index of the first float.
+   * @param count the amount of floats.
+   */
+  public static void readFloats(@NonNull ByteBuf buffer, @NonNull float[] value, int offset,
+      int count) {
+    int length = count * Float.BYTES;
+
+    if (buffer.nioBufferCount() != 1 || buffer.readableBytes() < length) {
+      for (int i = offset; i < offset + count; ++i) {
+        value[i] = buffer.readFloat();
+      }
+
+      return;
+    }
+
+    int index = buffer.readerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asFloatBuffer()
+        .get(value, offset, count);
+    buffer.readerIndex(index + length);
+  }
+
+  /**
+   * Writes a range of doubles in big endian byte order using a single bulk copy where the buffer
+   * permits it.
+   *
+   * @param buffer a buffer.
+   * @param value an array of doubles.
+   * @param offset the index of the first double.
+   * @param count the amount of doubles.
+   */
+  public static void writeDoubles(@NonNull ByteBuf buffer, @NonNull double[] value, int offset,
+      int count) {
+    int length = count * Double.BYTES;
+    buffer.ensureWritable(length);
+
+    if (buffer.nioBufferCount() != 1) {
+      for (int i = offset; i < offset + count; ++i) {
+        buffer.writeDouble(value[i]);
+      }
+
+      return;
+    }
+
+    int index = buffer.writerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asDoubleBuffer()
+        .put(value, offset, count);
+    buffer.writerIndex(index + length);
+  }
+
+  /**
+   * Reads a range of big endian doubles using a single bulk copy where the buffer permits it.
+   *
+   * @param buffer a buffer.
+   * @param value a target array.
+   * @param offset the index of the first double.
+   * @param count the amount of doubles.
+   */
+  public static void readDoubles(@NonNull ByteBuf buffer, @NonNull double[] value, int offset,
+      int count) {
+    int length = count * Double.BYTES;
+
+    if (buffer.nioBufferCount() != 1 || buffer.readableBytes() < length) {
+      for (int i = offset; i < offset + count; ++i) {
+        value[i] = buffer.readDouble();
+      }
+
+      return;
+    }
+
+    int index = buffer.readerIndex();
+    buffer.nioBuffer(index, length).order(ByteOrder.BIG_ENDIAN).asDoubleBuffer()
+        .get(value, offset, count);
+    buffer.readerIndex(index + length);
+  }
+}
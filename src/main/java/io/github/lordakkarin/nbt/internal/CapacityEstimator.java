@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.internal;
+
+/**
+ * Estimates the initial capacity of new buffers based on the sizes of recently processed
+ * documents (this type is not considered part of the public API and is thus not exported). Updates
+ * are intentionally not synchronized since a lost sample merely delays the adaption of the
+ * estimate.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class CapacityEstimator {
+
+  /**
+   * Defines the lower and upper bounds of the estimated capacity (buffers may still grow beyond
+   * the upper bound when necessary).
+   */
+  private static final int MINIMUM_CAPACITY = 256;
+  private static final int MAXIMUM_CAPACITY = 4 * 1024 * 1024;
+
+  /**
+   * Defines the weight of each new sample (expressed as a power of two).
+   */
+  private static final int SAMPLE_WEIGHT_SHIFT = 3;
+
+  private volatile int average = MINIMUM_CAPACITY;
+
+  /**
+   * Retrieves the capacity which is suggested for the next buffer.
+   *
+   * @return a capacity.
+   */
+  public int estimate() {
+    int average = this.average;
+    return Math.min(MAXIMUM_CAPACITY, Math.max(MINIMUM_CAPACITY, average + (average >>> 2)));
+  }
+
+  /**
+   * Records the final size of a processed document.
+   *
+   * @param size a size in bytes.
+   */
+  public void record(int size) {
+    int average = this.average;
+    this.average = average + ((Math.min(size, MAXIMUM_CAPACITY) - average) >> SAMPLE_WEIGHT_SHIFT);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Provides a spliterator which traverses a range of a byte buffer and boxes its values one at a
+ * time (values are boxed through {@link Byte#valueOf(byte)} and are thus never allocated).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+class ByteArraySpliterator implements Spliterator<Byte> {
+
+  private final ByteBuffer buffer;
+  private int index;
+  private final int fence;
+
+  ByteArraySpliterator(@NonNull ByteBuffer buffer, int origin, int fence) {
+    this.buffer = buffer;
+    this.index = origin;
+    this.fence = fence;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int characteristics() {
+    return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long estimateSize() {
+    return this.fence - this.index;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void forEachRemaining(@NonNull Consumer<? super Byte> action) {
+    ByteBuffer buffer = this.buffer;
+    int fence = this.fence;
+
+    for (int i = this.index; i < fence; ++i) {
+      action.accept(buffer.get(i));
+    }
+
+    this.index = fence;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean tryAdvance(@NonNull Consumer<? super Byte> action) {
+    if (this.index >= this.fence) {
+      return false;
+    }
+
+    action.accept(this.buffer.get(this.index++));
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Nullable
+  @Override
+  public Spliterator<Byte> trySplit() {
+    int origin = this.index;
+    int middle = (origin + this.fence) >>> 1;
+
+    if (origin >= middle) {
+      return null;
+    }
+
+    this.index = middle;
+    return new ByteArraySpliterator(this.buffer, origin, middle);
+  }
+}
@@ -17,10 +17,16 @@
 package io.github.lordakkarin.nbt.tree;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import io.github.lordakkarin.nbt.event.TagType;
 import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
 
 /**
  * Represents an NBT tag which contains an arbitrary set of byte values.
@@ -29,14 +35,28 @@ import java.util.Iterator;
  */
 public class ByteArrayTag implements Iterable<Byte>, Tag {
 
-  private byte[] value;
+  private ByteBuffer value;
+  private boolean frozen;
+  private boolean shared;
+  Owner owner;
+  int epoch;
 
   public ByteArrayTag() {
-    this.value = new byte[0];
+    this(new byte[0]);
   }
 
   public ByteArrayTag(@NonNull byte[] value) {
-    this.value = value;
+    this.value = ByteBuffer.wrap(value);
+  }
+
+  /**
+   * Creates a new tag which is backed by the remaining contents of the specified buffer (changes
+   * to the buffer contents are reflected by the tag and vice versa).
+   *
+   * @param value a backing buffer.
+   */
+  public ByteArrayTag(@NonNull ByteBuffer value) {
+    this.value = value.slice();
   }
 
   /**
@@ -44,11 +64,84 @@ public class ByteArrayTag implements Iterable<Byte>, Tag {
    */
   @Override
   public void accept(@NonNull TagVisitor visitor) {
-    visitor.visitByteArray(this.value.length);
+    ByteBuffer value = this.value;
+    int length = value.capacity();
+
+    visitor.visitByteArray(length);
+
+    for (int i = 0; i < length; ++i) {
+      visitor.visitByte(value.get(i));
+    }
+  }
+
+  /**
+   * Records the parent which holds this tag.
+   *
+   * @param owner the owner of the parent or null if the tag has been removed from it.
+   */
+  void adopt(@Nullable Owner owner) {
+    if (!this.frozen) {
+      Owner.claim(this, this.owner, this.epoch);
+      this.owner = owner;
+      this.epoch = owner != null ? owner.epoch : 0;
+    }
+  }
+
+  /**
+   * Creates a new tag of the specified length which stores its values outside of the heap.
+   *
+   * @param length an amount of values.
+   * @return a tag.
+   */
+  @NonNull
+  public static ByteArrayTag allocateDirect(int length) {
+    return new ByteArrayTag(ByteBuffer.allocateDirect(length));
+  }
+
+  /**
+   * Retrieves the backing array of this tag.
+   *
+   * @return an array or null if the values are not stored within an array of matching length.
+   */
+  @Nullable
+  private byte[] array() {
+    ByteBuffer value = this.value;
+
+    if (!value.hasArray() || value.arrayOffset() != 0
+        || value.array().length != value.capacity()) {
+      return null;
+    }
+
+    return value.array();
+  }
 
-    for (byte value : this.value) {
-      visitor.visitByte(value);
+  /**
+   * Creates a view of the values within this tag (changes to the view are reflected by the tag
+   * while the view itself is read-only once the tag has been frozen).
+   *
+   * @return a buffer.
+   */
+  @NonNull
+  public ByteBuffer asByteBuffer() {
+    if (this.frozen) {
+      return this.value.asReadOnlyBuffer();
     }
+
+    this.own();
+    return this.value.duplicate();
+  }
+
+  /**
+   * Verifies that this tag may be modified and brings it up to date with the forks of its parent.
+   *
+   * @throws IllegalStateException when the tag has been frozen.
+   */
+  private void ensureMutable() {
+    if (this.frozen) {
+      throw new IllegalStateException("Cannot modify frozen tag");
+    }
+
+    this.epoch = Owner.claim(this, this.owner, this.epoch);
   }
 
   /**
@@ -64,15 +157,83 @@ public class ByteArrayTag implements Iterable<Byte>, Tag {
     }
 
     ByteArrayTag that = (ByteArrayTag) o;
-    return Arrays.equals(this.value, that.value);
+    return this.value.equals(that.value);
   }
 
   public byte get(int index) {
-    return this.value[index];
+    return this.value.get(index);
+  }
+
+  /**
+   * Copies a range of values into an array.
+   *
+   * @param index the index of the first value.
+   * @param target a target array.
+   * @param offset the index at which the first value is stored within the target array.
+   * @param length the amount of values.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void getBytes(int index, @NonNull byte[] target, int offset, int length) {
+    this.range(index, length).get(target, offset, length);
+  }
+
+  /**
+   * Copies a range of values into a buffer (the amount of values is given by the remaining space
+   * within the target buffer).
+   *
+   * @param index the index of the first value.
+   * @param target a target buffer.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void getBytes(int index, @NonNull ByteBuffer target) {
+    target.put(this.range(index, target.remaining()));
+  }
+
+  /**
+   * Writes a range of values to the end of a buffer.
+   *
+   * @param index the index of the first value.
+   * @param target a target buffer.
+   * @param length the amount of values.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void getBytes(int index, @NonNull ByteBuf target, int length) {
+    target.writeBytes(this.range(index, length));
   }
 
   public int getLength() {
-    return this.value.length;
+    return this.value.capacity();
+  }
+
+  /**
+   * Creates a copy of this tag which shares its storage with this tag until either of them is
+   * modified or exposes its storage (frozen tags never modify their storage and thus continue to
+   * share it).
+   *
+   * @return a copy.
+   */
+  @NonNull
+  ByteArrayTag fork() {
+    ByteArrayTag copy = new ByteArrayTag(this.value);
+    copy.shared = true;
+
+    if (!this.frozen) {
+      this.shared = true;
+    }
+
+    return copy;
+  }
+
+  /**
+   * Prevents any further modifications to this tag (the array returned by {@link #getValue()}
+   * remains the backing array of this tag and must thus not be modified once it has been frozen).
+   *
+   * @return this tag.
+   */
+  @NonNull
+  public ByteArrayTag freeze() {
+    this.frozen = true;
+    return this;
   }
 
   /**
@@ -84,13 +245,45 @@ public class ByteArrayTag implements Iterable<Byte>, Tag {
     return TagType.BYTE_ARRAY;
   }
 
+  /**
+   * Retrieves the values within this tag (the backing array is returned as-is unless it is shared
+   * with a fork while the values of tags which are backed by a buffer are copied into a new array).
+   *
+   * @return an array of values.
+   */
   @NonNull
   public byte[] getValue() {
-    return this.value;
+    if (!this.frozen) {
+      this.own();
+    }
+
+    byte[] value = this.array();
+
+    if (value == null) {
+      value = new byte[this.value.capacity()];
+      this.value.duplicate().get(value);
+    }
+
+    return value;
+  }
+
+  /**
+   * Evaluates whether the values within this tag are stored outside of the heap.
+   *
+   * @return true if direct, false otherwise.
+   */
+  public boolean isDirect() {
+    return this.value.isDirect();
+  }
+
+  public boolean isFrozen() {
+    return this.frozen;
   }
 
   public void setValue(@NonNull byte[] value) {
-    this.value = value;
+    this.ensureMutable();
+    this.value = ByteBuffer.wrap(value);
+    this.shared = false;
   }
 
   /**
@@ -98,24 +291,157 @@ public class ByteArrayTag implements Iterable<Byte>, Tag {
    */
   @Override
   public int hashCode() {
-    return Arrays.hashCode(this.value);
+    byte[] array = this.array();
+
+    if (array != null) {
+      return Arrays.hashCode(array);
+    }
+
+    ByteBuffer value = this.value;
+    int hashCode = 1;
+
+    for (int i = 0; i < value.capacity(); ++i) {
+      hashCode = 31 * hashCode + value.get(i);
+    }
+
+    return hashCode;
   }
 
   /**
    * {@inheritDoc}
    */
+  @NonNull
   @Override
   public Iterator<Byte> iterator() {
-    Byte[] obj = new Byte[this.value.length];
+    return Spliterators.iterator(this.spliterator());
+  }
+
+  /**
+   * Verifies that this tag may be modified and replaces storage which is shared with a fork
+   * with a private copy (the copy retains the storage kind of this tag).
+   */
+  private void own() {
+    this.ensureMutable();
+
+    if (this.shared) {
+      int capacity = this.value.capacity();
+      ByteBuffer value = this.value.isDirect() ? ByteBuffer.allocateDirect(capacity)
+          : ByteBuffer.allocate(capacity);
+      value.duplicate().put(this.value.duplicate());
+
+      this.value = value;
+      this.shared = false;
+    }
+  }
+
+  /**
+   * Creates a possibly parallel stream over the values within this tag.
+   *
+   * @return a stream of values.
+   */
+  @NonNull
+  public IntStream parallelStream() {
+    return this.stream().parallel();
+  }
+
+  /**
+   * Creates a view of a range of values within this tag.
+   *
+   * @param index the index of the first value.
+   * @param length the amount of values.
+   * @return a buffer.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  @NonNull
+  private ByteBuffer range(int index, int length) {
+    int capacity = this.value.capacity();
 
-    for (int i = 0; i < obj.length; ++i) {
-      obj[i] = this.value[i];
+    if (index < 0 || length < 0 || index > capacity - length) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", Length: " + length + ", Size: " + capacity);
     }
 
-    return new ArrayIterator<>(obj);
+    ByteBuffer range = this.value.duplicate();
+    range.limit(index + length);
+    range.position(index);
+    return range;
   }
 
   public void set(int index, byte value) {
-    this.value[index] = value;
+    this.own();
+    this.value.put(index, value);
+  }
+
+  /**
+   * Replaces a range of values with the contents of an array.
+   *
+   * @param index the index of the first value.
+   * @param source a source array.
+   * @param offset the index of the first value within the source array.
+   * @param length the amount of values.
+   * @throws IllegalStateException when the tag has been frozen.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void setBytes(int index, @NonNull byte[] source, int offset, int length) {
+    this.own();
+    this.range(index, length).put(source, offset, length);
+  }
+
+  /**
+   * Replaces a range of values with the remaining contents of a buffer.
+   *
+   * @param index the index of the first value.
+   * @param source a source buffer.
+   * @throws IllegalStateException when the tag has been frozen.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void setBytes(int index, @NonNull ByteBuffer source) {
+    this.own();
+    this.range(index, source.remaining()).put(source);
+  }
+
+  /**
+   * Replaces a range of values with values read from a buffer.
+   *
+   * @param index the index of the first value.
+   * @param source a source buffer.
+   * @param length the amount of values.
+   * @throws IllegalStateException when the tag has been frozen.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void setBytes(int index, @NonNull ByteBuf source, int length) {
+    this.own();
+    source.readBytes(this.range(index, length));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Spliterator<Byte> spliterator() {
+    return new ByteArraySpliterator(this.value, 0, this.value.capacity());
+  }
+
+  /**
+   * Creates a sequential stream over the values within this tag (values are widened to int as
+   * there is no primitive stream of bytes).
+   *
+   * @return a stream of values.
+   */
+  @NonNull
+  public IntStream stream() {
+    ByteBuffer value = this.value;
+    return IntStream.range(0, value.capacity()).map(value::get);
+  }
+
+  /**
+   * Writes the length and values of this tag to a buffer.
+   *
+   * @param buffer a target buffer.
+   */
+  void write(@NonNull ByteBuf buffer) {
+    buffer.writeInt(this.value.capacity());
+    buffer.writeBytes(this.value.duplicate());
   }
 }
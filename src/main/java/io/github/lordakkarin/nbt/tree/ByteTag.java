@@ -17,6 +17,7 @@
 package io.github.lordakkarin.nbt.tree;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import io.github.lordakkarin.nbt.event.TagType;
 import io.github.lordakkarin.nbt.event.TagVisitor;
 import java.util.Objects;
@@ -29,6 +30,9 @@ import java.util.Objects;
 public class ByteTag implements Tag {
 
   private byte value;
+  private boolean frozen;
+  Owner owner;
+  int epoch;
 
   public ByteTag() {
   }
@@ -42,7 +46,20 @@ public class ByteTag implements Tag {
    */
   @Override
   public void accept(@NonNull TagVisitor visitor) {
-    visitor.visitByte(this.value);
+    visitor.visitByte(this.getValue());
+  }
+
+  /**
+   * Records the parent which holds this tag.
+   *
+   * @param owner the owner of the parent or null if the tag has been removed from it.
+   */
+  void adopt(@Nullable Owner owner) {
+    if (!this.frozen) {
+      Owner.claim(this, this.owner, this.epoch);
+      this.owner = owner;
+      this.epoch = owner != null ? owner.epoch : 0;
+    }
   }
 
   /**
@@ -58,7 +75,18 @@ public class ByteTag implements Tag {
     }
 
     ByteTag byteTag = (ByteTag) o;
-    return this.value == byteTag.value;
+    return this.getValue() == byteTag.getValue();
+  }
+
+  /**
+   * Prevents any further modifications to this tag.
+   *
+   * @return this tag.
+   */
+  @NonNull
+  public ByteTag freeze() {
+    this.frozen = true;
+    return this;
   }
 
   /**
@@ -74,7 +102,16 @@ public class ByteTag implements Tag {
     return this.value;
   }
 
+  public boolean isFrozen() {
+    return this.frozen;
+  }
+
   public void setValue(byte value) {
+    if (this.frozen) {
+      throw new IllegalStateException("Cannot modify frozen tag");
+    }
+
+    this.epoch = Owner.claim(this, this.owner, this.epoch);
     this.value = value;
   }
 
@@ -83,6 +120,6 @@ public class ByteTag implements Tag {
    */
   @Override
   public int hashCode() {
-    return Objects.hash(this.value);
+    return Objects.hash(this.getValue());
   }
 }
@@ -0,0 +1,1531 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Provides the backing store of compound tags which keeps its keys and values within flat parallel
+ * arrays that are scanned linearly while the compound is small and indexed by an open-addressing
+ * hash table once it grows. The keys and index are borrowed from a shared {@link Shape} until a
+ * key is removed or the layout is no longer eligible for sharing at which point the compound
+ * switches to a private dictionary (removals move the last element into the vacated slot,
+ * iteration order is thus unspecified). Primitive values may be stored unboxed within a parallel
+ * array of raw bits in which case their wrapper tags are only created once they are requested
+ * through the map interface (as a result, even read operations may modify the internal state and
+ * mutable maps are not safe for concurrent readers).
+ * Forked maps share their arrays and values until either side modifies them. Values which are
+ * modified through references that have been retained elsewhere leave a copy of their previous
+ * state behind for the forks which still borrow them (see {@link Owner}) while forks replace
+ * borrowed values with forks of said state once they expose or modify them. Frozen maps reject all
+ * modifications and hand out frozen wrappers for unboxed values without storing them. Maps which
+ * are loaded from an encoded buffer are only indexed once they are first accessed at which point
+ * they merely record the location of their non-primitive values (which are referred to as pending)
+ * and decode them once they are requested.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class CompoundMap extends AbstractMap<String, Tag> {
+
+  /**
+   * Defines the amount of elements beyond which lookups are performed through a hash index rather
+   * than a linear scan (the index is discarded again once the compound shrinks to half of this
+   * size).
+   */
+  static final int INDEX_THRESHOLD = 8;
+
+  private static final int INITIAL_CAPACITY = 4;
+  private static final int MINIMUM_INDEX_CAPACITY = 32;
+  private static final Tag[] EMPTY_VALUES = new Tag[0];
+  private static final TagType[] TYPES = TagType.values();
+  private static final long OFFSET_MASK = 0xFFFFFFFFL;
+
+  String[] keys = Shape.EMPTY.keys;
+  Tag[] values = EMPTY_VALUES;
+  long[] primitives;
+  byte[] kinds;
+  int size;
+  private ByteBuf source;
+  private int deferred = -1;
+  private Shape shape = Shape.EMPTY;
+  private int[] index;
+  private boolean shared;
+  private boolean borrowed;
+  Owner owner;
+  boolean frozen;
+  private int modCount;
+  private EntrySet entrySet;
+
+  /**
+   * Spreads the higher bits of a hash code in order to reduce collisions within the index.
+   *
+   * @param hashCode a hash code.
+   * @return a spread hash code.
+   */
+  private static int spread(int hashCode) {
+    return hashCode ^ (hashCode >>> 16);
+  }
+
+  /**
+   * Passes the value within a slot to a visitor without creating a wrapper for unboxed values.
+   *
+   * @param slot a slot.
+   * @param visitor a visitor.
+   */
+  void accept(int slot, @NonNull TagVisitor visitor) {
+    Tag value = this.boxedAt(slot);
+
+    if (value == null && this.isPending(slot)) {
+      value = this.box(slot);
+    }
+
+    if (value != null) {
+      value.accept(visitor);
+      return;
+    }
+
+    long bits = this.primitives[slot];
+
+    switch (TYPES[this.kinds[slot]]) {
+      case BYTE:
+        visitor.visitByte((byte) bits);
+        break;
+      case SHORT:
+        visitor.visitShort((short) bits);
+        break;
+      case INTEGER:
+        visitor.visitInteger((int) bits);
+        break;
+      case LONG:
+        visitor.visitLong(bits);
+        break;
+      case FLOAT:
+        visitor.visitFloat(Float.intBitsToFloat((int) bits));
+        break;
+      case DOUBLE:
+        visitor.visitDouble(Double.longBitsToDouble(bits));
+        break;
+    }
+  }
+
+  /**
+   * Appends a new key to the end of the backing arrays (the key must not be present yet and the
+   * caller is expected to populate the returned slot).
+   *
+   * @param key a key.
+   * @return a slot.
+   */
+  private int append(@NonNull String key) {
+    if (this.shape != null) {
+      Shape shape = this.shape.transition(key);
+
+      if (shape != null) {
+        if (this.size == this.values.length) {
+          this.growValues(growCapacity(this.size));
+        }
+
+        this.shape = shape;
+        this.keys = shape.keys;
+        this.index = shape.index;
+        ++this.modCount;
+        return this.size++;
+      }
+
+      this.toDictionary();
+    }
+
+    if (this.size == this.keys.length) {
+      int capacity = growCapacity(this.size);
+      this.keys = Arrays.copyOf(this.keys, capacity);
+      this.growValues(capacity);
+    }
+
+    this.keys[this.size] = key;
+    ++this.size;
+    ++this.modCount;
+
+    if (this.index != null) {
+      if (this.size * 2 > this.index.length) {
+        this.rebuildIndex();
+      } else {
+        this.insertIndex(this.size - 1);
+      }
+    } else if (this.size > INDEX_THRESHOLD) {
+      this.rebuildIndex();
+    }
+
+    return this.size - 1;
+  }
+
+  /**
+   * Creates a wrapper tag for an unboxed value or decodes a pending value.
+   *
+   * @param slot a slot which holds an unboxed or pending value.
+   * @return a tag.
+   */
+  @NonNull
+  private Tag box(int slot) {
+    long bits = this.primitives[slot];
+    byte kind = this.kinds[slot];
+
+    if (kind < 0) {
+      TagType type = TYPES[~kind];
+      int offset = (int) (bits & OFFSET_MASK);
+
+      if (type == TagType.COMPOUND) {
+        CompoundMap map = new CompoundMap();
+        map.load(this.source, offset);
+        return new CompoundTag(map);
+      }
+
+      return TreeDecoder.decodeValue(this.source.slice(offset, (int) (bits >>> 32)), type);
+    }
+
+    switch (TYPES[kind]) {
+      case BYTE:
+        return new ByteTag((byte) bits);
+      case SHORT:
+        return new ShortTag((short) bits);
+      case INTEGER:
+        return new IntegerTag((int) bits);
+      case LONG:
+        return new LongTag(bits);
+      case FLOAT:
+        return new FloatTag(Float.intBitsToFloat((int) bits));
+      case DOUBLE:
+        return new DoubleTag(Double.longBitsToDouble(bits));
+      default:
+        throw new IllegalStateException("Slot " + slot + " does not hold an unboxed value");
+    }
+  }
+
+  /**
+   * Retrieves the boxed or decoded value within a slot without creating a wrapper for unboxed
+   * values (values which have been borrowed from the map this map has been forked from are
+   * replaced with a fork first).
+   *
+   * @param slot a slot.
+   * @return a tag or null if the slot holds an unboxed or pending value.
+   */
+  @Nullable
+  Tag boxedAt(int slot) {
+    Tag value = this.values[slot];
+
+    if (value != null && this.borrowed && !this.owns(value)) {
+      value = this.resolve(slot, value);
+    }
+
+    return value;
+  }
+
+  /**
+   * Builds an index for the specified keys with a capacity which keeps its load factor at or below
+   * one third.
+   *
+   * @param keys an array of keys.
+   * @param size the amount of keys.
+   * @return an index.
+   */
+  @NonNull
+  static int[] buildIndex(@NonNull String[] keys, int size) {
+    int capacity = MINIMUM_INDEX_CAPACITY;
+    while (capacity < size * 3) {
+      capacity <<= 1;
+    }
+
+    int[] index = new int[capacity];
+    for (int i = 0; i < size; ++i) {
+      insertIndex(index, keys, i);
+    }
+
+    return index;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clear() {
+    this.ensureMutable();
+
+    if (this.owner != null) {
+      this.owner.claim();
+    }
+
+    for (int i = 0; i < this.size; ++i) {
+      this.detach(this.values[i]);
+    }
+
+    if (this.shared) {
+      this.values = EMPTY_VALUES;
+      this.primitives = null;
+      this.kinds = null;
+      this.shared = false;
+      this.borrowed = false;
+    } else {
+      Arrays.fill(this.values, 0, this.size, null);
+
+      if (this.kinds != null) {
+        Arrays.fill(this.kinds, 0, this.size, (byte) 0);
+      }
+    }
+
+    this.shape = Shape.EMPTY;
+    this.keys = Shape.EMPTY.keys;
+    this.index = null;
+    this.source = null;
+    this.deferred = -1;
+    this.size = 0;
+    ++this.modCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean containsKey(Object key) {
+    return this.indexOf(key) != -1;
+  }
+
+  /**
+   * Copies the encoded payload of a pending value into a buffer without decoding it.
+   *
+   * @param slot a slot which holds a pending value.
+   * @param target a target buffer.
+   */
+  void copyPending(int slot, @NonNull ByteBuf target) {
+    long bits = this.primitives[slot];
+    target.writeBytes(this.source, (int) (bits & OFFSET_MASK), (int) (bits >>> 32));
+  }
+
+  /**
+   * Removes the index entry of a slot and shifts subsequent entries of the same probe sequence
+   * back into the vacated position.
+   *
+   * @param slot a slot.
+   */
+  private void deleteIndex(int slot) {
+    int[] index = this.index;
+    int mask = index.length - 1;
+    int i = this.findIndexPosition(slot);
+    int j = i;
+
+    while (true) {
+      j = (j + 1) & mask;
+      int entry = index[j];
+
+      if (entry == 0) {
+        break;
+      }
+
+      int home = spread(this.keys[entry - 1].hashCode()) & mask;
+
+      if (j > i ? (home <= i || home > j) : (home <= i && home > j)) {
+        index[i] = entry;
+        i = j;
+      }
+    }
+
+    index[i] = 0;
+  }
+
+  /**
+   * Releases a value which is removed from this map (values which are held by other maps or have
+   * been borrowed from the map this map has been forked from are left untouched).
+   *
+   * @param value a value or null if the slot holds an unboxed or pending value.
+   */
+  private void detach(@Nullable Tag value) {
+    if (value != null && this.owns(value)) {
+      Owner.adopt(value, null);
+    }
+  }
+
+  /**
+   * Indexes the encoded elements of this map if it has been loaded from a buffer and has not been
+   * accessed since (this method needs to be called before the backing arrays are accessed
+   * directly).
+   *
+   * @throws IllegalStateException when the data is malformed.
+   */
+  void ensureLoaded() {
+    int offset = this.deferred;
+
+    if (offset == -1) {
+      return;
+    }
+
+    this.deferred = -1;
+
+    try {
+      this.index(offset);
+    } catch (RuntimeException ex) {
+      // discard the partial index so that subsequent accesses report the same error
+      this.keys = Shape.EMPTY.keys;
+      this.values = EMPTY_VALUES;
+      this.primitives = null;
+      this.kinds = null;
+      this.shape = Shape.EMPTY;
+      this.index = null;
+      this.size = 0;
+      this.deferred = offset;
+
+      if (ex instanceof IndexOutOfBoundsException) {
+        throw new IllegalStateException("Malformed NBT data: Unexpected end of data", ex);
+      }
+
+      throw ex;
+    }
+  }
+
+  /**
+   * Verifies that this map may be modified.
+   *
+   * @throws IllegalStateException when the map has been frozen.
+   */
+  private void ensureMutable() {
+    if (this.frozen) {
+      throw new IllegalStateException("Cannot modify frozen tag");
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Set<Entry<String, Tag>> entrySet() {
+    this.ensureLoaded();
+
+    if (this.entrySet == null) {
+      this.entrySet = new EntrySet();
+    }
+
+    return this.entrySet;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Map)) {
+      return false;
+    }
+
+    this.ensureLoaded();
+
+    if (o instanceof CompoundMap) {
+      CompoundMap map = (CompoundMap) o;
+      map.ensureLoaded();
+
+      if (map.size != this.size) {
+        return false;
+      }
+
+      for (int i = 0; i < this.size; ++i) {
+        int slot = map.indexOf(this.keys[i]);
+
+        if (slot == -1 || !this.slotEquals(i, map, slot)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    Map<?, ?> map = (Map<?, ?>) o;
+
+    if (map.size() != this.size) {
+      return false;
+    }
+
+    for (int i = 0; i < this.size; ++i) {
+      Tag value = this.boxedAt(i);
+
+      if (!(value != null ? value : this.box(i)).equals(map.get(this.keys[i]))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Locates the position of a slot within the index.
+   *
+   * @param slot a slot.
+   * @return a position.
+   */
+  private int findIndexPosition(int slot) {
+    int[] index = this.index;
+    int mask = index.length - 1;
+    int i = spread(this.keys[slot].hashCode()) & mask;
+
+    while (index[i] != slot + 1) {
+      i = (i + 1) & mask;
+    }
+
+    return i;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void forEach(@NonNull BiConsumer<? super String, ? super Tag> action) {
+    this.ensureLoaded();
+    int modCount = this.modCount;
+
+    for (int i = 0; i < this.size; ++i) {
+      action.accept(this.keys[i], this.valueAt(i));
+
+      if (modCount != this.modCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  /**
+   * Creates a copy of this map in constant time. Both maps share their arrays until either of them
+   * is modified while the copy borrows the values of this map until it modifies or exposes them
+   * (values which are modified through this map or references which have been retained elsewhere
+   * in the meantime leave their current state behind for the copy beforehand).
+   *
+   * @return a copy.
+   */
+  @NonNull
+  CompoundMap fork() {
+    CompoundMap copy = new CompoundMap();
+    copy.source = this.source;
+
+    if (this.deferred != -1) {
+      // neither map has been indexed yet and both thus index the immutable source on their own
+      copy.deferred = this.deferred;
+      return copy;
+    }
+
+    copy.keys = this.keys;
+    copy.values = this.values;
+    copy.primitives = this.primitives;
+    copy.kinds = this.kinds;
+    copy.size = this.size;
+    copy.shape = this.shape;
+    copy.index = this.index;
+    copy.shared = true;
+    copy.borrowed = true;
+
+    if (!this.frozen) {
+      // frozen values never change and thus never need to leave their state behind
+      this.shared = true;
+      copy.owner = new Owner(this.owner().seal());
+    }
+
+    return copy;
+  }
+
+  /**
+   * Prevents any further modifications to this map and freezes all of its values.
+   */
+  void freeze() {
+    if (this.frozen) {
+      return;
+    }
+
+    this.ensureLoaded();
+    this.own();
+    this.resolveAll();
+
+    for (int i = 0; i < this.size; ++i) {
+      // frozen maps never store values thus pending values need to be decoded beforehand
+      if (this.isPending(i)) {
+        this.values[i] = this.box(i);
+        this.kinds[i] = 0;
+      }
+
+      if (this.values[i] != null) {
+        TagFactory.freeze(this.values[i]);
+      }
+    }
+
+    this.frozen = true;
+  }
+
+  /**
+   * Calculates the capacity of an array which needs to hold at least one more element.
+   *
+   * @param size the current amount of elements.
+   * @return a capacity.
+   */
+  private static int growCapacity(int size) {
+    return Math.max(INITIAL_CAPACITY, size + (size >> 1));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Nullable
+  @Override
+  public Tag get(Object key) {
+    int slot = this.indexOf(key);
+    return slot == -1 ? null : this.valueAt(slot);
+  }
+
+  /**
+   * Retrieves the raw bits of a primitive value without creating a wrapper tag.
+   *
+   * @param slot a slot.
+   * @param type the expected primitive type.
+   * @return the raw bits of the value.
+   * @throws ClassCastException when the slot holds a value of a different type.
+   */
+  long getPrimitive(int slot, @NonNull TagType type) {
+    if (this.kinds != null && this.kinds[slot] == type.ordinal()) {
+      return this.primitives[slot];
+    }
+
+    Tag value = this.boxedAt(slot);
+
+    if (value == null) {
+      value = this.box(slot);
+    }
+
+    switch (type) {
+      case BYTE:
+        return ((ByteTag) value).getValue();
+      case SHORT:
+        return ((ShortTag) value).getValue();
+      case INTEGER:
+        return ((IntegerTag) value).getValue();
+      case LONG:
+        return ((LongTag) value).getValue();
+      case FLOAT:
+        return Float.floatToRawIntBits(((FloatTag) value).getValue());
+      case DOUBLE:
+        return Double.doubleToRawLongBits(((DoubleTag) value).getValue());
+      default:
+        throw new IllegalArgumentException("Not a primitive type: " + type);
+    }
+  }
+
+  /**
+   * Expands the value arrays to the specified capacity.
+   *
+   * @param capacity a capacity.
+   */
+  private void growValues(int capacity) {
+    this.values = Arrays.copyOf(this.values, capacity);
+
+    if (this.kinds != null) {
+      this.primitives = Arrays.copyOf(this.primitives, capacity);
+      this.kinds = Arrays.copyOf(this.kinds, capacity);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    this.ensureLoaded();
+    int hashCode = 0;
+
+    for (int i = 0; i < this.size; ++i) {
+      hashCode += this.keys[i].hashCode() ^ this.slotHashCode(i);
+    }
+
+    return hashCode;
+  }
+
+  /**
+   * Locates the slot which holds the specified key.
+   *
+   * @param key a key.
+   * @return a slot or -1 if no such key exists.
+   */
+  int indexOf(@Nullable Object key) {
+    this.ensureLoaded();
+
+    if (!(key instanceof String)) {
+      return -1;
+    }
+
+    int hashCode = key.hashCode();
+    String[] keys = this.keys;
+
+    if (this.index == null) {
+      for (int i = 0; i < this.size; ++i) {
+        String current = keys[i];
+
+        if (current == key || (current.hashCode() == hashCode && current.equals(key))) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    int[] index = this.index;
+    int mask = index.length - 1;
+
+    for (int i = spread(hashCode) & mask; ; i = (i + 1) & mask) {
+      int slot = index[i] - 1;
+
+      if (slot == -1) {
+        return -1;
+      }
+
+      String current = keys[slot];
+
+      if (current == key || (current.hashCode() == hashCode && current.equals(key))) {
+        return slot;
+      }
+    }
+  }
+
+  /**
+   * Inserts a slot into the index.
+   *
+   * @param slot a slot.
+   */
+  private void insertIndex(int slot) {
+    insertIndex(this.index, this.keys, slot);
+  }
+
+  /**
+   * Inserts a slot into an index.
+   *
+   * @param index an index.
+   * @param keys an array of keys.
+   * @param slot a slot.
+   */
+  private static void insertIndex(@NonNull int[] index, @NonNull String[] keys, int slot) {
+    int mask = index.length - 1;
+    int i = spread(keys[slot].hashCode()) & mask;
+
+    while (index[i] != 0) {
+      i = (i + 1) & mask;
+    }
+
+    index[i] = slot + 1;
+  }
+
+  /**
+   * Evaluates whether a slot holds a pending value which has yet to be decoded.
+   *
+   * @param slot a slot.
+   * @return true if pending, false otherwise.
+   */
+  boolean isPending(int slot) {
+    return this.kinds != null && this.kinds[slot] < 0;
+  }
+
+  /**
+   * Loads the encoded elements of a compound from a buffer into this empty map. The elements are
+   * only indexed once the map is first accessed at which point primitive values are read into
+   * their unboxed representation while all other values remain pending until they are requested
+   * (the buffer is thus referenced by this map and must not be modified or released while the map
+   * is in use).
+   *
+   * @param source a source buffer.
+   * @param offset the offset of the first element within the buffer.
+   */
+  void load(@NonNull ByteBuf source, int offset) {
+    this.source = source;
+    this.deferred = offset;
+  }
+
+  /**
+   * Indexes the encoded elements of a compound (up to and including its terminating end tag)
+   * within the source buffer (nested compounds and lists are merely skipped).
+   *
+   * @param offset the offset of the first element within the source buffer.
+   */
+  private void index(int offset) {
+    // slices retain their own coordinates whereas duplicates of slices may not
+    ByteBuf reader = this.source.slice(offset, this.source.writerIndex() - offset);
+
+    if (this.kinds == null) {
+      this.primitives = new long[this.values.length];
+      this.kinds = new byte[this.values.length];
+    }
+
+    while (true) {
+      TagType type = TagType.byTypeId(reader.readByte());
+
+      if (type == TagType.END) {
+        break;
+      }
+
+      String key = BufferUtil.readString(reader);
+      int slot = this.indexOf(key);
+
+      if (slot == -1) {
+        slot = this.append(key);
+      }
+
+      long bits;
+      int kind = type.ordinal();
+
+      switch (type) {
+        case BYTE:
+          bits = reader.readByte();
+          break;
+        case SHORT:
+          bits = reader.readShort();
+          break;
+        case INTEGER:
+        case FLOAT:
+          bits = reader.readInt();
+          break;
+        case LONG:
+        case DOUBLE:
+          bits = reader.readLong();
+          break;
+        default:
+          // pending values store the length of their payload in the upper half of their bits
+          int start = reader.readerIndex();
+          TreeDecoder.skipValue(reader, type);
+          bits = ((long) (reader.readerIndex() - start) << 32) | (offset + start);
+          kind = ~kind;
+          break;
+      }
+
+      this.values[slot] = null;
+      this.primitives[slot] = bits;
+      this.kinds[slot] = (byte) kind;
+    }
+  }
+
+  /**
+   * Brings this map up to date with the forks of its parent and replaces the arrays which are
+   * shared with a fork with private copies (keys and index which are borrowed from a shape remain
+   * shared as they are never modified in place while borrowed values are only replaced once they
+   * are accessed).
+   */
+  void own() {
+    if (this.owner != null) {
+      this.owner.claim();
+    }
+
+    if (!this.shared) {
+      return;
+    }
+
+    this.values = this.values.clone();
+
+    if (this.kinds != null) {
+      this.primitives = this.primitives.clone();
+      this.kinds = this.kinds.clone();
+    }
+
+    if (this.shape == null) {
+      this.keys = this.keys.clone();
+
+      if (this.index != null) {
+        this.index = this.index.clone();
+      }
+    }
+
+    this.shared = false;
+  }
+
+  /**
+   * Retrieves the owner which tracks the values of this map on behalf of its forks.
+   *
+   * @return an owner.
+   */
+  @NonNull
+  Owner owner() {
+    if (this.owner == null) {
+      this.owner = new Owner(null);
+    }
+
+    return this.owner;
+  }
+
+  /**
+   * Evaluates whether a value is held by this map rather than borrowed from the map this map has
+   * been forked from.
+   *
+   * @param value a value.
+   * @return true if owned, false otherwise.
+   */
+  private boolean owns(@NonNull Tag value) {
+    return this.owner != null && Owner.ownerOf(value) == this.owner;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Nullable
+  @Override
+  public Tag put(@NonNull String key, @NonNull Tag value) {
+    this.ensureMutable();
+    this.own();
+
+    int slot = this.indexOf(key);
+
+    if (slot != -1) {
+      Tag previous = this.values[slot];
+
+      if (previous == null) {
+        previous = this.box(slot);
+        this.kinds[slot] = 0;
+      } else if (this.owns(previous)) {
+        Owner.adopt(previous, null);
+      } else if (this.borrowed) {
+        // borrowed values are still held by the original map
+        previous = this.owner().resolve(previous);
+      }
+
+      Owner.adopt(value, this.owner());
+      this.values[slot] = value;
+      return previous;
+    }
+
+    // the slot needs to be allocated before the value array is accessed since it may be replaced
+    slot = this.append(key);
+    Owner.adopt(value, this.owner());
+    this.values[slot] = value;
+    return null;
+  }
+
+  /**
+   * Stores a primitive value without creating a wrapper tag (existing wrappers of the same type
+   * which are held by this map are updated in place).
+   *
+   * @param key a key.
+   * @param type a primitive type.
+   * @param bits the raw bits of the value.
+   */
+  void putPrimitive(@NonNull String key, @NonNull TagType type, long bits) {
+    this.ensureMutable();
+    this.own();
+
+    int slot = this.indexOf(key);
+
+    if (slot == -1) {
+      slot = this.append(key);
+    } else {
+      Tag value = this.values[slot];
+
+      if (value != null && value.getType() == type && this.owns(value)) {
+        setPrimitive(value, bits);
+        return;
+      }
+
+      this.detach(value);
+    }
+
+    if (this.kinds == null) {
+      this.primitives = new long[this.values.length];
+      this.kinds = new byte[this.values.length];
+    }
+
+    this.values[slot] = null;
+    this.primitives[slot] = bits;
+    this.kinds[slot] = (byte) type.ordinal();
+  }
+
+  /**
+   * Rebuilds the index of a dictionary.
+   */
+  private void rebuildIndex() {
+    this.index = buildIndex(this.keys, this.size);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Nullable
+  @Override
+  public Tag remove(Object key) {
+    int slot = this.indexOf(key);
+
+    if (slot == -1) {
+      return null;
+    }
+
+    Tag previous = this.valueAt(slot);
+    this.removeSlot(slot);
+    return previous;
+  }
+
+  /**
+   * Removes the element within a slot and moves the last element into its place.
+   *
+   * @param slot a slot.
+   */
+  void removeSlot(int slot) {
+    this.ensureMutable();
+    this.own();
+
+    if (this.shape != null) {
+      this.toDictionary();
+    }
+
+    this.detach(this.values[slot]);
+    int last = this.size - 1;
+
+    if (this.index != null) {
+      this.deleteIndex(slot);
+
+      if (slot != last) {
+        this.index[this.findIndexPosition(last)] = slot + 1;
+      }
+    }
+
+    this.keys[slot] = this.keys[last];
+    this.values[slot] = this.values[last];
+    this.keys[last] = null;
+    this.values[last] = null;
+
+    if (this.kinds != null) {
+      this.primitives[slot] = this.primitives[last];
+      this.kinds[slot] = this.kinds[last];
+      this.kinds[last] = 0;
+    }
+
+    this.size = last;
+    ++this.modCount;
+
+    if (this.index != null && this.size <= INDEX_THRESHOLD / 2) {
+      this.index = null;
+    }
+  }
+
+  /**
+   * Replaces a value which has been borrowed from the map this map has been forked from with a
+   * fork of its state at the time this map has been forked.
+   *
+   * @param slot a slot.
+   * @param value a borrowed value.
+   * @return a fork.
+   */
+  @NonNull
+  private Tag resolve(int slot, @NonNull Tag value) {
+    this.own();
+
+    Owner owner = this.owner();
+    Tag fork = owner.resolve(value);
+    Owner.adopt(fork, owner);
+    this.values[slot] = fork;
+    return fork;
+  }
+
+  /**
+   * Replaces all values which have been borrowed from the map this map has been forked from.
+   */
+  private void resolveAll() {
+    if (!this.borrowed) {
+      return;
+    }
+
+    for (int i = 0; i < this.size; ++i) {
+      this.boxedAt(i);
+    }
+
+    this.borrowed = false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int size() {
+    this.ensureLoaded();
+    return this.size;
+  }
+
+  /**
+   * Updates the value of a primitive wrapper tag.
+   *
+   * @param tag a wrapper tag.
+   * @param bits the raw bits of the new value.
+   */
+  private static void setPrimitive(@NonNull Tag tag, long bits) {
+    switch (tag.getType()) {
+      case BYTE:
+        ((ByteTag) tag).setValue((byte) bits);
+        break;
+      case SHORT:
+        ((ShortTag) tag).setValue((short) bits);
+        break;
+      case INTEGER:
+        ((IntegerTag) tag).setValue((int) bits);
+        break;
+      case LONG:
+        ((LongTag) tag).setValue(bits);
+        break;
+      case FLOAT:
+        ((FloatTag) tag).setValue(Float.intBitsToFloat((int) bits));
+        break;
+      case DOUBLE:
+        ((DoubleTag) tag).setValue(Double.longBitsToDouble(bits));
+        break;
+      default:
+        throw new IllegalArgumentException("Not a primitive type: " + tag.getType());
+    }
+  }
+
+  /**
+   * Evaluates whether the values within a slot of this map and another map are equal without
+   * creating wrappers for unboxed values.
+   *
+   * @param slot a slot within this map.
+   * @param other another map.
+   * @param otherSlot a slot within the other map.
+   * @return true if equal, false otherwise.
+   */
+  private boolean slotEquals(int slot, @NonNull CompoundMap other, int otherSlot) {
+    Tag value = this.boxedAt(slot);
+    Tag otherValue = other.boxedAt(otherSlot);
+
+    if (value != null && otherValue != null) {
+      return value.equals(otherValue);
+    }
+
+    TagType type = this.typeAt(slot);
+
+    if (type != other.typeAt(otherSlot)) {
+      return false;
+    }
+
+    if (this.isPending(slot) || other.isPending(otherSlot)) {
+      // identical encodings imply equality while differing encodings may merely differ in order
+      if (this.isPending(slot) && other.isPending(otherSlot)
+          && this.pendingEquals(slot, other, otherSlot)) {
+        return true;
+      }
+
+      return (value != null ? value : this.box(slot))
+          .equals(otherValue != null ? otherValue : other.box(otherSlot));
+    }
+
+    long bits = this.getPrimitive(slot, type);
+    long otherBits = other.getPrimitive(otherSlot, type);
+
+    switch (type) {
+      case FLOAT:
+        return Float.compare(Float.intBitsToFloat((int) bits),
+            Float.intBitsToFloat((int) otherBits)) == 0;
+      case DOUBLE:
+        return Double.compare(Double.longBitsToDouble(bits), Double.longBitsToDouble(otherBits))
+            == 0;
+      default:
+        return bits == otherBits;
+    }
+  }
+
+  /**
+   * Evaluates whether the encoded payloads of two pending values are identical.
+   *
+   * @param slot a pending slot within this map.
+   * @param other another map.
+   * @param otherSlot a pending slot within the other map.
+   * @return true if identical, false otherwise.
+   */
+  private boolean pendingEquals(int slot, @NonNull CompoundMap other, int otherSlot) {
+    long bits = this.primitives[slot];
+    long otherBits = other.primitives[otherSlot];
+    int length = (int) (bits >>> 32);
+
+    return length == (int) (otherBits >>> 32) && ByteBufUtil.equals(
+        this.source, (int) (bits & OFFSET_MASK), other.source, (int) (otherBits & OFFSET_MASK),
+        length);
+  }
+
+  /**
+   * Calculates the hash code of the value within a slot (the result matches the hash code of the
+   * respective wrapper tag).
+   *
+   * @param slot a slot.
+   * @return a hash code.
+   */
+  private int slotHashCode(int slot) {
+    Tag value = this.boxedAt(slot);
+
+    if (value != null) {
+      return value.hashCode();
+    }
+
+    if (this.isPending(slot)) {
+      return this.box(slot).hashCode();
+    }
+
+    long bits = this.primitives[slot];
+
+    switch (TYPES[this.kinds[slot]]) {
+      case BYTE:
+        return 31 + Byte.hashCode((byte) bits);
+      case SHORT:
+        return 31 + Short.hashCode((short) bits);
+      case INTEGER:
+        return 31 + Integer.hashCode((int) bits);
+      case LONG:
+        return 31 + Long.hashCode(bits);
+      case FLOAT:
+        return 31 + Float.hashCode(Float.intBitsToFloat((int) bits));
+      default:
+        return 31 + Double.hashCode(Double.longBitsToDouble(bits));
+    }
+  }
+
+  /**
+   * Converts this compound into a dictionary which owns its keys and index.
+   */
+  private void toDictionary() {
+    this.keys = Arrays.copyOf(this.keys, Math.max(this.values.length, this.size));
+
+    if (this.index != null) {
+      this.index = this.index.clone();
+    }
+
+    this.shape = null;
+  }
+
+  /**
+   * Retrieves the type of the value within a slot without creating a wrapper for unboxed values.
+   *
+   * @param slot a slot.
+   * @return a type.
+   */
+  @NonNull
+  TagType typeAt(int slot) {
+    Tag value = this.values[slot];
+
+    if (value != null) {
+      return value.getType();
+    }
+
+    byte kind = this.kinds[slot];
+    return TYPES[kind < 0 ? ~kind : kind];
+  }
+
+  /**
+   * Retrieves the value within a slot and replaces unboxed values with their wrapper tag (changes
+   * to the returned tag are thus reflected by the compound).
+   *
+   * @param slot a slot.
+   * @return a tag.
+   */
+  @NonNull
+  Tag valueAt(int slot) {
+    if (this.frozen) {
+      Tag value = this.values[slot];
+
+      if (value == null) {
+        value = this.box(slot);
+        TagFactory.freeze(value);
+      }
+
+      return value;
+    }
+
+    this.own();
+
+    Tag value = this.boxedAt(slot);
+
+    if (value == null) {
+      value = this.box(slot);
+      Owner.adopt(value, this.owner());
+      this.values[slot] = value;
+      this.kinds[slot] = 0;
+    }
+
+    return value;
+  }
+
+  /**
+   * Provides a view of the elements within a compound map.
+   */
+  private final class EntrySet extends AbstractSet<Entry<String, Tag>> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+      CompoundMap.this.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Iterator<Entry<String, Tag>> iterator() {
+      return new EntryIterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+      return CompoundMap.this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Spliterator<Entry<String, Tag>> spliterator() {
+      // storage and values shared with a fork are copied up front as splits may be traversed
+      // concurrently
+      if (!CompoundMap.this.frozen) {
+        CompoundMap.this.own();
+        CompoundMap.this.resolveAll();
+      }
+
+      return new EntrySpliterator(0, CompoundMap.this.size, CompoundMap.this.modCount);
+    }
+  }
+
+  /**
+   * Provides a spliterator over a range of slots within a compound map.
+   */
+  private final class EntrySpliterator implements Spliterator<Entry<String, Tag>> {
+
+    private int index;
+    private final int fence;
+    private final int expectedModCount;
+
+    EntrySpliterator(int origin, int fence, int expectedModCount) {
+      this.index = origin;
+      this.fence = fence;
+      this.expectedModCount = expectedModCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int characteristics() {
+      return DISTINCT | NONNULL | SIZED | SUBSIZED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long estimateSize() {
+      return this.fence - this.index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachRemaining(@NonNull Consumer<? super Entry<String, Tag>> action) {
+      int fence = this.fence;
+
+      for (int i = this.index; i < fence; ++i) {
+        action.accept(new SlotEntry(i));
+      }
+
+      this.index = fence;
+
+      if (this.expectedModCount != CompoundMap.this.modCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean tryAdvance(@NonNull Consumer<? super Entry<String, Tag>> action) {
+      if (this.index >= this.fence) {
+        return false;
+      }
+
+      action.accept(new SlotEntry(this.index++));
+
+      if (this.expectedModCount != CompoundMap.this.modCount) {
+        throw new ConcurrentModificationException();
+      }
+
+      return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public Spliterator<Entry<String, Tag>> trySplit() {
+      int origin = this.index;
+      int middle = (origin + this.fence) >>> 1;
+
+      if (origin >= middle) {
+        return null;
+      }
+
+      this.index = middle;
+      return new EntrySpliterator(origin, middle, this.expectedModCount);
+    }
+  }
+
+  /**
+   * Provides an iterator over the slots of a compound map.
+   */
+  private final class EntryIterator implements Iterator<Entry<String, Tag>> {
+
+    private int cursor;
+    private int current = -1;
+    private int expectedModCount = CompoundMap.this.modCount;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+      return this.cursor < CompoundMap.this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Entry<String, Tag> next() {
+      if (this.expectedModCount != CompoundMap.this.modCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (this.cursor >= CompoundMap.this.size) {
+        throw new NoSuchElementException();
+      }
+
+      this.current = this.cursor++;
+      return new SlotEntry(this.current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+      if (this.current == -1) {
+        throw new IllegalStateException("No element to remove");
+      }
+      if (this.expectedModCount != CompoundMap.this.modCount) {
+        throw new ConcurrentModificationException();
+      }
+
+      // the last element is moved into the vacated slot and thus needs to be visited next
+      CompoundMap.this.removeSlot(this.current);
+      this.cursor = this.current;
+      this.current = -1;
+      this.expectedModCount = CompoundMap.this.modCount;
+    }
+  }
+
+  /**
+   * Provides an entry which reads and writes through to a slot of a compound map.
+   */
+  private final class SlotEntry implements Entry<String, Tag> {
+
+    private final String key;
+    private final int slot;
+
+    SlotEntry(int slot) {
+      this.key = CompoundMap.this.keys[slot];
+      this.slot = slot;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+
+      Entry<?, ?> entry = (Entry<?, ?>) o;
+      return this.key.equals(entry.getKey()) && Objects.equals(this.getValue(), entry.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public String getKey() {
+      return this.key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Tag getValue() {
+      return CompoundMap.this.valueAt(this.slot);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+      return this.key.hashCode() ^ this.getValue().hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Tag setValue(@NonNull Tag value) {
+      CompoundMap.this.ensureMutable();
+
+      Tag previous = CompoundMap.this.valueAt(this.slot);
+      CompoundMap.this.detach(previous);
+      Owner.adopt(value, CompoundMap.this.owner());
+      CompoundMap.this.values[this.slot] = value;
+      return previous;
+    }
+  }
+}
@@ -20,41 +20,60 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import io.github.lordakkarin.nbt.event.TagType;
 import io.github.lordakkarin.nbt.event.TagVisitor;
-import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Spliterator;
 import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents an NBT tag which contains multiple named tags (e.g. it acts like a dictionary of
- * values).
+ * values). Compounds are not thread safe even if they are only read as reads may box unboxed
+ * values, decode lazily loaded values or copy storage which is shared with a fork. Frozen
+ * compounds on the other hand never modify their state and may thus be read by multiple threads
+ * at once (see {@link ConcurrentCompoundTag} for compounds which are modified concurrently).
  *
  * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
  */
 public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
 
-  private final Map<String, Tag> map = new HashMap<>();
+  final CompoundMap map;
+  private int hashCode;
 
   public CompoundTag() {
+    this(new CompoundMap());
   }
 
   public CompoundTag(@NonNull Map<String, ? extends Tag> elements) {
+    this();
     this.putAll(elements);
   }
 
+  /**
+   * Creates a new compound which is backed by the specified map (subclasses which provide their
+   * own storage pass null and override every method which accesses the map instead).
+   *
+   * @param map a backing map.
+   */
+  CompoundTag(@Nullable CompoundMap map) {
+    this.map = map;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void accept(@NonNull TagVisitor visitor) {
+    CompoundMap map = this.map;
+    map.ensureLoaded();
+
     visitor.visitCompound();
-    this.map.forEach((k, v) -> {
-      visitor.visitKey(k);
-      v.accept(visitor);
-    });
+    for (int i = 0; i < map.size; ++i) {
+      visitor.visitKey(map.keys[i]);
+      map.accept(i, visitor);
+    }
     visitor.visitCompoundEnd();
   }
 
@@ -81,6 +100,26 @@ public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
     return type.isInstance(tag);
   }
 
+  /**
+   * Writes the elements of this compound (without their terminating end tag) through an encoder.
+   *
+   * @param encoder an encoder.
+   */
+  void encode(@NonNull TreeEncoder encoder) {
+    encoder.encodeMap(this.map);
+  }
+
+  /**
+   * Retrieves the map which backs this compound (used to compare compounds which are backed by
+   * different storage implementations).
+   *
+   * @return a map.
+   */
+  @NonNull
+  Map<String, Tag> entries() {
+    return this.map;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -94,7 +133,47 @@ public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
     }
 
     CompoundTag entries = (CompoundTag) o;
-    return Objects.equals(this.map, entries.map);
+
+    if (this.isFrozen() && entries.isFrozen() && this.hashCode() != entries.hashCode()) {
+      return false;
+    }
+
+    return Objects.equals(this.entries(), entries.entries());
+  }
+
+  /**
+   * Creates a copy of this compound in constant time. Both compounds share their storage and
+   * children until either of them is modified while the copy replaces each child with a fork once
+   * it is first exposed, visited or encoded through the copy. Children which are modified through
+   * references that have been retrieved before the compound was forked leave their previous state
+   * behind for the copy first and thus remain independent of it (this includes children of nested
+   * compounds and lists). Arrays which have been retrieved from an array tag before the compound
+   * was forked are not tracked and should not be modified after the fork. Encoding or visiting
+   * the original compound never causes any copies.
+   *
+   * @return a copy.
+   */
+  @NonNull
+  public CompoundTag fork() {
+    return new CompoundTag(this.map.fork());
+  }
+
+  /**
+   * Prevents any further modifications to this compound and all of its children. Frozen compounds
+   * cache their hash code and thus only compute it once while comparisons between frozen
+   * compounds with differing hash codes fail right away.
+   *
+   * @return this compound.
+   * @throws IllegalStateException when the compound contains a concurrent compound.
+   */
+  @NonNull
+  public CompoundTag freeze() {
+    if (!this.map.frozen) {
+      TagFactory.checkFreezable(this);
+      this.map.freeze();
+    }
+
+    return this;
   }
 
   @Nullable
@@ -104,35 +183,170 @@ public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
   }
 
   public byte getByte(@NonNull String key) {
-    return Optional.ofNullable((ByteTag) this.get(key)).map(ByteTag::getValue).orElse((byte) 0);
+    return this.getByte(key, (byte) 0);
+  }
+
+  /**
+   * Retrieves the byte value of a key without creating a wrapper tag.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public byte getByte(@NonNull String key, byte defaultValue) {
+    int slot = this.map.indexOf(key);
+
+    if (slot == -1) {
+      return defaultValue;
+    }
+
+    return (byte) this.map.getPrimitive(slot, TagType.BYTE);
   }
 
   @Nullable
   public byte[] getByteArray(@NonNull String key) {
-    return Optional.ofNullable((ByteArrayTag) this.get(key)).map(ByteArrayTag::getValue)
-        .orElse(null);
+    return this.getByteArray(key, null);
+  }
+
+  /**
+   * Retrieves the byte array value of a key.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  @Nullable
+  public byte[] getByteArray(@NonNull String key, @Nullable byte[] defaultValue) {
+    ByteArrayTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
   }
 
   public double getDouble(@NonNull String key) {
-    return Optional.ofNullable((DoubleTag) this.get(key)).map(DoubleTag::getValue).orElse(0d);
+    return this.getDouble(key, 0d);
+  }
+
+  /**
+   * Retrieves the double value of a key without creating a wrapper tag.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public double getDouble(@NonNull String key, double defaultValue) {
+    int slot = this.map.indexOf(key);
+
+    if (slot == -1) {
+      return defaultValue;
+    }
+
+    return Double.longBitsToDouble(this.map.getPrimitive(slot, TagType.DOUBLE));
   }
 
   public float getFloat(@NonNull String key) {
-    return Optional.ofNullable((FloatTag) this.get(key)).map(FloatTag::getValue).orElse(0f);
+    return this.getFloat(key, 0f);
+  }
+
+  /**
+   * Retrieves the float value of a key without creating a wrapper tag.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public float getFloat(@NonNull String key, float defaultValue) {
+    int slot = this.map.indexOf(key);
+
+    if (slot == -1) {
+      return defaultValue;
+    }
+
+    return Float.intBitsToFloat((int) this.map.getPrimitive(slot, TagType.FLOAT));
   }
 
   public int getInteger(@NonNull String key) {
-    return Optional.ofNullable((IntegerTag) this.get(key)).map(IntegerTag::getValue).orElse(0);
+    return this.getInteger(key, 0);
+  }
+
+  /**
+   * Retrieves the integer value of a key without creating a wrapper tag.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public int getInteger(@NonNull String key, int defaultValue) {
+    int slot = this.map.indexOf(key);
+
+    if (slot == -1) {
+      return defaultValue;
+    }
+
+    return (int) this.map.getPrimitive(slot, TagType.INTEGER);
   }
 
   @Nullable
   public int[] getIntegerArray(@NonNull String key) {
-    return Optional.ofNullable((IntegerArrayTag) this.get(key)).map(IntegerArrayTag::getValue)
-        .orElse(null);
+    return this.getIntegerArray(key, null);
+  }
+
+  /**
+   * Retrieves the integer array value of a key.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  @Nullable
+  public int[] getIntegerArray(@NonNull String key, @Nullable int[] defaultValue) {
+    IntegerArrayTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
   }
 
   public long getLong(@NonNull String key) {
-    return Optional.ofNullable((LongTag) this.get(key)).map(LongTag::getValue).orElse(0L);
+    return this.getLong(key, 0L);
+  }
+
+  /**
+   * Retrieves the long value of a key without creating a wrapper tag.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public long getLong(@NonNull String key, long defaultValue) {
+    int slot = this.map.indexOf(key);
+
+    if (slot == -1) {
+      return defaultValue;
+    }
+
+    return this.map.getPrimitive(slot, TagType.LONG);
+  }
+
+  @Nullable
+  public long[] getLongArray(@NonNull String key) {
+    return this.getLongArray(key, null);
+  }
+
+  /**
+   * Retrieves the long array value of a key.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  @Nullable
+  public long[] getLongArray(@NonNull String key, @Nullable long[] defaultValue) {
+    LongArrayTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
   }
 
   /**
@@ -144,19 +358,16 @@ public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
    * @return a tag.
    */
   @NonNull
-  private <T extends Tag> T getOrCreate(@NonNull String key, @NonNull Class<T> type) {
-    if (!this.containsKey(key, type)) {
-      try {
-        T instance = type.getConstructor().newInstance();
-        this.put(key, instance);
-        return instance;
-      } catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException ex) {
-        throw new RuntimeException("Could not construct tag: " + ex.getMessage(), ex);
-      }
+  @SuppressWarnings("unchecked")
+  private <T extends Tag> T getOrCreate(@NonNull String key, @NonNull TagType type) {
+    Tag tag = this.get(key);
+
+    if (tag == null || tag.getType() != type) {
+      tag = TagFactory.create(type);
+      this.put(key, tag);
     }
 
-    // noinspection ConstantConditions
-    return this.get(key);
+    return (T) tag;
   }
 
   @Nullable
@@ -166,12 +377,44 @@ public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
   }
 
   public short getShort(@NonNull String key) {
-    return Optional.ofNullable((ShortTag) this.get(key)).map(ShortTag::getValue).orElse((short) 0);
+    return this.getShort(key, (short) 0);
+  }
+
+  /**
+   * Retrieves the short value of a key without creating a wrapper tag.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public short getShort(@NonNull String key, short defaultValue) {
+    int slot = this.map.indexOf(key);
+
+    if (slot == -1) {
+      return defaultValue;
+    }
+
+    return (short) this.map.getPrimitive(slot, TagType.SHORT);
   }
 
   @Nullable
   public String getString(@NonNull String key) {
-    return Optional.ofNullable((StringTag) this.get(key)).map(StringTag::getValue).orElse(null);
+    return this.getString(key, null);
+  }
+
+  /**
+   * Retrieves the string value of a key.
+   *
+   * @param key a key.
+   * @param defaultValue a value which is returned when the key does not exist.
+   * @return a value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  @Nullable
+  public String getString(@NonNull String key, @Nullable String defaultValue) {
+    StringTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
   }
 
   /**
@@ -188,7 +431,22 @@ public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
    */
   @Override
   public int hashCode() {
-    return Objects.hash(this.map);
+    if (!this.isFrozen()) {
+      return Objects.hash(this.entries());
+    }
+
+    int hashCode = this.hashCode;
+
+    if (hashCode == 0) {
+      hashCode = Objects.hash(this.entries());
+      this.hashCode = hashCode;
+    }
+
+    return hashCode;
+  }
+
+  public boolean isFrozen() {
+    return this.map.frozen;
   }
 
   /**
@@ -199,6 +457,16 @@ public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
     return this.map.entrySet().iterator();
   }
 
+  /**
+   * Creates a possibly parallel stream over the entries within this compound.
+   *
+   * @return a stream of entries.
+   */
+  @NonNull
+  public Stream<Map.Entry<String, Tag>> parallelStream() {
+    return StreamSupport.stream(this.spliterator(), true);
+  }
+
   public void put(@NonNull String key, @NonNull Tag tag) {
     this.map.put(key, tag);
   }
@@ -222,42 +490,65 @@ public class CompoundTag implements Iterable<Map.Entry<String, Tag>>, Tag {
   }
 
   public void setByte(@NonNull String key, byte value) {
-    this.getOrCreate(key, ByteTag.class).setValue(value);
+    this.map.putPrimitive(key, TagType.BYTE, value);
   }
 
   public void setByteArray(@NonNull String key, @NonNull byte[] value) {
-    this.getOrCreate(key, ByteArrayTag.class).setValue(value);
+    this.<ByteArrayTag>getOrCreate(key, TagType.BYTE_ARRAY).setValue(value);
   }
 
   public void setDouble(@NonNull String key, double value) {
-    this.getOrCreate(key, DoubleTag.class).setValue(value);
+    this.map.putPrimitive(key, TagType.DOUBLE, Double.doubleToRawLongBits(value));
   }
 
   public void setFloat(@NonNull String key, float value) {
-    this.getOrCreate(key, FloatTag.class).setValue(value);
+    this.map.putPrimitive(key, TagType.FLOAT, Float.floatToRawIntBits(value));
   }
 
   public void setInteger(@NonNull String key, int value) {
-    this.getOrCreate(key, IntegerTag.class).setValue(value);
+    this.map.putPrimitive(key, TagType.INTEGER, value);
   }
 
   public void setIntegerArray(@NonNull String key, @NonNull int[] value) {
-    this.getOrCreate(key, IntegerArrayTag.class).setValue(value);
+    this.<IntegerArrayTag>getOrCreate(key, TagType.INTEGER_ARRAY).setValue(value);
   }
 
   public void setLong(@NonNull String key, long value) {
-    this.getOrCreate(key, LongTag.class).setValue(value);
+    this.map.putPrimitive(key, TagType.LONG, value);
+  }
+
+  public void setLongArray(@NonNull String key, @NonNull long[] value) {
+    this.<LongArrayTag>getOrCreate(key, TagType.LONG_ARRAY).setValue(value);
   }
 
   public void setShort(@NonNull String key, short value) {
-    this.getOrCreate(key, ShortTag.class).setValue(value);
+    this.map.putPrimitive(key, TagType.SHORT, value);
   }
 
   public void setString(@NonNull String key, @NonNull String value) {
-    this.getOrCreate(key, StringTag.class).setValue(value);
+    this.<StringTag>getOrCreate(key, TagType.STRING).setValue(value);
   }
 
   public int size() {
     return this.map.size();
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Spliterator<Map.Entry<String, Tag>> spliterator() {
+    return this.map.entrySet().spliterator();
+  }
+
+  /**
+   * Creates a sequential stream over the entries within this compound.
+   *
+   * @return a stream of entries.
+   */
+  @NonNull
+  public Stream<Map.Entry<String, Tag>> stream() {
+    return StreamSupport.stream(this.spliterator(), false);
+  }
 }
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Provides a compound tag which may be accessed and modified by multiple threads at once without
+ * external synchronization. Reads do not block, writes only contend when they target the same
+ * key and iteration (including {@link #accept(TagVisitor)}) is weakly consistent (e.g. it never
+ * fails due to concurrent modifications but may or may not reflect changes which occur while it
+ * is in progress). Typed setters always store a new wrapper tag instead of updating an existing
+ * one in place and thus publish their values safely, while nested tags remain subject to their
+ * own thread-safety guarantees.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class ConcurrentCompoundTag extends CompoundTag {
+
+  private final ConcurrentHashMap<String, Tag> entries;
+
+  public ConcurrentCompoundTag() {
+    super((CompoundMap) null);
+    this.entries = new ConcurrentHashMap<>();
+  }
+
+  public ConcurrentCompoundTag(@NonNull Map<String, ? extends Tag> elements) {
+    super((CompoundMap) null);
+    this.entries = new ConcurrentHashMap<>(elements);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void accept(@NonNull TagVisitor visitor) {
+    visitor.visitCompound();
+    this.entries.forEach((k, v) -> {
+      visitor.visitKey(k);
+      v.accept(visitor);
+    });
+    visitor.visitCompoundEnd();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clear() {
+    this.entries.clear();
+  }
+
+  /**
+   * Atomically computes a new value for a key.
+   *
+   * @param key a key.
+   * @param function a function which receives the key and its current value (or null) and
+   *     returns the new value (or null to remove the key).
+   * @param <T> a tag type.
+   * @return the new value or null.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T extends Tag> T compute(@NonNull String key,
+      @NonNull BiFunction<String, ? super Tag, ? extends Tag> function) {
+    return (T) this.entries.compute(key, function);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void computeIfAbsent(@NonNull String key,
+      @NonNull Function<String, ? extends Tag> factory) {
+    this.entries.computeIfAbsent(key, factory);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean containsKey(@NonNull String key) {
+    return this.entries.containsKey(key);
+  }
+
+  /**
+   * Writes a weakly consistent view of the entries within this compound through an encoder.
+   *
+   * @param encoder an encoder.
+   */
+  @Override
+  void encode(@NonNull TreeEncoder encoder) {
+    this.entries.forEach(encoder::encodeEntry);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  Map<String, Tag> entries() {
+    return this.entries;
+  }
+
+  /**
+   * Creates a copy of this compound. Unlike regular compounds, concurrent compounds cannot share
+   * their storage and thus copy their entries right away (children are forked as usual).
+   *
+   * @return a copy.
+   */
+  @NonNull
+  @Override
+  public ConcurrentCompoundTag fork() {
+    ConcurrentCompoundTag copy = new ConcurrentCompoundTag();
+    this.entries.forEach((k, v) -> copy.entries.put(k, TagFactory.fork(v)));
+    return copy;
+  }
+
+  /**
+   * Concurrent compounds are intended to be modified at all times and thus cannot be frozen.
+   *
+   * @return never.
+   * @throws IllegalStateException always.
+   */
+  @NonNull
+  @Override
+  public CompoundTag freeze() {
+    throw new IllegalStateException("Concurrent compounds cannot be frozen");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Nullable
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends Tag> T get(@NonNull String key) {
+    return (T) this.entries.get(key);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte getByte(@NonNull String key, byte defaultValue) {
+    ByteTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getDouble(@NonNull String key, double defaultValue) {
+    DoubleTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public float getFloat(@NonNull String key, float defaultValue) {
+    FloatTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getInteger(@NonNull String key, int defaultValue) {
+    IntegerTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getLong(@NonNull String key, long defaultValue) {
+    LongTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Nullable
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends Tag> T getOrDefault(@NonNull String key, @Nullable T defaultValue) {
+    return (T) this.entries.getOrDefault(key, defaultValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short getShort(@NonNull String key, short defaultValue) {
+    ShortTag tag = this.get(key);
+    return tag == null ? defaultValue : tag.getValue();
+  }
+
+  /**
+   * Concurrent compounds cannot be frozen.
+   *
+   * @return false.
+   */
+  @Override
+  public boolean isFrozen() {
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Iterator<Map.Entry<String, Tag>> iterator() {
+    return this.entries.entrySet().iterator();
+  }
+
+  /**
+   * Atomically merges a value with the current value of a key.
+   *
+   * @param key a key.
+   * @param tag a value which is stored as-is when the key does not exist yet.
+   * @param function a function which receives the current and the passed value and returns the
+   *     new value (or null to remove the key).
+   * @param <T> a tag type.
+   * @return the new value or null.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T extends Tag> T merge(@NonNull String key, @NonNull Tag tag,
+      @NonNull BiFunction<? super Tag, ? super Tag, ? extends Tag> function) {
+    return (T) this.entries.merge(key, tag, function);
+  }
+
+  /**
+   * Atomically merges a double value with the current value of a key (e.g. to accumulate a sum).
+   *
+   * @param key a key.
+   * @param value a value which is stored as-is when the key does not exist yet.
+   * @param operator an operator which receives the current and the passed value.
+   * @return the new value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public double mergeDouble(@NonNull String key, double value,
+      @NonNull DoubleBinaryOperator operator) {
+    DoubleTag tag = (DoubleTag) this.entries.merge(key, new DoubleTag(value),
+        (a, b) -> new DoubleTag(
+            operator.applyAsDouble(((DoubleTag) a).getValue(), ((DoubleTag) b).getValue())));
+    return tag.getValue();
+  }
+
+  /**
+   * Atomically merges an integer value with the current value of a key (e.g. to increment a
+   * counter).
+   *
+   * @param key a key.
+   * @param value a value which is stored as-is when the key does not exist yet.
+   * @param operator an operator which receives the current and the passed value.
+   * @return the new value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public int mergeInteger(@NonNull String key, int value, @NonNull IntBinaryOperator operator) {
+    IntegerTag tag = (IntegerTag) this.entries.merge(key, new IntegerTag(value),
+        (a, b) -> new IntegerTag(
+            operator.applyAsInt(((IntegerTag) a).getValue(), ((IntegerTag) b).getValue())));
+    return tag.getValue();
+  }
+
+  /**
+   * Atomically merges a long value with the current value of a key (e.g. to increment a
+   * counter).
+   *
+   * @param key a key.
+   * @param value a value which is stored as-is when the key does not exist yet.
+   * @param operator an operator which receives the current and the passed value.
+   * @return the new value.
+   * @throws ClassCastException when the key holds a value of a different type.
+   */
+  public long mergeLong(@NonNull String key, long value, @NonNull LongBinaryOperator operator) {
+    LongTag tag = (LongTag) this.entries.merge(key, new LongTag(value),
+        (a, b) -> new LongTag(
+            operator.applyAsLong(((LongTag) a).getValue(), ((LongTag) b).getValue())));
+    return tag.getValue();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void put(@NonNull String key, @NonNull Tag tag) {
+    this.entries.put(key, tag);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void putAll(@NonNull Map<String, ? extends Tag> elements) {
+    this.entries.putAll(elements);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void putIfAbsent(@NonNull String key, @NonNull Tag tag) {
+    this.entries.putIfAbsent(key, tag);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends Tag> T remove(@NonNull String key) {
+    return (T) this.entries.remove(key);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean remove(@NonNull String key, @NonNull Tag tag) {
+    return this.entries.remove(key, tag);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setByte(@NonNull String key, byte value) {
+    this.entries.put(key, new ByteTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setByteArray(@NonNull String key, @NonNull byte[] value) {
+    this.entries.put(key, new ByteArrayTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setDouble(@NonNull String key, double value) {
+    this.entries.put(key, new DoubleTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setFloat(@NonNull String key, float value) {
+    this.entries.put(key, new FloatTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setInteger(@NonNull String key, int value) {
+    this.entries.put(key, new IntegerTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setIntegerArray(@NonNull String key, @NonNull int[] value) {
+    this.entries.put(key, new IntegerArrayTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setLong(@NonNull String key, long value) {
+    this.entries.put(key, new LongTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setLongArray(@NonNull String key, @NonNull long[] value) {
+    this.entries.put(key, new LongArrayTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setShort(@NonNull String key, short value) {
+    this.entries.put(key, new ShortTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setString(@NonNull String key, @NonNull String value) {
+    this.entries.put(key, new StringTag(value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Spliterator<Map.Entry<String, Tag>> spliterator() {
+    return this.entries.entrySet().spliterator();
+  }
+}
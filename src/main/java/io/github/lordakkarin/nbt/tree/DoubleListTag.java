@@ -0,0 +1,250 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.netty.buffer.ByteBuf;
+import java.util.Arrays;
+
+/**
+ * Represents an NBT list of double values which are stored within a primitive array.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class DoubleListTag extends PrimitiveListTag<DoubleTag> {
+
+  private final Values values;
+
+  public DoubleListTag() {
+    this(new Values(PrimitiveList.DEFAULT_CAPACITY));
+  }
+
+  public DoubleListTag(@NonNull double... values) {
+    this(new Values(values.length));
+
+    System.arraycopy(values, 0, this.values.array, 0, values.length);
+    this.values.appended(values.length);
+  }
+
+  /**
+   * Creates a new list which has been pre-sized to hold the specified amount of values.
+   *
+   * @param capacity an initial capacity.
+   */
+  DoubleListTag(int capacity) {
+    this(new Values(capacity));
+  }
+
+  private DoubleListTag(@NonNull Values values) {
+    super(TagType.DOUBLE, values);
+    this.values = values;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void accept(@NonNull TagVisitor visitor) {
+    double[] array = this.values.array;
+    int size = this.values.size;
+
+    visitor.visitList(this.type, size);
+    for (int i = 0; i < size; ++i) {
+      visitor.visitDouble(array[i]);
+    }
+  }
+
+  public void addDouble(double value) {
+    int index = this.prepareAppend(1);
+    this.values.array[index] = value;
+    this.values.appended(1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public DoubleListTag fork() {
+    return new DoubleListTag((Values) this.values.fork());
+  }
+
+  public double getDouble(int index) {
+    this.values.checkIndex(index);
+    return this.values.array[index];
+  }
+
+  public void setDouble(int index, double value) {
+    this.prepareSet(index);
+    this.values.array[index] = value;
+  }
+
+  /**
+   * Creates a copy of the values within this list.
+   *
+   * @return an array of values.
+   */
+  @NonNull
+  public double[] toDoubleArray() {
+    return Arrays.copyOf(this.values.array, this.values.size);
+  }
+
+  /**
+   * Provides the primitive storage which backs a double list.
+   */
+  private static final class Values extends PrimitiveList<DoubleTag> {
+
+    private double[] array;
+
+    Values(int capacity) {
+      this.array = new double[capacity];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    Object array() {
+      return this.array;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    DoubleTag bind(int index) {
+      return new Element(this, index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    DoubleTag box(int index) {
+      return new DoubleTag(this.array[index]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int capacity() {
+      return this.array.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean equals(@NonNull PrimitiveList<DoubleTag> other, int index) {
+      return Double.compare(this.array[index], ((Values) other).array[index]) == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int hashCode(int index) {
+      return 31 + Double.hashCode(this.array[index]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void read(@NonNull ByteBuf buffer, int offset, int count) {
+      BufferUtil.readDoubles(buffer, this.array, offset, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void resize(int capacity) {
+      this.array = Arrays.copyOf(this.array, capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void unbox(int index, @NonNull DoubleTag element) {
+      this.array[index] = element.getValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void write(@NonNull ByteBuf buffer, int count) {
+      BufferUtil.writeDoubles(buffer, this.array, 0, count);
+    }
+  }
+
+  /**
+   * Provides a transient double tag which reads and writes the value at a fixed index of a list
+   * until the list is structurally modified.
+   */
+  private static final class Element extends DoubleTag {
+
+    private final Values values;
+    private final int index;
+    private final int modCount;
+
+    Element(@NonNull Values values, int index) {
+      this.values = values;
+      this.index = index;
+      this.modCount = values.modCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getValue() {
+      this.values.checkModCount(this.modCount);
+      return this.values.array[this.index];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFrozen() {
+      return super.isFrozen() || this.values.isFrozen();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(double value) {
+      if (super.isFrozen()) {
+        throw new IllegalStateException("Cannot modify frozen tag");
+      }
+
+      this.values.prepareWrapperWrite(this.modCount);
+      this.values.array[this.index] = value;
+    }
+  }
+}
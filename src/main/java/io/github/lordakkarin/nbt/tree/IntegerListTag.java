@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.netty.buffer.ByteBuf;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Represents an NBT list of int values which are stored within a primitive array.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class IntegerListTag extends PrimitiveListTag<IntegerTag> {
+
+  private final Values values;
+
+  public IntegerListTag() {
+    this(new Values(PrimitiveList.DEFAULT_CAPACITY));
+  }
+
+  public IntegerListTag(@NonNull int... values) {
+    this(new Values(values.length));
+
+    System.arraycopy(values, 0, this.values.array, 0, values.length);
+    this.values.appended(values.length);
+  }
+
+  /**
+   * Creates a new list which has been pre-sized to hold the specified amount of values.
+   *
+   * @param capacity an initial capacity.
+   */
+  IntegerListTag(int capacity) {
+    this(new Values(capacity));
+  }
+
+  private IntegerListTag(@NonNull Values values) {
+    super(TagType.INTEGER, values);
+    this.values = values;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void accept(@NonNull TagVisitor visitor) {
+    int[] array = this.values.array;
+    int size = this.values.size;
+
+    visitor.visitList(this.type, size);
+    for (int i = 0; i < size; ++i) {
+      visitor.visitInteger(array[i]);
+    }
+  }
+
+  public void addInteger(int value) {
+    int index = this.prepareAppend(1);
+    this.values.array[index] = value;
+    this.values.appended(1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public IntegerListTag fork() {
+    return new IntegerListTag((Values) this.values.fork());
+  }
+
+  public int getInteger(int index) {
+    this.values.checkIndex(index);
+    return this.values.array[index];
+  }
+
+  public void setInteger(int index, int value) {
+    this.prepareSet(index);
+    this.values.array[index] = value;
+  }
+
+  /**
+   * Creates a sequential stream over the values within this list (the stream reads through to
+   * the backing array and does not box its values).
+   *
+   * @return a stream of values.
+   */
+  @NonNull
+  public IntStream integerStream() {
+    return Arrays.stream(this.values.array, 0, this.values.size);
+  }
+
+  /**
+   * Creates a copy of the values within this list.
+   *
+   * @return an array of values.
+   */
+  @NonNull
+  public int[] toIntegerArray() {
+    return Arrays.copyOf(this.values.array, this.values.size);
+  }
+
+  /**
+   * Provides the primitive storage which backs an integer list.
+   */
+  private static final class Values extends PrimitiveList<IntegerTag> {
+
+    private int[] array;
+
+    Values(int capacity) {
+      this.array = new int[capacity];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    Object array() {
+      return this.array;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    IntegerTag bind(int index) {
+      return new Element(this, index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    IntegerTag box(int index) {
+      return new IntegerTag(this.array[index]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int capacity() {
+      return this.array.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean equals(@NonNull PrimitiveList<IntegerTag> other, int index) {
+      return this.array[index] == ((Values) other).array[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int hashCode(int index) {
+      return 31 + Integer.hashCode(this.array[index]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void read(@NonNull ByteBuf buffer, int offset, int count) {
+      BufferUtil.readIntegers(buffer, this.array, offset, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void resize(int capacity) {
+      this.array = Arrays.copyOf(this.array, capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void unbox(int index, @NonNull IntegerTag element) {
+      this.array[index] = element.getValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void write(@NonNull ByteBuf buffer, int count) {
+      BufferUtil.writeIntegers(buffer, this.array, 0, count);
+    }
+  }
+
+  /**
+   * Provides a transient integer tag which reads and writes the value at a fixed index of a list
+   * until the list is structurally modified.
+   */
+  private static final class Element extends IntegerTag {
+
+    private final Values values;
+    private final int index;
+    private final int modCount;
+
+    Element(@NonNull Values values, int index) {
+      this.values = values;
+      this.index = index;
+      this.modCount = values.modCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getValue() {
+      this.values.checkModCount(this.modCount);
+      return this.values.array[this.index];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFrozen() {
+      return super.isFrozen() || this.values.isFrozen();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(int value) {
+      if (super.isFrozen()) {
+        throw new IllegalStateException("Cannot modify frozen tag");
+      }
+
+      this.values.prepareWrapperWrite(this.modCount);
+      this.values.array[this.index] = value;
+    }
+  }
+}
@@ -26,6 +26,9 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents an NBT tag which contains an arbitrarily sized list of another NBT value type.
@@ -34,16 +37,43 @@ import java.util.Objects;
  */
 public class ListTag<T extends Tag> implements Iterable<T>, Tag {
 
-  private final List<T> elements = new ArrayList<>();
-  private final List<T> view = Collections.unmodifiableList(this.elements);
-  private TagType type;
+  List<T> elements;
+  private List<T> view;
+  private boolean shared;
+  private boolean borrowed;
+  Owner owner;
+  boolean frozen;
+  private int hashCode;
+  TagType type;
 
   public ListTag() {
     this(TagType.END);
   }
 
   public ListTag(@NonNull TagType type) {
+    this(type, new ArrayList<>());
+  }
+
+  /**
+   * Creates a new list which has been pre-sized to hold the specified amount of elements.
+   *
+   * @param type an element type.
+   * @param capacity an initial capacity.
+   */
+  ListTag(@NonNull TagType type, int capacity) {
+    this(type, new ArrayList<>(capacity));
+  }
+
+  /**
+   * Creates a new list which stores its elements within the specified backing list.
+   *
+   * @param type an element type.
+   * @param elements a backing list.
+   */
+  ListTag(@NonNull TagType type, @NonNull List<T> elements) {
     this.type = type;
+    this.elements = elements;
+    this.view = Collections.unmodifiableList(this.elements);
   }
 
   public ListTag(@NonNull TagType type, @NonNull T... elements) {
@@ -63,11 +93,15 @@ public class ListTag<T extends Tag> implements Iterable<T>, Tag {
    */
   @Override
   public void accept(@NonNull TagVisitor visitor) {
+    this.resolve();
     visitor.visitList(this.type, this.elements.size());
     this.elements.forEach((e) -> e.accept(visitor));
   }
 
   public void add(@NonNull T element) {
+    this.ensureMutable();
+    this.own();
+
     if (this.type == TagType.END) {
       this.type = element.getType();
     }
@@ -77,6 +111,7 @@ public class ListTag<T extends Tag> implements Iterable<T>, Tag {
           "Cannot add tag of type " + element.getType() + " to " + this.type + " list");
     }
 
+    this.attach(element);
     this.elements.add(element);
   }
 
@@ -88,17 +123,101 @@ public class ListTag<T extends Tag> implements Iterable<T>, Tag {
     elements.forEach(this::add);
   }
 
-  private void cleanup() {
+  /**
+   * Records this list as the parent of an element which is added to it.
+   *
+   * @param element an element.
+   */
+  void attach(@NonNull T element) {
+    Owner.adopt(element, this.owner());
+  }
+
+  /**
+   * Records this list as the parent of all of its elements (decoders populate the backing list
+   * directly and call this method once they are done).
+   */
+  void attachAll() {
+    this.elements.forEach(this::attach);
+  }
+
+  /**
+   * Creates a new list which has been pre-sized to hold the specified amount of elements (lists of
+   * primitive values are backed by a primitive array).
+   *
+   * @param type an element type.
+   * @param capacity an initial capacity.
+   * @return a list tag.
+   */
+  @NonNull
+  static ListTag<?> create(@NonNull TagType type, int capacity) {
+    switch (type) {
+      case BYTE:
+        return new ByteListTag(capacity);
+      case SHORT:
+        return new ShortListTag(capacity);
+      case INTEGER:
+        return new IntegerListTag(capacity);
+      case LONG:
+        return new LongListTag(capacity);
+      case FLOAT:
+        return new FloatListTag(capacity);
+      case DOUBLE:
+        return new DoubleListTag(capacity);
+      default:
+        return new ListTag<>(type, capacity);
+    }
+  }
+
+  /**
+   * Resets the element type once the list has been emptied.
+   */
+  void cleanup() {
     if (this.elements.isEmpty()) {
       this.type = TagType.END;
     }
   }
 
   public void clear() {
-    this.elements.clear();
+    this.ensureMutable();
+
+    this.elements.forEach(this::detach);
+
+    if (this.shared) {
+      this.replaceElements(new ArrayList<>());
+    } else {
+      this.elements.clear();
+    }
+
     this.type = TagType.END;
   }
 
+  /**
+   * Releases an element which is removed from this list.
+   *
+   * @param element an element.
+   */
+  void detach(@NonNull T element) {
+    if (this.owner != null && Owner.ownerOf(element) == this.owner) {
+      Owner.adopt(element, null);
+    }
+  }
+
+  /**
+   * Verifies that this list may be modified and brings it up to date with the forks of its
+   * parent.
+   *
+   * @throws IllegalStateException when the list has been frozen.
+   */
+  void ensureMutable() {
+    if (this.frozen) {
+      throw new IllegalStateException("Cannot modify frozen tag");
+    }
+
+    if (this.owner != null) {
+      this.owner.claim();
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -112,12 +231,77 @@ public class ListTag<T extends Tag> implements Iterable<T>, Tag {
     }
 
     ListTag<?> listTag = (ListTag<?>) o;
+
+    if (this.frozen && listTag.frozen && this.hashCode() != listTag.hashCode()) {
+      return false;
+    }
+
+    this.resolve();
+    listTag.resolve();
+
     return this.type == listTag.type &&
         Objects.equals(this.elements, listTag.elements);
   }
 
+  /**
+   * Creates a copy of this list in constant time. Both lists share their backing list until either
+   * of them is modified while the copy borrows the elements of this list until it modifies or
+   * exposes them (e.g. through {@link #get(int)} or {@link #iterator()}). Elements which are
+   * modified through this list or references which have been retained elsewhere in the meantime
+   * leave their current state behind for the copy beforehand.
+   *
+   * @return a copy.
+   */
+  @NonNull
+  public ListTag<T> fork() {
+    ListTag<T> copy = new ListTag<>(this.type, this.elements);
+    copy.shared = true;
+    copy.borrowed = true;
+
+    if (!this.frozen) {
+      // frozen elements never change and thus never need to leave their state behind
+      this.shared = true;
+      copy.owner = new Owner(this.owner().seal());
+    }
+
+    return copy;
+  }
+
+  /**
+   * Prevents any further modifications to this list and all of its elements. Frozen lists cache
+   * their hash code and thus only compute it once while comparisons between frozen lists with
+   * differing hash codes fail right away.
+   *
+   * @return this list.
+   * @throws IllegalStateException when the list contains a concurrent compound.
+   */
+  @NonNull
+  public ListTag<T> freeze() {
+    if (!this.frozen) {
+      TagFactory.checkFreezable(this);
+      this.freezeTree();
+    }
+
+    return this;
+  }
+
+  /**
+   * Freezes this list and all of its elements (elements which are shared with a fork are replaced
+   * with private copies first).
+   */
+  void freezeTree() {
+    if (this.frozen) {
+      return;
+    }
+
+    this.own();
+    this.elements.forEach(TagFactory::freeze);
+    this.frozen = true;
+  }
+
   @NonNull
   public T get(int index) {
+    this.resolve();
     return this.elements.get(index);
   }
 
@@ -135,7 +319,23 @@ public class ListTag<T extends Tag> implements Iterable<T>, Tag {
    */
   @Override
   public int hashCode() {
-    return Objects.hash(this.type, this.elements);
+    if (!this.frozen) {
+      this.resolve();
+      return Objects.hash(this.type.ordinal(), this.elements);
+    }
+
+    int hashCode = this.hashCode;
+
+    if (hashCode == 0) {
+      hashCode = Objects.hash(this.type.ordinal(), this.elements);
+      this.hashCode = hashCode;
+    }
+
+    return hashCode;
+  }
+
+  public boolean isFrozen() {
+    return this.frozen;
   }
 
   /**
@@ -143,16 +343,90 @@ public class ListTag<T extends Tag> implements Iterable<T>, Tag {
    */
   @Override
   public Iterator<T> iterator() {
+    this.resolve();
     return this.view.iterator();
   }
 
+  /**
+   * Brings this list up to date with the forks of its parent and replaces a backing list which is
+   * shared with a fork with a private copy (elements which have been borrowed from the list this
+   * list has been forked from are replaced with forks of their state at the time this list has
+   * been forked while frozen lists are never modified and thus keep sharing their storage).
+   */
+  @SuppressWarnings("unchecked")
+  void own() {
+    if (this.frozen) {
+      return;
+    }
+
+    if (this.owner != null) {
+      this.owner.claim();
+    }
+
+    if (!this.shared) {
+      return;
+    }
+
+    List<T> elements = new ArrayList<>(this.elements);
+
+    if (this.borrowed) {
+      Owner owner = this.owner();
+
+      for (int i = 0; i < elements.size(); ++i) {
+        T element = elements.get(i);
+
+        if (Owner.ownerOf(element) != owner) {
+          element = (T) owner.resolve(element);
+          Owner.adopt(element, owner);
+          elements.set(i, element);
+        }
+      }
+    }
+
+    this.replaceElements(elements);
+  }
+
+  /**
+   * Retrieves the owner which tracks the elements of this list on behalf of its forks.
+   *
+   * @return an owner.
+   */
+  @NonNull
+  Owner owner() {
+    if (this.owner == null) {
+      this.owner = new Owner(null);
+    }
+
+    return this.owner;
+  }
+
+  /**
+   * Creates a possibly parallel stream over the elements within this list.
+   *
+   * @return a stream of elements.
+   */
+  @NonNull
+  public Stream<T> parallelStream() {
+    return StreamSupport.stream(this.spliterator(), true);
+  }
+
   public void remove(int index) {
-    this.elements.remove(index);
+    this.ensureMutable();
+    this.own();
+    this.detach(this.elements.remove(index));
     this.cleanup();
   }
 
   public void remove(@NonNull T element) {
-    this.elements.remove(element);
+    this.ensureMutable();
+    this.own();
+
+    int index = this.elements.indexOf(element);
+
+    if (index != -1) {
+      this.detach(this.elements.remove(index));
+    }
+
     this.cleanup();
   }
 
@@ -161,11 +435,62 @@ public class ListTag<T extends Tag> implements Iterable<T>, Tag {
   }
 
   public void removeAll(@NonNull Collection<? extends T> elements) {
-    this.elements.removeAll(elements);
+    this.ensureMutable();
+    this.own();
+    this.elements.removeIf((e) -> {
+      if (!elements.contains(e)) {
+        return false;
+      }
+
+      this.detach(e);
+      return true;
+    });
     this.cleanup();
   }
 
+  /**
+   * Replaces the backing list of this tag with a private list.
+   *
+   * @param elements a backing list.
+   */
+  private void replaceElements(@NonNull List<T> elements) {
+    this.elements = elements;
+    this.view = Collections.unmodifiableList(elements);
+    this.shared = false;
+    this.borrowed = false;
+  }
+
+  /**
+   * Replaces the elements which have been borrowed from the list this list has been forked from
+   * before they are exposed.
+   */
+  void resolve() {
+    if (this.borrowed) {
+      this.own();
+    }
+  }
+
   public int size() {
     return this.elements.size();
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Spliterator<T> spliterator() {
+    this.resolve();
+    return this.view.spliterator();
+  }
+
+  /**
+   * Creates a sequential stream over the elements within this list.
+   *
+   * @return a stream of elements.
+   */
+  @NonNull
+  public Stream<T> stream() {
+    return StreamSupport.stream(this.spliterator(), false);
+  }
 }
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagVisitor;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Represents an NBT tag which contains a set of long values.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class LongArrayTag implements Iterable<Long>, Tag {
+
+  private LongBuffer value;
+  private boolean frozen;
+  private boolean shared;
+  Owner owner;
+  int epoch;
+
+  public LongArrayTag() {
+    this(new long[0]);
+  }
+
+  public LongArrayTag(@NonNull long[] value) {
+    this.value = LongBuffer.wrap(value);
+  }
+
+  /**
+   * Creates a new tag which is backed by the remaining contents of the specified buffer (changes
+   * to the buffer contents are reflected by the tag and vice versa).
+   *
+   * @param value a backing buffer.
+   */
+  public LongArrayTag(@NonNull LongBuffer value) {
+    this.value = value.slice();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void accept(@NonNull TagVisitor visitor) {
+    LongBuffer value = this.value;
+    int length = value.capacity();
+
+    visitor.visitLongArray(length);
+
+    for (int i = 0; i < length; ++i) {
+      visitor.visitLong(value.get(i));
+    }
+  }
+
+  /**
+   * Records the parent which holds this tag.
+   *
+   * @param owner the owner of the parent or null if the tag has been removed from it.
+   */
+  void adopt(@Nullable Owner owner) {
+    if (!this.frozen) {
+      Owner.claim(this, this.owner, this.epoch);
+      this.owner = owner;
+      this.epoch = owner != null ? owner.epoch : 0;
+    }
+  }
+
+  /**
+   * Creates a new tag of the specified length which stores its values outside of the heap (values
+   * are stored in big endian byte order and may thus be transferred to and from encoded buffers
+   * without conversion).
+   *
+   * @param length an amount of values.
+   * @return a tag.
+   */
+  @NonNull
+  public static LongArrayTag allocateDirect(int length) {
+    return new LongArrayTag(ByteBuffer.allocateDirect(length * Long.BYTES)
+        .order(ByteOrder.BIG_ENDIAN)
+        .asLongBuffer());
+  }
+
+  /**
+   * Retrieves the backing array of this tag.
+   *
+   * @return an array or null if the values are not stored within an array of matching length.
+   */
+  @Nullable
+  private long[] array() {
+    LongBuffer value = this.value;
+
+    if (!value.hasArray() || value.arrayOffset() != 0
+        || value.array().length != value.capacity()) {
+      return null;
+    }
+
+    return value.array();
+  }
+
+  /**
+   * Creates a view of the values within this tag (changes to the view are reflected by the tag
+   * while the view itself is read-only once the tag has been frozen).
+   *
+   * @return a buffer.
+   */
+  @NonNull
+  public LongBuffer asLongBuffer() {
+    if (this.frozen) {
+      return this.value.asReadOnlyBuffer();
+    }
+
+    this.own();
+    return this.value.duplicate();
+  }
+
+  /**
+   * Verifies that this tag may be modified and brings it up to date with the forks of its parent.
+   *
+   * @throws IllegalStateException when the tag has been frozen.
+   */
+  private void ensureMutable() {
+    if (this.frozen) {
+      throw new IllegalStateException("Cannot modify frozen tag");
+    }
+
+    this.epoch = Owner.claim(this, this.owner, this.epoch);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof LongArrayTag)) {
+      return false;
+    }
+
+    LongArrayTag that = (LongArrayTag) o;
+    return this.value.equals(that.value);
+  }
+
+  public long get(int index) {
+    return this.value.get(index);
+  }
+
+  /**
+   * Copies a range of values into an array.
+   *
+   * @param index the index of the first value.
+   * @param target a target array.
+   * @param offset the index at which the first value is stored within the target array.
+   * @param length the amount of values.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void getLongs(int index, @NonNull long[] target, int offset, int length) {
+    this.range(index, length).get(target, offset, length);
+  }
+
+  /**
+   * Copies a range of values into a buffer (the amount of values is given by the remaining space
+   * within the target buffer).
+   *
+   * @param index the index of the first value.
+   * @param target a target buffer.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void getLongs(int index, @NonNull LongBuffer target) {
+    target.put(this.range(index, target.remaining()));
+  }
+
+  /**
+   * Writes a range of values to the end of a buffer in big endian byte order.
+   *
+   * @param index the index of the first value.
+   * @param target a target buffer.
+   * @param length the amount of values.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void getLongs(int index, @NonNull ByteBuf target, int length) {
+    BufferUtil.writeLongs(target, this.range(index, length));
+  }
+
+  public int getLength() {
+    return this.value.capacity();
+  }
+
+  /**
+   * Creates a copy of this tag which shares its storage with this tag until either of them is
+   * modified or exposes its storage (frozen tags never modify their storage and thus continue to
+   * share it).
+   *
+   * @return a copy.
+   */
+  @NonNull
+  LongArrayTag fork() {
+    LongArrayTag copy = new LongArrayTag(this.value);
+    copy.shared = true;
+
+    if (!this.frozen) {
+      this.shared = true;
+    }
+
+    return copy;
+  }
+
+  /**
+   * Prevents any further modifications to this tag (the array returned by {@link #getValue()}
+   * remains the backing array of this tag and must thus not be modified once it has been frozen).
+   *
+   * @return this tag.
+   */
+  @NonNull
+  public LongArrayTag freeze() {
+    this.frozen = true;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public TagType getType() {
+    return TagType.LONG_ARRAY;
+  }
+
+  /**
+   * Retrieves the values within this tag (the backing array is returned as-is unless it is shared
+   * with a fork while the values of tags which are backed by a buffer are copied into a new array).
+   *
+   * @return an array of values.
+   */
+  @NonNull
+  public long[] getValue() {
+    if (!this.frozen) {
+      this.own();
+    }
+
+    long[] value = this.array();
+
+    if (value == null) {
+      value = new long[this.value.capacity()];
+      this.value.duplicate().get(value);
+    }
+
+    return value;
+  }
+
+  /**
+   * Evaluates whether the values within this tag are stored outside of the heap.
+   *
+   * @return true if direct, false otherwise.
+   */
+  public boolean isDirect() {
+    return this.value.isDirect();
+  }
+
+  public boolean isFrozen() {
+    return this.frozen;
+  }
+
+  public void setValue(@NonNull long[] value) {
+    this.ensureMutable();
+    this.value = LongBuffer.wrap(value);
+    this.shared = false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    long[] array = this.array();
+
+    if (array != null) {
+      return Arrays.hashCode(array);
+    }
+
+    LongBuffer value = this.value;
+    int hashCode = 1;
+
+    for (int i = 0; i < value.capacity(); ++i) {
+      hashCode = 31 * hashCode + Long.hashCode(value.get(i));
+    }
+
+    return hashCode;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public PrimitiveIterator.OfLong iterator() {
+    return Spliterators.iterator(this.spliterator());
+  }
+
+  /**
+   * Verifies that this tag may be modified and replaces storage which is shared with a fork
+   * with a private copy (the copy retains the storage kind of this tag).
+   */
+  private void own() {
+    this.ensureMutable();
+
+    if (this.shared) {
+      int capacity = this.value.capacity();
+      LongBuffer value = this.value.isDirect() ? allocateDirect(capacity).value
+          : LongBuffer.allocate(capacity);
+      value.duplicate().put(this.value.duplicate());
+
+      this.value = value;
+      this.shared = false;
+    }
+  }
+
+  /**
+   * Creates a possibly parallel stream over the values within this tag.
+   *
+   * @return a stream of values.
+   */
+  @NonNull
+  public LongStream parallelStream() {
+    return this.stream().parallel();
+  }
+
+  /**
+   * Creates a view of a range of values within this tag.
+   *
+   * @param index the index of the first value.
+   * @param length the amount of values.
+   * @return a buffer.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  @NonNull
+  private LongBuffer range(int index, int length) {
+    int capacity = this.value.capacity();
+
+    if (index < 0 || length < 0 || index > capacity - length) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", Length: " + length + ", Size: " + capacity);
+    }
+
+    LongBuffer range = this.value.duplicate();
+    range.limit(index + length);
+    range.position(index);
+    return range;
+  }
+
+  public void set(int index, long value) {
+    this.own();
+    this.value.put(index, value);
+  }
+
+  /**
+   * Replaces a range of values with the contents of an array.
+   *
+   * @param index the index of the first value.
+   * @param source a source array.
+   * @param offset the index of the first value within the source array.
+   * @param length the amount of values.
+   * @throws IllegalStateException when the tag has been frozen.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void setLongs(int index, @NonNull long[] source, int offset, int length) {
+    this.own();
+    this.range(index, length).put(source, offset, length);
+  }
+
+  /**
+   * Replaces a range of values with the remaining contents of a buffer.
+   *
+   * @param index the index of the first value.
+   * @param source a source buffer.
+   * @throws IllegalStateException when the tag has been frozen.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void setLongs(int index, @NonNull LongBuffer source) {
+    this.own();
+    this.range(index, source.remaining()).put(source);
+  }
+
+  /**
+   * Replaces a range of values with big endian values read from a buffer.
+   *
+   * @param index the index of the first value.
+   * @param source a source buffer.
+   * @param length the amount of values.
+   * @throws IllegalStateException when the tag has been frozen.
+   * @throws IndexOutOfBoundsException when the range exceeds the bounds of this tag.
+   */
+  public void setLongs(int index, @NonNull ByteBuf source, int length) {
+    this.own();
+    BufferUtil.readLongs(source, this.range(index, length));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Spliterator.OfLong spliterator() {
+    return this.stream().spliterator();
+  }
+
+  /**
+   * Creates a sequential stream over the values within this tag (the stream reads through to the
+   * backing storage and does not box its values).
+   *
+   * @return a stream of values.
+   */
+  @NonNull
+  public LongStream stream() {
+    long[] array = this.array();
+
+    if (array != null) {
+      return Arrays.stream(array);
+    }
+
+    LongBuffer value = this.value;
+    return IntStream.range(0, value.capacity()).mapToLong(value::get);
+  }
+
+  /**
+   * Writes the length and values of this tag to a buffer.
+   *
+   * @param buffer a target buffer.
+   */
+  void write(@NonNull ByteBuf buffer) {
+    buffer.writeInt(this.value.capacity());
+    BufferUtil.writeLongs(buffer, this.value.duplicate());
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the children of a compound or list on behalf of the forks which borrow them. Children
+ * record the epoch of their parent at which they have been added and forking the parent merely
+ * seals its current epoch (the parent and its fork keep sharing their storage and children).
+ * Before a child of a sealed epoch is modified for the first time, it leaves a fork of its current
+ * state behind for each fork which still borrows it and then joins the current epoch of its parent
+ * (parents are brought up to date before their children and modifications deep within a tree are
+ * thus isolated as well). Forks replace borrowed children with forks of the state which has been
+ * left behind for them (or of the child itself if it has not been modified since) once they expose
+ * or modify them. Tags are expected to be held by a single parent at a time.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class Owner {
+
+  final Borrow borrow;
+  int epoch;
+  private Tag tag;
+  private Owner parent;
+  private int parentEpoch;
+  private List<WeakReference<Borrow>> borrows;
+
+  /**
+   * Creates a new owner.
+   *
+   * @param borrow the borrow of the container from which this container has been forked (if any).
+   */
+  Owner(@Nullable Borrow borrow) {
+    this.borrow = borrow;
+  }
+
+  /**
+   * Records the parent which holds a tag (tags which have been held by another parent are brought
+   * up to date with the forks of said parent first while frozen tags are never tracked as they
+   * cannot be modified).
+   *
+   * @param tag a tag.
+   * @param owner the owner of the parent or null if the tag has been removed from its parent.
+   */
+  static void adopt(@NonNull Tag tag, @Nullable Owner owner) {
+    switch (tag.getType()) {
+      case BYTE:
+        ((ByteTag) tag).adopt(owner);
+        break;
+      case SHORT:
+        ((ShortTag) tag).adopt(owner);
+        break;
+      case INTEGER:
+        ((IntegerTag) tag).adopt(owner);
+        break;
+      case LONG:
+        ((LongTag) tag).adopt(owner);
+        break;
+      case FLOAT:
+        ((FloatTag) tag).adopt(owner);
+        break;
+      case DOUBLE:
+        ((DoubleTag) tag).adopt(owner);
+        break;
+      case BYTE_ARRAY:
+        ((ByteArrayTag) tag).adopt(owner);
+        break;
+      case STRING:
+        ((StringTag) tag).adopt(owner);
+        break;
+      case LIST:
+        ListTag<?> list = (ListTag<?>) tag;
+
+        if (!list.frozen) {
+          list.owner().attach(list, owner);
+        }
+        break;
+      case COMPOUND:
+        // concurrent compounds are forked eagerly and are thus not tracked
+        CompoundMap map = ((CompoundTag) tag).map;
+
+        if (map != null && !map.frozen) {
+          map.owner().attach(tag, owner);
+        }
+        break;
+      case INTEGER_ARRAY:
+        ((IntegerArrayTag) tag).adopt(owner);
+        break;
+      case LONG_ARRAY:
+        ((LongArrayTag) tag).adopt(owner);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Brings a tag up to date with the forks of its parent before it is modified.
+   *
+   * @param tag a tag.
+   * @param owner the owner of its parent (if any).
+   * @param epoch the epoch of the parent at which the tag has been added or last modified.
+   * @return the current epoch of the parent.
+   */
+  static int claim(@NonNull Tag tag, @Nullable Owner owner, int epoch) {
+    if (owner == null) {
+      return epoch;
+    }
+
+    owner.claim();
+
+    if (epoch == owner.epoch) {
+      return epoch;
+    }
+
+    synchronized (owner) {
+      owner.preserve(tag, epoch);
+      return owner.epoch;
+    }
+  }
+
+  /**
+   * Retrieves the owner of the parent which holds a tag.
+   *
+   * @param tag a tag.
+   * @return an owner or null if the tag is not tracked.
+   */
+  @Nullable
+  static Owner ownerOf(@NonNull Tag tag) {
+    switch (tag.getType()) {
+      case BYTE:
+        return ((ByteTag) tag).owner;
+      case SHORT:
+        return ((ShortTag) tag).owner;
+      case INTEGER:
+        return ((IntegerTag) tag).owner;
+      case LONG:
+        return ((LongTag) tag).owner;
+      case FLOAT:
+        return ((FloatTag) tag).owner;
+      case DOUBLE:
+        return ((DoubleTag) tag).owner;
+      case BYTE_ARRAY:
+        return ((ByteArrayTag) tag).owner;
+      case STRING:
+        return ((StringTag) tag).owner;
+      case LIST:
+        Owner owner = ((ListTag<?>) tag).owner;
+        return owner != null ? owner.parent : null;
+      case COMPOUND:
+        CompoundMap map = ((CompoundTag) tag).map;
+        return map != null && map.owner != null ? map.owner.parent : null;
+      case INTEGER_ARRAY:
+        return ((IntegerArrayTag) tag).owner;
+      case LONG_ARRAY:
+        return ((LongArrayTag) tag).owner;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Records the parent which holds the container of this owner.
+   *
+   * @param tag the container.
+   * @param parent the owner of the parent or null if the container has been removed.
+   */
+  void attach(@NonNull Tag tag, @Nullable Owner parent) {
+    this.claim();
+
+    this.tag = tag;
+    this.parent = parent;
+    this.parentEpoch = parent != null ? parent.epoch : 0;
+  }
+
+  /**
+   * Brings the container of this owner up to date with the forks of its parent before it is
+   * modified (or modifies its storage in place).
+   */
+  void claim() {
+    if (this.parent != null) {
+      this.parentEpoch = claim(this.tag, this.parent, this.parentEpoch);
+    }
+  }
+
+  /**
+   * Leaves a fork of a child behind for every fork which borrows the child at the specified epoch
+   * and has yet to receive one.
+   *
+   * @param tag a child.
+   * @param epoch the epoch at which the child has been added or last modified.
+   */
+  private void preserve(@NonNull Tag tag, int epoch) {
+    if (this.borrows == null) {
+      return;
+    }
+
+    Iterator<WeakReference<Borrow>> it = this.borrows.iterator();
+
+    while (it.hasNext()) {
+      Borrow borrow = it.next().get();
+
+      if (borrow == null) {
+        it.remove();
+      } else if (borrow.epoch >= epoch && !borrow.snapshots.containsKey(tag)) {
+        borrow.snapshots.put(tag, TagFactory.fork(tag));
+      }
+    }
+  }
+
+  /**
+   * Creates a fork of a child which has been borrowed from the container this container has been
+   * forked from (the fork is not attached to any parent yet).
+   *
+   * @param tag a borrowed child.
+   * @return a fork.
+   */
+  @NonNull
+  Tag resolve(@NonNull Tag tag) {
+    return this.borrow != null ? this.borrow.resolve(tag) : TagFactory.fork(tag);
+  }
+
+  /**
+   * Seals the current epoch on behalf of a new fork of the container.
+   *
+   * @return a borrow.
+   */
+  @NonNull
+  synchronized Borrow seal() {
+    Borrow borrow = new Borrow(this, this.epoch++);
+
+    if (this.borrows == null) {
+      this.borrows = new ArrayList<>(1);
+    } else {
+      this.borrows.removeIf((r) -> r.get() == null);
+    }
+
+    this.borrows.add(new WeakReference<>(borrow));
+    return borrow;
+  }
+
+  /**
+   * Represents the children which a fork borrows from the container it has been forked from (the
+   * container retains a weak reference which is cleared once the fork is discarded).
+   */
+  static final class Borrow {
+
+    private final Owner owner;
+    private final int epoch;
+    private final Map<Tag, Tag> snapshots = new IdentityHashMap<>();
+
+    Borrow(@NonNull Owner owner, int epoch) {
+      this.owner = owner;
+      this.epoch = epoch;
+    }
+
+    /**
+     * Creates a fork of a child which has been borrowed through this borrow (children which have
+     * been borrowed by the source container in turn are located through its own borrow while
+     * children which have since been removed from their parent are located through the state
+     * they have left behind).
+     *
+     * @param tag a borrowed child.
+     * @return a fork.
+     */
+    @NonNull
+    Tag resolve(@NonNull Tag tag) {
+      Owner owner = ownerOf(tag);
+
+      for (Borrow borrow = this; borrow != null; borrow = borrow.owner.borrow) {
+        synchronized (borrow.owner) {
+          Tag snapshot = borrow.snapshots.get(tag);
+
+          if (snapshot != null || borrow.owner == owner) {
+            return TagFactory.fork(snapshot != null ? snapshot : tag);
+          }
+        }
+      }
+
+      return TagFactory.fork(tag);
+    }
+  }
+}
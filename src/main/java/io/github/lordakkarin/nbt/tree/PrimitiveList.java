@@ -0,0 +1,475 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.netty.buffer.ByteBuf;
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Provides a list implementation which stores the values of primitive tags within a primitive
+ * array and only materializes transient wrapper tags when elements are accessed through the list
+ * interface. Wrappers are neither cached nor tracked: they read and write the value at their index
+ * through the backing array until the list is structurally modified (e.g. by adding, removing or
+ * clearing elements) at which point they fail with a {@link ConcurrentModificationException} just
+ * like iterators do (tags which are passed to the list are copied into the array instead while
+ * frozen lists hand out frozen copies in order to remain safe for concurrent readers).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+abstract class PrimitiveList<T extends Tag> extends AbstractList<T> implements RandomAccess,
+    Cloneable {
+
+  static final int DEFAULT_CAPACITY = 10;
+
+  int size;
+  ListTag<T> tag;
+  private boolean shared;
+  private boolean frozen;
+
+  /**
+   * Retrieves the backing array.
+   *
+   * @return an array.
+   */
+  @NonNull
+  abstract Object array();
+
+  /**
+   * Retrieves the current capacity of the backing array.
+   *
+   * @return a capacity.
+   */
+  abstract int capacity();
+
+  /**
+   * Replaces the backing array with a copy of the specified capacity.
+   *
+   * @param capacity a capacity.
+   */
+  abstract void resize(int capacity);
+
+  /**
+   * Creates a transient wrapper tag for the value at the specified index which reads and writes
+   * its value through this list.
+   *
+   * @param index an index.
+   * @return a tag.
+   */
+  @NonNull
+  abstract T bind(int index);
+
+  /**
+   * Creates a detached copy of the value at the specified index.
+   *
+   * @param index an index.
+   * @return a tag.
+   */
+  @NonNull
+  abstract T box(int index);
+
+  /**
+   * Stores the value of a wrapper tag at the specified index.
+   *
+   * @param index an index.
+   * @param element a tag.
+   */
+  abstract void unbox(int index, @NonNull T element);
+
+  /**
+   * Calculates the hash code of the value at the specified index (the result matches the hash
+   * code of the respective wrapper tag).
+   *
+   * @param index an index.
+   * @return a hash code.
+   */
+  abstract int hashCode(int index);
+
+  /**
+   * Evaluates whether the value at the specified index is equal to the value at the same index
+   * within another list of the same type.
+   *
+   * @param other another list.
+   * @param index an index.
+   * @return true if equal, false otherwise.
+   */
+  abstract boolean equals(@NonNull PrimitiveList<T> other, int index);
+
+  /**
+   * Reads the specified amount of values from a buffer into the backing array.
+   *
+   * @param buffer a buffer.
+   * @param offset the index of the first value.
+   * @param count an amount of values.
+   */
+  abstract void read(@NonNull ByteBuf buffer, int offset, int count);
+
+  /**
+   * Writes the specified amount of values from the start of the backing array to a buffer.
+   *
+   * @param buffer a buffer.
+   * @param count an amount of values.
+   */
+  abstract void write(@NonNull ByteBuf buffer, int count);
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void add(int index, @NonNull T element) {
+    if (index < 0 || index > this.size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+
+    this.prepareAppend(1);
+
+    Object array = this.array();
+    System.arraycopy(array, index, array, index + 1, this.size - index);
+    this.unbox(index, element);
+
+    ++this.size;
+    ++this.modCount;
+  }
+
+  /**
+   * Records the addition of the specified amount of values to the end of the backing array.
+   *
+   * @param count an amount of values.
+   */
+  void appended(int count) {
+    this.size += count;
+    ++this.modCount;
+  }
+
+  /**
+   * Verifies that the specified index refers to an existing element.
+   *
+   * @param index an index.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  void checkIndex(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+  }
+
+  /**
+   * Verifies that this list has not been structurally modified since a wrapper tag or spliterator
+   * captured the specified modification count.
+   *
+   * @param modCount a modification count.
+   * @throws ConcurrentModificationException when the list has been structurally modified.
+   */
+  void checkModCount(int modCount) {
+    if (this.modCount != modCount) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clear() {
+    this.own();
+    this.size = 0;
+    ++this.modCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || o.getClass() != this.getClass()) {
+      return super.equals(o);
+    }
+
+    PrimitiveList<T> list = (PrimitiveList<T>) o;
+
+    if (this.size != list.size) {
+      return false;
+    }
+
+    for (int i = 0; i < this.size; ++i) {
+      if (!this.equals(list, i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Creates a copy of this list which shares its backing array until either list is modified.
+   *
+   * @return a copy.
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  PrimitiveList<T> fork() {
+    PrimitiveList<T> copy;
+
+    try {
+      copy = (PrimitiveList<T>) this.clone();
+    } catch (CloneNotSupportedException ex) {
+      throw new AssertionError(ex);
+    }
+
+    copy.frozen = false;
+    copy.shared = true;
+    this.shared = true;
+    return copy;
+  }
+
+  /**
+   * Prevents any further modifications to the values of this list (including modifications
+   * through wrapper tags which have been retrieved previously).
+   */
+  void freeze() {
+    this.frozen = true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public T get(int index) {
+    this.checkIndex(index);
+
+    if (this.frozen) {
+      T element = this.box(index);
+      TagFactory.freeze(element);
+      return element;
+    }
+
+    return this.bind(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    int hashCode = 1;
+
+    for (int i = 0; i < this.size; ++i) {
+      hashCode = 31 * hashCode + this.hashCode(i);
+    }
+
+    return hashCode;
+  }
+
+  /**
+   * Evaluates whether this list has been frozen.
+   *
+   * @return true if frozen, false otherwise.
+   */
+  boolean isFrozen() {
+    return this.frozen;
+  }
+
+  /**
+   * Retrieves the current modification count which is captured by wrapper tags upon creation.
+   *
+   * @return a modification count.
+   */
+  int modCount() {
+    return this.modCount;
+  }
+
+  /**
+   * Ensures that the backing array is capable of holding the specified amount of additional
+   * elements.
+   *
+   * @param count an amount of elements.
+   */
+  void prepareAppend(int count) {
+    this.own();
+
+    int required = this.size + count;
+    int capacity = this.capacity();
+
+    if (required > capacity) {
+      this.resize(Math.max(required, capacity + (capacity >> 1) + 1));
+    }
+  }
+
+  /**
+   * Verifies that a wrapper tag which has been created at the specified modification count may
+   * replace its value, brings the owning list up to date with the forks of its parent and ensures
+   * that the backing array is not shared with a fork.
+   *
+   * @param modCount a modification count.
+   * @throws ConcurrentModificationException when the list has been structurally modified.
+   * @throws IllegalStateException when the list has been frozen.
+   */
+  void prepareWrapperWrite(int modCount) {
+    if (this.frozen) {
+      throw new IllegalStateException("Cannot modify frozen tag");
+    }
+
+    this.checkModCount(modCount);
+    this.tag.ensureMutable();
+    this.own();
+  }
+
+  /**
+   * Replaces a backing array which is shared with a fork with a private copy.
+   */
+  void own() {
+    if (this.shared) {
+      this.resize(this.capacity());
+      this.shared = false;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public T remove(int index) {
+    this.checkIndex(index);
+    this.own();
+
+    T previous = this.box(index);
+
+    Object array = this.array();
+    System.arraycopy(array, index + 1, array, index, this.size - index - 1);
+
+    --this.size;
+    ++this.modCount;
+    return previous;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public T set(int index, @NonNull T element) {
+    this.checkIndex(index);
+    this.own();
+
+    T previous = this.box(index);
+    this.unbox(index, element);
+    return previous;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public Spliterator<T> spliterator() {
+    return new IndexSpliterator(0, this.size, this.modCount);
+  }
+
+  /**
+   * Provides a spliterator which splits the index range of this list evenly and only creates the
+   * wrapper of each element once the element is passed to an action (wrappers are thus created by
+   * the thread which consumes them rather than up front).
+   */
+  private final class IndexSpliterator implements Spliterator<T> {
+
+    private int index;
+    private final int fence;
+    private final int expectedModCount;
+
+    IndexSpliterator(int index, int fence, int expectedModCount) {
+      this.index = index;
+      this.fence = fence;
+      this.expectedModCount = expectedModCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+          | Spliterator.NONNULL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long estimateSize() {
+      return this.fence - this.index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachRemaining(@NonNull Consumer<? super T> action) {
+      while (this.index < this.fence) {
+        PrimitiveList.this.checkModCount(this.expectedModCount);
+        action.accept(PrimitiveList.this.get(this.index++));
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean tryAdvance(@NonNull Consumer<? super T> action) {
+      if (this.index >= this.fence) {
+        return false;
+      }
+
+      PrimitiveList.this.checkModCount(this.expectedModCount);
+      action.accept(PrimitiveList.this.get(this.index++));
+      return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Spliterator<T> trySplit() {
+      int middle = (this.index + this.fence) >>> 1;
+
+      if (middle <= this.index) {
+        return null;
+      }
+
+      IndexSpliterator prefix = new IndexSpliterator(this.index, middle, this.expectedModCount);
+      this.index = middle;
+      return prefix;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Represents a list of primitive values which are stored within a primitive array rather than as
+ * individual tags (the storage of these lists is fixed to a single element type and thus only
+ * accepts tags of said type once the list has been emptied).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public abstract class PrimitiveListTag<T extends Tag> extends ListTag<T> {
+
+  private final TagType elementType;
+
+  PrimitiveListTag(@NonNull TagType type, @NonNull PrimitiveList<T> elements) {
+    super(type, elements);
+    this.elementType = type;
+    elements.tag = this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void add(@NonNull T element) {
+    if (element.getType() != this.elementType) {
+      throw new IllegalArgumentException(
+          "Cannot add tag of type " + element.getType() + " to " + this.elementType + " list");
+    }
+
+    super.add(element);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void attach(@NonNull T element) {
+    // values are copied into the backing array and the passed tag is thus never retained
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void clear() {
+    this.ensureMutable();
+    this.values().clear();
+    this.type = TagType.END;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void detach(@NonNull T element) {
+    // elements are transient wrappers which are not tracked by the list
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public abstract PrimitiveListTag<T> fork();
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public PrimitiveListTag<T> freeze() {
+    this.freezeTree();
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void freezeTree() {
+    if (!this.frozen) {
+      this.values().freeze();
+      this.frozen = true;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void own() {
+    // primitive values are copied on write by the backing list itself
+  }
+
+  /**
+   * Verifies that this list may be modified, restores its element type if it has been emptied and
+   * makes room for the specified amount of values at the end of the backing array (the caller is
+   * expected to store the values and record their addition through {@link
+   * PrimitiveList#appended(int)}).
+   *
+   * @param count an amount of values.
+   * @return the index of the first appended value.
+   * @throws IllegalStateException when the list has been frozen.
+   */
+  int prepareAppend(int count) {
+    this.ensureMutable();
+    this.type = this.elementType;
+
+    PrimitiveList<T> values = this.values();
+    values.prepareAppend(count);
+    return values.size;
+  }
+
+  /**
+   * Verifies that this list may be modified and that the specified index refers to an existing
+   * element before its value is replaced within the backing array.
+   *
+   * @param index an index.
+   * @throws IllegalStateException when the list has been frozen.
+   * @throws IndexOutOfBoundsException when the index is out of bounds.
+   */
+  void prepareSet(int index) {
+    this.ensureMutable();
+
+    PrimitiveList<T> values = this.values();
+    values.checkIndex(index);
+    values.own();
+  }
+
+  /**
+   * Appends the specified amount of values from a buffer.
+   *
+   * @param buffer a buffer.
+   * @param length an amount of values.
+   */
+  void read(@NonNull ByteBuf buffer, int length) {
+    PrimitiveList<T> values = this.values();
+    values.prepareAppend(length);
+    values.read(buffer, values.size, length);
+    values.appended(length);
+  }
+
+  /**
+   * Retrieves the primitive storage which backs this list.
+   *
+   * @return a list of values.
+   */
+  @NonNull
+  PrimitiveList<T> values() {
+    return (PrimitiveList<T>) this.elements;
+  }
+
+  /**
+   * Writes all values (without the list header) to a buffer.
+   *
+   * @param buffer a buffer.
+   */
+  void write(@NonNull ByteBuf buffer) {
+    PrimitiveList<T> values = this.values();
+    values.write(buffer, values.size);
+  }
+}
@@ -40,12 +40,36 @@ public class RootTag extends CompoundTag {
     this.name = name;
   }
 
+  RootTag(@NonNull String name, @NonNull CompoundMap map) {
+    super(map);
+    this.name = name;
+  }
+
   @Override
   public void accept(@NonNull TagVisitor visitor) {
     visitor.visitKey(this.name);
     super.accept(visitor);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public RootTag fork() {
+    return new RootTag(this.name, this.map.fork());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @NonNull
+  @Override
+  public RootTag freeze() {
+    super.freeze();
+    return this;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -71,6 +95,10 @@ public class RootTag extends CompoundTag {
   }
 
   public void setName(@NonNull String name) {
+    if (this.isFrozen()) {
+      throw new IllegalStateException("Cannot modify frozen tag");
+    }
+
     this.name = name;
   }
 
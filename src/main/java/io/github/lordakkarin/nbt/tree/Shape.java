@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents an immutable and globally shared layout of compound keys which maps each key to the
+ * slot that holds its value (compounds which receive the same keys in the same order share a
+ * single shape and only store their values).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+final class Shape {
+
+  /**
+   * Defines the shape of all empty compounds from which every other shape is derived.
+   */
+  static final Shape EMPTY = new Shape(new String[0], null);
+
+  /**
+   * Defines the maximum amount of keys within a single shape as well as the maximum amount of
+   * distinct transitions away from a shape (compounds which exceed either limit are converted into
+   * a private dictionary since their layout is unlikely to be shared).
+   */
+  static final int MAXIMUM_KEYS = 64;
+  static final int MAXIMUM_TRANSITIONS = 32;
+
+  /**
+   * Defines the maximum amount of shapes which are created over the lifetime of the application
+   * (shapes are retained indefinitely and thus compounds which encounter an exhausted tree are
+   * converted into a private dictionary as well).
+   */
+  static final int MAXIMUM_SHAPES = 1 << 14;
+
+  private static final AtomicInteger count = new AtomicInteger();
+
+  final String[] keys;
+  final int[] index;
+  private volatile Map<String, Shape> transitions;
+
+  private Shape(@NonNull String[] keys, @Nullable int[] index) {
+    this.keys = keys;
+    this.index = index;
+  }
+
+  /**
+   * Retrieves the shape which results from appending a key to this shape.
+   *
+   * @param key a key which is not part of this shape.
+   * @return a shape or null if the resulting layout is not eligible for sharing.
+   */
+  @Nullable
+  Shape transition(@NonNull String key) {
+    if (this.keys.length >= MAXIMUM_KEYS) {
+      return null;
+    }
+
+    Map<String, Shape> transitions = this.transitions;
+
+    if (transitions == null) {
+      synchronized (this) {
+        transitions = this.transitions;
+
+        if (transitions == null) {
+          this.transitions = transitions = new ConcurrentHashMap<>(4);
+        }
+      }
+    }
+
+    Shape shape = transitions.get(key);
+
+    if (shape != null) {
+      return shape;
+    }
+    if (transitions.size() >= MAXIMUM_TRANSITIONS || count.get() >= MAXIMUM_SHAPES) {
+      return null;
+    }
+
+    return transitions.computeIfAbsent(key, (k) -> {
+      if (count.getAndIncrement() >= MAXIMUM_SHAPES) {
+        return null;
+      }
+
+      String[] keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+      keys[this.keys.length] = k;
+
+      int[] index = null;
+      if (keys.length > CompoundMap.INDEX_THRESHOLD) {
+        index = CompoundMap.buildIndex(keys, keys.length);
+      }
+
+      return new Shape(keys, index);
+    });
+  }
+}
@@ -17,6 +17,7 @@
 package io.github.lordakkarin.nbt.tree;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import io.github.lordakkarin.nbt.event.TagType;
 import io.github.lordakkarin.nbt.event.TagVisitor;
 import java.util.Objects;
@@ -29,6 +30,9 @@ import java.util.Objects;
 public class StringTag implements Tag {
 
   private String value;
+  private boolean frozen;
+  Owner owner;
+  int epoch;
 
   public StringTag() {
     this.value = "";
@@ -46,6 +50,19 @@ public class StringTag implements Tag {
     visitor.visitString(this.value);
   }
 
+  /**
+   * Records the parent which holds this tag.
+   *
+   * @param owner the owner of the parent or null if the tag has been removed from it.
+   */
+  void adopt(@Nullable Owner owner) {
+    if (!this.frozen) {
+      Owner.claim(this, this.owner, this.epoch);
+      this.owner = owner;
+      this.epoch = owner != null ? owner.epoch : 0;
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -62,6 +79,17 @@ public class StringTag implements Tag {
     return Objects.equals(this.value, stringTag.value);
   }
 
+  /**
+   * Prevents any further modifications to this tag.
+   *
+   * @return this tag.
+   */
+  @NonNull
+  public StringTag freeze() {
+    this.frozen = true;
+    return this;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -76,7 +104,16 @@ public class StringTag implements Tag {
     return this.value;
   }
 
+  public boolean isFrozen() {
+    return this.frozen;
+  }
+
   public void setValue(@NonNull String value) {
+    if (this.frozen) {
+      throw new IllegalStateException("Cannot modify frozen tag");
+    }
+
+    this.epoch = Owner.claim(this, this.owner, this.epoch);
     this.value = value;
   }
 
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.event.TagType;
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+/**
+ * Replaces identical subtrees within one or more trees with a single shared instance. Every
+ * compound, list, string and array which passes through the canonicalizer is frozen and looked up
+ * within a bounded pool of weakly referenced tags which is keyed by structural hash code (the pool
+ * is two-way set associative and thus replaces older entries on collision while entries which are
+ * no longer referenced elsewhere are reclaimed by the garbage collector). Instances of this type
+ * are not thread safe and keep statistics about the amount of deduplicated tags which may be used
+ * to judge the effectiveness of the pool.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TagCanonicalizer {
+
+  /**
+   * Defines the default amount of slots within the pool.
+   */
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private static final TagType[] TYPES = TagType.values();
+
+  private final WeakReference<Tag>[] pool;
+  private final long[] visited = new long[TYPES.length];
+  private final long[] deduplicated = new long[TYPES.length];
+
+  public TagCanonicalizer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a canonicalizer with a pool which holds up to the specified amount of tags.
+   *
+   * @param capacity a capacity (rounded up to the next power of two).
+   * @throws IllegalArgumentException when the capacity is not positive or exceeds 2^30.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public TagCanonicalizer(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("Illegal capacity: " + capacity);
+    }
+
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+
+    this.pool = new WeakReference[size];
+  }
+
+  /**
+   * Canonicalizes a tag and all of its children. The passed tree is frozen and its children are
+   * replaced with their pooled counterparts in place (callers which need to retain a mutable
+   * tree pass a {@link CompoundTag#fork() fork} instead).
+   *
+   * @param tag a tag.
+   * @param <T> a tag type.
+   * @return a tag which is equal to the passed tag (either the passed tag itself or a previously
+   *     pooled instance) and which is frozen unless it contains a concurrent compound.
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public <T extends Tag> T canonicalize(@NonNull T tag) {
+    TagType type = tag.getType();
+    ++this.visited[type.ordinal()];
+
+    switch (type) {
+      case COMPOUND:
+        CompoundTag compound = (CompoundTag) tag;
+
+        // concurrent compounds cannot be frozen and thus neither they nor their parents are pooled
+        if (compound instanceof ConcurrentCompoundTag) {
+          return tag;
+        }
+        if (!compound.isFrozen() && !this.canonicalizeCompound(compound)) {
+          return tag;
+        }
+        break;
+      case LIST:
+        ListTag<Tag> list = (ListTag<Tag>) tag;
+
+        if (!list.isFrozen() && !(list instanceof PrimitiveListTag)) {
+          list.own();
+
+          boolean freezable = true;
+          List<Tag> elements = list.elements;
+          for (int i = 0; i < elements.size(); ++i) {
+            Tag element = this.canonicalize(elements.get(i));
+            elements.set(i, element);
+            freezable &= isFrozen(element);
+          }
+
+          if (!freezable) {
+            return tag;
+          }
+        }
+
+        list.freeze();
+        break;
+      case BYTE_ARRAY:
+      case STRING:
+      case INTEGER_ARRAY:
+      case LONG_ARRAY:
+        TagFactory.freeze(tag);
+        break;
+      default:
+        // boxed primitives are cheaper to retain than to pool
+        TagFactory.freeze(tag);
+        return tag;
+    }
+
+    return (T) this.intern(tag);
+  }
+
+  /**
+   * Canonicalizes all children of a compound and freezes it in place (the compound itself is
+   * retained since it typically represents the root of a tree while callers which need to retain
+   * a mutable tree pass a {@link CompoundTag#fork() fork} instead). Compounds and lists which
+   * contain concurrent compounds are neither frozen nor pooled while their remaining children are
+   * canonicalized as usual.
+   *
+   * @param tag a compound.
+   * @param <T> a compound type.
+   * @return the passed compound.
+   */
+  @NonNull
+  public <T extends CompoundTag> T canonicalizeChildren(@NonNull T tag) {
+    if (!tag.isFrozen()) {
+      this.canonicalizeCompound(tag);
+    }
+
+    return tag;
+  }
+
+  /**
+   * Canonicalizes the children of a compound and freezes it unless it contains a concurrent
+   * compound (values of lazily decoded compounds are decoded beforehand as freezing would
+   * otherwise decode them without passing them through the pool).
+   *
+   * @param tag a compound.
+   * @return true if the compound has been frozen, false otherwise.
+   */
+  private boolean canonicalizeCompound(@NonNull CompoundTag tag) {
+    CompoundMap map = tag.map;
+    map.ensureLoaded();
+    map.own();
+
+    boolean freezable = true;
+    Tag[] values = map.values;
+    for (int i = 0; i < map.size; ++i) {
+      Tag value = map.isPending(i) ? map.valueAt(i) : map.boxedAt(i);
+
+      if (value != null) {
+        values[i] = this.canonicalize(value);
+        freezable &= isFrozen(values[i]);
+      }
+    }
+
+    if (freezable) {
+      tag.freeze();
+    }
+
+    return freezable;
+  }
+
+  /**
+   * Clears the pool as well as all statistics.
+   */
+  public void clear() {
+    for (int i = 0; i < this.pool.length; ++i) {
+      this.pool[i] = null;
+    }
+
+    for (int i = 0; i < TYPES.length; ++i) {
+      this.visited[i] = 0;
+      this.deduplicated[i] = 0;
+    }
+  }
+
+  /**
+   * Retrieves the total amount of tags which have been replaced with a pooled instance.
+   *
+   * @return an amount of tags.
+   */
+  public long getDeduplicatedCount() {
+    long count = 0;
+
+    for (long value : this.deduplicated) {
+      count += value;
+    }
+
+    return count;
+  }
+
+  /**
+   * Retrieves the amount of tags of the specified type which have been replaced with a pooled
+   * instance.
+   *
+   * @param type a tag type.
+   * @return an amount of tags.
+   */
+  public long getDeduplicatedCount(@NonNull TagType type) {
+    return this.deduplicated[type.ordinal()];
+  }
+
+  /**
+   * Retrieves the total amount of tags which have been passed to this canonicalizer.
+   *
+   * @return an amount of tags.
+   */
+  public long getVisitedCount() {
+    long count = 0;
+
+    for (long value : this.visited) {
+      count += value;
+    }
+
+    return count;
+  }
+
+  /**
+   * Retrieves the amount of tags of the specified type which have been passed to this
+   * canonicalizer.
+   *
+   * @param type a tag type.
+   * @return an amount of tags.
+   */
+  public long getVisitedCount(@NonNull TagType type) {
+    return this.visited[type.ordinal()];
+  }
+
+  /**
+   * Retrieves a pooled tag which is equal to the passed frozen tag or adds the tag to the pool.
+   *
+   * @param tag a frozen tag.
+   * @return a pooled tag.
+   */
+  @NonNull
+  private Tag intern(@NonNull Tag tag) {
+    int hashCode = tag.hashCode();
+    int primary = (hashCode ^ (hashCode >>> 16)) & (this.pool.length - 1);
+    int secondary = (primary ^ 1) & (this.pool.length - 1);
+
+    Tag first = this.get(primary);
+    Tag second = this.get(secondary);
+
+    if (first == tag || second == tag) {
+      return tag;
+    }
+    if (this.matches(first, tag)) {
+      ++this.deduplicated[tag.getType().ordinal()];
+      return first;
+    }
+    if (this.matches(second, tag)) {
+      ++this.deduplicated[tag.getType().ordinal()];
+      return second;
+    }
+
+    // prefer vacant slots and otherwise demote the most recent entry to the secondary slot
+    if (first == null) {
+      this.pool[primary] = new WeakReference<>(tag);
+    } else if (second == null) {
+      this.pool[secondary] = new WeakReference<>(tag);
+    } else {
+      this.pool[secondary] = this.pool[primary];
+      this.pool[primary] = new WeakReference<>(tag);
+    }
+
+    return tag;
+  }
+
+  /**
+   * Retrieves the tag which is currently stored within the specified slot.
+   *
+   * @param slot a slot index.
+   * @return a tag or null if the slot is vacant or its tag has been reclaimed.
+   */
+  @Nullable
+  private Tag get(int slot) {
+    WeakReference<Tag> reference = this.pool[slot];
+    return reference != null ? reference.get() : null;
+  }
+
+  /**
+   * Evaluates whether a canonicalized tag has been frozen (only compounds and lists which contain
+   * concurrent compounds remain mutable).
+   *
+   * @param tag a tag.
+   * @return true if frozen, false otherwise.
+   */
+  private static boolean isFrozen(@NonNull Tag tag) {
+    if (tag instanceof CompoundTag) {
+      return ((CompoundTag) tag).isFrozen();
+    }
+    if (tag instanceof ListTag) {
+      return ((ListTag<?>) tag).isFrozen();
+    }
+
+    return true;
+  }
+
+  /**
+   * Evaluates whether a pooled candidate may stand in for a tag (both need to be of the same
+   * implementation since equality between compounds and lists does not consider their
+   * implementation).
+   *
+   * @param candidate a pooled tag.
+   * @param tag a tag.
+   * @return true if the candidate may replace the tag, false otherwise.
+   */
+  private boolean matches(@Nullable Tag candidate, @NonNull Tag tag) {
+    return candidate != null && candidate.getClass() == tag.getClass() && candidate.equals(tag);
+  }
+}
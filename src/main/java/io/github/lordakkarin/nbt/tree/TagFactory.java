@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+
+/**
+ * Provides factory methods which construct empty tags of a given type without relying on
+ * reflection (lists of primitive element types are represented by their primitive-backed
+ * implementations).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public final class TagFactory {
+
+  private TagFactory() {
+  }
+
+  /**
+   * Creates an empty tag of the specified type.
+   *
+   * @param type a tag type.
+   * @param <T> a tag type.
+   * @return a tag.
+   * @throws IllegalArgumentException when the type does not represent a value.
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public static <T extends Tag> T create(@NonNull TagType type) {
+    switch (type) {
+      case BYTE:
+        return (T) new ByteTag();
+      case SHORT:
+        return (T) new ShortTag();
+      case INTEGER:
+        return (T) new IntegerTag();
+      case LONG:
+        return (T) new LongTag();
+      case FLOAT:
+        return (T) new FloatTag();
+      case DOUBLE:
+        return (T) new DoubleTag();
+      case BYTE_ARRAY:
+        return (T) new ByteArrayTag();
+      case STRING:
+        return (T) new StringTag();
+      case LIST:
+        return (T) new ListTag<>();
+      case COMPOUND:
+        return (T) new CompoundTag();
+      case INTEGER_ARRAY:
+        return (T) new IntegerArrayTag();
+      case LONG_ARRAY:
+        return (T) new LongArrayTag();
+      default:
+        throw new IllegalArgumentException("Cannot construct tag of type " + type);
+    }
+  }
+
+  /**
+   * Creates a copy of a tag which may be modified independently of the original in constant time
+   * (compounds, lists and arrays share their storage with their fork until either of them modifies
+   * it while all other tags are copied right away).
+   *
+   * @param tag a tag.
+   * @return a copy.
+   */
+  @NonNull
+  static Tag fork(@NonNull Tag tag) {
+    switch (tag.getType()) {
+      case BYTE:
+        return new ByteTag(((ByteTag) tag).getValue());
+      case SHORT:
+        return new ShortTag(((ShortTag) tag).getValue());
+      case INTEGER:
+        return new IntegerTag(((IntegerTag) tag).getValue());
+      case LONG:
+        return new LongTag(((LongTag) tag).getValue());
+      case FLOAT:
+        return new FloatTag(((FloatTag) tag).getValue());
+      case DOUBLE:
+        return new DoubleTag(((DoubleTag) tag).getValue());
+      case BYTE_ARRAY:
+        return ((ByteArrayTag) tag).fork();
+      case STRING:
+        return new StringTag(((StringTag) tag).getValue());
+      case LIST:
+        return ((ListTag<?>) tag).fork();
+      case COMPOUND:
+        return ((CompoundTag) tag).fork();
+      case INTEGER_ARRAY:
+        return ((IntegerArrayTag) tag).fork();
+      case LONG_ARRAY:
+        return ((LongArrayTag) tag).fork();
+      default:
+        throw new IllegalArgumentException("Cannot fork tag of type " + tag.getType());
+    }
+  }
+
+  /**
+   * Verifies that a tag and all of its children may be frozen (frozen children have been verified
+   * before and are thus skipped).
+   *
+   * @param tag a tag.
+   * @throws IllegalStateException when the tag is or contains a concurrent compound.
+   */
+  static void checkFreezable(@NonNull Tag tag) {
+    if (tag instanceof ConcurrentCompoundTag) {
+      throw new IllegalStateException("Cannot freeze tree which contains a concurrent compound");
+    }
+
+    if (tag instanceof CompoundTag) {
+      CompoundMap map = ((CompoundTag) tag).map;
+
+      if (!map.frozen) {
+        for (int i = 0; i < map.size; ++i) {
+          if (map.values[i] != null) {
+            checkFreezable(map.values[i]);
+          }
+        }
+      }
+    } else if (tag instanceof ListTag && !(tag instanceof PrimitiveListTag)) {
+      ListTag<?> list = (ListTag<?>) tag;
+
+      if (!list.frozen) {
+        list.elements.forEach(TagFactory::checkFreezable);
+      }
+    }
+  }
+
+  /**
+   * Prevents any further modifications to a tag and all of its children (trees are expected to
+   * have been verified through {@link #checkFreezable(Tag)} beforehand).
+   *
+   * @param tag a tag.
+   */
+  static void freeze(@NonNull Tag tag) {
+    switch (tag.getType()) {
+      case BYTE:
+        ((ByteTag) tag).freeze();
+        break;
+      case SHORT:
+        ((ShortTag) tag).freeze();
+        break;
+      case INTEGER:
+        ((IntegerTag) tag).freeze();
+        break;
+      case LONG:
+        ((LongTag) tag).freeze();
+        break;
+      case FLOAT:
+        ((FloatTag) tag).freeze();
+        break;
+      case DOUBLE:
+        ((DoubleTag) tag).freeze();
+        break;
+      case BYTE_ARRAY:
+        ((ByteArrayTag) tag).freeze();
+        break;
+      case STRING:
+        ((StringTag) tag).freeze();
+        break;
+      case LIST:
+        ((ListTag<?>) tag).freezeTree();
+        break;
+      case COMPOUND:
+        ((CompoundTag) tag).map.freeze();
+        break;
+      case INTEGER_ARRAY:
+        ((IntegerArrayTag) tag).freeze();
+        break;
+      case LONG_ARRAY:
+        ((LongArrayTag) tag).freeze();
+        break;
+      default:
+        throw new IllegalArgumentException("Cannot freeze tag of type " + tag.getType());
+    }
+  }
+
+  /**
+   * Creates an empty list for elements of the specified type.
+   *
+   * @param elementType an element type.
+   * @param <T> an element type.
+   * @return a list tag.
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public static <T extends Tag> ListTag<T> createList(@NonNull TagType elementType) {
+    return (ListTag<T>) ListTag.create(elementType, 0);
+  }
+}
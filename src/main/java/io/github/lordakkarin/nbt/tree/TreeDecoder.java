@@ -0,0 +1,669 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.github.lordakkarin.nbt.event.TagReader;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.github.lordakkarin.nbt.internal.CapacityEstimator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes NBT encoded data directly into a tree of tags without passing through a {@link
+ * TagReader} and {@link TreeVisitor} (the resulting tree is equal to the tree generated by the
+ * visitor pipeline). Decoders which are given a {@link ForkJoinPool} decode the elements of large
+ * lists of non-primitive values concurrently (element boundaries are located through a quick pass
+ * which skips over the elements without decoding them).
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TreeDecoder {
+
+  /**
+   * Defines the minimum amount of elements within a list before its elements are decoded
+   * concurrently as well as the bounds of the amount of elements per concurrently decoded chunk.
+   */
+  static final int PARALLEL_THRESHOLD = 1024;
+  private static final int MINIMUM_CHUNK_SIZE = 64;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private static final CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+  private final ByteBufAllocator allocator;
+  private final ForkJoinPool pool;
+
+  public TreeDecoder() {
+    this(PooledByteBufAllocator.DEFAULT);
+  }
+
+  /**
+   * Creates a decoder which uses the specified allocator for temporary buffers (e.g. when
+   * decoding data from a channel or stream).
+   *
+   * @param allocator a buffer allocator.
+   */
+  public TreeDecoder(@NonNull ByteBufAllocator allocator) {
+    this(allocator, null);
+  }
+
+  public TreeDecoder(@NonNull ForkJoinPool pool) {
+    this(PooledByteBufAllocator.DEFAULT, pool);
+  }
+
+  /**
+   * Creates a decoder which uses the specified allocator for temporary buffers and decodes large
+   * lists on the specified pool.
+   *
+   * @param allocator a buffer allocator.
+   * @param pool a pool or null to decode all data on the calling thread.
+   */
+  public TreeDecoder(@NonNull ByteBufAllocator allocator, @Nullable ForkJoinPool pool) {
+    this.allocator = allocator;
+    this.pool = pool;
+  }
+
+  /**
+   * Decodes the root tag which is located at the current reader index of a buffer.
+   *
+   * @param buffer a buffer.
+   * @return a root tag.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  @NonNull
+  public RootTag decode(@NonNull ByteBuf buffer) {
+    TagType tagType = TagType.byTypeId(buffer.readByte());
+
+    if (tagType != TagType.COMPOUND) {
+      throw new IllegalStateException("Malformed NBT data: Expected compound but got " + tagType);
+    }
+
+    RootTag root = new RootTag(BufferUtil.readString(buffer));
+
+    if (this.pool == null) {
+      decodeCompound(buffer, root);
+    } else {
+      this.decodeCompoundConcurrently(buffer, root);
+    }
+
+    return root;
+  }
+
+  /**
+   * Decodes the root tag which is contained within a channel.
+   *
+   * @param channel a channel.
+   * @return a root tag.
+   * @throws IOException when reading fails.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  @NonNull
+  public RootTag decode(@NonNull ReadableByteChannel channel) throws IOException {
+    ByteBuf buffer = this.allocator.directBuffer(capacityEstimator.estimate());
+
+    try {
+      BufferUtil.readFully(channel, buffer);
+      capacityEstimator.record(buffer.readableBytes());
+
+      return this.decode(buffer);
+    } finally {
+      buffer.release();
+    }
+  }
+
+  /**
+   * Decodes the root tag which is contained within a stream.
+   *
+   * @param inputStream a stream.
+   * @return a root tag.
+   * @throws IOException when reading fails.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  @NonNull
+  public RootTag decode(@NonNull InputStream inputStream) throws IOException {
+    return this.decode(Channels.newChannel(inputStream));
+  }
+
+  /**
+   * Decodes the root tag which is contained within a file.
+   *
+   * @param path a file path.
+   * @return a root tag.
+   * @throws IOException when reading fails.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  @NonNull
+  public RootTag decode(@NonNull Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return this.decode(channel);
+    }
+  }
+
+  /**
+   * Decodes the root tag which is contained within a file.
+   *
+   * @param file a file.
+   * @return a root tag.
+   * @throws IOException when reading fails.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  @NonNull
+  public RootTag decode(@NonNull File file) throws IOException {
+    return this.decode(file.toPath());
+  }
+
+  /**
+   * Decodes the root tag which is located at the current reader index of a buffer lazily. Only
+   * the name of the root is read right away while the keys of each compound are indexed once the
+   * compound is first accessed (nested compounds and lists are merely skipped at that point),
+   * values are decoded once they are accessed and entries which have not been accessed are copied
+   * verbatim when the tree is encoded again. Since the end of the root is not known up front, the
+   * tree claims all readable bytes of the buffer. The returned tree references the buffer directly
+   * and thus requires its contents to remain unmodified and its memory to remain allocated for as
+   * long as the tree is in use.
+   *
+   * @param buffer a buffer.
+   * @return a root tag.
+   * @throws IllegalStateException when the data is malformed (malformed elements are reported
+   *     once the compound which contains them is first accessed).
+   */
+  @NonNull
+  public RootTag decodeLazy(@NonNull ByteBuf buffer) {
+    TagType tagType = TagType.byTypeId(buffer.readByte());
+
+    if (tagType != TagType.COMPOUND) {
+      throw new IllegalStateException("Malformed NBT data: Expected compound but got " + tagType);
+    }
+
+    String name = BufferUtil.readString(buffer);
+    CompoundMap map = new CompoundMap();
+    map.load(buffer.slice(), 0);
+    buffer.skipBytes(buffer.readableBytes());
+
+    return new RootTag(name, map);
+  }
+
+  /**
+   * Decodes the root tag which is contained within a channel lazily (the data is retained within
+   * an unpooled heap buffer which is reclaimed along with the tree).
+   *
+   * @param channel a channel.
+   * @return a root tag.
+   * @throws IOException when reading fails.
+   * @throws IllegalStateException when the data is malformed.
+   * @see #decodeLazy(ByteBuf)
+   */
+  @NonNull
+  public RootTag decodeLazy(@NonNull ReadableByteChannel channel) throws IOException {
+    ByteBuf buffer = Unpooled.buffer(capacityEstimator.estimate());
+
+    BufferUtil.readFully(channel, buffer);
+    capacityEstimator.record(buffer.readableBytes());
+
+    return this.decodeLazy(buffer);
+  }
+
+  /**
+   * Decodes the root tag which is contained within a stream lazily.
+   *
+   * @param inputStream a stream.
+   * @return a root tag.
+   * @throws IOException when reading fails.
+   * @throws IllegalStateException when the data is malformed.
+   * @see #decodeLazy(ByteBuf)
+   */
+  @NonNull
+  public RootTag decodeLazy(@NonNull InputStream inputStream) throws IOException {
+    return this.decodeLazy(Channels.newChannel(inputStream));
+  }
+
+  /**
+   * Decodes the root tag which is contained within a file lazily.
+   *
+   * @param path a file path.
+   * @return a root tag.
+   * @throws IOException when reading fails.
+   * @throws IllegalStateException when the data is malformed.
+   * @see #decodeLazy(ByteBuf)
+   */
+  @NonNull
+  public RootTag decodeLazy(@NonNull Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return this.decodeLazy(channel);
+    }
+  }
+
+  /**
+   * Decodes the elements of a compound up to (and including) its terminating end tag (primitive
+   * values are stored unboxed).
+   *
+   * @param buffer a buffer.
+   * @param tag a target compound.
+   */
+  private static void decodeCompound(@NonNull ByteBuf buffer, @NonNull CompoundTag tag) {
+    while (true) {
+      TagType elementType = TagType.byTypeId(buffer.readByte());
+
+      if (elementType == TagType.END) {
+        break;
+      }
+
+      decodeEntry(buffer, tag, BufferUtil.readString(buffer), elementType);
+    }
+  }
+
+  /**
+   * Decodes the elements of a compound and decodes large lists within the compound (or any of its
+   * child compounds) concurrently.
+   *
+   * @param buffer a buffer.
+   * @param tag a target compound.
+   */
+  private void decodeCompoundConcurrently(@NonNull ByteBuf buffer, @NonNull CompoundTag tag) {
+    while (true) {
+      TagType elementType = TagType.byTypeId(buffer.readByte());
+
+      if (elementType == TagType.END) {
+        break;
+      }
+
+      String key = BufferUtil.readString(buffer);
+
+      switch (elementType) {
+        case LIST:
+          tag.map.put(key, this.decodeListConcurrently(buffer));
+          break;
+        case COMPOUND: {
+          CompoundTag child = new CompoundTag();
+          this.decodeCompoundConcurrently(buffer, child);
+          tag.map.put(key, child);
+          break;
+        }
+        default:
+          decodeEntry(buffer, tag, key, elementType);
+          break;
+      }
+    }
+  }
+
+  /**
+   * Decodes the value of a single compound entry (primitive values are stored unboxed).
+   *
+   * @param buffer a buffer.
+   * @param tag a target compound.
+   * @param key the entry key.
+   * @param type the entry type.
+   */
+  private static void decodeEntry(@NonNull ByteBuf buffer, @NonNull CompoundTag tag,
+      @NonNull String key, @NonNull TagType type) {
+    switch (type) {
+      case BYTE:
+        tag.map.putPrimitive(key, type, buffer.readByte());
+        break;
+      case SHORT:
+        tag.map.putPrimitive(key, type, buffer.readShort());
+        break;
+      case INTEGER:
+      case FLOAT:
+        tag.map.putPrimitive(key, type, buffer.readInt());
+        break;
+      case LONG:
+      case DOUBLE:
+        tag.map.putPrimitive(key, type, buffer.readLong());
+        break;
+      default:
+        tag.map.put(key, decodeValue(buffer, type));
+        break;
+    }
+  }
+
+  /**
+   * Decodes the elements of a list (the list has been pre-sized to fit all of its elements and
+   * primitive values are copied straight into their backing array).
+   *
+   * @param buffer a buffer.
+   * @return a list tag.
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  private static ListTag<?> decodeList(@NonNull ByteBuf buffer) {
+    TagType elementType = TagType.byTypeId(buffer.readByte());
+    int length = readListLength(buffer, elementType);
+
+    ListTag<?> tag = ListTag.create(elementType, length);
+
+    if (tag instanceof PrimitiveListTag) {
+      ((PrimitiveListTag<?>) tag).read(buffer, length);
+      return tag;
+    }
+
+    List<Tag> elements = ((ListTag<Tag>) tag).elements;
+
+    if (elementType == TagType.COMPOUND) {
+      for (int i = 0; i < length; ++i) {
+        CompoundTag element = new CompoundTag();
+        decodeCompound(buffer, element);
+        elements.add(element);
+      }
+    } else {
+      for (int i = 0; i < length; ++i) {
+        elements.add(decodeValue(buffer, elementType));
+      }
+    }
+
+    ((ListTag<Tag>) tag).attachAll();
+    return tag;
+  }
+
+  /**
+   * Decodes a list and splits its elements into chunks which are decoded concurrently if it is
+   * large enough and consists of non-primitive elements (primitive lists are copied in bulk
+   * instead).
+   *
+   * @param buffer a buffer.
+   * @return a list tag.
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  private ListTag<?> decodeListConcurrently(@NonNull ByteBuf buffer) {
+    int start = buffer.readerIndex();
+    TagType elementType = TagType.byTypeId(buffer.readByte());
+    int length = readListLength(buffer, elementType);
+
+    if (length < PARALLEL_THRESHOLD || elementType.ordinal() <= TagType.DOUBLE.ordinal()) {
+      buffer.readerIndex(start);
+      return decodeList(buffer);
+    }
+
+    int targetChunks = this.pool.getParallelism() * CHUNKS_PER_THREAD;
+    int chunkSize = Math.max(MINIMUM_CHUNK_SIZE, (length + targetChunks - 1) / targetChunks);
+    int chunks = (length + chunkSize - 1) / chunkSize;
+    int[] boundaries = new int[chunks + 1];
+
+    for (int i = 0; i < length; ++i) {
+      if (i % chunkSize == 0) {
+        boundaries[i / chunkSize] = buffer.readerIndex();
+      }
+
+      skipValue(buffer, elementType);
+    }
+    boundaries[chunks] = buffer.readerIndex();
+
+    Tag[] elements = new Tag[length];
+    this.pool.invoke(new DecodeTask(buffer, elementType, boundaries, chunkSize, elements, 0,
+        chunks));
+
+    ListTag<?> tag = ListTag.create(elementType, length);
+    ((ListTag<Tag>) tag).elements.addAll(Arrays.asList(elements));
+    ((ListTag<Tag>) tag).attachAll();
+    return tag;
+  }
+
+  /**
+   * Decodes the payload of a tag of the specified type.
+   *
+   * @param buffer a buffer.
+   * @param type a tag type.
+   * @return a tag.
+   */
+  @NonNull
+  static Tag decodeValue(@NonNull ByteBuf buffer, @NonNull TagType type) {
+    switch (type) {
+      case BYTE:
+        return new ByteTag(buffer.readByte());
+      case SHORT:
+        return new ShortTag(buffer.readShort());
+      case INTEGER:
+        return new IntegerTag(buffer.readInt());
+      case LONG:
+        return new LongTag(buffer.readLong());
+      case FLOAT:
+        return new FloatTag(buffer.readFloat());
+      case DOUBLE:
+        return new DoubleTag(buffer.readDouble());
+      case BYTE_ARRAY: {
+        byte[] value = new byte[readLength(buffer, 1)];
+        buffer.readBytes(value);
+        return new ByteArrayTag(value);
+      }
+      case STRING:
+        return new StringTag(BufferUtil.readString(buffer));
+      case LIST:
+        return decodeList(buffer);
+      case COMPOUND: {
+        CompoundTag tag = new CompoundTag();
+        decodeCompound(buffer, tag);
+        return tag;
+      }
+      case INTEGER_ARRAY: {
+        int[] value = new int[readLength(buffer, Integer.BYTES)];
+        BufferUtil.readIntegers(buffer, value);
+        return new IntegerArrayTag(value);
+      }
+      case LONG_ARRAY: {
+        long[] value = new long[readLength(buffer, Long.BYTES)];
+        BufferUtil.readLongs(buffer, value);
+        return new LongArrayTag(value);
+      }
+      default:
+        throw new IllegalStateException("Did not expected tag of type " + type + " here");
+    }
+  }
+
+  /**
+   * Retrieves the encoded size of the values of a type if all of its values share a common size.
+   *
+   * @param type a type.
+   * @return a size or zero if the size differs between values.
+   */
+  private static int fixedSizeOf(@NonNull TagType type) {
+    switch (type) {
+      case BYTE:
+        return Byte.BYTES;
+      case SHORT:
+        return Short.BYTES;
+      case INTEGER:
+      case FLOAT:
+        return Integer.BYTES;
+      case LONG:
+      case DOUBLE:
+        return Long.BYTES;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Skips the payload of a tag of the specified type without decoding it.
+   *
+   * @param buffer a buffer.
+   * @param type a tag type.
+   * @throws IllegalStateException when the data is malformed.
+   */
+  static void skipValue(@NonNull ByteBuf buffer, @NonNull TagType type) {
+    switch (type) {
+      case BYTE:
+        buffer.skipBytes(Byte.BYTES);
+        break;
+      case SHORT:
+        buffer.skipBytes(Short.BYTES);
+        break;
+      case INTEGER:
+      case FLOAT:
+        buffer.skipBytes(Integer.BYTES);
+        break;
+      case LONG:
+      case DOUBLE:
+        buffer.skipBytes(Long.BYTES);
+        break;
+      case BYTE_ARRAY:
+        buffer.skipBytes(readLength(buffer, 1));
+        break;
+      case STRING:
+        buffer.skipBytes(buffer.readUnsignedShort());
+        break;
+      case LIST: {
+        TagType elementType = TagType.byTypeId(buffer.readByte());
+        int elementSize = fixedSizeOf(elementType);
+
+        // lists of fixed size elements are skipped in a single step
+        if (elementSize != 0) {
+          buffer.skipBytes(readLength(buffer, elementSize) * elementSize);
+          break;
+        }
+
+        int length = readListLength(buffer, elementType);
+
+        for (int i = 0; i < length; ++i) {
+          skipValue(buffer, elementType);
+        }
+        break;
+      }
+      case COMPOUND:
+        while (true) {
+          TagType elementType = TagType.byTypeId(buffer.readByte());
+
+          if (elementType == TagType.END) {
+            break;
+          }
+
+          buffer.skipBytes(buffer.readUnsignedShort());
+          skipValue(buffer, elementType);
+        }
+        break;
+      case INTEGER_ARRAY:
+        buffer.skipBytes(readLength(buffer, Integer.BYTES) * Integer.BYTES);
+        break;
+      case LONG_ARRAY:
+        buffer.skipBytes(readLength(buffer, Long.BYTES) * Long.BYTES);
+        break;
+      default:
+        throw new IllegalStateException("Did not expected tag of type " + type + " here");
+    }
+  }
+
+  /**
+   * Reads the length of an array or list and verifies that the buffer holds enough data to
+   * satisfy it before any storage is allocated for its elements.
+   *
+   * @param buffer a buffer.
+   * @param elementSize the minimum amount of bytes consumed per element.
+   * @return a length.
+   * @throws IllegalStateException when the length is negative or exceeds the available data.
+   */
+  private static int readLength(@NonNull ByteBuf buffer, int elementSize) {
+    int length = buffer.readInt();
+
+    if (length < 0 || (long) length * elementSize > buffer.readableBytes()) {
+      throw new IllegalStateException("Malformed NBT data: Illegal length " + length);
+    }
+
+    return length;
+  }
+
+  /**
+   * Reads the length of a list and verifies that the buffer holds enough data to satisfy it (lists
+   * of type END carry no element data and are thus required to be empty).
+   *
+   * @param buffer a buffer.
+   * @param elementType an element type.
+   * @return a length.
+   * @throws IllegalStateException when the length is illegal for the element type.
+   */
+  private static int readListLength(@NonNull ByteBuf buffer, @NonNull TagType elementType) {
+    if (elementType != TagType.END) {
+      return readLength(buffer, 1);
+    }
+
+    int length = buffer.readInt();
+
+    if (length != 0) {
+      throw new IllegalStateException(
+          "Malformed NBT data: Illegal length " + length + " for list of type END");
+    }
+
+    return length;
+  }
+
+  /**
+   * Decodes a range of list chunks (ranges which span multiple chunks are split in half until each
+   * task decodes a single chunk from its own slice of the buffer).
+   */
+  private static final class DecodeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ByteBuf buffer;
+    private final TagType elementType;
+    private final int[] boundaries;
+    private final int chunkSize;
+    private final Tag[] elements;
+    private final int from;
+    private final int to;
+
+    DecodeTask(@NonNull ByteBuf buffer, @NonNull TagType elementType, @NonNull int[] boundaries,
+        int chunkSize, @NonNull Tag[] elements, int from, int to) {
+      this.buffer = buffer;
+      this.elementType = elementType;
+      this.boundaries = boundaries;
+      this.chunkSize = chunkSize;
+      this.elements = elements;
+      this.from = from;
+      this.to = to;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void compute() {
+      if (this.to - this.from > 1) {
+        int middle = (this.from + this.to) >>> 1;
+        invokeAll(
+            new DecodeTask(this.buffer, this.elementType, this.boundaries, this.chunkSize,
+                this.elements, this.from, middle),
+            new DecodeTask(this.buffer, this.elementType, this.boundaries, this.chunkSize,
+                this.elements, middle, this.to));
+        return;
+      }
+
+      int offset = this.boundaries[this.from];
+      ByteBuf slice = this.buffer.slice(offset, this.boundaries[this.from + 1] - offset);
+      int end = Math.min(this.elements.length, (this.from + 1) * this.chunkSize);
+
+      for (int i = this.from * this.chunkSize; i < end; ++i) {
+        this.elements[i] = decodeValue(slice, this.elementType);
+      }
+    }
+  }
+}
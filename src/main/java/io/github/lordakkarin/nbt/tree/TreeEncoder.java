@@ -0,0 +1,503 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagWriter;
+import io.github.lordakkarin.nbt.internal.BufferUtil;
+import io.github.lordakkarin.nbt.internal.CapacityEstimator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Serializes a tree of tags directly into its NBT encoded representation without passing through
+ * the visitor pipeline (the generated output is identical to the output of {@link TagWriter}).
+ * Encoders which allocate their own buffer need to be closed when they are no longer needed.
+ * Encoders which are given a {@link ForkJoinPool} encode ranges of large lists of non-primitive
+ * values into separate buffers concurrently and expose their output as a composite buffer which
+ * references these buffers without copying them.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TreeEncoder implements AutoCloseable {
+
+  /**
+   * Defines the minimum amount of elements within a list before its elements are encoded
+   * concurrently as well as the bounds of the amount of elements per concurrently encoded chunk.
+   */
+  static final int PARALLEL_THRESHOLD = 1024;
+  private static final int MINIMUM_CHUNK_SIZE = 64;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private static final CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+  private final ByteBuf buffer;
+  private final boolean owned;
+  private final ByteBufAllocator allocator;
+  private final ForkJoinPool pool;
+
+  public TreeEncoder() {
+    this(PooledByteBufAllocator.DEFAULT);
+  }
+
+  public TreeEncoder(@NonNull ByteBufAllocator allocator) {
+    this.buffer = allocator.directBuffer(capacityEstimator.estimate());
+    this.owned = true;
+    this.allocator = allocator;
+    this.pool = null;
+  }
+
+  public TreeEncoder(@NonNull ForkJoinPool pool) {
+    this(PooledByteBufAllocator.DEFAULT, pool);
+  }
+
+  /**
+   * Creates an encoder which encodes large lists on the specified pool (the output is collected
+   * within a composite buffer whose components are acquired from the specified allocator).
+   *
+   * @param allocator a buffer allocator.
+   * @param pool a pool.
+   */
+  public TreeEncoder(@NonNull ByteBufAllocator allocator, @NonNull ForkJoinPool pool) {
+    this.buffer = allocator.compositeDirectBuffer(Integer.MAX_VALUE);
+    this.owned = true;
+    this.allocator = allocator;
+    this.pool = pool;
+  }
+
+  public TreeEncoder(@NonNull ByteBuf buffer) {
+    this.buffer = buffer;
+    this.owned = false;
+    this.allocator = null;
+    this.pool = null;
+  }
+
+  /**
+   * Clears the internal state (components which have been appended to a composite buffer are
+   * released).
+   */
+  public void clear() {
+    capacityEstimator.record(this.buffer.writerIndex());
+
+    if (this.buffer instanceof CompositeByteBuf) {
+      CompositeByteBuf composite = (CompositeByteBuf) this.buffer;
+      composite.removeComponents(0, composite.numComponents());
+    }
+
+    this.buffer.clear();
+  }
+
+  /**
+   * Releases the internal buffer if it has been allocated by this encoder (the encoder cannot be
+   * used after it has been closed).
+   */
+  @Override
+  public void close() {
+    if (this.owned && this.buffer.refCnt() != 0) {
+      capacityEstimator.record(this.buffer.writerIndex());
+      this.buffer.release();
+    }
+  }
+
+  /**
+   * Encodes a root tag and all of its children into the buffer.
+   *
+   * @param root a root tag.
+   */
+  public void encode(@NonNull RootTag root) {
+    this.encode(root.getName(), root);
+  }
+
+  /**
+   * Encodes a compound tag and all of its children as the root of a file.
+   *
+   * @param name a root name.
+   * @param tag a compound tag.
+   */
+  public void encode(@NonNull String name, @NonNull CompoundTag tag) {
+    this.buffer.writeByte(TagType.COMPOUND.ordinal());
+    BufferUtil.writeString(this.buffer, name);
+    this.encodeCompound(tag);
+  }
+
+  /**
+   * Encodes the contents of a compound tag followed by its terminating end tag (the compound
+   * writes its elements through {@link #encodeMap(CompoundMap)} or {@link #encodeEntry(String,
+   * Tag)} depending on its storage).
+   *
+   * @param tag a compound tag.
+   */
+  private void encodeCompound(@NonNull CompoundTag tag) {
+    tag.encode(this);
+    this.buffer.writeByte(TagType.END.ordinal());
+  }
+
+  /**
+   * Encodes a single named element of a compound.
+   *
+   * @param key a key.
+   * @param value a value.
+   */
+  void encodeEntry(@NonNull String key, @NonNull Tag value) {
+    TagType type = value.getType();
+
+    this.buffer.writeByte(type.ordinal());
+    BufferUtil.writeString(this.buffer, key);
+    this.encodeValue(type, value);
+  }
+
+  /**
+   * Encodes the elements of a compound map (pending values of lazily decoded compounds are copied
+   * verbatim while unboxed values are written without creating a wrapper).
+   *
+   * @param map a compound map.
+   */
+  void encodeMap(@NonNull CompoundMap map) {
+    map.ensureLoaded();
+
+    for (int i = 0; i < map.size; ++i) {
+      Tag value = map.boxedAt(i);
+      TagType type = map.typeAt(i);
+
+      this.buffer.writeByte(type.ordinal());
+      BufferUtil.writeString(this.buffer, map.keys[i]);
+
+      if (value == null && map.isPending(i)) {
+        map.copyPending(i, this.buffer);
+      } else if (value == null) {
+        this.encodePrimitive(type, map.primitives[i]);
+      } else {
+        this.encodeValue(type, value);
+      }
+    }
+  }
+
+  /**
+   * Encodes the contents of a list tag (since all elements share a common type, the type is only
+   * evaluated once per list).
+   *
+   * @param tag a list tag.
+   */
+  private void encodeList(@NonNull ListTag<?> tag) {
+    tag.resolve();
+
+    List<? extends Tag> elements = tag.elements;
+    int length = elements.size();
+
+    this.buffer.writeByte(tag.type.ordinal());
+    this.buffer.writeInt(length);
+
+    if (tag instanceof PrimitiveListTag) {
+      ((PrimitiveListTag<?>) tag).write(this.buffer);
+      return;
+    }
+
+    if (this.pool != null && length >= PARALLEL_THRESHOLD
+        && tag.type.ordinal() > TagType.DOUBLE.ordinal()) {
+      this.encodeListConcurrently(tag.type, elements);
+      return;
+    }
+
+    switch (tag.type) {
+      case BYTE:
+        for (int i = 0; i < length; ++i) {
+          this.buffer.writeByte(((ByteTag) elements.get(i)).getValue());
+        }
+        break;
+      case SHORT:
+        for (int i = 0; i < length; ++i) {
+          this.buffer.writeShort(((ShortTag) elements.get(i)).getValue());
+        }
+        break;
+      case INTEGER:
+        for (int i = 0; i < length; ++i) {
+          this.buffer.writeInt(((IntegerTag) elements.get(i)).getValue());
+        }
+        break;
+      case LONG:
+        for (int i = 0; i < length; ++i) {
+          this.buffer.writeLong(((LongTag) elements.get(i)).getValue());
+        }
+        break;
+      case FLOAT:
+        for (int i = 0; i < length; ++i) {
+          this.buffer.writeFloat(((FloatTag) elements.get(i)).getValue());
+        }
+        break;
+      case DOUBLE:
+        for (int i = 0; i < length; ++i) {
+          this.buffer.writeDouble(((DoubleTag) elements.get(i)).getValue());
+        }
+        break;
+      case COMPOUND:
+        for (int i = 0; i < length; ++i) {
+          this.encodeCompound((CompoundTag) elements.get(i));
+        }
+        break;
+      default:
+        for (int i = 0; i < length; ++i) {
+          this.encodeValue(tag.type, elements.get(i));
+        }
+        break;
+    }
+  }
+
+  /**
+   * Encodes the elements of a list in chunks which are encoded into separate buffers concurrently
+   * and appended to the composite output buffer afterwards.
+   *
+   * @param type the element type.
+   * @param elements a list of elements.
+   */
+  private void encodeListConcurrently(@NonNull TagType type,
+      @NonNull List<? extends Tag> elements) {
+    int length = elements.size();
+    int targetChunks = this.pool.getParallelism() * CHUNKS_PER_THREAD;
+    int chunkSize = Math.max(MINIMUM_CHUNK_SIZE, (length + targetChunks - 1) / targetChunks);
+    ByteBuf[] chunks = new ByteBuf[(length + chunkSize - 1) / chunkSize];
+
+    try {
+      this.pool.invoke(new EncodeTask(this.allocator, type, elements, chunkSize, chunks, 0,
+          chunks.length));
+    } catch (RuntimeException ex) {
+      for (ByteBuf chunk : chunks) {
+        if (chunk != null) {
+          chunk.release();
+        }
+      }
+
+      throw ex;
+    }
+
+    // unused capacity needs to be discarded since components are appended past the capacity
+    CompositeByteBuf composite = (CompositeByteBuf) this.buffer;
+    composite.capacity(composite.writerIndex());
+    composite.addComponents(true, chunks);
+  }
+
+  /**
+   * Encodes an unboxed primitive value.
+   *
+   * @param type a primitive type.
+   * @param bits the raw bits of the value.
+   */
+  private void encodePrimitive(@NonNull TagType type, long bits) {
+    switch (type) {
+      case BYTE:
+        this.buffer.writeByte((int) bits);
+        break;
+      case SHORT:
+        this.buffer.writeShort((int) bits);
+        break;
+      case INTEGER:
+      case FLOAT:
+        this.buffer.writeInt((int) bits);
+        break;
+      default:
+        this.buffer.writeLong(bits);
+        break;
+    }
+  }
+
+  /**
+   * Encodes the payload of an arbitrary tag (e.g. the tag without its type and name).
+   *
+   * @param type the tag type.
+   * @param tag a tag.
+   */
+  private void encodeValue(@NonNull TagType type, @NonNull Tag tag) {
+    switch (type) {
+      case BYTE:
+        this.buffer.writeByte(((ByteTag) tag).getValue());
+        break;
+      case SHORT:
+        this.buffer.writeShort(((ShortTag) tag).getValue());
+        break;
+      case INTEGER:
+        this.buffer.writeInt(((IntegerTag) tag).getValue());
+        break;
+      case LONG:
+        this.buffer.writeLong(((LongTag) tag).getValue());
+        break;
+      case FLOAT:
+        this.buffer.writeFloat(((FloatTag) tag).getValue());
+        break;
+      case DOUBLE:
+        this.buffer.writeDouble(((DoubleTag) tag).getValue());
+        break;
+      case BYTE_ARRAY:
+        ((ByteArrayTag) tag).write(this.buffer);
+        break;
+      case STRING:
+        BufferUtil.writeString(this.buffer, ((StringTag) tag).getValue());
+        break;
+      case LIST:
+        this.encodeList((ListTag<?>) tag);
+        break;
+      case COMPOUND:
+        this.encodeCompound((CompoundTag) tag);
+        break;
+      case INTEGER_ARRAY:
+        ((IntegerArrayTag) tag).write(this.buffer);
+        break;
+      case LONG_ARRAY:
+        ((LongArrayTag) tag).write(this.buffer);
+        break;
+      default:
+        throw new IllegalStateException("Did not expected tag of type " + type + " here");
+    }
+  }
+
+  /**
+   * Returns a read-only view of the internal buffer.
+   *
+   * @return a buffer.
+   */
+  @NonNull
+  public ByteBuf getBuffer() {
+    return this.buffer.asReadOnly();
+  }
+
+  /**
+   * Writes the serialized tag tree into a channel.
+   *
+   * @param channel a channel.
+   * @throws IOException when writing fails.
+   */
+  public void write(@NonNull WritableByteChannel channel) throws IOException {
+    // composite buffers would be merged into a single copy by nioBuffer()
+    for (ByteBuffer tmp : this.buffer.nioBuffers()) {
+      while (tmp.hasRemaining()) {
+        channel.write(tmp);
+      }
+    }
+  }
+
+  /**
+   * Writes the serialized tag tree into a stream.
+   *
+   * @param outputStream a stream.
+   * @throws IOException when writing fails.
+   */
+  public void write(@NonNull OutputStream outputStream) throws IOException {
+    this.write(Channels.newChannel(outputStream));
+  }
+
+  /**
+   * Writes the serialized tag tree to a specific path, effectively creating a new file or
+   * truncating existing files.
+   *
+   * @param path a file path.
+   * @throws IOException when writing fails.
+   */
+  public void write(@NonNull Path path) throws IOException {
+    try (FileChannel channel = FileChannel
+        .open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      this.write(channel);
+    }
+  }
+
+  /**
+   * Writes a serialized tag tree to a specific file, effectively creating a new file or truncating
+   * existing files.
+   *
+   * @param file a file.
+   * @throws IOException when writing fails.
+   */
+  public void write(@NonNull File file) throws IOException {
+    this.write(file.toPath());
+  }
+
+  /**
+   * Encodes a range of list chunks (ranges which span multiple chunks are split in half until each
+   * task encodes a single chunk into its own buffer).
+   */
+  private static final class EncodeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ByteBufAllocator allocator;
+    private final TagType type;
+    private final List<? extends Tag> elements;
+    private final int chunkSize;
+    private final ByteBuf[] chunks;
+    private final int from;
+    private final int to;
+
+    EncodeTask(@NonNull ByteBufAllocator allocator, @NonNull TagType type,
+        @NonNull List<? extends Tag> elements, int chunkSize, @NonNull ByteBuf[] chunks, int from,
+        int to) {
+      this.allocator = allocator;
+      this.type = type;
+      this.elements = elements;
+      this.chunkSize = chunkSize;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void compute() {
+      if (this.to - this.from > 1) {
+        int middle = (this.from + this.to) >>> 1;
+        EncodeTask head = new EncodeTask(this.allocator, this.type, this.elements, this.chunkSize,
+            this.chunks, this.from, middle);
+        EncodeTask tail = new EncodeTask(this.allocator, this.type, this.elements, this.chunkSize,
+            this.chunks, middle, this.to);
+
+        // both halves need to finish before failures are propagated as the caller releases all
+        // chunks which have been allocated so far
+        tail.fork();
+        head.quietlyInvoke();
+        tail.quietlyJoin();
+
+        head.join();
+        tail.join();
+        return;
+      }
+
+      ByteBuf chunk = this.allocator.directBuffer();
+      this.chunks[this.from] = chunk;
+
+      TreeEncoder encoder = new TreeEncoder(chunk);
+      int end = Math.min(this.elements.size(), (this.from + 1) * this.chunkSize);
+
+      for (int i = this.from * this.chunkSize; i < end; ++i) {
+        encoder.encodeValue(this.type, this.elements.get(i));
+      }
+    }
+  }
+}
@@ -31,6 +31,12 @@ import java.util.Stack;
  */
 public class TreeVisitor extends AbstractTagVisitor {
 
+  /**
+   * Defines the maximum amount of elements a list is pre-sized for (lengths are reported by the
+   * producer and may not have been validated against the amount of available data).
+   */
+  static final int MAXIMUM_PRESIZE = 1024;
+
   private final Stack<ParentNode> stack = new Stack<>();
   private RootTag root;
 
@@ -84,7 +90,10 @@ public class TreeVisitor extends AbstractTagVisitor {
     ByteArrayTag tag = new ByteArrayTag(new byte[length]);
 
     this.pushTag(tag);
-    this.stack.push(new ByteArrayParentNode(tag));
+
+    if (length > 0) {
+      this.stack.push(new ByteArrayParentNode(tag));
+    }
 
     super.visitByteArray(length);
   }
@@ -152,7 +161,10 @@ public class TreeVisitor extends AbstractTagVisitor {
     IntegerArrayTag tag = new IntegerArrayTag(new int[length]);
 
     this.pushTag(tag);
-    this.stack.push(new IntegerArrayParentNode(tag));
+
+    if (length > 0) {
+      this.stack.push(new IntegerArrayParentNode(tag));
+    }
 
     super.visitIntegerArray(length);
   }
@@ -178,10 +190,15 @@ public class TreeVisitor extends AbstractTagVisitor {
    */
   @Override
   public void visitList(@Nullable TagType type, int length) {
-    ListTag tag = new ListTag((type == null ? TagType.END : type));
+    ListTag tag = ListTag
+        .create((type == null ? TagType.END : type), Math.min(length, MAXIMUM_PRESIZE));
 
     this.pushTag(tag);
-    this.stack.push(new ListParentNode(length, tag));
+
+    // empty lists are complete right away as no elements will be visited
+    if (length > 0) {
+      this.stack.push(new ListParentNode(length, tag));
+    }
 
     super.visitList(type, length);
   }
@@ -196,6 +213,22 @@ public class TreeVisitor extends AbstractTagVisitor {
     super.visitLong(value);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitLongArray(int length) {
+    LongArrayTag tag = new LongArrayTag(new long[length]);
+
+    this.pushTag(tag);
+
+    if (length > 0) {
+      this.stack.push(new LongArrayParentNode(tag));
+    }
+
+    super.visitLongArray(length);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -343,6 +376,30 @@ public class TreeVisitor extends AbstractTagVisitor {
     }
   }
 
+  private class LongArrayParentNode extends ArrayParentNode {
+
+    private final LongArrayTag tag;
+
+    public LongArrayParentNode(@NonNull LongArrayTag tag) {
+      super(tag.getLength());
+      this.tag = tag;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void push(@NonNull Tag tag) {
+      if (!(tag instanceof LongTag)) {
+        throw new IllegalArgumentException(
+            "Could not push " + tag.getClass() + " to end of array: Invalid tag type");
+      }
+
+      this.tag.set(this.index, ((LongTag) tag).getValue());
+      super.push(tag);
+    }
+  }
+
   private class ListParentNode extends ArrayParentNode {
 
     private final ListTag tag;
@@ -5,7 +5,9 @@
  * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
  */
 module io.github.lordakkarin.nbt {
+  exports io.github.lordakkarin.nbt.arena;
   exports io.github.lordakkarin.nbt.event;
+  exports io.github.lordakkarin.nbt.immutable;
   exports io.github.lordakkarin.nbt.tree;
 
   requires static com.github.spotbugs.annotations;
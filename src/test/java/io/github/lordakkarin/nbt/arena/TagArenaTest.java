@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.arena;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.tree.CompoundTag;
+import io.github.lordakkarin.nbt.tree.RootTag;
+import io.github.lordakkarin.nbt.tree.TreeDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases for {@link TagArena} and {@link ArenaCursor}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TagArenaTest {
+
+  /**
+   * Evaluates whether an arena reproduces its source data when encoded.
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    byte[] data = this.readBig();
+
+    try (TagArena arena = new TagArena(Unpooled.wrappedBuffer(data))) {
+      Assert.assertEquals("Level", arena.getName());
+      Assert.assertArrayEquals(data, this.encode(arena));
+      Assert.assertEquals(new TreeDecoder().decode(Unpooled.wrappedBuffer(data)), arena.toTree());
+      Assert.assertEquals(arena.size(), arena.buffer.capacity());
+    }
+
+    RootTag root = new TreeDecoder().decode(Unpooled.wrappedBuffer(data));
+
+    try (TagArena arena = new TagArena(root)) {
+      Assert.assertEquals(root, arena.toTree());
+      Assert.assertEquals(arena.size(), arena.buffer.capacity());
+    }
+  }
+
+  /**
+   * Evaluates whether long arrays are transcoded, read and updated in bulk.
+   */
+  @Test
+  public void testLongArray() {
+    RootTag root = new RootTag("chunk");
+    root.setLongArray("states", new long[]{1L, -1L, Long.MAX_VALUE});
+
+    try (TagArena arena = new TagArena(root)) {
+      ArenaCursor cursor = arena.cursor();
+      Assert.assertTrue(cursor.select("states"));
+      Assert.assertEquals(TagType.LONG_ARRAY, cursor.getType());
+      Assert.assertEquals(3, cursor.size());
+      Assert.assertEquals(-1L, cursor.getLong(1));
+      Assert.assertArrayEquals(new long[]{1L, -1L, Long.MAX_VALUE}, cursor.getLongArray());
+
+      cursor.setLongArray(new long[]{4L, 5L, Long.MIN_VALUE});
+      cursor.setLong(0, 3L);
+      Assert.assertArrayEquals(new long[]{3L, 5L, Long.MIN_VALUE},
+          arena.toTree().getLongArray("states"));
+    }
+  }
+
+  /**
+   * Evaluates whether lists of type END which claim to hold elements are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedEndList() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.LIST.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.END.ordinal());
+    buffer.writeInt(Integer.MAX_VALUE);
+    buffer.writeByte(TagType.END.ordinal());
+
+    new TagArena(buffer).close();
+  }
+
+  /**
+   * Evaluates whether truncated data is rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testTruncated() throws IOException {
+    byte[] data = this.readBig();
+    new TagArena(Unpooled.wrappedBuffer(data, 0, data.length - 10)).close();
+  }
+
+  /**
+   * Evaluates whether lengths which exceed the available data are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedLength() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.INTEGER_ARRAY.ordinal());
+    buffer.writeShort(0);
+    buffer.writeInt(Integer.MAX_VALUE);
+
+    new TagArena(buffer).close();
+  }
+
+  /**
+   * Evaluates whether cursors navigate compounds and lists correctly.
+   */
+  @Test
+  public void testNavigation() throws IOException {
+    try (TagArena arena = new TagArena(Unpooled.wrappedBuffer(this.readBig()))) {
+      ArenaCursor cursor = arena.cursor();
+      Assert.assertEquals(11, cursor.size());
+
+      Assert.assertTrue(cursor.select("nested compound test"));
+      Assert.assertTrue(cursor.select("egg"));
+      ArenaCursor egg = cursor.copy();
+      Assert.assertTrue(cursor.select("value"));
+      Assert.assertEquals(0.5f, cursor.getFloat(), 0);
+      Assert.assertTrue(egg.select("name"));
+      Assert.assertEquals("Eggbert", egg.getString());
+      Assert.assertFalse(egg.nextSibling() && egg.nextSibling());
+
+      cursor.reset();
+      Assert.assertTrue(cursor.select("listTest (long)"));
+      Assert.assertEquals(TagType.LONG, cursor.getElementType());
+      Assert.assertTrue(cursor.select(3));
+      Assert.assertEquals(14L, cursor.getLong());
+      Assert.assertTrue(cursor.nextSibling());
+      Assert.assertEquals(15L, cursor.getLong());
+      Assert.assertFalse(cursor.nextSibling());
+
+      cursor.reset();
+      Assert.assertTrue(cursor.select("listTest (compound)"));
+      Assert.assertTrue(cursor.select(1));
+      Assert.assertTrue(cursor.select("name"));
+      Assert.assertEquals("Compound tag #1", cursor.getString());
+
+      cursor.reset();
+      Assert.assertFalse(cursor.select("missing"));
+      Assert.assertTrue(cursor.firstChild());
+
+      int count = 1;
+      while (cursor.nextSibling()) {
+        Assert.assertNotNull(cursor.getKey());
+        ++count;
+      }
+      Assert.assertEquals(11, count);
+    }
+  }
+
+  /**
+   * Evaluates whether values are updated in place.
+   */
+  @Test
+  public void testUpdate() throws IOException {
+    try (TagArena arena = new TagArena(Unpooled.wrappedBuffer(this.readBig()))) {
+      int size = arena.size();
+      ArenaCursor cursor = arena.cursor();
+
+      cursor.select("intTest");
+      cursor.setInteger(42);
+      cursor.reset();
+      cursor.select("byteArrayTest (the first 1000 values of (n*n*255+n*7)%100, starting with n=0 "
+          + "(0, 62, 34, 16, 8, ...))");
+      cursor.setByte(1, (byte) 7);
+      cursor.reset();
+      cursor.select("nested compound test");
+      cursor.select("ham");
+      cursor.select("name");
+      cursor.setString("Hampur");
+
+      try {
+        cursor.setString("Hamburger");
+        Assert.fail("Expected strings of differing length to be rejected");
+      } catch (IllegalArgumentException ignore) {
+      }
+
+      try {
+        cursor.setInteger(1);
+        Assert.fail("Expected type mismatch to be rejected");
+      } catch (IllegalStateException ignore) {
+      }
+
+      RootTag root = arena.toTree();
+      Assert.assertEquals(size, arena.size());
+      Assert.assertEquals(42, root.getInteger("intTest"));
+      Assert.assertEquals("Hampur",
+          root.<CompoundTag>get("nested compound test").<CompoundTag>get("ham").getString("name"));
+    }
+  }
+
+  @NonNull
+  private byte[] encode(@NonNull TagArena arena) {
+    ByteBuf buffer = Unpooled.buffer();
+    arena.encode(buffer);
+
+    byte[] array = new byte[buffer.readableBytes()];
+    buffer.readBytes(array);
+    return array;
+  }
+
+  @NonNull
+  private byte[] readBig() throws IOException {
+    try (InputStream inputStream = TagArenaTest.class.getResourceAsStream("/bigtest.nbt")) {
+      ByteBuf buffer = Unpooled.buffer();
+      while (buffer.writeBytes(inputStream, 4096) != -1) {
+      }
+
+      byte[] array = new byte[buffer.readableBytes()];
+      buffer.readBytes(array);
+      return array;
+    }
+  }
+}
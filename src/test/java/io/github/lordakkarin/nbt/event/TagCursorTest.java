@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.event;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.tree.CompoundTag;
+import io.github.lordakkarin.nbt.tree.RootTag;
+import io.github.lordakkarin.nbt.tree.TreeDecoder;
+import io.github.lordakkarin.nbt.tree.TreeVisitor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases to verify the correct functionality of {@link TagCursor}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TagCursorTest {
+
+  /**
+   * Evaluates whether a cursor visits every value and reports their contents correctly.
+   */
+  @Test
+  public void testWalk() throws IOException {
+    try (TagReader reader = this.openBig()) {
+      TagCursor cursor = reader.cursor();
+
+      Assert.assertEquals(TagType.COMPOUND, cursor.next());
+      Assert.assertEquals("Level", cursor.getKey());
+
+      int values = 0;
+      int ends = 0;
+      int maxDepth = 0;
+
+      while (cursor.hasNext()) {
+        TagType type = cursor.next();
+        maxDepth = Math.max(maxDepth, cursor.getDepth());
+
+        if (type == TagType.END) {
+          ++ends;
+          continue;
+        }
+
+        ++values;
+
+        if ("intTest".equals(cursor.getKey())) {
+          Assert.assertEquals(Integer.MAX_VALUE, cursor.getInteger());
+        } else if ("longTest".equals(cursor.getKey())) {
+          Assert.assertEquals(Long.MAX_VALUE, cursor.getLong());
+        } else if ("stringTest".equals(cursor.getKey())) {
+          Assert.assertEquals("HELLO WORLD THIS IS A TEST STRING ÅÄÖ!",
+              cursor.getString());
+        } else if ("listTest (long)".equals(cursor.getKey())) {
+          Assert.assertEquals(TagType.LONG, cursor.getElementType());
+          Assert.assertEquals(5, cursor.size());
+        }
+      }
+
+      // root, nested compound test, ham, egg, both list compounds and both lists
+      Assert.assertEquals(8, ends);
+      Assert.assertEquals(3, maxDepth);
+      Assert.assertEquals(11 + 2 + 2 + 2 + 5 + 2 + 2 * 2, values);
+      Assert.assertFalse(cursor.hasNext());
+    }
+  }
+
+  /**
+   * Evaluates whether skipped compounds and lists are not reported.
+   */
+  @Test
+  public void testSkipChildren() throws IOException {
+    try (TagReader reader = this.openBig()) {
+      TagCursor cursor = reader.cursor();
+      List<String> keys = new ArrayList<>();
+
+      cursor.next();
+
+      while (cursor.next() != TagType.END) {
+        keys.add(cursor.getKey());
+
+        if (cursor.getType() == TagType.COMPOUND || cursor.getType() == TagType.LIST) {
+          cursor.skipChildren();
+        }
+      }
+
+      Assert.assertEquals(11, keys.size());
+      Assert.assertTrue(new HashSet<>(keys).containsAll(Arrays.asList("nested compound test",
+          "listTest (long)", "listTest (compound)", "intTest", "doubleTest")));
+      Assert.assertFalse(cursor.hasNext());
+    }
+  }
+
+  /**
+   * Evaluates whether subtrees are passed to visitors as complete documents.
+   */
+  @Test
+  public void testReadSubtree() throws IOException {
+    RootTag expected = new TreeDecoder()
+        .decode(TagCursorTest.class.getResourceAsStream("/bigtest.nbt"));
+
+    try (TagReader reader = this.openBig()) {
+      TagCursor cursor = reader.cursor();
+      cursor.next();
+
+      while (cursor.next() != TagType.COMPOUND) {
+        if (cursor.getType() == TagType.LIST) {
+          cursor.skipChildren();
+        }
+      }
+
+      TreeVisitor visitor = new TreeVisitor();
+      cursor.readSubtree(visitor);
+
+      RootTag subtree = visitor.getRoot();
+      Assert.assertNotNull(subtree);
+      Assert.assertEquals("nested compound test", subtree.getName());
+
+      CompoundTag nested = expected.get("nested compound test");
+      Assert.assertEquals(nested.<CompoundTag>get("egg"), subtree.get("egg"));
+      Assert.assertEquals(nested.<CompoundTag>get("ham"), subtree.get("ham"));
+
+      Assert.assertNotEquals(TagType.END, cursor.next());
+      Assert.assertEquals(1, cursor.getDepth());
+    }
+  }
+
+  @NonNull
+  private TagReader openBig() throws IOException {
+    return new TagReader(TagCursorTest.class.getResourceAsStream("/bigtest.nbt"));
+  }
+}
@@ -20,7 +20,9 @@ import static org.mockito.Mockito.anyByte;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import io.github.lordakkarin.nbt.tree.TreeVisitor;
 import java.io.IOException;
+import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -118,4 +120,32 @@ public class TagReaderTest {
     verify(visitor).visitString("Bananrama");
     verify(visitor).visitCompoundEnd();
   }
+
+  /**
+   * Evaluates whether a reader produces the same results when it is reset onto new input
+   * repeatedly.
+   */
+  @Test
+  public void testReset() throws IOException {
+    TreeVisitor expected = new TreeVisitor();
+    new TagReader(TagReaderTest.class.getResourceAsStream("/bigtest.nbt")).accept(expected);
+
+    TagReader reader = TagReader.threadLocal();
+    Assert.assertSame(reader, TagReader.threadLocal());
+
+    for (int i = 0; i < 3; ++i) {
+      TreeVisitor visitor = new TreeVisitor();
+      reader.reset(TagReaderTest.class.getResourceAsStream("/bigtest.nbt")).accept(visitor);
+      Assert.assertEquals(expected.getRoot(), visitor.getRoot());
+
+      TagStreamWriter writer = new TagStreamWriter();
+      writer.beginRoot("hello world").key("name").stringValue("Bananrama").endCompound();
+
+      visitor = new TreeVisitor();
+      reader.reset(writer.getBuffer()).accept(visitor);
+      Assert.assertEquals("Bananrama", visitor.getRoot().getString("name"));
+    }
+
+    reader.close();
+  }
 }
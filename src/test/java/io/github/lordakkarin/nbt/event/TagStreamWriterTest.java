@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.event;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.netty.buffer.ByteBuf;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases to verify the correct functionality of {@link TagStreamWriter}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TagStreamWriterTest {
+
+  /**
+   * Tests the generation of a hello world NBT file.
+   */
+  @Test
+  public void testHelloWorld() throws IOException {
+    TagStreamWriter writer = new TagStreamWriter();
+    writer.beginRoot("hello world")
+        .key("name").stringValue("Bananrama")
+        .endCompound();
+
+    Assert.assertTrue(writer.isComplete());
+
+    try (InputStream inputStream = this.getClass().getResourceAsStream("/hello_world.nbt")) {
+      byte[] expected = new byte[33];
+      Assert.assertEquals(expected.length, inputStream.read(expected));
+      Assert.assertArrayEquals(expected, this.toArray(writer.getBuffer()));
+    }
+  }
+
+  /**
+   * Evaluates whether the writer generates the same output as {@link TagWriter} for nested
+   * structures.
+   */
+  @Test
+  public void testNested() {
+    TagStreamWriter streamWriter = new TagStreamWriter();
+    streamWriter.beginRoot("Level")
+        .key("list").beginList(TagType.COMPOUND, 2)
+        .beginCompound().key("id").integerValue(1).endCompound()
+        .beginCompound().key("pos").beginList(TagType.DOUBLE, 2)
+        .doubleValue(0.5).doubleValue(1.5).endList().endCompound()
+        .endList()
+        .key("bytes").byteArrayValue(new byte[]{1, 2, 3})
+        .key("longs").longArrayValue(new long[]{1L, Long.MIN_VALUE})
+        .endCompound();
+
+    TagWriter writer = new TagWriter();
+    writer.visitRoot("Level");
+    writer.visitKey("list");
+    writer.visitList(TagType.COMPOUND, 2);
+    writer.visitCompound();
+    writer.visitKey("id");
+    writer.visitInteger(1);
+    writer.visitCompoundEnd();
+    writer.visitCompound();
+    writer.visitKey("pos");
+    writer.visitList(TagType.DOUBLE, 2);
+    writer.visitDouble(0.5);
+    writer.visitDouble(1.5);
+    writer.visitCompoundEnd();
+    writer.visitKey("bytes");
+    writer.visitByteArray(3);
+    writer.visitByte((byte) 1);
+    writer.visitByte((byte) 2);
+    writer.visitByte((byte) 3);
+    writer.visitKey("longs");
+    writer.visitLongArray(2);
+    writer.visitLong(1L);
+    writer.visitLong(Long.MIN_VALUE);
+    writer.visitCompoundEnd();
+
+    Assert.assertArrayEquals(this.toArray(writer.getBuffer()),
+        this.toArray(streamWriter.getBuffer()));
+  }
+
+  /**
+   * Evaluates whether nested lists of unknown length are patched correctly within the buffer as
+   * well as within seekable and non-seekable channels.
+   */
+  @Test
+  public void testUnknownLength() throws IOException {
+    TagStreamWriter expected = new TagStreamWriter();
+    this.writeIntegers(expected.beginRoot("root").key("lists")
+        .beginList(TagType.LIST, 2).beginList(TagType.INTEGER, 5000), 5000)
+        .endList().beginList(TagType.INTEGER, 1).integerValue(1).endList()
+        .endList().endCompound();
+    byte[] expectedArray = this.toArray(expected.getBuffer());
+
+    TagStreamWriter buffered = new TagStreamWriter();
+    this.writeUnknownLists(buffered);
+    Assert.assertArrayEquals(expectedArray, this.toArray(buffered.getBuffer()));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    TagStreamWriter streamed = new TagStreamWriter(outputStream);
+    this.writeUnknownLists(streamed);
+    streamed.flush();
+    Assert.assertArrayEquals(expectedArray, outputStream.toByteArray());
+
+    Path path = Files.createTempFile("mvntest_", ".nbt");
+
+    try {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        TagStreamWriter seekable = new TagStreamWriter(channel);
+        this.writeUnknownLists(seekable);
+        seekable.flush();
+      }
+
+      Assert.assertArrayEquals(expectedArray, Files.readAllBytes(path));
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @NonNull
+  private TagStreamWriter writeIntegers(@NonNull TagStreamWriter writer, int length) {
+    for (int i = 0; i < length; ++i) {
+      writer.integerValue(i);
+    }
+
+    return writer;
+  }
+
+  private void writeUnknownLists(@NonNull TagStreamWriter writer) {
+    this.writeIntegers(writer.beginRoot("root").key("lists")
+        .beginList(TagType.LIST).beginList(TagType.INTEGER), 5000)
+        .endList().beginList(TagType.INTEGER).integerValue(1).endList()
+        .endList().endCompound();
+  }
+
+  /**
+   * Evaluates whether values without keys are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMissingKey() {
+    new TagStreamWriter().beginRoot("root").integerValue(42);
+  }
+
+  /**
+   * Evaluates whether lists which do not match their declared length are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testListLength() {
+    new TagStreamWriter().beginRoot("root")
+        .key("list").beginList(TagType.INTEGER, 2).integerValue(1).endList();
+  }
+
+  /**
+   * Evaluates whether rejected values leave neither a partial tag nor a dangling key behind.
+   */
+  @Test
+  public void testRejectedValue() {
+    TagStreamWriter expected = new TagStreamWriter()
+        .beginRoot("root").key("value").integerValue(42).endCompound();
+
+    char[] chars = new char[0x8000];
+    Arrays.fill(chars, '\u00e9');
+    String string = new String(chars);
+
+    TagStreamWriter writer = new TagStreamWriter().beginRoot("root");
+
+    try {
+      writer.key(string);
+      Assert.fail("Expected oversized key to be rejected");
+    } catch (IllegalArgumentException expectedException) {
+    }
+
+    writer.key("value");
+
+    try {
+      writer.stringValue(string);
+      Assert.fail("Expected oversized string to be rejected");
+    } catch (IllegalArgumentException expectedException) {
+    }
+
+    try {
+      writer.byteArrayValue(new byte[4], 2, 3);
+      Assert.fail("Expected out of bounds range to be rejected");
+    } catch (IndexOutOfBoundsException expectedException) {
+    }
+
+    writer.integerValue(42).endCompound();
+    Assert.assertArrayEquals(this.toArray(expected.getBuffer()),
+        this.toArray(writer.getBuffer()));
+  }
+
+  @NonNull
+  private byte[] toArray(@NonNull ByteBuf buffer) {
+    byte[] array = new byte[buffer.readableBytes()];
+    buffer.readBytes(array);
+
+    return array;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.event;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases to verify the correct functionality of {@link TagTape}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TagTapeTest {
+
+  /**
+   * Evaluates whether nodes are recorded and located correctly.
+   */
+  @Test
+  public void testIndex() throws IOException {
+    ByteBuf buffer = this.readBig();
+    TagTape tape = new TagTape().index(buffer);
+
+    // root, 11 values, ham, egg and their values as well as the two list compounds and their values
+    Assert.assertEquals(1 + 11 + 2 + 4 + 2 + 4, tape.size());
+    Assert.assertEquals("Level", tape.getKey(TagTape.ROOT));
+    Assert.assertEquals(buffer.writerIndex(), tape.getEndOffset(TagTape.ROOT));
+    Assert.assertEquals(tape.size(), tape.getNext(TagTape.ROOT));
+
+    int name = tape.find("nested compound test", "egg", "name");
+    Assert.assertEquals(TagType.STRING, tape.getType(name));
+    Assert.assertEquals("Eggbert", this.readString(buffer, tape.getValueOffset(name)));
+    Assert.assertEquals(-1, tape.find("nested compound test", "egg", "missing"));
+    Assert.assertEquals(-1, tape.find("intTest", "value"));
+
+    int value = tape.find("intTest");
+    Assert.assertEquals(Integer.MAX_VALUE, buffer.getInt(tape.getValueOffset(value)));
+    Assert.assertEquals(TagTape.ROOT, tape.getParent(value));
+
+    int longs = tape.find("listTest (long)");
+    Assert.assertEquals(TagType.LONG, tape.getElementType(longs));
+    Assert.assertEquals(5, tape.getLength(longs));
+    Assert.assertEquals(-1, tape.firstChild(longs));
+    Assert.assertEquals(14L, buffer.getLong(tape.getElementOffset(longs, 3)));
+
+    int compounds = tape.find("listTest (compound)");
+    int second = tape.element(compounds, 1);
+    Assert.assertEquals(TagType.COMPOUND, tape.getType(second));
+    Assert.assertEquals(second, tape.nextSibling(tape.firstChild(compounds)));
+    Assert.assertEquals(-1, tape.nextSibling(second));
+    Assert.assertEquals(tape.getValueOffset(second), tape.getElementOffset(compounds, 1));
+    Assert.assertEquals("Compound tag #1",
+        this.readString(buffer, tape.getValueOffset(tape.find(second, "name"))));
+
+    int count = 0;
+    for (int child = tape.firstChild(TagTape.ROOT); child != -1; child = tape.nextSibling(child)) {
+      Assert.assertNotNull(tape.getKey(child));
+      ++count;
+    }
+    Assert.assertEquals(11, count);
+  }
+
+  /**
+   * Evaluates whether a tape may be reused for another buffer.
+   */
+  @Test
+  public void testReuse() throws IOException {
+    TagTape tape = new TagTape().index(this.readBig());
+
+    ByteBuf buffer = Unpooled.buffer();
+    try (TagStreamWriter writer = new TagStreamWriter(buffer)) {
+      writer.beginRoot("hello world").key("name").stringValue("Bananrama").endCompound();
+    }
+
+    tape.index(buffer);
+    Assert.assertEquals(2, tape.size());
+    Assert.assertEquals("hello world", tape.getKey(TagTape.ROOT));
+    Assert.assertEquals("Bananrama",
+        this.readString(buffer, tape.getValueOffset(tape.find("name"))));
+    Assert.assertEquals(-1, tape.find("nested compound test"));
+  }
+
+  /**
+   * Evaluates whether truncated data is rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testTruncated() throws IOException {
+    ByteBuf buffer = this.readBig();
+    new TagTape().index(buffer.slice(0, buffer.readableBytes() - 10));
+  }
+
+  /**
+   * Evaluates whether lengths which exceed the available data are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedLength() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.INTEGER_ARRAY.ordinal());
+    buffer.writeShort(0);
+    buffer.writeInt(Integer.MAX_VALUE);
+
+    new TagTape().index(buffer);
+  }
+
+  /**
+   * Evaluates whether lists of type END which claim to hold elements are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedEndList() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.LIST.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.END.ordinal());
+    buffer.writeInt(Integer.MAX_VALUE);
+    buffer.writeByte(TagType.END.ordinal());
+
+    new TagTape().index(buffer);
+  }
+
+  @NonNull
+  private ByteBuf readBig() throws IOException {
+    try (InputStream inputStream = TagTapeTest.class.getResourceAsStream("/bigtest.nbt")) {
+      ByteBuf buffer = Unpooled.buffer();
+      while (buffer.writeBytes(inputStream, 4096) != -1) {
+      }
+      return buffer;
+    }
+  }
+
+  @NonNull
+  private String readString(@NonNull ByteBuf buffer, int offset) {
+    return buffer.toString(offset + 2, buffer.getUnsignedShort(offset), StandardCharsets.UTF_8);
+  }
+}
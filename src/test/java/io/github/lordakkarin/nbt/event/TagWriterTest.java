@@ -19,6 +19,7 @@ package io.github.lordakkarin.nbt.event;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -108,6 +109,37 @@ public class TagWriterTest {
     }
   }
 
+  /**
+   * Evaluates whether closing a writer returns its buffer to the allocator.
+   */
+  @Test
+  public void testClose() {
+    TagWriter writer = new TagWriter(null, new UnpooledByteBufAllocator(true));
+    writer.visitRoot("root");
+    writer.visitCompoundEnd();
+
+    ByteBuf buffer = writer.getBuffer();
+    Assert.assertEquals(1, buffer.refCnt());
+
+    writer.close();
+    Assert.assertEquals(0, buffer.refCnt());
+
+    writer.close(); // closing a writer twice is permitted
+  }
+
+  /**
+   * Evaluates whether a writer may be constructed without a delegate.
+   */
+  @Test
+  public void testNullDelegate() {
+    try (TagWriter writer = new TagWriter(null)) {
+      writer.visitRoot("root");
+      writer.visitCompoundEnd();
+
+      Assert.assertEquals(8, writer.getBuffer().readableBytes());
+    }
+  }
+
   @NonNull
   private byte[] toArray(@NonNull ByteBuf buffer) {
     byte[] array = new byte[buffer.readableBytes()];
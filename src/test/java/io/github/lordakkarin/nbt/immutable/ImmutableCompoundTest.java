@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.immutable;
+
+import io.github.lordakkarin.nbt.event.TagReader;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.tree.CompoundTag;
+import io.github.lordakkarin.nbt.tree.RootTag;
+import io.github.lordakkarin.nbt.tree.TreeDecoder;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases for {@link ImmutableCompound} and {@link ImmutableList}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class ImmutableCompoundTest {
+
+  /**
+   * Evaluates whether modifications leave the original version untouched.
+   */
+  @Test
+  public void testPersistence() {
+    ImmutableCompound original = ImmutableCompound.EMPTY
+        .withInteger("a", 1)
+        .withString("b", "test");
+    ImmutableCompound modified = original.withInteger("a", 2).without("b");
+
+    Assert.assertEquals(2, original.size());
+    Assert.assertEquals(1, original.getInteger("a", 0));
+    Assert.assertEquals("test", original.getString("b", null));
+
+    Assert.assertEquals(1, modified.size());
+    Assert.assertEquals(2, modified.getInteger("a", 0));
+    Assert.assertFalse(modified.containsKey("b"));
+
+    Assert.assertSame(original, original.without("c"));
+    Assert.assertEquals(original, modified.withInteger("a", 1).withString("b", "test"));
+  }
+
+  /**
+   * Evaluates whether the compound behaves like a map for large amounts of keys (including keys
+   * with colliding hash codes).
+   */
+  @Test
+  public void testRandomOperations() {
+    Random random = new Random(42);
+    Map<String, Integer> expected = new HashMap<>();
+    ImmutableCompound compound = ImmutableCompound.EMPTY;
+
+    Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+    compound = compound.withInteger("Aa", -1).withInteger("BB", -2);
+    expected.put("Aa", -1);
+    expected.put("BB", -2);
+
+    for (int i = 0; i < 10000; ++i) {
+      String key = "key" + random.nextInt(2000);
+
+      if (random.nextInt(4) == 0) {
+        compound = compound.without(key);
+        expected.remove(key);
+      } else {
+        compound = compound.withInteger(key, i);
+        expected.put(key, i);
+      }
+    }
+
+    compound = compound.without("Aa");
+    expected.remove("Aa");
+
+    Assert.assertEquals(expected.size(), compound.size());
+
+    for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+      Assert.assertEquals((int) entry.getValue(), compound.getInteger(entry.getKey(), 0));
+    }
+
+    Map<String, Integer> actual = new HashMap<>();
+    compound.forEach((k, v) -> actual.put(k, ((ImmutablePrimitive) v).intValue()));
+    Assert.assertEquals(expected, actual);
+  }
+
+  /**
+   * Evaluates whether lists which span multiple levels of their trie are indexed correctly and
+   * whether replaced elements leave the original version untouched.
+   */
+  @Test
+  public void testList() {
+    ImmutableList<ImmutablePrimitive> list = ImmutableList.empty();
+
+    for (int i = 0; i < 40000; ++i) {
+      list = list.append(ImmutablePrimitive.ofInteger(i));
+    }
+
+    Assert.assertEquals(TagType.INTEGER, list.getElementType());
+    Assert.assertEquals(40000, list.size());
+
+    int expected = 0;
+    for (ImmutablePrimitive element : list) {
+      Assert.assertEquals(expected, list.get(expected).intValue());
+      Assert.assertEquals(expected++, element.intValue());
+    }
+
+    ImmutableList<ImmutablePrimitive> modified = list
+        .with(5, ImmutablePrimitive.ofInteger(-5))
+        .with(39999, ImmutablePrimitive.ofInteger(-1));
+
+    Assert.assertEquals(5, list.get(5).intValue());
+    Assert.assertEquals(-5, modified.get(5).intValue());
+    Assert.assertEquals(39999, list.get(39999).intValue());
+    Assert.assertEquals(-1, modified.get(39999).intValue());
+    Assert.assertNotEquals(list, modified);
+  }
+
+  /**
+   * Evaluates whether lists reject elements of a mismatching type.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testListType() {
+    ImmutableList.empty(TagType.INTEGER).append(ImmutableString.of("test"));
+  }
+
+  /**
+   * Evaluates whether common small values are represented by shared instances.
+   */
+  @Test
+  public void testFlyweights() {
+    Assert.assertSame(ImmutablePrimitive.ofInteger(5), ImmutablePrimitive.ofInteger(5));
+    Assert.assertSame(ImmutablePrimitive.ofByte((byte) -7), ImmutablePrimitive.ofByte((byte) -7));
+    Assert.assertSame(ImmutablePrimitive.ofDouble(0), ImmutablePrimitive.ofDouble(0));
+    Assert.assertEquals(ImmutablePrimitive.ofLong(1L << 40), ImmutablePrimitive.ofLong(1L << 40));
+    Assert.assertNotEquals(ImmutablePrimitive.ofInteger(1), ImmutablePrimitive.ofLong(1));
+  }
+
+  /**
+   * Evaluates whether trees survive the conversion from and to their mutable representation.
+   */
+  @Test
+  public void testConversion() throws IOException {
+    RootTag root = new TreeDecoder()
+        .decode(ImmutableCompoundTest.class.getResourceAsStream("/bigtest.nbt"));
+
+    ImmutableCompound compound = (ImmutableCompound) ImmutableTag.of(root);
+    CompoundTag mutable = compound.toMutable();
+
+    Assert.assertEquals(root.size(), mutable.size());
+    Assert.assertTrue(mutable.equals(root));
+    Assert.assertEquals(compound, ImmutableTag.of(mutable));
+
+    ImmutableTreeVisitor visitor = new ImmutableTreeVisitor();
+    new TagReader(ImmutableCompoundTest.class.getResourceAsStream("/bigtest.nbt"))
+        .accept(visitor);
+
+    Assert.assertEquals("Level", visitor.getRootName());
+    Assert.assertEquals(compound, visitor.getResult());
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import io.github.lordakkarin.nbt.event.TagType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ReadOnlyBufferException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases which verify the buffer views, bulk transfers and direct storage of {@link
+ * ByteArrayTag} and {@link IntegerArrayTag}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class ArrayTagTest {
+
+  /**
+   * Evaluates whether ranges are copied in and out of arrays and buffers correctly.
+   */
+  @Test
+  public void testBulk() {
+    IntegerArrayTag tag = new IntegerArrayTag(new int[6]);
+    tag.setIntegers(1, new int[]{9, 1, 2, 3}, 1, 3);
+
+    int[] values = new int[4];
+    tag.getIntegers(0, values, 0, 4);
+    Assert.assertArrayEquals(new int[]{0, 1, 2, 3}, values);
+
+    ByteBuf buffer = Unpooled.buffer();
+    tag.getIntegers(1, buffer, 3);
+    Assert.assertEquals(12, buffer.readableBytes());
+    Assert.assertEquals(1, buffer.getInt(0));
+
+    tag.setIntegers(3, buffer, 3);
+    Assert.assertArrayEquals(new int[]{0, 1, 2, 1, 2, 3}, tag.getValue());
+    Assert.assertFalse(buffer.isReadable());
+    buffer.release();
+
+    ByteArrayTag bytes = new ByteArrayTag(new byte[4]);
+    bytes.setBytes(2, ByteBuffer.wrap(new byte[]{7, 8}));
+    bytes.asByteBuffer().put(0, (byte) 5);
+    Assert.assertArrayEquals(new byte[]{5, 0, 7, 8}, bytes.getValue());
+
+    try {
+      bytes.getBytes(3, new byte[2], 0, 2);
+      Assert.fail("Expected out of bounds range to be rejected");
+    } catch (IndexOutOfBoundsException ignore) {
+    }
+  }
+
+  /**
+   * Evaluates whether tags which are backed by direct storage behave exactly like their heap
+   * counterparts.
+   */
+  @Test
+  public void testDirect() {
+    IntegerArrayTag integers = IntegerArrayTag.allocateDirect(3);
+    integers.setIntegers(0, IntBuffer.wrap(new int[]{1, -2, Integer.MIN_VALUE}));
+
+    ByteArrayTag bytes = ByteArrayTag.allocateDirect(2);
+    bytes.set(1, (byte) -1);
+
+    Assert.assertTrue(integers.isDirect());
+    Assert.assertEquals(new IntegerArrayTag(new int[]{1, -2, Integer.MIN_VALUE}), integers);
+    Assert.assertEquals(new IntegerArrayTag(new int[]{1, -2, Integer.MIN_VALUE}).hashCode(),
+        integers.hashCode());
+    Assert.assertEquals(new ByteArrayTag(new byte[]{0, -1}), bytes);
+    Assert.assertEquals(1, integers.stream().max().getAsInt());
+
+    RootTag root = new RootTag("direct");
+    root.put("ints", integers);
+    root.put("bytes", bytes);
+
+    TreeEncoder encoder = new TreeEncoder();
+    encoder.encode(root);
+    RootTag decoded = new TreeDecoder().decode(encoder.getBuffer());
+
+    Assert.assertEquals(root, decoded);
+    Assert.assertFalse(decoded.<IntegerArrayTag>get("ints").isDirect());
+
+    CompoundTag fork = root.fork();
+    fork.<IntegerArrayTag>get("ints").set(0, 42);
+    Assert.assertTrue(fork.<IntegerArrayTag>get("ints").isDirect());
+    Assert.assertEquals(1, integers.get(0));
+  }
+
+  /**
+   * Evaluates whether views of frozen tags are read-only.
+   */
+  @Test(expected = ReadOnlyBufferException.class)
+  public void testFrozenView() {
+    ByteArrayTag tag = new ByteArrayTag(new byte[]{1, 2});
+    tag.freeze();
+
+    Assert.assertEquals(TagType.BYTE_ARRAY, tag.getType());
+    tag.asByteBuffer().put(0, (byte) 3);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases for {@link CompoundMap}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class CompoundMapTest {
+
+  /**
+   * Evaluates whether a sequence of random modifications produces the same results as a regular
+   * hash map while the compound repeatedly crosses the indexing threshold.
+   */
+  @Test
+  public void testRandomOperations() {
+    Random random = new Random(42);
+    CompoundMap map = new CompoundMap();
+    Map<String, Tag> expected = new HashMap<>();
+
+    for (int i = 0; i < 20000; ++i) {
+      String key = "key" + random.nextInt(i % 2000 < 1000 ? 12 : 200);
+      IntegerTag value = new IntegerTag(i);
+
+      if (random.nextInt(3) == 0) {
+        Assert.assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        Assert.assertEquals(expected.put(key, value), map.put(key, value));
+      }
+
+      Assert.assertEquals(expected.size(), map.size());
+      Assert.assertEquals(expected.get(key), map.get(key));
+    }
+
+    Assert.assertEquals(expected, map);
+    Assert.assertEquals(map, expected);
+    Assert.assertEquals(expected.hashCode(), map.hashCode());
+
+    for (String key : expected.keySet()) {
+      Assert.assertSame(expected.get(key), map.get(key));
+    }
+  }
+
+  /**
+   * Evaluates whether elements may be removed while iterating over a compound.
+   */
+  @Test
+  public void testIteratorRemoval() {
+    CompoundMap map = new CompoundMap();
+
+    for (int i = 0; i < 100; ++i) {
+      map.put("key" + i, new IntegerTag(i));
+    }
+
+    int visited = 0;
+    Iterator<Map.Entry<String, Tag>> iterator = map.entrySet().iterator();
+
+    while (iterator.hasNext()) {
+      Map.Entry<String, Tag> entry = iterator.next();
+      ++visited;
+
+      if (((IntegerTag) entry.getValue()).getValue() % 2 == 0) {
+        iterator.remove();
+      }
+    }
+
+    Assert.assertEquals(100, visited);
+    Assert.assertEquals(50, map.size());
+
+    for (int i = 0; i < 100; ++i) {
+      Assert.assertEquals(i % 2 != 0, map.containsKey("key" + i));
+    }
+  }
+
+  /**
+   * Evaluates whether compounds with identical layouts share their keys and whether removals
+   * leave other compounds of the same shape intact.
+   */
+  @Test
+  public void testSharedShape() {
+    CompoundMap first = new CompoundMap();
+    CompoundMap second = new CompoundMap();
+
+    for (int i = 0; i < 20; ++i) {
+      first.put("shared" + i, new IntegerTag(i));
+      second.put("shared" + i, new IntegerTag(-i));
+    }
+
+    Assert.assertSame(first.keys, second.keys);
+    Assert.assertEquals(new IntegerTag(-7), second.get("shared7"));
+
+    first.remove("shared3");
+    first.put("other", new IntegerTag(42));
+
+    Assert.assertNotSame(first.keys, second.keys);
+    Assert.assertEquals(20, second.size());
+    Assert.assertEquals(new IntegerTag(-3), second.get("shared3"));
+    Assert.assertNull(second.get("other"));
+    Assert.assertNull(first.get("shared3"));
+    Assert.assertEquals(new IntegerTag(19), first.get("shared19"));
+  }
+
+  /**
+   * Evaluates whether unboxed primitive values behave like their wrapper tags.
+   */
+  @Test
+  public void testPrimitives() {
+    CompoundTag unboxed = new CompoundTag();
+    unboxed.setInteger("int", 42);
+    unboxed.setDouble("double", -0.5);
+    unboxed.setFloat("float", Float.NaN);
+    unboxed.setByte("byte", (byte) -1);
+
+    CompoundTag boxed = new CompoundTag();
+    boxed.put("int", new IntegerTag(42));
+    boxed.put("double", new DoubleTag(-0.5));
+    boxed.put("float", new FloatTag(Float.NaN));
+    boxed.put("byte", new ByteTag((byte) -1));
+
+    Assert.assertEquals(boxed, unboxed);
+    Assert.assertEquals(unboxed, boxed);
+    Assert.assertEquals(boxed.hashCode(), unboxed.hashCode());
+    Assert.assertEquals(42, unboxed.getInteger("int"));
+    Assert.assertEquals(-0.5, unboxed.getDouble("double"), 0);
+    Assert.assertEquals(0L, unboxed.getLong("missing"));
+
+    IntegerTag wrapper = unboxed.get("int");
+    Assert.assertEquals(new IntegerTag(42), wrapper);
+
+    unboxed.setInteger("int", 7);
+    Assert.assertEquals(7, wrapper.getValue());
+
+    wrapper.setValue(8);
+    Assert.assertEquals(8, unboxed.getInteger("int"));
+
+    TreeEncoder encoder = new TreeEncoder();
+    encoder.encode("root", unboxed);
+    Assert.assertEquals(unboxed, new TreeDecoder().decode(encoder.getBuffer()));
+  }
+
+  /**
+   * Evaluates whether typed getters reject values of a different type.
+   */
+  @Test(expected = ClassCastException.class)
+  public void testPrimitiveType() {
+    CompoundTag tag = new CompoundTag();
+    tag.setLong("long", 42);
+    tag.getInteger("long");
+  }
+
+  /**
+   * Evaluates whether typed accessors fall back to their defaults for missing keys and whether
+   * setters replace values of a different type.
+   */
+  @Test
+  public void testDefaults() {
+    CompoundTag tag = new CompoundTag();
+    tag.setInteger("value", 42);
+
+    Assert.assertEquals(-1, tag.getInteger("missing", -1));
+    Assert.assertEquals(42, tag.getInteger("value", -1));
+    Assert.assertEquals("fallback", tag.getString("missing", "fallback"));
+
+    tag.setString("value", "replaced");
+    Assert.assertEquals("replaced", tag.getString("value"));
+    Assert.assertArrayEquals(new int[]{1}, tag.getIntegerArray("missing", new int[]{1}));
+  }
+}
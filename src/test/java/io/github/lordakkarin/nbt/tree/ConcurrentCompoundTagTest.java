@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases for {@link ConcurrentCompoundTag}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class ConcurrentCompoundTagTest {
+
+  private static final int THREADS = 4;
+  private static final int ITERATIONS = 10000;
+
+  /**
+   * Evaluates whether concurrent merges of the same key do not lose updates.
+   */
+  @Test
+  public void testMerge() throws Exception {
+    ConcurrentCompoundTag tag = new ConcurrentCompoundTag();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+
+      for (int i = 0; i < THREADS; ++i) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < ITERATIONS; ++j) {
+            tag.mergeInteger("counter", 1, Integer::sum);
+            tag.mergeLong("total", 2, Long::sum);
+          }
+        }));
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    Assert.assertEquals(THREADS * ITERATIONS, tag.getInteger("counter"));
+    Assert.assertEquals(2L * THREADS * ITERATIONS, tag.getLong("total"));
+  }
+
+  /**
+   * Evaluates whether a compound may be encoded while other threads modify distinct keys.
+   */
+  @Test
+  public void testEncodeWhileModified() throws Exception {
+    ConcurrentCompoundTag tag = new ConcurrentCompoundTag();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+
+      for (int i = 0; i < THREADS; ++i) {
+        String key = "thread" + i;
+
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < ITERATIONS; ++j) {
+            tag.setInteger(key + "_" + (j % 100), j);
+            tag.remove(key + "_" + ((j + 50) % 100));
+          }
+        }));
+      }
+
+      for (int i = 0; i < 100; ++i) {
+        TreeEncoder encoder = new TreeEncoder();
+        encoder.encode("root", tag);
+        new TreeDecoder().decode(encoder.getBuffer());
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    TreeEncoder encoder = new TreeEncoder();
+    encoder.encode("root", tag);
+    Assert.assertEquals(tag, new TreeDecoder().decode(encoder.getBuffer()));
+  }
+
+  /**
+   * Evaluates whether concurrent compounds are considered equal to regular compounds with the
+   * same contents.
+   */
+  @Test
+  public void testEquality() {
+    CompoundTag expected = new CompoundTag();
+    expected.setInteger("a", 1);
+    expected.setString("b", "test");
+    expected.setDouble("c", 0.5);
+
+    ConcurrentCompoundTag actual = new ConcurrentCompoundTag();
+    actual.setInteger("a", 1);
+    actual.setString("b", "test");
+    actual.setDouble("c", 0.5);
+
+    Assert.assertEquals(expected, actual);
+    Assert.assertEquals(actual, expected);
+    Assert.assertEquals(expected.hashCode(), actual.hashCode());
+    Assert.assertEquals(1, actual.getInteger("a"));
+    Assert.assertEquals(42, actual.getInteger("d", 42));
+    Assert.assertFalse(actual.isFrozen());
+    Assert.assertNull(actual.map);
+  }
+}
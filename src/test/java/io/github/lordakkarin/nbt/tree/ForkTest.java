@@ -0,0 +1,284 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases which verify the copy-on-write semantics of {@link CompoundTag#fork()} and
+ * {@link ListTag#fork()}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class ForkTest {
+
+  /**
+   * Evaluates whether modifications to the original tree are not reflected by a fork.
+   */
+  @Test
+  public void testModifyOriginal() throws IOException {
+    RootTag original = new TreeDecoder()
+        .decode(ForkTest.class.getResourceAsStream("/bigtest.nbt"));
+    byte[] expected = this.encode(original);
+
+    RootTag fork = original.fork();
+    this.modify(original);
+
+    Assert.assertEquals("Level", fork.getName());
+    Assert.assertArrayEquals(expected, this.encode(fork));
+    Assert.assertNotEquals(original, fork);
+  }
+
+  /**
+   * Evaluates whether modifications to a fork are not reflected by the original tree.
+   */
+  @Test
+  public void testModifyFork() throws IOException {
+    RootTag original = new TreeDecoder()
+        .decode(ForkTest.class.getResourceAsStream("/bigtest.nbt"));
+    byte[] expected = this.encode(original);
+
+    RootTag fork = original.fork();
+    this.modify(fork);
+
+    Assert.assertArrayEquals(expected, this.encode(original));
+    Assert.assertNotEquals(original, fork);
+  }
+
+  /**
+   * Evaluates whether forks share the storage of the original tree until either of them is
+   * modified.
+   */
+  @Test
+  public void testShared() throws IOException {
+    RootTag original = new TreeDecoder()
+        .decode(ForkTest.class.getResourceAsStream("/bigtest.nbt"));
+    original.get("nested compound test");
+
+    RootTag fork = original.fork();
+    Assert.assertSame(original.map.values, fork.map.values);
+
+    fork.setInteger("intTest", 42);
+    Assert.assertNotSame(original.map.values, fork.map.values);
+  }
+
+  /**
+   * Evaluates whether array tags share their storage with their fork until either of them is
+   * modified.
+   */
+  @Test
+  public void testArrays() {
+    ByteArrayTag bytes = new ByteArrayTag(new byte[]{1, 2, 3});
+    ByteArrayTag byteFork = bytes.fork();
+    byteFork.set(0, (byte) 42);
+    bytes.set(1, (byte) 7);
+
+    Assert.assertArrayEquals(new byte[]{1, 7, 3}, bytes.getValue());
+    Assert.assertArrayEquals(new byte[]{42, 2, 3}, byteFork.getValue());
+
+    IntegerArrayTag integers = new IntegerArrayTag(new int[]{1, 2, 3});
+    IntegerArrayTag integerFork = integers.fork();
+    integers.set(0, 42);
+
+    Assert.assertArrayEquals(new int[]{42, 2, 3}, integers.getValue());
+    Assert.assertArrayEquals(new int[]{1, 2, 3}, integerFork.getValue());
+
+    LongArrayTag longs = new LongArrayTag(new long[]{1, 2, 3});
+    LongArrayTag longFork = longs.fork();
+    longFork.getValue()[2] = 42;
+
+    Assert.assertArrayEquals(new long[]{1, 2, 3}, longs.getValue());
+    Assert.assertArrayEquals(new long[]{1, 2, 42}, longFork.getValue());
+  }
+
+  /**
+   * Evaluates whether children which are retained across multiple forks leave their state behind
+   * for each fork individually.
+   */
+  @Test
+  public void testRepeatedForks() {
+    CompoundTag original = new CompoundTag();
+    CompoundTag child = new CompoundTag();
+    StringTag string = new StringTag("a");
+    child.put("string", string);
+    original.put("child", child);
+
+    CompoundTag first = original.fork();
+    string.setValue("b");
+    CompoundTag second = original.fork();
+    string.setValue("c");
+    CompoundTag third = second.fork();
+    child.setInteger("value", 42);
+
+    Assert.assertEquals("a", ((CompoundTag) first.get("child")).getString("string"));
+    Assert.assertEquals("b", ((CompoundTag) second.get("child")).getString("string"));
+    Assert.assertEquals("b", ((CompoundTag) third.get("child")).getString("string"));
+    Assert.assertFalse(((CompoundTag) third.get("child")).containsKey("value"));
+    Assert.assertEquals("c", ((CompoundTag) original.get("child")).getString("string"));
+
+    StringTag forkedString = ((CompoundTag) second.get("child")).get("string");
+    CompoundTag fourth = second.fork();
+    forkedString.setValue("d");
+
+    Assert.assertEquals("b", ((CompoundTag) fourth.get("child")).getString("string"));
+    Assert.assertEquals("b", ((CompoundTag) third.get("child")).getString("string"));
+    Assert.assertEquals("c", string.getValue());
+  }
+
+  /**
+   * Evaluates whether children which are removed from the original tree after it was forked
+   * remain independent of the fork.
+   */
+  @Test
+  public void testRemovedChildren() {
+    StringTag string = new StringTag("a");
+    ListTag<StringTag> list = new ListTag<>(TagType.STRING, string);
+    CompoundTag original = new CompoundTag();
+    original.put("list", list);
+    original.put("string", new StringTag("b"));
+
+    CompoundTag fork = original.fork();
+    StringTag removed = original.get("string");
+    original.remove("string");
+    removed.setValue("c");
+    list.remove(string);
+    string.setValue("d");
+
+    Assert.assertEquals("b", fork.getString("string"));
+    Assert.assertEquals("a", ((ListTag<StringTag>) fork.get("list")).get(0).getValue());
+  }
+
+  /**
+   * Evaluates whether repeatedly forked lists remain independent of each other.
+   */
+  @Test
+  public void testLists() {
+    IntegerListTag integers = new IntegerListTag(1, 2, 3);
+    IntegerListTag integerFork = integers.fork();
+    integerFork.setInteger(0, 42);
+    integerFork.addInteger(4);
+    integers.fork().clear();
+
+    Assert.assertArrayEquals(new int[]{1, 2, 3}, integers.toIntegerArray());
+    Assert.assertArrayEquals(new int[]{42, 2, 3, 4}, integerFork.toIntegerArray());
+
+    ListTag<StringTag> strings = new ListTag<>(TagType.STRING, new StringTag("a"));
+    ListTag<StringTag> stringFork = strings.fork();
+    ListTag<StringTag> secondFork = stringFork.fork();
+    stringFork.get(0).setValue("b");
+    secondFork.add(new StringTag("c"));
+
+    Assert.assertEquals(1, strings.size());
+    Assert.assertEquals("a", strings.get(0).getValue());
+    Assert.assertEquals("b", stringFork.get(0).getValue());
+    Assert.assertEquals(2, secondFork.size());
+    Assert.assertEquals("a", secondFork.get(0).getValue());
+  }
+
+  /**
+   * Evaluates whether children which have been retrieved before a tree was forked remain
+   * independent of the fork.
+   */
+  @Test
+  public void testRetainedChildren() throws IOException {
+    RootTag original = new TreeDecoder()
+        .decode(ForkTest.class.getResourceAsStream("/bigtest.nbt"));
+    byte[] expected = this.encode(original);
+
+    CompoundTag nested = original.get("nested compound test");
+    CompoundTag egg = nested.get("egg");
+    ListTag<CompoundTag> compounds = original.get("listTest (compound)");
+    CompoundTag element = compounds.get(0);
+    ByteArrayTag bytes = original.get("byteArrayTest (the first 1000 values of (n*n*255+n*7)%100, "
+        + "starting with n=0 (0, 62, 34, 16, 8, ...))");
+
+    RootTag fork = original.fork();
+    nested.setInteger("hp", 5);
+    egg.setFloat("value", 0.25f);
+    compounds.add(new CompoundTag());
+    element.setLong("created-on", 0);
+    bytes.set(0, (byte) 42);
+
+    Assert.assertArrayEquals(expected, this.encode(fork));
+
+    CompoundTag forkedNested = fork.get("nested compound test");
+    forkedNested.setInteger("mp", 7);
+    ListTag<CompoundTag> forkedCompounds = fork.get("listTest (compound)");
+    forkedCompounds.clear();
+
+    Assert.assertFalse(nested.containsKey("mp"));
+    Assert.assertEquals(3, compounds.size());
+  }
+
+  /**
+   * Evaluates whether elements which have been retrieved before a list was forked remain
+   * independent of the fork.
+   */
+  @Test
+  public void testRetainedElements() {
+    StringTag string = new StringTag("a");
+    CompoundTag compound = new CompoundTag();
+    ListTag<StringTag> strings = new ListTag<>(TagType.STRING, string);
+    ListTag<CompoundTag> compounds = new ListTag<>(TagType.COMPOUND, compound);
+
+    ListTag<StringTag> stringFork = strings.fork();
+    ListTag<CompoundTag> compoundFork = compounds.fork();
+    string.setValue("b");
+    compound.setInteger("value", 42);
+
+    Assert.assertEquals("a", stringFork.get(0).getValue());
+    Assert.assertFalse(compoundFork.get(0).containsKey("value"));
+  }
+
+  private void modify(@NonNull CompoundTag root) {
+    root.setInteger("intTest", 42);
+    root.setString("stringTest", "modified");
+    root.remove("byteTest");
+
+    CompoundTag nested = root.get("nested compound test");
+    CompoundTag egg = nested.get("egg");
+    egg.setFloat("value", 0.25f);
+    nested.setString("added", "value");
+
+    ListTag<CompoundTag> compounds = root.get("listTest (compound)");
+    compounds.get(0).setLong("created-on", 0);
+
+    ListTag<?> longs = root.get("listTest (long)");
+    ((LongListTag) longs).setLong(0, -1);
+
+    ByteArrayTag bytes = root.get("byteArrayTest (the first 1000 values of (n*n*255+n*7)%100, "
+        + "starting with n=0 (0, 62, 34, 16, 8, ...))");
+    bytes.set(0, (byte) 42);
+  }
+
+  @NonNull
+  private byte[] encode(@NonNull RootTag root) {
+    try (TreeEncoder encoder = new TreeEncoder()) {
+      encoder.encode(root);
+
+      ByteBuf buffer = encoder.getBuffer();
+      byte[] array = new byte[buffer.readableBytes()];
+      buffer.readBytes(array);
+      return array;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases which verify the behavior of frozen trees.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class FreezeTest {
+
+  private static RootTag decode() throws IOException {
+    return new TreeDecoder().decode(FreezeTest.class.getResourceAsStream("/bigtest.nbt"));
+  }
+
+  /**
+   * Evaluates whether frozen trees retain their hash code and equality to mutable trees.
+   */
+  @Test
+  public void testEquality() throws IOException {
+    RootTag mutable = decode();
+    RootTag frozen = decode().freeze();
+
+    Assert.assertTrue(frozen.isFrozen());
+    Assert.assertEquals(mutable.hashCode(), frozen.hashCode());
+    Assert.assertEquals(mutable, frozen);
+    Assert.assertEquals(frozen, mutable);
+
+    RootTag modified = decode();
+    modified.setInteger("intTest", 42);
+    modified.freeze();
+
+    Assert.assertNotEquals(frozen, modified);
+    Assert.assertEquals(frozen, decode().freeze());
+  }
+
+  /**
+   * Evaluates whether modifications to any part of a frozen tree are rejected.
+   */
+  @Test
+  public void testModification() throws IOException {
+    RootTag root = decode().freeze();
+    CompoundTag nested = root.get("nested compound test");
+    CompoundTag egg = nested.get("egg");
+    ListTag<CompoundTag> compounds = root.get("listTest (compound)");
+    LongListTag longs = root.get("listTest (long)");
+    IntegerTag value = root.get("intTest");
+
+    this.assertFrozen(() -> root.setInteger("intTest", 42));
+    this.assertFrozen(() -> root.remove("intTest"));
+    this.assertFrozen(() -> root.setName("modified"));
+    this.assertFrozen(() -> egg.setFloat("value", 0.25f));
+    this.assertFrozen(() -> egg.<StringTag>get("name").setValue("modified"));
+    this.assertFrozen(() -> compounds.get(0).setLong("created-on", 0));
+    this.assertFrozen(() -> compounds.add(new CompoundTag()));
+    this.assertFrozen(() -> longs.setLong(0, -1));
+    this.assertFrozen(() -> value.setValue(42));
+    this.assertFrozen(() -> root.iterator().next().setValue(new IntegerTag()));
+
+    Assert.assertEquals(decode(), root);
+  }
+
+  /**
+   * Evaluates whether frozen trees may be read by multiple threads at once (including values which
+   * are stored unboxed or have been loaded lazily).
+   */
+  @Test
+  public void testConcurrentReads() throws Exception {
+    RootTag expected = decode();
+    RootTag root = new TreeDecoder()
+        .decodeLazy(FreezeTest.class.getResourceAsStream("/bigtest.nbt"))
+        .freeze();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+
+      for (int i = 0; i < 16; ++i) {
+        results.add(executor.submit(() -> {
+          for (Map.Entry<String, Tag> entry : root) {
+            if (!entry.getValue().equals(expected.get(entry.getKey()))) {
+              return false;
+            }
+          }
+
+          return root.equals(expected);
+        }));
+      }
+
+      for (Future<Boolean> result : results) {
+        Assert.assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Evaluates whether forks of frozen trees may be modified.
+   */
+  @Test
+  public void testFork() throws IOException {
+    RootTag root = decode().freeze();
+    RootTag fork = root.fork();
+
+    Assert.assertFalse(fork.isFrozen());
+
+    fork.setInteger("intTest", 42);
+    fork.<CompoundTag>get("nested compound test").<CompoundTag>get("egg")
+        .setFloat("value", 0.25f);
+
+    Assert.assertEquals(decode(), root);
+    Assert.assertNotEquals(root, fork);
+  }
+
+  /**
+   * Evaluates whether trees which contain concurrent compounds are rejected without freezing any
+   * part of them.
+   */
+  @Test
+  public void testConcurrentChild() throws IOException {
+    RootTag root = decode();
+    ConcurrentCompoundTag counters = new ConcurrentCompoundTag();
+    counters.setInteger("hits", 1);
+
+    CompoundTag nested = root.get("nested compound test");
+    ListTag<CompoundTag> compounds = root.get("listTest (compound)");
+    compounds.get(1).put("counters", counters);
+
+    try {
+      root.freeze();
+      Assert.fail("Expected freeze to be rejected");
+    } catch (IllegalStateException ignore) {
+    }
+
+    Assert.assertFalse(root.isFrozen());
+    Assert.assertFalse(nested.isFrozen());
+    Assert.assertFalse(compounds.isFrozen());
+    Assert.assertFalse(compounds.get(0).isFrozen());
+
+    root.setInteger("intTest", 42);
+    counters.setInteger("hits", 2);
+    Assert.assertTrue(nested.freeze().isFrozen());
+  }
+
+  /**
+   * Evaluates whether freezing a fork leaves the elements it shares with the original mutable.
+   */
+  @Test
+  public void testFreezeFork() throws IOException {
+    RootTag root = decode();
+    ListTag<CompoundTag> compounds = root.get("listTest (compound)");
+    CompoundTag element = compounds.get(0);
+
+    compounds.fork().freeze();
+
+    element.setLong("created-on", 0);
+    Assert.assertEquals(0, compounds.get(0).getLong("created-on"));
+  }
+
+  private void assertFrozen(Runnable runnable) {
+    try {
+      runnable.run();
+      Assert.fail("Expected modification to be rejected");
+    } catch (IllegalStateException ignore) {
+    }
+  }
+}
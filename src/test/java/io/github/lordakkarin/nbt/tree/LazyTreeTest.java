@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases for trees which are decoded lazily through {@link
+ * TreeDecoder#decodeLazy(ByteBuf)}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class LazyTreeTest {
+
+  /**
+   * Evaluates whether a lazily decoded tree is equal to a fully decoded tree (and vice versa).
+   */
+  @Test
+  public void testEquality() throws IOException {
+    RootTag expected = new TreeDecoder().decode(Unpooled.wrappedBuffer(this.readBig()));
+    RootTag lazy = new TreeDecoder().decodeLazy(Unpooled.wrappedBuffer(this.readBig()));
+
+    Assert.assertEquals("Level", lazy.getName());
+    Assert.assertEquals(expected.size(), lazy.size());
+    Assert.assertEquals(expected.hashCode(), lazy.hashCode());
+    Assert.assertEquals(lazy, expected);
+    Assert.assertEquals(expected, lazy);
+    Assert.assertEquals(lazy,
+        new TreeDecoder().decodeLazy(LazyTreeTest.class.getResourceAsStream("/bigtest.nbt")));
+  }
+
+  /**
+   * Evaluates whether untouched and modified lazy trees are encoded correctly.
+   */
+  @Test
+  public void testEncode() throws IOException {
+    byte[] data = this.readBig();
+    RootTag lazy = new TreeDecoder().decodeLazy(Unpooled.wrappedBuffer(data));
+
+    Assert.assertArrayEquals(data, this.encode(lazy));
+
+    CompoundTag nested = lazy.get("nested compound test");
+    nested.<CompoundTag>get("egg").setString("name", "Chicken");
+    lazy.setInteger("intTest", 42);
+
+    RootTag expected = new TreeDecoder().decode(Unpooled.wrappedBuffer(data));
+    expected.<CompoundTag>get("nested compound test").<CompoundTag>get("egg").setString("name", "Chicken");
+    expected.setInteger("intTest", 42);
+
+    Assert.assertEquals(expected, lazy);
+    Assert.assertEquals(expected, new TreeDecoder().decode(Unpooled.wrappedBuffer(
+        this.encode(lazy))));
+  }
+
+  /**
+   * Evaluates whether forks and frozen copies of lazy trees behave like their eager counterparts.
+   */
+  @Test
+  public void testForkAndFreeze() throws IOException {
+    byte[] data = this.readBig();
+    RootTag lazy = new TreeDecoder().decodeLazy(Unpooled.wrappedBuffer(data));
+    RootTag fork = lazy.fork();
+
+    fork.<CompoundTag>get("nested compound test").setString("extra", "value");
+    Assert.assertFalse(lazy.<CompoundTag>get("nested compound test").containsKey("extra"));
+
+    RootTag frozen = new TreeDecoder().decodeLazy(Unpooled.wrappedBuffer(data)).freeze();
+    Assert.assertTrue(frozen.<CompoundTag>get("nested compound test").isFrozen());
+    Assert.assertEquals(lazy, frozen);
+    Assert.assertArrayEquals(data, this.encode(frozen));
+  }
+
+  /**
+   * Evaluates whether truncated data is rejected once the root compound is first accessed.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testTruncated() throws IOException {
+    byte[] data = this.readBig();
+    new TreeDecoder().decodeLazy(Unpooled.wrappedBuffer(data, 0, data.length - 10)).size();
+  }
+
+  /**
+   * Evaluates whether the contents of the root compound are left untouched until it is first
+   * accessed and whether malformed contents are reported on every access.
+   */
+  @Test
+  public void testDeferred() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(0x7F);
+
+    RootTag root = new TreeDecoder().decodeLazy(buffer);
+    Assert.assertEquals(0, buffer.readableBytes());
+
+    for (int i = 0; i < 2; ++i) {
+      try {
+        root.size();
+        Assert.fail("Expected malformed contents to be rejected");
+      } catch (IllegalStateException ignore) {
+      }
+    }
+  }
+
+  /**
+   * Evaluates whether lists of fixed size elements which claim to hold more elements than the
+   * available data are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedListLength() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.LIST.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.LONG.ordinal());
+    buffer.writeInt(Integer.MAX_VALUE);
+    buffer.writeByte(TagType.END.ordinal());
+
+    new TreeDecoder().decodeLazy(buffer).size();
+  }
+
+  /**
+   * Evaluates whether lengths which exceed the available data are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedLength() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.INTEGER_ARRAY.ordinal());
+    buffer.writeShort(0);
+    buffer.writeInt(Integer.MAX_VALUE);
+
+    new TreeDecoder().decodeLazy(buffer).size();
+  }
+
+  /**
+   * Evaluates whether lists of type END which claim to hold elements are rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedEndList() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.LIST.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.END.ordinal());
+    buffer.writeInt(Integer.MAX_VALUE);
+    buffer.writeByte(TagType.END.ordinal());
+
+    new TreeDecoder().decodeLazy(buffer).size();
+  }
+
+  @NonNull
+  private byte[] encode(@NonNull RootTag root) {
+    try (TreeEncoder encoder = new TreeEncoder()) {
+      encoder.encode(root);
+
+      ByteBuf buffer = encoder.getBuffer();
+      byte[] array = new byte[buffer.readableBytes()];
+      buffer.readBytes(array);
+      return array;
+    }
+  }
+
+  @NonNull
+  private byte[] readBig() throws IOException {
+    try (InputStream inputStream = LazyTreeTest.class.getResourceAsStream("/bigtest.nbt")) {
+      ByteBuf buffer = Unpooled.buffer();
+      while (buffer.writeBytes(inputStream, 4096) != -1) {
+      }
+
+      byte[] array = new byte[buffer.readableBytes()];
+      buffer.readBytes(array);
+      return array;
+    }
+  }
+}
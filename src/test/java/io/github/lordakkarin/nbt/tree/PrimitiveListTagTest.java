@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import io.github.lordakkarin.nbt.event.TagReader;
+import io.github.lordakkarin.nbt.event.TagType;
+import java.util.ConcurrentModificationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases for {@link PrimitiveListTag} and its implementations.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class PrimitiveListTagTest {
+
+  /**
+   * Evaluates whether primitive lists are equal to lists of the respective wrapper tags.
+   */
+  @Test
+  public void testEquality() {
+    DoubleListTag primitive = new DoubleListTag(0.5, -1, Double.NaN);
+    ListTag<DoubleTag> boxed = new ListTag<>(TagType.DOUBLE, new DoubleTag(0.5), new DoubleTag(-1),
+        new DoubleTag(Double.NaN));
+
+    Assert.assertEquals(boxed, primitive);
+    Assert.assertEquals(primitive, boxed);
+    Assert.assertEquals(boxed.hashCode(), primitive.hashCode());
+    Assert.assertEquals(primitive, new DoubleListTag(0.5, -1, Double.NaN));
+    Assert.assertNotEquals(primitive, new DoubleListTag(0.5, -1));
+  }
+
+  /**
+   * Evaluates whether values are stored and exposed correctly through the typed and generic
+   * accessors.
+   */
+  @Test
+  public void testAccess() {
+    IntegerListTag tag = new IntegerListTag();
+
+    for (int i = 0; i < 100; ++i) {
+      tag.addInteger(i);
+    }
+    tag.add(new IntegerTag(100));
+
+    Assert.assertEquals(101, tag.size());
+    Assert.assertEquals(42, tag.getInteger(42));
+    Assert.assertEquals(new IntegerTag(100), tag.get(100));
+
+    tag.setInteger(0, -1);
+    tag.remove(1);
+    Assert.assertEquals(-1, tag.getInteger(0));
+    Assert.assertEquals(2, tag.getInteger(1));
+
+    int sum = 0;
+    for (IntegerTag element : tag) {
+      sum += element.getValue();
+    }
+    Assert.assertEquals(5048, sum);
+
+    tag.clear();
+    Assert.assertEquals(0, tag.size());
+    Assert.assertArrayEquals(new int[0], tag.toIntegerArray());
+
+    tag.addInteger(7);
+    Assert.assertArrayEquals(new int[]{7}, tag.toIntegerArray());
+  }
+
+  /**
+   * Evaluates whether elements which have been retrieved from a list write their values through to
+   * the list until it is structurally modified.
+   */
+  @Test
+  public void testWriteThrough() {
+    DoubleListTag tag = new DoubleListTag(1, 2, 3);
+
+    DoubleTag first = tag.get(0);
+    DoubleTag last = tag.get(2);
+    Assert.assertEquals(first, tag.get(0));
+
+    first.setValue(0.5);
+    Assert.assertEquals(0.5, tag.getDouble(0), 0);
+
+    for (DoubleTag element : tag) {
+      element.setValue(element.getValue() * 2);
+    }
+    Assert.assertArrayEquals(new double[]{1, 4, 6}, tag.toDoubleArray(), 0);
+
+    tag.elements.parallelStream().forEach((element) -> element.setValue(element.getValue() + 1));
+    Assert.assertArrayEquals(new double[]{2, 5, 7}, tag.toDoubleArray(), 0);
+
+    tag.setDouble(2, 9);
+    Assert.assertEquals(9, last.getValue(), 0);
+
+    DoubleListTag fork = tag.fork();
+    last.setValue(10);
+    Assert.assertEquals(9, fork.getDouble(2), 0);
+    Assert.assertArrayEquals(new double[]{2, 5, 10}, tag.toDoubleArray(), 0);
+
+    tag.remove(1);
+    try {
+      last.setValue(42);
+      Assert.fail("Expected stale element to be rejected");
+    } catch (ConcurrentModificationException ignore) {
+    }
+    Assert.assertArrayEquals(new double[]{2, 10}, tag.toDoubleArray(), 0);
+
+    DoubleTag element = tag.get(1);
+    tag.freeze();
+    Assert.assertTrue(element.isFrozen());
+    Assert.assertTrue(tag.get(0).isFrozen());
+  }
+
+  /**
+   * Evaluates whether emptied lists reset their element type like regular lists do.
+   */
+  @Test
+  public void testClear() {
+    FloatListTag tag = new FloatListTag(1, 2);
+    FloatTag element = tag.get(1);
+
+    tag.clear();
+    try {
+      element.getValue();
+      Assert.fail("Expected stale element to be rejected");
+    } catch (ConcurrentModificationException ignore) {
+    }
+    Assert.assertEquals(new ListTag<>(), tag);
+
+    tag.addFloat(4);
+    Assert.assertEquals(new ListTag<>(TagType.FLOAT, new FloatTag(4)), tag);
+
+    tag.remove(0);
+    Assert.assertEquals(new ListTag<>(), tag);
+
+    tag.add(new FloatTag(5));
+    Assert.assertEquals(new ListTag<>(TagType.FLOAT, new FloatTag(5)), tag);
+  }
+
+  /**
+   * Evaluates whether the tree pipelines produce primitive lists for primitive element types.
+   */
+  @Test
+  public void testDecode() {
+    RootTag root = new RootTag("root");
+    root.put("bytes", new ByteListTag((byte) 1, (byte) -1));
+    root.put("floats", new ListTag<>(TagType.FLOAT, new FloatTag(1.5f)));
+    root.put("longs", new LongListTag(Long.MIN_VALUE, 0, Long.MAX_VALUE));
+    root.put("shorts", new ShortListTag(Short.MIN_VALUE, (short) 1, Short.MAX_VALUE));
+    root.put("doubles", new DoubleListTag(-0.5, Double.MAX_VALUE));
+    root.put("integers", new IntegerListTag(Integer.MIN_VALUE, 42));
+
+    TreeEncoder encoder = new TreeEncoder();
+    encoder.encode(root);
+
+    RootTag decoded = new TreeDecoder().decode(encoder.getBuffer());
+    Assert.assertEquals(root, decoded);
+    Assert.assertTrue(decoded.get("floats") instanceof FloatListTag);
+    Assert.assertArrayEquals(new long[]{Long.MIN_VALUE, 0, Long.MAX_VALUE},
+        ((LongListTag) decoded.get("longs")).toLongArray());
+
+    TreeVisitor visitor = new TreeVisitor();
+    new TagReader(encoder.getBuffer()).accept(visitor);
+    Assert.assertEquals(root, visitor.getRoot());
+    Assert.assertTrue(visitor.getRoot().get("bytes") instanceof ByteListTag);
+  }
+}
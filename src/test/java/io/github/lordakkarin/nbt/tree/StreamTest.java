@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import io.github.lordakkarin.nbt.event.TagType;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases which verify the spliterators and streams of container and array tags.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class StreamTest {
+
+  /**
+   * Evaluates whether array tags are iterated and streamed in their entirety.
+   */
+  @Test
+  public void testArray() {
+    ByteArrayTag bytes = new ByteArrayTag(new byte[]{1, -2, 3});
+    Iterator<Byte> it = bytes.iterator();
+
+    Assert.assertTrue(it.hasNext());
+    Assert.assertEquals(1, (byte) it.next());
+    Assert.assertEquals(-2, (byte) it.next());
+    Assert.assertEquals(3, (byte) it.next());
+    Assert.assertFalse(it.hasNext());
+    Assert.assertArrayEquals(new int[]{1, -2, 3}, bytes.stream().toArray());
+
+    int[] values = IntStream.range(0, 10000).toArray();
+    IntegerArrayTag integers = new IntegerArrayTag(values);
+
+    Assert.assertEquals(IntStream.of(values).sum(), integers.parallelStream().sum());
+    Assert.assertEquals(values.length, integers.spliterator().getExactSizeIfKnown());
+    Assert.assertEquals(values.length, new ByteArrayTag(new byte[values.length]).spliterator()
+        .trySplit().getExactSizeIfKnown() * 2);
+  }
+
+  /**
+   * Evaluates whether compound entries are split into sized halves and visited exactly once.
+   */
+  @Test
+  public void testCompound() {
+    CompoundTag tag = new CompoundTag();
+    for (int i = 0; i < 1000; ++i) {
+      tag.setInteger("key" + i, i);
+    }
+
+    Spliterator<Map.Entry<String, Tag>> spliterator = tag.spliterator();
+    Spliterator<Map.Entry<String, Tag>> prefix = spliterator.trySplit();
+
+    Assert.assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+    Assert.assertEquals(500, prefix.getExactSizeIfKnown());
+    Assert.assertEquals(500, spliterator.getExactSizeIfKnown());
+
+    Set<String> keys = tag.parallelStream()
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toSet());
+    Assert.assertEquals(1000, keys.size());
+    Assert.assertEquals(499500, tag.parallelStream()
+        .mapToInt((e) -> ((IntegerTag) e.getValue()).getValue())
+        .sum());
+  }
+
+  /**
+   * Evaluates whether concurrent compounds stream the entries of their own storage.
+   */
+  @Test
+  public void testConcurrentCompound() {
+    ConcurrentCompoundTag tag = new ConcurrentCompoundTag();
+    for (int i = 0; i < 1000; ++i) {
+      tag.setInteger("key" + i, i);
+    }
+
+    Assert.assertEquals(1000, tag.stream().count());
+    Assert.assertEquals(499500, tag.parallelStream()
+        .mapToInt((e) -> ((IntegerTag) e.getValue()).getValue())
+        .sum());
+  }
+
+  /**
+   * Evaluates whether generic and primitive lists are streamed in order.
+   */
+  @Test
+  public void testList() {
+    ListTag<StringTag> strings = new ListTag<>(TagType.STRING, new StringTag("a"),
+        new StringTag("b"), new StringTag("c"));
+    Assert.assertEquals("abc", strings.stream()
+        .map(StringTag::getValue)
+        .collect(Collectors.joining()));
+
+    IntegerListTag integers = new IntegerListTag(IntStream.range(0, 5000).toArray());
+    Assert.assertEquals(5000, integers.spliterator().getExactSizeIfKnown());
+    Assert.assertEquals(12497500, integers.parallelStream()
+        .mapToLong(IntegerTag::getValue)
+        .sum());
+    Assert.assertEquals(12497500, integers.integerStream().asLongStream().sum());
+    Assert.assertEquals(3, new LongListTag(1, 2).longStream().sum());
+  }
+}
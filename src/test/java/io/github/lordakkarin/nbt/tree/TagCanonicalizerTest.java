@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases for {@link TagCanonicalizer}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TagCanonicalizerTest {
+
+  @NonNull
+  private static RootTag createWorld() {
+    RootTag root = new RootTag("world");
+    ListTag<CompoundTag> entities = new ListTag<>(TagType.COMPOUND);
+
+    for (int i = 0; i < 100; ++i) {
+      CompoundTag entity = new CompoundTag();
+      entity.setString("id", i % 2 == 0 ? "minecraft:zombie" : "minecraft:skeleton");
+      entity.setInteger("uuid", i);
+      entity.put("Inventory", new ListTag<>(TagType.COMPOUND));
+
+      CompoundTag attributes = new CompoundTag();
+      attributes.setDouble("speed", 0.25);
+      attributes.setString("name", "generic.movementSpeed");
+      entity.put("Attributes", attributes);
+
+      entities.add(entity);
+    }
+
+    root.put("Entities", entities);
+    return root;
+  }
+
+  /**
+   * Evaluates whether identical subtrees are replaced with a single instance while the tree
+   * itself remains equal.
+   */
+  @Test
+  public void testDeduplication() {
+    RootTag root = createWorld();
+    TagCanonicalizer canonicalizer = new TagCanonicalizer();
+
+    Assert.assertSame(root, canonicalizer.canonicalizeChildren(root));
+    Assert.assertTrue(root.isFrozen());
+    Assert.assertEquals(createWorld(), root);
+
+    ListTag<CompoundTag> entities = root.get("Entities");
+    CompoundTag first = entities.get(0);
+    CompoundTag second = entities.get(1);
+    CompoundTag third = entities.get(2);
+
+    Assert.assertNotSame(first, second);
+    Assert.assertSame(first.get("Attributes"), second.get("Attributes"));
+    Assert.assertSame(first.get("Inventory"), second.get("Inventory"));
+    Assert.assertSame(first.get("id"), third.get("id"));
+
+    Assert.assertEquals(99, canonicalizer.getDeduplicatedCount(TagType.COMPOUND));
+    Assert.assertEquals(99, canonicalizer.getDeduplicatedCount(TagType.LIST));
+    Assert.assertEquals(98 + 99, canonicalizer.getDeduplicatedCount(TagType.STRING));
+    Assert.assertEquals(99 + 99 + 98 + 99, canonicalizer.getDeduplicatedCount());
+    Assert.assertEquals(200, canonicalizer.getVisitedCount(TagType.COMPOUND));
+  }
+
+  /**
+   * Evaluates whether separate trees share instances through a common pool.
+   */
+  @Test
+  public void testSharedPool() {
+    TagCanonicalizer canonicalizer = new TagCanonicalizer();
+    RootTag first = canonicalizer.canonicalizeChildren(createWorld());
+    RootTag second = canonicalizer.canonicalizeChildren(createWorld());
+
+    Assert.assertSame(first.get("Entities"), second.get("Entities"));
+  }
+
+  /**
+   * Evaluates whether trees which contain concurrent compounds are canonicalized without freezing
+   * or pooling the compounds and lists which enclose them.
+   */
+  @Test
+  public void testConcurrentChild() {
+    RootTag root = createWorld();
+    ListTag<CompoundTag> entities = root.get("Entities");
+    ConcurrentCompoundTag counters = new ConcurrentCompoundTag();
+    entities.get(5).put("counters", counters);
+
+    TagCanonicalizer canonicalizer = new TagCanonicalizer();
+    canonicalizer.canonicalizeChildren(root);
+
+    Assert.assertFalse(root.isFrozen());
+    Assert.assertFalse(entities.isFrozen());
+    Assert.assertFalse(entities.get(5).isFrozen());
+    Assert.assertTrue(entities.get(4).isFrozen());
+    Assert.assertSame(entities.get(4).get("Attributes"), entities.get(5).get("Attributes"));
+    Assert.assertSame(counters, entities.get(5).get("counters"));
+
+    counters.setInteger("hits", 1);
+    entities.get(5).setInteger("uuid", -1);
+    Assert.assertTrue(canonicalizer.canonicalizeChildren(createWorld()).isFrozen());
+  }
+
+  /**
+   * Evaluates whether the values of lazily decoded trees pass through the pool as well.
+   */
+  @Test
+  public void testLazy() {
+    RootTag root;
+
+    try (TreeEncoder encoder = new TreeEncoder()) {
+      encoder.encode(createWorld());
+      root = new TreeDecoder().decodeLazy(Unpooled.copiedBuffer(encoder.getBuffer()));
+    }
+
+    TagCanonicalizer canonicalizer = new TagCanonicalizer();
+    canonicalizer.canonicalizeChildren(root);
+
+    ListTag<CompoundTag> entities = root.get("Entities");
+    Assert.assertTrue(root.isFrozen());
+    Assert.assertEquals(createWorld(), root);
+    Assert.assertSame(entities.get(0).get("Attributes"), entities.get(1).get("Attributes"));
+    Assert.assertEquals(99, canonicalizer.getDeduplicatedCount(TagType.COMPOUND));
+  }
+
+  /**
+   * Evaluates whether canonicalizing a fork leaves the original tree untouched.
+   */
+  @Test
+  public void testFork() {
+    RootTag root = createWorld();
+    RootTag fork = root.fork();
+    new TagCanonicalizer().canonicalizeChildren(fork);
+
+    Assert.assertFalse(root.isFrozen());
+    root.<ListTag<CompoundTag>>get("Entities").get(0).setInteger("uuid", -1);
+
+    Assert.assertEquals(createWorld(), fork);
+    Assert.assertNotEquals(root, fork);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import io.github.lordakkarin.nbt.event.TagReader;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases for {@link TreeDecoder}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TreeDecoderTest {
+
+  /**
+   * Evaluates whether the decoder generates a tree which is equal to the tree generated by {@link
+   * TreeVisitor}.
+   */
+  @Test
+  public void testBig() throws IOException {
+    TreeVisitor visitor = new TreeVisitor();
+    new TagReader(TreeDecoderTest.class.getResourceAsStream("/bigtest.nbt")).accept(visitor);
+
+    RootTag root = new TreeDecoder()
+        .decode(TreeDecoderTest.class.getResourceAsStream("/bigtest.nbt"));
+
+    Assert.assertEquals("Level", root.getName());
+    Assert.assertEquals(visitor.getRoot(), root);
+  }
+
+  /**
+   * Evaluates whether trees which contain arrays survive a round trip through {@link
+   * TreeEncoder}.
+   */
+  @Test
+  public void testRoundTrip() {
+    RootTag root = new RootTag("arrays");
+    root.setIntegerArray("ints", new int[]{1, -2, Integer.MAX_VALUE, Integer.MIN_VALUE});
+    root.setByteArray("bytes", new byte[]{1, -2, Byte.MAX_VALUE});
+    root.put("empty", new ListTag<>(TagType.STRING));
+    root.put("doubles", new ListTag<>(TagType.DOUBLE, new DoubleTag(0.5), new DoubleTag(-1)));
+
+    TreeEncoder encoder = new TreeEncoder();
+    encoder.encode(root);
+
+    Assert.assertEquals(root, new TreeDecoder().decode(encoder.getBuffer()));
+  }
+
+  /**
+   * Evaluates whether the decoder rejects lengths which exceed the available data.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedLength() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.INTEGER_ARRAY.ordinal());
+    buffer.writeShort(0);
+    buffer.writeInt(Integer.MAX_VALUE);
+
+    new TreeDecoder().decode(buffer);
+  }
+
+  /**
+   * Evaluates whether the decoder rejects lists of type END which claim to hold elements.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedEndList() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.LIST.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.END.ordinal());
+    buffer.writeInt(Integer.MAX_VALUE);
+    buffer.writeByte(TagType.END.ordinal());
+
+    new TreeDecoder().decode(buffer);
+  }
+
+  /**
+   * Evaluates whether large lists which are decoded concurrently result in the same tree as a
+   * sequential decode.
+   */
+  @Test
+  public void testParallel() {
+    RootTag root = new RootTag("entities");
+    ListTag<CompoundTag> entities = new ListTag<>(TagType.COMPOUND);
+    ListTag<StringTag> names = new ListTag<>(TagType.STRING);
+
+    for (int i = 0; i < TreeDecoder.PARALLEL_THRESHOLD * 5 + 17; ++i) {
+      CompoundTag entity = new CompoundTag();
+      entity.setInteger("id", i);
+      entity.setString("name", "entity #" + i);
+      entity.put("pos", new ListTag<>(TagType.DOUBLE, new DoubleTag(i), new DoubleTag(-i)));
+      entities.add(entity);
+      names.add(new StringTag("entity #" + i));
+    }
+
+    CompoundTag level = new CompoundTag();
+    level.put("names", names);
+    level.put("small", new ListTag<>(TagType.STRING, new StringTag("a"), new StringTag("b")));
+    root.put("entities", entities);
+    root.put("level", level);
+    root.setLong("seed", 42L);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+
+    try (TreeEncoder encoder = new TreeEncoder()) {
+      encoder.encode(root);
+
+      ByteBuf buffer = encoder.getBuffer();
+      RootTag decoded = new TreeDecoder(pool).decode(buffer);
+
+      Assert.assertEquals(root, decoded);
+      Assert.assertFalse(buffer.isReadable());
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
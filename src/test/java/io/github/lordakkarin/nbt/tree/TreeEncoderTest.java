@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.lordakkarin.nbt.tree;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.github.lordakkarin.nbt.event.TagReader;
+import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.TagWriter;
+import io.netty.buffer.ByteBuf;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Provides test cases to verify the correct functionality of {@link TreeEncoder}.
+ *
+ * @author <a href="mailto:johannesd@torchmind.com">Johannes Donath</a>
+ */
+public class TreeEncoderTest {
+
+  @NonNull
+  private RootTag readResource(@NonNull String name) throws IOException {
+    TreeVisitor visitor = new TreeVisitor();
+    new TagReader(TreeEncoderTest.class.getResourceAsStream(name)).accept(visitor);
+
+    return visitor.getRoot();
+  }
+
+  /**
+   * Evaluates whether the encoder generates the exact same output as {@link TagWriter} when
+   * passed a tree which contains all known tags.
+   */
+  @Test
+  public void testBig() throws IOException {
+    RootTag root = this.readResource("/bigtest.nbt");
+
+    TagWriter writer = new TagWriter();
+    root.accept(writer);
+
+    TreeEncoder encoder = new TreeEncoder();
+    encoder.encode(root);
+
+    Assert.assertArrayEquals(this.toArray(writer.getBuffer()), this.toArray(encoder.getBuffer()));
+  }
+
+  /**
+   * Evaluates whether arrays and lists (which are written in bulk) are encoded correctly.
+   */
+  @Test
+  public void testArrays() {
+    RootTag root = new RootTag("arrays");
+    root.setIntegerArray("ints", new int[]{1, -2, Integer.MAX_VALUE, Integer.MIN_VALUE});
+    root.setByteArray("bytes", new byte[]{1, -2, Byte.MAX_VALUE});
+    root.setLongArray("longs", new long[]{1L, -2L, Long.MAX_VALUE, Long.MIN_VALUE});
+    root.put("doubles", new ListTag<>(TagType.DOUBLE, new DoubleTag(0.5), new DoubleTag(-1)));
+
+    TagWriter writer = new TagWriter();
+    root.accept(writer);
+
+    TreeEncoder encoder = new TreeEncoder();
+    encoder.encode(root);
+
+    Assert.assertArrayEquals(this.toArray(writer.getBuffer()), this.toArray(encoder.getBuffer()));
+  }
+
+  /**
+   * Evaluates whether concurrently encoded lists result in the same output as a sequential
+   * encode (both within the composite buffer and when written to a stream).
+   */
+  @Test
+  public void testParallel() throws IOException {
+    RootTag root = new RootTag("entities");
+    ListTag<CompoundTag> entities = new ListTag<>(TagType.COMPOUND);
+    ListTag<ListTag<StringTag>> tags = new ListTag<>(TagType.LIST);
+
+    for (int i = 0; i < TreeEncoder.PARALLEL_THRESHOLD * 3 + 5; ++i) {
+      CompoundTag entity = new CompoundTag();
+      entity.setInteger("id", i);
+      entity.setString("name", "entity #" + i);
+      entities.add(entity);
+      tags.add(new ListTag<>(TagType.STRING, new StringTag("tag #" + i)));
+    }
+
+    root.put("entities", entities);
+    root.setLong("seed", 42L);
+    root.put("tags", tags);
+
+    TreeEncoder sequential = new TreeEncoder();
+    sequential.encode(root);
+    byte[] expected = this.toArray(sequential.getBuffer());
+    sequential.close();
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+
+    try (TreeEncoder encoder = new TreeEncoder(pool)) {
+      encoder.encode(root);
+      Assert.assertArrayEquals(expected, this.toArray(encoder.getBuffer()));
+
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      encoder.write(outputStream);
+      Assert.assertArrayEquals(expected, outputStream.toByteArray());
+
+      encoder.clear();
+      encoder.encode(root);
+      Assert.assertArrayEquals(expected, this.toArray(encoder.getBuffer()));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @NonNull
+  private byte[] toArray(@NonNull ByteBuf buffer) {
+    byte[] array = new byte[buffer.readableBytes()];
+    buffer.readBytes(array);
+
+    return array;
+  }
+}
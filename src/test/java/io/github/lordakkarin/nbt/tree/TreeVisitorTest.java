@@ -18,6 +18,9 @@ package io.github.lordakkarin.nbt.tree;
 
 import io.github.lordakkarin.nbt.event.TagReader;
 import io.github.lordakkarin.nbt.event.TagType;
+import io.github.lordakkarin.nbt.event.ValidationVisitor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.io.IOException;
 import org.junit.Assert;
 import org.junit.Test;
@@ -132,6 +135,49 @@ public class TreeVisitorTest {
     }
   }
 
+  /**
+   * Evaluates whether integer and long arrays are read back into their respective tags.
+   */
+  @Test
+  public void testArrays() {
+    RootTag expected = new RootTag("arrays");
+    expected.setIntegerArray("ints", new int[]{1, -2, Integer.MIN_VALUE});
+    expected.setLongArray("longs", new long[]{1L, -2L, Long.MAX_VALUE, Long.MIN_VALUE});
+    expected.setLongArray("empty", new long[0]);
+    expected.setInteger("after", 42);
+
+    try (TreeEncoder encoder = new TreeEncoder()) {
+      encoder.encode(expected);
+
+      TreeVisitor visitor = new TreeVisitor();
+      try (TagReader reader = new TagReader(encoder.getBuffer())) {
+        reader.accept(new ValidationVisitor(visitor));
+      }
+
+      Assert.assertEquals(expected, visitor.getRoot());
+      Assert.assertArrayEquals(new long[]{1L, -2L, Long.MAX_VALUE, Long.MIN_VALUE},
+          visitor.getRoot().getLongArray("longs"));
+      Assert.assertEquals(expected, new TreeDecoder().decode(encoder.getBuffer()));
+    }
+  }
+
+  /**
+   * Evaluates whether lists are not pre-sized based on lengths which exceed the available data.
+   */
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testMalformedLength() {
+    ByteBuf buffer = Unpooled.buffer();
+    buffer.writeByte(TagType.COMPOUND.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.LIST.ordinal());
+    buffer.writeShort(0);
+    buffer.writeByte(TagType.DOUBLE.ordinal());
+    buffer.writeInt(Integer.MAX_VALUE - 8);
+    buffer.writeDouble(1);
+
+    new TagReader(buffer).accept(new TreeVisitor());
+  }
+
   @Test
   public void testHelloWorld() throws IOException {
     TreeVisitor visitor = new TreeVisitor();